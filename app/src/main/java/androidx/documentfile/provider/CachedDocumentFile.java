@@ -36,6 +36,11 @@ public class CachedDocumentFile extends DocumentFile {
         mIsDirectory = isDirectory;
     }
 
+    public CachedDocumentFile(DocumentFile wrapped, String name, long length, boolean isDirectory, long lastModified) {
+        this(wrapped, name, length, isDirectory);
+        mLastModified = lastModified;
+    }
+
     public boolean canRead() {
         if (mCanRead == null) {
             mCanRead = mWrapped.canRead();
@@ -84,10 +84,7 @@ class DuplicateDetectorActivity : BaseActivity() {
                 updateToolbar(0, 0, 0)
                 viewModel.allDuplicates.observe(
                     this@DuplicateDetectorActivity
-                ) { entry ->
-                    updateTitle(entry.groupBy { it.referenceContent }
-                        .mapValues { it.value.sumOf { 1L } }.size * -1)
-                }
+                ) { references -> updateTitle(references.size * -1) }
                 updateSelectionToolbar()
             }
         })
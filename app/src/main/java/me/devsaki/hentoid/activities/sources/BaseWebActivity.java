@@ -94,6 +94,7 @@ import me.devsaki.hentoid.enums.AlertStatus;
 import me.devsaki.hentoid.enums.ErrorType;
 import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.events.ContentRemovedEvent;
 import me.devsaki.hentoid.events.DownloadCommandEvent;
 import me.devsaki.hentoid.events.DownloadEvent;
 import me.devsaki.hentoid.events.DownloadPreparationEvent;
@@ -116,6 +117,7 @@ import me.devsaki.hentoid.util.download.ContentQueueManager;
 import me.devsaki.hentoid.util.file.FileHelper;
 import me.devsaki.hentoid.util.file.PermissionHelper;
 import me.devsaki.hentoid.util.network.HttpHelper;
+import me.devsaki.hentoid.util.network.UrlSuffixIndex;
 import me.devsaki.hentoid.util.network.WebkitPackageHelper;
 import me.devsaki.hentoid.views.NestedScrollWebView;
 import me.devsaki.hentoid.widget.AddQueueMenu;
@@ -207,10 +209,10 @@ public abstract class BaseWebActivity extends BaseActivity implements CustomWebV
     private List<String> blockedTags = Collections.emptyList();
     // Extra images found on the currently viewed Content
     private List<ImageFile> extraImages = Collections.emptyList();
-    // List of URLs of downloaded books for the current site
-    private final List<String> downloadedBooksUrls = new ArrayList<>();
-    // List of URLs of merged books for the current site
-    private final List<String> mergedBooksUrls = new ArrayList<>();
+    // Index of the URLs of downloaded books for the current site
+    private final UrlSuffixIndex downloadedBooksUrls = new UrlSuffixIndex();
+    // Index of the URLs of merged books for the current site
+    private final UrlSuffixIndex mergedBooksUrls = new UrlSuffixIndex();
     // List of tags of Preference-browser-blocked tags
     private List<String> prefBlockedTags = new ArrayList<>();
 
@@ -1413,13 +1415,31 @@ public abstract class BaseWebActivity extends BaseActivity implements CustomWebV
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onDownloadEvent(DownloadEvent event) {
         if (event.eventType == DownloadEvent.Type.EV_COMPLETE) {
-            if (webClient.isMarkDownloaded()) updateDownloadedBooksUrls();
+            // Index the new book instead of reloading the whole library
+            if (webClient.isMarkDownloaded() && event.content != null && event.content.getSite() == getStartSite() && event.content.getStatus().equals(StatusContent.DOWNLOADED))
+                downloadedBooksUrls.add(HttpHelper.simplifyUrl(event.content.getUrl()));
             if (event.content != null && event.content.equals(currentContent) && event.content.getStatus().equals(StatusContent.DOWNLOADED)) {
                 setActionMode(ActionMode.READ);
             }
         }
     }
 
+    /**
+     * Listener for the removal of books
+     * Used to stop marking removed books as downloaded
+     *
+     * @param event Removal event
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onContentRemovedEvent(ContentRemovedEvent event) {
+        if (null == webClient || !webClient.isMarkDownloaded() || event.site != getStartSite() || null == event.url)
+            return;
+        // Another downloaded book might have the same URL
+        Content remaining = dao.selectContentBySourceAndUrl(event.site, event.url, null);
+        if (remaining != null && ContentHelper.isInLibrary(remaining.getStatus())) return;
+        downloadedBooksUrls.remove(HttpHelper.simplifyUrl(event.url));
+    }
+
     void showTooltip(@StringRes int resource, boolean always) {
         TooltipHelper.showTooltip(this, resource, ArrowOrientation.BOTTOM, binding.bottomNavigation, this, always);
     }
@@ -1494,13 +1514,13 @@ public abstract class BaseWebActivity extends BaseActivity implements CustomWebV
     }
 
     @Override
-    public List<String> getAllSiteUrls() {
-        return new ArrayList<>(downloadedBooksUrls); // Work on a copy to avoid any thread-synch issue
+    public UrlSuffixIndex getAllSiteUrls() {
+        return downloadedBooksUrls; // Thread-safe
     }
 
     @Override
-    public List<String> getAllMergedBooksUrls() {
-        return new ArrayList<>(mergedBooksUrls);
+    public UrlSuffixIndex getAllMergedBooksUrls() {
+        return mergedBooksUrls;
     }
 
     @Override
@@ -1521,18 +1541,15 @@ public abstract class BaseWebActivity extends BaseActivity implements CustomWebV
             setActionMode(actionButtonMode);
         } else if (Preferences.Key.BROWSER_MARK_DOWNLOADED.equals(key)) {
             customCss = null;
-            webClient.setMarkDownloaded(Preferences.isBrowserMarkDownloaded());
-            if (webClient.isMarkDownloaded()) updateDownloadedBooksUrls();
+            if (Preferences.isBrowserMarkDownloaded()) updateDownloadedBooksUrls();
             reload = true;
         } else if (Preferences.Key.BROWSER_MARK_MERGED.equals(key)) {
             customCss = null;
-            webClient.setMarkMerged(Preferences.isBrowserMarkMerged());
-            if (webClient.isMarkMerged()) updateMergedBooksUrls();
+            if (Preferences.isBrowserMarkMerged()) updateMergedBooksUrls();
             reload = true;
         } else if (Preferences.Key.BROWSER_MARK_BLOCKED.equals(key)) {
             customCss = null;
-            webClient.setMarkBlockedTags(Preferences.isBrowserMarkBlockedTags());
-            if (webClient.isMarkBlockedTags())
+            if (Preferences.isBrowserMarkBlockedTags())
                 updatePrefBlockedTags();
             else
                 clearPrefBlockedTags();
@@ -1544,7 +1561,6 @@ public abstract class BaseWebActivity extends BaseActivity implements CustomWebV
             customCss = null;
             reload = true;
         } else if (Preferences.Key.BROWSER_DNS_OVER_HTTPS.equals(key)) {
-            webClient.setDnsOverHttpsEnabled(Preferences.getDnsOverHttps() > -1);
             reload = true;
         } else if (Preferences.Key.BROWSER_QUICK_DL.equals(key)) {
             if (Preferences.isBrowserQuickDl())
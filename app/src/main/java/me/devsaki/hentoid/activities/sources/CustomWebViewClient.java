@@ -24,14 +24,21 @@ import com.annimon.stream.function.BiFunction;
 import com.annimon.stream.function.Consumer;
 
 import org.jsoup.Jsoup;
+import org.jsoup.SerializationException;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
@@ -40,10 +47,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -73,6 +84,7 @@ import me.devsaki.hentoid.util.ToastHelper;
 import me.devsaki.hentoid.util.file.FileHelper;
 import me.devsaki.hentoid.util.image.ImageHelper;
 import me.devsaki.hentoid.util.network.HttpHelper;
+import me.devsaki.hentoid.util.network.UrlSuffixIndex;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import pl.droidsonroids.jspoon.HtmlAdapter;
@@ -85,6 +97,11 @@ import timber.log.Timber;
  */
 class CustomWebViewClient extends WebViewClient {
 
+    // Size of the buffer of the pipe used to stream processed HTML to the WebView
+    private static final int HTML_PIPE_SIZE = 64 * 1024;
+    // Delay after which the processed HTML is abandoned if the WebView doesn't read it (ms)
+    private static final long HTML_WRITE_TIMEOUT_MS = 30 * 1000L;
+
     // Pre-built object to represent an empty input stream
     // (will be used instead of the actual stream when the requested resource is blocked)
     private final byte[] NOTHING = new byte[0];
@@ -122,11 +139,13 @@ class CustomWebViewClient extends WebViewClient {
 
     protected final AdBlocker adBlocker;
 
-    // Faster access to Preferences settings
+    // Faster access to Preferences settings; kept up to date by prefsListener
+    private final AtomicBoolean browserAugmented = new AtomicBoolean(Preferences.isBrowserAugmented());
     private final AtomicBoolean markDownloaded = new AtomicBoolean(Preferences.isBrowserMarkDownloaded());
     private final AtomicBoolean markMerged = new AtomicBoolean((Preferences.isBrowserMarkMerged()));
     private final AtomicBoolean markBlockedTags = new AtomicBoolean((Preferences.isBrowserMarkBlockedTags()));
     private final AtomicBoolean dnsOverHttpsEnabled = new AtomicBoolean(Preferences.getDnsOverHttps() > -1);
+    private final Preferences.OnChangeListener prefsListener = this::onPreferenceChanged;
 
     // Disposable to be used for punctual operations
     private Disposable disposable;
@@ -178,13 +197,43 @@ class CustomWebViewClient extends WebViewClient {
                         HentoidApp.getInstance().getResources().getColor(R.color.secondary_light)
                 )
         );
+
+        Preferences.subscribe(prefsListener,
+                Preferences.Key.BROWSER_AUGMENTED,
+                Preferences.Key.BROWSER_MARK_DOWNLOADED,
+                Preferences.Key.BROWSER_MARK_MERGED,
+                Preferences.Key.BROWSER_MARK_BLOCKED,
+                Preferences.Key.BROWSER_DNS_OVER_HTTPS);
     }
 
     void destroy() {
         Timber.d("WebClient destroyed");
+        Preferences.unsubscribe(prefsListener);
         compositeDisposable.clear();
     }
 
+    private void onPreferenceChanged(@NonNull String key) {
+        switch (key) {
+            case Preferences.Key.BROWSER_AUGMENTED:
+                browserAugmented.set(Preferences.isBrowserAugmented());
+                break;
+            case Preferences.Key.BROWSER_MARK_DOWNLOADED:
+                markDownloaded.set(Preferences.isBrowserMarkDownloaded());
+                break;
+            case Preferences.Key.BROWSER_MARK_MERGED:
+                markMerged.set(Preferences.isBrowserMarkMerged());
+                break;
+            case Preferences.Key.BROWSER_MARK_BLOCKED:
+                markBlockedTags.set(Preferences.isBrowserMarkBlockedTags());
+                break;
+            case Preferences.Key.BROWSER_DNS_OVER_HTTPS:
+                dnsOverHttpsEnabled.set(Preferences.getDnsOverHttps() > -1);
+                break;
+            default:
+                // Nothing to do
+        }
+    }
+
     /**
      * Add an element filter to current site
      *
@@ -319,7 +368,7 @@ class CustomWebViewClient extends WebViewClient {
      * false if the webview has to handle the display (OkHttp will be used as a 2nd request for parsing)
      */
     private boolean canUseSingleOkHttpRequest() {
-        return (Preferences.isBrowserAugmented()
+        return (browserAugmented.get()
                 && (HttpHelper.getChromeVersion() < 45 || HttpHelper.getChromeVersion() > 71)
         );
     }
@@ -343,7 +392,7 @@ class CustomWebViewClient extends WebViewClient {
             @NonNull final WebView view,
             @NonNull final String url,
             @Nullable final Map<String, String> requestHeaders) {
-        if ((Preferences.isBrowserAugmented() && adBlocker.isBlocked(url, requestHeaders)) || !url.startsWith("http"))
+        if ((browserAugmented.get() && adBlocker.isBlocked(url, requestHeaders)) || !url.startsWith("http"))
             return true;
 
         // Download and open the torrent file
@@ -417,6 +466,8 @@ class CustomWebViewClient extends WebViewClient {
         if (BuildConfig.DEBUG) Timber.v("WebView : page finished %s", url);
         isPageLoading.set(false);
         isHtmlLoaded.set(false); // Reset for the next page
+        // Cookies may have been set by the page
+        HttpHelper.getWebViewCookies(url);
         activity.onPageFinished(isResultsPage(StringHelper.protect(url)), isGalleryPage(url));
     }
 
@@ -451,7 +502,7 @@ class CustomWebViewClient extends WebViewClient {
     @Nullable
     private WebResourceResponse shouldInterceptRequestInternal(@NonNull final String url,
                                                                @Nullable final Map<String, String> headers) {
-        if ((Preferences.isBrowserAugmented() && adBlocker.isBlocked(url, headers)) || !url.startsWith("http")) {
+        if ((browserAugmented.get() && adBlocker.isBlocked(url, headers)) || !url.startsWith("http")) {
             return new WebResourceResponse("text/plain", "utf-8", new ByteArrayInputStream(NOTHING));
         } else if (isMarkDownloaded() && url.contains("hentoid-checkmark")) {
             return new WebResourceResponse(ImageHelper.MIME_IMAGE_WEBP, "utf-8", new ByteArrayInputStream(CHECKMARK));
@@ -599,11 +650,11 @@ class CustomWebViewClient extends WebViewClient {
                 if (canUseSingleOkHttpRequest()) {
                     InputStream browserStream;
                     if (analyzeForDownload) {
-                        // Response body bytestream needs to be duplicated
-                        // because Jsoup closes it, which makes it unavailable for the WebView to use
-                        List<InputStream> is = Helper.duplicateInputStream(body.byteStream(), 2);
-                        parserStream = is.get(0);
-                        browserStream = is.get(1);
+                        // Response body is read once and shared by the parser and the WebView
+                        // because Jsoup closes the stream it reads, which makes it unavailable for the WebView to use
+                        byte[] html = body.bytes();
+                        parserStream = new ByteArrayInputStream(html);
+                        browserStream = new ByteArrayInputStream(html);
                     } else {
                         parserStream = null;
                         browserStream = body.byteStream();
@@ -611,27 +662,17 @@ class CustomWebViewClient extends WebViewClient {
 
                     // Remove dirty elements from HTML resources
                     String customCss = activity.getCustomCss();
-                    if (removableElements != null || jsContentBlacklist != null || isMarkDownloaded() || isMarkMerged() || isMarkBlockedTags() || !customCss.isEmpty()) {
-                        browserStream = ProcessHtml(browserStream, urlStr, customCss, removableElements, jsContentBlacklist, activity.getAllSiteUrls(), activity.getAllMergedBooksUrls(), activity.getPrefBlockedTags());
+                    UrlSuffixIndex siteUrls = isMarkDownloaded() ? activity.getAllSiteUrls() : null;
+                    UrlSuffixIndex mergedSiteUrls = isMarkMerged() ? activity.getAllMergedBooksUrls() : null;
+                    List<String> blockedTags = isMarkBlockedTags() ? activity.getPrefBlockedTags() : null;
+                    if (isRewriteNeeded(urlStr, customCss, siteUrls, mergedSiteUrls, blockedTags)) {
+                        browserStream = ProcessHtml(browserStream, urlStr, customCss, removableElements, jsContentBlacklist, siteUrls, mergedSiteUrls, blockedTags);
                         if (null == browserStream) return null;
                     }
 
                     // Convert OkHttp response to the expected format
                     result = HttpHelper.okHttpResponseToWebkitResponse(response, browserStream);
-
-                    // Manually set cookie if present in response header (has to be set manually because we're using OkHttp right now, not the webview)
-                    if (result.getResponseHeaders().containsKey("set-cookie") || result.getResponseHeaders().containsKey("Set-Cookie")) {
-                        String cookiesStr = result.getResponseHeaders().get("set-cookie");
-                        if (null == cookiesStr)
-                            cookiesStr = result.getResponseHeaders().get("Set-Cookie");
-                        if (cookiesStr != null) {
-                            // Set-cookie might contain multiple cookies to set separated by a line feed (see HttpHelper.getValuesSeparatorFromHttpHeader)
-                            String[] cookieParts = cookiesStr.split("\n");
-                            for (String cookie : cookieParts)
-                                if (!cookie.isEmpty())
-                                    HttpHelper.setCookies(urlStr, cookie);
-                        }
-                    }
+                    // NB : Cookies set by the response are written to the webview by PersistentCookieJar
                 } else {
                     parserStream = body.byteStream();
                     result = null; // Default webview behaviour
@@ -703,28 +744,36 @@ class CustomWebViewClient extends WebViewClient {
         return markDownloaded.get();
     }
 
-    void setMarkDownloaded(boolean value) {
-        markDownloaded.set(value);
-    }
-
     boolean isMarkMerged() {
         return markMerged.get();
     }
 
-    void setMarkMerged(boolean value) {
-        markMerged.set(value);
-    }
-
     boolean isMarkBlockedTags() {
         return markBlockedTags.get();
     }
 
-    void setMarkBlockedTags(boolean value) {
-        markBlockedTags.set(value);
-    }
-
-    void setDnsOverHttpsEnabled(boolean value) {
-        dnsOverHttpsEnabled.set(value);
+    /**
+     * Indicate if the given page has to be rewritten before being handed over to the WebView
+     *
+     * @param url            URL of the page
+     * @param customCss      Custom CSS to add to the main page
+     * @param siteUrls       Urls of the covers or links to visually mark as downloaded
+     * @param mergedSiteUrls Urls of the covers or links to visually mark as merged
+     * @param blockedTags    Tags of the preference-browser-blocked tag option to visually mark as blocked
+     * @return True if any removal, marking, CSS injection or custom rewriting applies to the given page; false if it can be used as is
+     */
+    private boolean isRewriteNeeded(
+            @NonNull String url,
+            @NonNull String customCss,
+            @Nullable UrlSuffixIndex siteUrls,
+            @Nullable UrlSuffixIndex mergedSiteUrls,
+            @Nullable List<String> blockedTags) {
+        if (removableElements != null || jsContentBlacklist != null) return true;
+        if (customHtmlRewriter != null) return true;
+        if (!customCss.isEmpty() && url.equals(mainPageUrl)) return true;
+        if (siteUrls != null && siteUrls.size() > 0) return true;
+        if (mergedSiteUrls != null && mergedSiteUrls.size() > 0) return true;
+        return blockedTags != null && !blockedTags.isEmpty() && site.getGalleryHeight() != -1;
     }
 
     /**
@@ -739,7 +788,8 @@ class CustomWebViewClient extends WebViewClient {
      * @param siteUrls           Urls of the covers or links to visually mark as downloaded
      * @param mergedSiteUrls     Urls of the covers or links to visually mark as merged
      * @param blockedTags        Tags of the preference-browser-blocked tag option to visually mark as blocked
-     * @return Stream containing the HTML document stripped from the elements to remove
+     * @return Stream containing the HTML document stripped from the elements to remove;
+     * the document is streamed while being serialized
      */
     @Nullable
     private InputStream ProcessHtml(
@@ -748,8 +798,8 @@ class CustomWebViewClient extends WebViewClient {
             @Nullable String customCss,
             @Nullable List<String> removableElements,
             @Nullable List<String> jsContentBlacklist,
-            @Nullable List<String> siteUrls,
-            @Nullable List<String> mergedSiteUrls,
+            @Nullable UrlSuffixIndex siteUrls,
+            @Nullable UrlSuffixIndex mergedSiteUrls,
             @Nullable List<String> blockedTags) {
         try {
             Document doc = Jsoup.parse(stream, null, baseUri);
@@ -780,133 +830,165 @@ class CustomWebViewClient extends WebViewClient {
                 }
             }
 
-            // Mark downloaded books and merged books
-            if (siteUrls != null && mergedSiteUrls != null && (!siteUrls.isEmpty() || !mergedSiteUrls.isEmpty())) {
-                // Format elements
-                Elements plainLinks = doc.select("a");
-                Elements linkedImages = doc.select("a img");
-
-                // Key = simplified HREF
-                // Value.left = plain link ("a")
-                // Value.right = corresponding linked images ("a img"), if any
-                Map<String, Pair<Element, Element>> elements = new HashMap<>();
-
-                for (Element link : plainLinks) {
-                    if (!site.getBookCardExcludedParentClasses().isEmpty()) {
-                        boolean isForbidden = Stream.of(link.parents()).anyMatch(e -> containsForbiddenClass(site, e.classNames()));
-                        if (isForbidden) continue;
-                    }
-                    String aHref = HttpHelper.simplifyUrl(link.attr("href"));
-                    if (!aHref.isEmpty() && !elements.containsKey(aHref)) // We only process the first match - usually the cover
-                        elements.put(aHref, new Pair<>(link, null));
-                }
+            // Mark downloaded books, merged books and books with blocked tags
+            markBooks(doc, site, siteUrls, mergedSiteUrls, blockedTags);
 
-                for (Element linkedImage : linkedImages) {
-                    Element parent = linkedImage.parent();
-                    while (parent != null && !parent.is("a")) parent = parent.parent();
-                    if (null == parent) break;
+            if (customHtmlRewriter != null) customHtmlRewriter.accept(doc);
 
-                    if (!site.getBookCardExcludedParentClasses().isEmpty()) {
-                        boolean isForbidden = Stream.of(parent.parents()).anyMatch(e -> containsForbiddenClass(site, e.classNames()));
-                        if (isForbidden) continue;
-                    }
+            return streamHtml(doc);
+        } catch (
+                IOException e) {
+            Timber.e(e);
+            return null;
+        }
+    }
 
-                    String aHref = HttpHelper.simplifyUrl(parent.attr("href"));
-                    Pair<Element, Element> elt = elements.get(aHref);
-                    if (elt != null && null == elt.second) // We only process the first match - usually the cover
-                        elements.put(aHref, new Pair<>(elt.first, linkedImage));
-                }
+    /**
+     * Serialize the given document into a stream that can be read while the serialization is still running,
+     * so that the WebView can start rendering without waiting for the whole document to be serialized
+     *
+     * @param doc Document to serialize
+     * @return Stream containing the serialized document, encoded in UTF-8
+     * @throws IOException If the stream can't be created
+     */
+    static InputStream streamHtml(@NonNull Document doc) throws IOException {
+        return streamHtml(doc, HTML_WRITE_TIMEOUT_MS);
+    }
 
-                for (Map.Entry<String, Pair<Element, Element>> entry : elements.entrySet()) {
-                    for (String url : siteUrls) {
-                        if (entry.getKey().endsWith(url)) {
-                            Element markedElement = entry.getValue().second; // Linked images have priority over plain links
-                            if (markedElement != null) { // Mark <site.bookCardDepth> levels above the image
-                                Element imgParent = markedElement.parent();
-                                for (int i = 0; i < site.getBookCardDepth() - 1; i++)
-                                    if (imgParent != null) imgParent = imgParent.parent();
-                                if (imgParent != null) markedElement = imgParent;
-                            } else { // Mark plain link
-                                markedElement = entry.getValue().first;
-                            }
-                            markedElement.addClass("watermarked");
-                            break;
-                        }
-                    }
-                    for (String url : mergedSiteUrls) {
-                        if (entry.getKey().endsWith(url)) {
-                            Element markedElement = entry.getValue().second; // Linked images have priority over plain links
-                            if (markedElement != null) { // // Mark <site.bookCardDepth> levels above the image
-                                Element imgParent = markedElement.parent();
-                                for (int i = 0; i < site.getBookCardDepth() - 1; i++)
-                                    if (imgParent != null) imgParent = imgParent.parent();
-                                if (imgParent != null) markedElement = imgParent;
-                            } else { // Mark plain link
-                                markedElement = entry.getValue().first;
-                            }
-                            markedElement.addClass("watermarked-merged");
-                            break;
-                        }
+    /**
+     * Serialize the given document into a stream that can be read while the serialization is still running
+     * NB : The stream is closed if it isn't read for the given delay, so that serialization doesn't
+     * block its thread forever when the WebView abandons it without closing it
+     *
+     * @param doc          Document to serialize
+     * @param writeTimeout Maximum delay without any progress of the reader (ms)
+     * @return Stream containing the serialized document, encoded in UTF-8
+     * @throws IOException If the stream can't be created
+     */
+    static InputStream streamHtml(@NonNull Document doc, long writeTimeout) throws IOException {
+        PipedInputStream result = new PipedInputStream(HTML_PIPE_SIZE);
+        AtomicLong lastWrite = new AtomicLong(System.currentTimeMillis());
+        OutputStream output = new FilterOutputStream(new PipedOutputStream(result)) {
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                lastWrite.set(System.currentTimeMillis());
+            }
+        };
+        Schedulers.io().scheduleDirect(() -> {
+            // Closing the reading end wakes the blocked writer up with an IOException
+            Disposable watchdog = Schedulers.io().schedulePeriodicallyDirect(() -> {
+                if (System.currentTimeMillis() - lastWrite.get() > writeTimeout) {
+                    try {
+                        result.close();
+                    } catch (IOException e) {
+                        Timber.d(e);
                     }
                 }
+            }, writeTimeout, writeTimeout, TimeUnit.MILLISECONDS);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), HTML_PIPE_SIZE)) {
+                doc.html(writer);
+            } catch (IOException | SerializationException e) {
+                // Happens when the WebView stops reading before the end (e.g. page closed)
+                Timber.d(e, "Interrupted HTML streaming");
+            } finally {
+                watchdog.dispose();
             }
+        });
+        return result;
+    }
 
-            // Mark books with blocked tags
-            if (blockedTags != null && !blockedTags.isEmpty()) {
-                Elements plainLinks = doc.select("a");
-
-                // Key= plain link ("a")
-                // Value = simplified HREF
-                Map<Element, String> elements = new HashMap<>();
-
-                for (Element link : plainLinks) {
-                    if (!site.getBookCardExcludedParentClasses().isEmpty()) {
-                        boolean isForbidden = Stream.of(link.parents()).anyMatch(e -> containsForbiddenClass(site, e.classNames()));
-                        if (isForbidden) continue;
-                    }
-                    String aHref = HttpHelper.simplifyUrl(link.attr("href"));
-                    elements.put(link, aHref);
+    /**
+     * Visually mark the books of the given document, in one single pass over its links :
+     * - Book covers or links matching the given downloaded and merged books Urls
+     * - Book covers displayed near links to the given blocked tags
+     *
+     * @param doc            Document to process
+     * @param site           Site the document belongs to
+     * @param siteUrls       Urls of the covers or links to visually mark as downloaded
+     * @param mergedSiteUrls Urls of the covers or links to visually mark as merged
+     * @param blockedTags    Tags of the preference-browser-blocked tag option to visually mark as blocked
+     */
+    static void markBooks(
+            @NonNull Document doc,
+            @NonNull Site site,
+            @Nullable UrlSuffixIndex siteUrls,
+            @Nullable UrlSuffixIndex mergedSiteUrls,
+            @Nullable List<String> blockedTags) {
+        boolean markDownloaded = siteUrls != null && siteUrls.size() > 0;
+        boolean markMerged = mergedSiteUrls != null && mergedSiteUrls.size() > 0;
+        boolean markBooks = markDownloaded || markMerged;
+        boolean markBlockedTags = blockedTags != null && !blockedTags.isEmpty() && site.getGalleryHeight() != -1;
+        if (!markBooks && !markBlockedTags) return;
+
+        // Key = simplified HREF of a downloaded or merged book
+        // Value.first = plain link ("a")
+        // Value.second = corresponding linked image ("a img"), if any
+        Map<String, Pair<Element, Element>> elements = new LinkedHashMap<>();
+        Set<String> processedHrefs = new HashSet<>();
+        // Links to blocked tags
+        List<Element> blockedLinks = new ArrayList<>();
+
+        for (Element link : doc.select("a")) {
+            if (!site.getBookCardExcludedParentClasses().isEmpty()) {
+                boolean isForbidden = Stream.of(link.parents()).anyMatch(e -> containsForbiddenClass(site, e.classNames()));
+                if (isForbidden) continue;
+            }
+            String aHref = HttpHelper.simplifyUrl(link.attr("href"));
+
+            if (markBooks && !aHref.isEmpty()) {
+                Element linkedImage = link.selectFirst("img");
+                if (processedHrefs.add(aHref)) { // We only process the first match - usually the cover
+                    if ((markDownloaded && siteUrls.matches(aHref)) || (markMerged && mergedSiteUrls.matches(aHref)))
+                        elements.put(aHref, new Pair<>(link, linkedImage));
+                } else if (linkedImage != null) {
+                    Pair<Element, Element> elt = elements.get(aHref);
+                    if (elt != null && null == elt.second)
+                        elements.put(aHref, new Pair<>(elt.first, linkedImage));
                 }
+            }
 
-                for (Map.Entry<Element, String> entry : elements.entrySet()) {
-                    if (site.getGalleryHeight() != -1) {
-                        for (String blockedTag : blockedTags) {
-                            if (entry.getValue().contains("/tag/") || entry.getValue().contains("/category/")) {
-                                String tag = null;
-                                if (entry.getKey().childNodeSize() != 0)
-                                    tag = entry.getKey().childNode(0).toString();
-                                if (tag == null)
-                                    break;
-                                if (blockedTag.equalsIgnoreCase(tag) || StringHelper.isPresentAsWord(blockedTag, tag)) {
-                                    Element imgParent = entry.getKey();
-                                    for (int i = 0; i <= site.getGalleryHeight(); i++) {
-                                        if (imgParent.parent() != null)
-                                            imgParent = imgParent.parent();
-                                    }
-                                    Elements imgs = imgParent.getAllElements().select("img");
-                                    for (Element img : imgs) {
-                                        if (img.parent() != null)
-                                            img.parent().addClass("watermarked-blocked");
-                                    }
-                                    break;
-                                }
-                            }
-                        }
+            if (markBlockedTags && (aHref.contains("/tag/") || aHref.contains("/category/")) && link.childNodeSize() != 0) {
+                String tag = link.childNode(0).toString();
+                for (String blockedTag : blockedTags) {
+                    if (blockedTag.equalsIgnoreCase(tag) || StringHelper.isPresentAsWord(blockedTag, tag)) {
+                        blockedLinks.add(link);
+                        break;
                     }
                 }
             }
+        }
 
-            if (customHtmlRewriter != null) customHtmlRewriter.accept(doc);
+        for (Map.Entry<String, Pair<Element, Element>> entry : elements.entrySet()) {
+            Element markedElement = entry.getValue().second; // Linked images have priority over plain links
+            if (markedElement != null) { // Mark <site.bookCardDepth> levels above the image
+                Element imgParent = markedElement.parent();
+                for (int i = 0; i < site.getBookCardDepth() - 1; i++)
+                    if (imgParent != null) imgParent = imgParent.parent();
+                if (imgParent != null) markedElement = imgParent;
+            } else { // Mark plain link
+                markedElement = entry.getValue().first;
+            }
+            if (markDownloaded && siteUrls.matches(entry.getKey()))
+                markedElement.addClass("watermarked");
+            if (markMerged && mergedSiteUrls.matches(entry.getKey()))
+                markedElement.addClass("watermarked-merged");
+        }
 
-            return new ByteArrayInputStream(doc.toString().getBytes(StandardCharsets.UTF_8));
-        } catch (
-                IOException e) {
-            Timber.e(e);
-            return null;
+        for (Element link : blockedLinks) {
+            Element imgParent = link;
+            for (int i = 0; i <= site.getGalleryHeight(); i++) {
+                if (imgParent.parent() != null)
+                    imgParent = imgParent.parent();
+            }
+            for (Element img : imgParent.getAllElements().select("img")) {
+                if (img.parent() != null)
+                    img.parent().addClass("watermarked-blocked");
+            }
         }
     }
 
-    private boolean containsForbiddenClass(@NonNull Site s, @NonNull Set<String> classNames) {
+    private static boolean containsForbiddenClass(@NonNull Site s, @NonNull Set<String> classNames) {
         Set<String> forbiddenElements = s.getBookCardExcludedParentClasses();
         return Stream.of(classNames).anyMatch(forbiddenElements::contains);
     }
@@ -946,9 +1028,9 @@ class CustomWebViewClient extends WebViewClient {
         void onResultFailed();
 
         // GETTERS
-        List<String> getAllSiteUrls();
+        UrlSuffixIndex getAllSiteUrls();
 
-        List<String> getAllMergedBooksUrls();
+        UrlSuffixIndex getAllMergedBooksUrls();
 
         List<String> getPrefBlockedTags();
 
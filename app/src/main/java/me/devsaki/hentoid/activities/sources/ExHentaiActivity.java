@@ -24,6 +24,7 @@ import me.devsaki.hentoid.parsers.content.ExhentaiContent;
 import me.devsaki.hentoid.parsers.images.EHentaiParser;
 import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.util.file.FileHelper;
+import me.devsaki.hentoid.util.network.PersistentCookieJar;
 import timber.log.Timber;
 
 /**
@@ -61,6 +62,7 @@ public class ExHentaiActivity extends BaseWebActivity {
             EHentaiParser.EhAuthState authState = EHentaiParser.getAuthState(url);
             if (url.startsWith("https://exhentai.org") && authState != EHentaiParser.EhAuthState.LOGGED) {
                 CookieManager.getInstance().removeAllCookies(null);
+                PersistentCookieJar.getInstance().clear();
                 webView.loadUrl("https://forums.e-hentai.org/index.php?act=Login&CODE=00/");
                 if (authState == EHentaiParser.EhAuthState.UNLOGGED_ABNORMAL)
                     showTooltip(R.string.help_web_incomplete_exh_credentials, true);
@@ -49,6 +49,7 @@ import me.devsaki.hentoid.notification.updateJson.UpdateJsonNotificationChannel;
 import me.devsaki.hentoid.notification.userAction.UserActionNotificationChannel;
 import me.devsaki.hentoid.receiver.PlugEventsReceiver;
 import me.devsaki.hentoid.services.UpdateCheckService;
+import me.devsaki.hentoid.util.ContentJsonWriter;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.JsonHelper;
 import me.devsaki.hentoid.util.Preferences;
@@ -144,6 +145,7 @@ public class AppStartup {
         result.add(createObservableFrom(context, AppStartup::clearPictureCache));
         result.add(createObservableFrom(context, AppStartup::createBookmarksJson));
         result.add(createObservableFrom(context, AppStartup::createPlugReceiver));
+        result.add(createObservableFrom(context, AppStartup::resumeJsonWrites));
         return result;
     }
 
@@ -266,6 +268,17 @@ public class AppStartup {
         Timber.i("Clear picture cache : done");
     }
 
+    // Writes the JSON files that were still pending when the app was last stopped
+    private static void resumeJsonWrites(@NonNull final Context context, ObservableEmitter<Float> emitter) {
+        Timber.i("Resume JSON writes : start");
+        try {
+            ContentJsonWriter.getInstance(context).resume();
+        } finally {
+            emitter.onComplete();
+        }
+        Timber.i("Resume JSON writes : done");
+    }
+
     // Creates the JSON file for bookmarks if it doesn't exist
     private static void createBookmarksJson(@NonNull final Context context, ObservableEmitter<Float> emitter) {
         Timber.i("Create bookmarks JSON : start");
@@ -10,6 +10,7 @@ const val JSON_FILE_NAME = "content.json"
 const val JSON_FILE_NAME_V2 = "contentV2.json"
 
 const val QUEUE_JSON_FILE_NAME = "queue.json"
+const val QUEUE_JOURNAL_FILE_NAME = "queue.journal"
 const val BOOKMARKS_JSON_FILE_NAME = "bookmarks.json"
 const val GROUPS_JSON_FILE_NAME = "groups.json"
 const val RENAMING_RULES_JSON_FILE_NAME = "rules.json"
@@ -0,0 +1,81 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+
+import com.annimon.stream.function.Function;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small LRU cache of DB objects indexed by their ID, whose missing objects are loaded with one query per call
+ * <p>
+ * Meant for paged lists, whose pages are loaded again each time the list is invalidated
+ *
+ * @param <T> Type of the cached objects
+ */
+public class BatchLoadingCache<T> {
+
+    // Loads the objects of the given IDs; missing objects are ignored
+    private final Function<List<Long>, List<T>> loader;
+    private final Function<T, Long> idGetter;
+    private final LinkedHashMap<Long, T> entries;
+
+
+    /**
+     * @param maxSize  Maximum number of objects to keep
+     * @param loader   Loads the objects of the given IDs in one go
+     * @param idGetter Gives the ID of the given object
+     */
+    public BatchLoadingCache(int maxSize, @NonNull Function<List<Long>, List<T>> loader, @NonNull Function<T, Long> idGetter) {
+        this.loader = loader;
+        this.idGetter = idGetter;
+        entries = new LinkedHashMap<Long, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the objects of the given IDs, loading the ones that aren't cached in one go
+     *
+     * @param ids IDs of the objects to get
+     * @return Objects indexed by their ID; IDs that don't match any object are absent
+     */
+    public synchronized Map<Long, T> get(@NonNull List<Long> ids) {
+        Map<Long, T> result = new HashMap<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            T item = entries.get(id);
+            if (item != null) result.put(id, item);
+            else missing.add(id);
+        }
+        if (!missing.isEmpty()) {
+            for (T item : loader.apply(missing)) {
+                if (null == item) continue;
+                Long id = idGetter.apply(item);
+                entries.put(id, item);
+                result.put(id, item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove the given object from the cache, so that it is loaded again next time
+     *
+     * @param id ID of the object to remove
+     */
+    public synchronized void evict(long id) {
+        entries.remove(id);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -63,14 +63,36 @@ public interface CollectionDAO {
 
     long insertContent(@NonNull final Content content);
 
+    long insertContent(@NonNull final Content content, @Nullable Map<String, Attribute> attributeCache);
+
     long insertContentCore(@NonNull final Content content);
 
     void updateContentStatus(@NonNull final StatusContent updateFrom, @NonNull final StatusContent updateTo);
 
     void updateContentDeleteFlag(long contentId, boolean flag);
 
+    void updateContentsDeleteFlag(long[] contentIds, boolean flag);
+
+    /**
+     * Apply the given update to the given books in one single transaction, without loading their relations
+     * NB : Books being processed are left untouched by the updates that require it (see {@link ContentUpdate})
+     *
+     * @param contentIds IDs of the books to update
+     * @param update     Update to apply
+     * @return IDs of the updated books
+     */
+    long[] updateContents(long[] contentIds, @NonNull ContentUpdate update);
+
     void deleteContent(@NonNull final Content content);
 
+    /**
+     * Remove the given books and all related objects from the DB
+     * NB : Books are removed by chunks, in one transaction per chunk
+     *
+     * @param contentIds IDs of the books to remove
+     */
+    void deleteContents(long[] contentIds);
+
     List<ErrorRecord> selectErrorRecordByContentId(long contentId);
 
     void insertErrorRecord(@NonNull final ErrorRecord record);
@@ -153,6 +175,14 @@ public interface CollectionDAO {
 
     void deleteGroupItems(List<Long> groupItemIds);
 
+    /**
+     * Use the cover of the given book as the cover of the given group
+     *
+     * @param groupId        ID of the group to set the cover for
+     * @param coverContentId ID of the book to use the cover of; must be inside the group
+     */
+    void updateGroupCover(long groupId, long coverContentId);
+
 
     // High-level queries (internal and external locations)
 
@@ -243,6 +273,52 @@ public interface CollectionDAO {
 
     void updateQueue(@NonNull List<QueueRecord> queue);
 
+    /**
+     * Add the given new queue records at the bottom of the queue, in the given order
+     * NB : The ranks of the given records are set according to those of the queue (see {@link QueueRanks})
+     *
+     * @param records Records to add
+     */
+    void addToQueueBottom(@NonNull List<QueueRecord> records);
+
+    /**
+     * Move the queue record at the given position to the given position
+     * NB : Only the moved record is saved, unless ranks need to be spread again (see {@link QueueRanks})
+     *
+     * @param oldPosition Position of the record to move
+     * @param newPosition Position to move the record to
+     * @return True if the first record of the queue has changed
+     */
+    boolean moveQueue(int oldPosition, int newPosition);
+
+    /**
+     * Move the given queue records to the top of the queue, in the given order
+     *
+     * @param recordIds IDs of the records to move
+     * @return True if the first record of the queue has changed
+     */
+    boolean moveQueueTop(@NonNull List<Long> recordIds);
+
+    /**
+     * Move the given queue records to the bottom of the queue, in the given order
+     *
+     * @param recordIds IDs of the records to move
+     * @return True if the first record of the queue has changed
+     */
+    boolean moveQueueBottom(@NonNull List<Long> recordIds);
+
+    /**
+     * Invert the order of the queue
+     *
+     * @return True if the first record of the queue has changed
+     */
+    boolean invertQueue();
+
+    /**
+     * Spread the ranks of the queue records again if some of them have become too close
+     */
+    void rebalanceQueue();
+
     void deleteQueueRecordsCore();
 
     void deleteQueue(@NonNull Content content);
@@ -257,6 +333,8 @@ public interface CollectionDAO {
     @Nullable
     Attribute selectAttribute(long id);
 
+    Map<String, Attribute> selectAttributesByKey();
+
     SearchHelper.AttributeQueryResult selectAttributeMasterDataPaged(
             @NonNull List<AttributeType> types,
             String filter,
@@ -338,11 +416,28 @@ public interface CollectionDAO {
 
     void deleteRenamingRules(List<Long> ids);
 
+    /**
+     * @return All renaming rules, compiled for matching; compiled again only when rules have been modified
+     */
+    RenamingRuleMatcher selectRenamingRuleMatcher();
+
+    long[] selectAttributeIdsMatchingRule(@NonNull RenamingRule rule);
+
+    /**
+     * Rename the given attributes according to the given rule, in one transaction;
+     * attributes that end up with the same name as an existing attribute are merged into the latter
+     *
+     * @return IDs of the books whose attributes have been modified
+     */
+    long[] applyRenamingRule(@NonNull RenamingRule rule, long[] attributeIds);
+
 
     // RESOURCES
 
     void cleanup();
 
+    void runInTx(@NonNull Runnable task);
+
     void cleanupOrphanAttributes();
 
     long getDbSizeBytes();
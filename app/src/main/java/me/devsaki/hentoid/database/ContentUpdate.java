@@ -0,0 +1,103 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+
+import me.devsaki.hentoid.database.domains.Content;
+
+/**
+ * Changes of scalar properties to apply to a set of books at once (see {@link CollectionDAO#updateContents})
+ * <p>
+ * Only the properties that have been set are modified; boolean properties can be either set or toggled,
+ * in which case each book gets the opposite of its own value
+ * <p>
+ * Favourite and rating changes apply to all books. Updates that change the completed state or reset the read stats
+ * leave the books being processed untouched (see {@link #isSkipProcessed})
+ */
+public final class ContentUpdate {
+
+    private enum BooleanChange {
+        KEEP, SET_TRUE, SET_FALSE, TOGGLE;
+
+        boolean apply(boolean value) {
+            switch (this) {
+                case SET_TRUE:
+                    return true;
+                case SET_FALSE:
+                    return false;
+                case TOGGLE:
+                    return !value;
+                case KEEP:
+                default:
+                    return value;
+            }
+        }
+    }
+
+    private BooleanChange favourite = BooleanChange.KEEP;
+    private BooleanChange completed = BooleanChange.KEEP;
+    private int rating = -1;
+    private boolean resetReadStats = false;
+
+
+    public ContentUpdate setFavourite(boolean value) {
+        favourite = value ? BooleanChange.SET_TRUE : BooleanChange.SET_FALSE;
+        return this;
+    }
+
+    public ContentUpdate toggleFavourite() {
+        favourite = BooleanChange.TOGGLE;
+        return this;
+    }
+
+    public ContentUpdate setCompleted(boolean value) {
+        completed = value ? BooleanChange.SET_TRUE : BooleanChange.SET_FALSE;
+        return this;
+    }
+
+    public ContentUpdate toggleCompleted() {
+        completed = BooleanChange.TOGGLE;
+        return this;
+    }
+
+    public ContentUpdate setRating(int value) {
+        rating = value;
+        return this;
+    }
+
+    /**
+     * Reset the read counters of the books, and the read state of their pages
+     */
+    public ContentUpdate resetReadStats() {
+        resetReadStats = true;
+        return this;
+    }
+
+    boolean isResetReadStats() {
+        return resetReadStats;
+    }
+
+    /**
+     * @return True if the books being processed (e.g. downloaded, deleted) must be left untouched by this update
+     */
+    boolean isSkipProcessed() {
+        return completed != BooleanChange.KEEP || resetReadStats;
+    }
+
+    /**
+     * Apply the changes to the scalar properties of the given book
+     * NB : Relations (e.g. pages) are left untouched
+     *
+     * @param content Book to apply the changes to
+     */
+    void applyTo(@NonNull Content content) {
+        content.setFavourite(favourite.apply(content.isFavourite()));
+        content.setCompleted(completed.apply(content.isCompleted()));
+        if (rating > -1) content.setRating(rating);
+        if (resetReadStats) {
+            content.setReads(0);
+            content.setReadPagesCount(0);
+            content.setLastReadPageIndex(0);
+            content.setLastReadDate(0);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import com.annimon.stream.Stream;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -33,6 +34,7 @@ import me.devsaki.hentoid.enums.AttributeType;
 import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.util.ContentHelper;
+import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.workers.UpdateJsonWorker;
 import me.devsaki.hentoid.workers.data.UpdateJsonData;
@@ -60,7 +62,7 @@ public class DatabaseMaintenance {
         result.add(createObservableFrom(context, DatabaseMaintenance::computeContentSize));
         result.add(createObservableFrom(context, DatabaseMaintenance::createGroups));
         result.add(createObservableFrom(context, DatabaseMaintenance::computeReadingProgress));
-        result.add(createObservableFrom(context, DatabaseMaintenance::reattachGroupCovers));
+        result.add(createObservableFrom(context, DatabaseMaintenance::computeGroupSummaries));
         return result;
     }
 
@@ -110,7 +112,8 @@ public class DatabaseMaintenance {
                 int max = contents.size();
                 float pos = 1;
                 for (Content c : contents) {
-                    db.insertQueue(c.getId(), ++queueMaxPos);
+                    queueMaxPos += QueueRanks.GAP;
+                    db.insertQueue(c.getId(), queueMaxPos);
                     emitter.onNext(pos++ / max);
                 }
             }
@@ -445,11 +448,12 @@ public class DatabaseMaintenance {
                 db.insertGroup(data.left);
                 if (data.middle != null) data.middle.putGroup(data.left);
                 int order = 0;
-                for (Long contentId : data.right) {
-                    GroupItem item = new GroupItem(contentId, data.left, order++);
-                    db.insertGroupItem(item);
-                    emitter.onNext(pos++ / bookInsertCount);
-                }
+                List<GroupItem> items = new ArrayList<>(data.right.size());
+                for (Long contentId : data.right)
+                    items.add(new GroupItem(contentId, data.left, order++));
+                db.insertGroupItems(items);
+                pos += items.size();
+                emitter.onNext(pos / bookInsertCount);
             }
             Timber.i("Create non-existing groupings : done");
         } finally {
@@ -479,24 +483,22 @@ public class DatabaseMaintenance {
         }
     }
 
-    private static void reattachGroupCovers(@NonNull final Context context, ObservableEmitter<Float> emitter) {
+    private static void computeGroupSummaries(@NonNull final Context context, ObservableEmitter<Float> emitter) {
         ObjectBoxDB db = ObjectBoxDB.getInstance(context);
         try {
-            // Compute missing downloaded Content size according to underlying ImageFile sizes
-            Timber.i("Reattaching group covers : start");
-            List<Group> groups = db.selectGroupsWithNoCoverContent();
-            Timber.i("Reattaching group covers : %s groups detected", groups.size());
-            int max = groups.size();
-            float pos = 1;
-            for (Group g : groups) {
-                List<Long> contentIds = g.getContentIds();
-                if (!contentIds.isEmpty()) {
-                    g.coverContent.setTargetId(contentIds.get(0));
-                    db.insertGroup(g);
-                }
-                emitter.onNext(pos++ / max);
+            // Compute the summary (number of books, latest download date, cover) of groups created by previous versions
+            Timber.i("Computing group summaries : start");
+            long[] groupIds = db.selectGroupsWithNoSummary();
+            Timber.i("Computing group summaries : %s groups detected", groupIds.length);
+            int max = groupIds.length;
+            // One transaction per chunk of groups
+            for (int i = 0; i < max; i += 500) {
+                int end = Math.min(i + 500, max);
+                List<Long> chunk = Helper.getListFromPrimitiveArray(Arrays.copyOfRange(groupIds, i, end));
+                db.runInTx(() -> db.updateGroupSummaries(chunk));
+                emitter.onNext(end * 1f / max);
             }
-            Timber.i("Reattaching group covers : done");
+            Timber.i("Computing group summaries : done");
         } finally {
             db.closeThreadResources();
             emitter.onComplete();
@@ -0,0 +1,82 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.devsaki.hentoid.database.domains.DuplicateEntry;
+
+/**
+ * Reference books of the duplicate entries, in the order of the entries, along with their number of duplicates
+ * <p>
+ * Built once from the entries, then updated entry by entry when entries are removed,
+ * so that the entries don't have to be read again after each removal
+ */
+class DuplicateReferences {
+
+    static class Reference {
+        final long size;
+        int nbDuplicates;
+
+        Reference(long size) {
+            this.size = size;
+        }
+    }
+
+    // Key = ID of the reference book
+    private final LinkedHashMap<Long, Reference> references = new LinkedHashMap<>();
+    private int nbEntries = 0;
+
+
+    DuplicateReferences(@NonNull List<DuplicateEntry> entries) {
+        for (DuplicateEntry e : entries) {
+            Reference ref = references.get(e.getReferenceId());
+            if (null == ref) {
+                ref = new Reference(e.getReferenceSize());
+                references.put(e.getReferenceId(), ref);
+            }
+            ref.nbDuplicates++;
+        }
+        nbEntries = entries.size();
+    }
+
+    /**
+     * Signal the removal of an entry of the given reference book
+     *
+     * @param referenceId ID of the reference book of the removed entry
+     * @return True if the reference book has no duplicate left
+     */
+    synchronized boolean remove(long referenceId) {
+        Reference ref = references.get(referenceId);
+        if (null == ref) return false;
+        nbEntries--;
+        if (--ref.nbDuplicates > 0) return false;
+        references.remove(referenceId);
+        return true;
+    }
+
+    @Nullable
+    synchronized Reference get(long referenceId) {
+        return references.get(referenceId);
+    }
+
+    /**
+     * @return IDs of the reference books, in the order of the entries
+     */
+    synchronized long[] getIds() {
+        long[] result = new long[references.size()];
+        int i = 0;
+        for (Map.Entry<Long, Reference> entry : references.entrySet()) result[i++] = entry.getKey();
+        return result;
+    }
+
+    /**
+     * @return Number of entries these references have been built from, minus the removed ones
+     */
+    synchronized int getNbEntries() {
+        return nbEntries;
+    }
+}
@@ -2,8 +2,11 @@ package me.devsaki.hentoid.database
 
 import android.content.Context
 import androidx.lifecycle.LiveData
-import androidx.lifecycle.MediatorLiveData
-import io.objectbox.android.ObjectBoxLiveData
+import androidx.paging.DataSource
+import androidx.paging.LivePagedListBuilder
+import androidx.paging.PagedList
+import io.objectbox.reactive.DataObserver
+import io.objectbox.reactive.DataSubscription
 import me.devsaki.hentoid.database.domains.Content
 import me.devsaki.hentoid.database.domains.DuplicateEntry
 
@@ -11,7 +14,26 @@ class DuplicatesDAO(ctx: Context) {
     private val duplicatesDb: DuplicatesDB = DuplicatesDB.getInstance(ctx)
     private val db: ObjectBoxDB = ObjectBoxDB.getInstance(ctx)
 
+    // Contents displayed by the duplicate screens, shared by all pages
+    private val contentCache = BatchLoadingCache<Content>(
+        CONTENT_CACHE_SIZE,
+        { ids -> db.selectContentById(ids) ?: emptyList() },
+        { it.id })
+
+    // Reference books of the entries, and the data source currently paging through them
+    @Volatile
+    private var references: DuplicateReferences? = null
+    @Volatile
+    private var dataSource: DataSource<Int, DuplicateEntry>? = null
+
+    // Strong reference to the observer, as ObjectBox only keeps weak ones
+    private val entriesObserver = DataObserver<Class<DuplicateEntry>> { onEntriesChanged() }
+    private var entriesSubscription: DataSubscription? = null
+
+
     fun cleanup() {
+        entriesSubscription?.cancel()
+        entriesSubscription = null
         db.closeThreadResources()
         duplicatesDb.closeThreadResources()
     }
@@ -34,26 +56,75 @@ class DuplicatesDAO(ctx: Context) {
         return entries
     }
 
-    fun getEntriesLive(): LiveData<List<DuplicateEntry>> {
-        val livedata = ObjectBoxLiveData(duplicatesDb.selectEntriesQ())
+    /**
+     * Get the entries of the given reference book, with their contents
+     */
+    fun getEntries(referenceId: Long): List<DuplicateEntry> {
+        val entries = duplicatesDb.selectEntriesQ(referenceId).use { it.find() }
 
         // Get all contents in one go
-        val livedata2 = MediatorLiveData<List<DuplicateEntry>>()
-        livedata2.addSource(livedata) { it ->
-            val enrichedItems = it.map { enrichWithContent(it) }
-            livedata2.value = enrichedItems
+        val contents =
+            contentCache.get(entries.flatMap { listOf(it.referenceId, it.duplicateId) }.distinct())
+        for (entry in entries) {
+            entry.referenceContent = contents[entry.referenceId]
+            entry.duplicateContent = contents[entry.duplicateId]
         }
+        return entries
+    }
 
-        return livedata2
+    /**
+     * Get one entry per reference book, in the order of the entries, with the number of its duplicates
+     * The list is paged : each page loads its contents in one go
+     */
+    fun getReferencesLive(): LiveData<PagedList<DuplicateEntry>> {
+        if (null == entriesSubscription)
+            entriesSubscription = duplicatesDb.subscribeToEntries(entriesObserver)
+
+        val factory = object : DataSource.Factory<Int, DuplicateEntry>() {
+            override fun create(): DataSource<Int, DuplicateEntry> {
+                val refs = references ?: loadReferences()
+                val result = ObjectBoxPredeterminedDataSource.PredeterminedDataSourceFactory(
+                    { ids: List<Long> -> loadReferencePage(refs, ids) },
+                    refs.ids
+                ).create()
+                dataSource = result
+                return result
+            }
+        }
+        val cfg = PagedList.Config.Builder()
+            .setEnablePlaceholders(true)
+            .setPageSize(PAGE_SIZE)
+            .setInitialLoadSizeHint(PAGE_SIZE * 2)
+            .build()
+        return LivePagedListBuilder(factory, cfg).build()
+    }
+
+    private fun loadReferences(): DuplicateReferences {
+        val result = DuplicateReferences(duplicatesDb.selectEntriesQ().use { it.find() })
+        references = result
+        return result
     }
 
-    private fun enrichWithContent(e: DuplicateEntry): DuplicateEntry {
-        val items: List<Content>? = db.selectContentById(mutableListOf(e.referenceId, e.duplicateId))
-        if (items != null && items.size > 1) {
-            e.referenceContent = items[0]
-            e.duplicateContent = items[1]
+    private fun loadReferencePage(refs: DuplicateReferences, ids: List<Long>): List<DuplicateEntry> {
+        val contents = contentCache.get(ids)
+        return ids.map { id ->
+            val ref = refs.get(id)
+            val entry = DuplicateEntry(id, ref?.size ?: 0)
+            entry.referenceContent = contents[id]
+            entry.nbDuplicates = ref?.nbDuplicates ?: 0
+            entry
         }
-        return e
+    }
+
+    /**
+     * Entries have been modified : read them again, unless the modification has already been applied
+     * (i.e. entry removed through this DAO)
+     */
+    private fun onEntriesChanged() {
+        val refs = references
+        if (refs != null && refs.nbEntries.toLong() == duplicatesDb.countEntries()) return
+        references = null
+        dataSource?.invalidate()
     }
 
     fun clearEntries() {
@@ -66,5 +137,16 @@ class DuplicatesDAO(ctx: Context) {
 
     fun delete(entry: DuplicateEntry) {
         duplicatesDb.delete(entry)
+        // Only the reference of the removed entry changes
+        references?.remove(entry.referenceId)
+        // Both books may have been modified by the merge
+        contentCache.evict(entry.referenceId)
+        contentCache.evict(entry.duplicateId)
+        dataSource?.invalidate()
+    }
+
+    companion object {
+        private const val PAGE_SIZE = 20
+        private const val CONTENT_CACHE_SIZE = 200
     }
-}
\ No newline at end of file
+}
@@ -2,11 +2,15 @@ package me.devsaki.hentoid.database;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+
 import java.util.List;
 
 import io.objectbox.BoxStore;
 import io.objectbox.android.AndroidObjectBrowser;
 import io.objectbox.query.Query;
+import io.objectbox.reactive.DataObserver;
+import io.objectbox.reactive.DataSubscription;
 import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.database.domains.DuplicateEntry;
 import me.devsaki.hentoid.database.domains.DuplicateEntry_;
@@ -64,6 +68,22 @@ public class DuplicatesDB {
         return store.boxFor(DuplicateEntry.class).query().orderDesc(DuplicateEntry_.referenceSize).build();
     }
 
+    Query<DuplicateEntry> selectEntriesQ(long referenceId) {
+        return store.boxFor(DuplicateEntry.class).query().equal(DuplicateEntry_.referenceId, referenceId).orderDesc(DuplicateEntry_.referenceSize).build();
+    }
+
+    long countEntries() {
+        return store.boxFor(DuplicateEntry.class).count();
+    }
+
+    /**
+     * Observe modifications of the entries
+     * NB : The observer is only given the modified class, not the entries
+     */
+    DataSubscription subscribeToEntries(@NonNull DataObserver<Class<DuplicateEntry>> observer) {
+        return store.subscribe(DuplicateEntry.class).onlyChanges().observer(observer);
+    }
+
     void insertEntry(DuplicateEntry entry) {
         store.boxFor(DuplicateEntry.class).put(entry);
     }
@@ -0,0 +1,396 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import timber.log.Timber;
+
+/**
+ * Materialized content of the dynamic groups, i.e. IDs of the books matching the search criteria of each group
+ * <p>
+ * The content of a group is computed once against the whole collection (in the background when the group is created),
+ * then kept up to date by evaluating the criteria against the books that have been inserted, updated or removed since;
+ * these are signaled by {@link ObjectBoxDB} through {@link #invalidate} and evaluated when the content is read.
+ * <p>
+ * The content of a group is stored along the criteria it has been computed with,
+ * and is computed again against the whole collection when these criteria change
+ * <p>
+ * Computed content is persisted through {@link Storage} and loaded back in the background at startup.
+ * As soon as a book is modified, stored content is flagged as outdated until the modification has been evaluated;
+ * content that is still flagged when loaded (e.g. the app has been killed in-between) is served to the UI
+ * until it has been computed again against the whole collection
+ * <p>
+ * The UI reads the last computed content through {@link #getLastContent}, which never waits for an evaluation :
+ * missing or outdated content is computed on a background thread, then signaled through the listener given at creation
+ */
+public class DynamicGroupIndex {
+
+    /**
+     * Evaluates the criteria of dynamic groups
+     */
+    interface Evaluator {
+        /**
+         * @param groupId    ID of the group to evaluate
+         * @param searchUri  Search criteria of the group
+         * @param contentIds IDs of the books to evaluate; null to evaluate the whole collection
+         * @return IDs of the books matching the given criteria, among the given ones
+         */
+        long[] evaluate(long groupId, @NonNull String searchUri, @Nullable long[] contentIds);
+    }
+
+    /**
+     * Selects the cover of dynamic groups
+     */
+    interface CoverSelector {
+        /**
+         * @param contentIds Sorted IDs of the books of a group; never empty
+         * @return ID of the book to use as the cover of the group
+         */
+        long select(@NonNull long[] contentIds);
+    }
+
+    /**
+     * Persists the content of dynamic groups
+     */
+    interface Storage {
+        /**
+         * @param outdatedGroupIds Set to fill with the IDs of the groups whose stored content is flagged as outdated
+         * @return Stored content of the groups; key = group ID
+         */
+        Map<Long, Members> load(@NonNull Set<Long> outdatedGroupIds);
+
+        /**
+         * Store the given content, replacing the stored content of the same groups
+         *
+         * @param contents Content to store; key = group ID
+         * @param outdated True to flag the given content as outdated
+         */
+        void save(@NonNull Map<Long, Members> contents, boolean outdated);
+
+        /**
+         * Flag the stored content of all groups as outdated
+         */
+        void setOutdated();
+
+        /**
+         * @param groupId ID of the group whose stored content to remove
+         */
+        void remove(long groupId);
+    }
+
+    /**
+     * Computed content of a group
+     * NB : Instances are never modified once they have been stored
+     */
+    static class Members {
+        final String searchUri;
+        // Sorted IDs of the books of the group
+        final long[] ids;
+        // ID of the cover of the group; 0 if the group is empty
+        final long coverId;
+
+        Members(@NonNull String searchUri, long[] ids, long coverId) {
+            this.searchUri = searchUri;
+            this.ids = ids;
+            this.coverId = coverId;
+        }
+    }
+
+    private final Evaluator evaluator;
+    private final CoverSelector coverSelector;
+    private final Storage storage;
+    // Called on the background thread when content read through getLastContent has been computed
+    private final Runnable onUpdated;
+
+    // Key = group ID
+    private final Map<Long, Members> members = new HashMap<>();
+    // True once stored content has been loaded into members
+    private boolean loaded = false;
+    // IDs of the groups whose loaded content has to be computed again against the whole collection
+    private final Set<Long> outdatedGroups = new HashSet<>();
+    // True if the stored content of all groups is flagged as outdated
+    private boolean storedOutdated = false;
+    // IDs of the books that have been inserted, updated or removed since the last evaluation
+    private Set<Long> modifiedIds = new HashSet<>();
+    // True while the content of a group is being computed against the whole collection
+    private boolean computing = false;
+    // IDs of the groups whose content is waiting to be computed in the background
+    private final Set<Long> pendingRefreshes = new HashSet<>();
+    // Evaluations are run one at a time so that a book can't be evaluated against an older state of the DB
+    // after it has been evaluated against a newer one
+    private final Object evaluationLock = new Object();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "dynamic-groups");
+        t.setDaemon(true);
+        return t;
+    });
+
+
+    /**
+     * @param evaluator     Evaluator of the criteria of the groups
+     * @param coverSelector Selector of the cover of the groups
+     * @param storage       Storage of the computed content
+     * @param onUpdated     Called when the content of a group read through {@link #getLastContent} has been computed
+     */
+    public DynamicGroupIndex(@NonNull Evaluator evaluator, @NonNull CoverSelector coverSelector, @NonNull Storage storage, @NonNull Runnable onUpdated) {
+        this.evaluator = evaluator;
+        this.coverSelector = coverSelector;
+        this.storage = storage;
+        this.onUpdated = onUpdated;
+    }
+
+    /**
+     * Load the stored content in the background
+     * NB : Content is otherwise loaded when it's first needed
+     */
+    public void loadAsync() {
+        executor.execute(() -> {
+            try {
+                synchronized (evaluationLock) {
+                    load();
+                }
+            } catch (Exception e) {
+                Timber.w(e, "Couldn't load content of dynamic groups");
+            }
+        });
+    }
+
+    // Must be called while holding evaluationLock
+    private void load() {
+        synchronized (this) {
+            if (loaded) return;
+        }
+        Set<Long> outdated = new HashSet<>();
+        Map<Long, Members> stored = storage.load(outdated);
+        synchronized (this) {
+            // Content computed before loading is more recent
+            for (Map.Entry<Long, Members> entry : stored.entrySet())
+                if (!members.containsKey(entry.getKey())) {
+                    members.put(entry.getKey(), entry.getValue());
+                    if (outdated.contains(entry.getKey())) outdatedGroups.add(entry.getKey());
+                }
+            // Books modified before loading only matter to the loaded content
+            if (members.isEmpty() && !computing) modifiedIds.clear();
+            loaded = true;
+        }
+    }
+
+    /**
+     * Signal that the given books have been inserted, updated or removed
+     *
+     * @param contentIds IDs of the modified books
+     */
+    public synchronized void invalidate(long... contentIds) {
+        // Content computed later will be computed against the whole collection anyway
+        if (loaded && members.isEmpty() && !computing) return;
+        for (long id : contentIds) modifiedIds.add(id);
+        // Stored content mustn't be trusted if the app is killed before these books have been evaluated
+        if (!storedOutdated) {
+            storage.setOutdated();
+            storedOutdated = true;
+        }
+    }
+
+    /**
+     * Compute the content of the given group in the background
+     *
+     * @param groupId   ID of the group
+     * @param searchUri Search criteria of the group
+     */
+    public void refreshAsync(long groupId, @NonNull String searchUri) {
+        executor.execute(() -> {
+            try {
+                getContent(groupId, searchUri);
+            } catch (Exception e) {
+                Timber.w(e, "Couldn't compute content of dynamic group %d", groupId);
+            }
+        });
+    }
+
+    /**
+     * Get the last computed content of the given group, without waiting for any evaluation
+     * NB : If that content is missing or outdated, it is computed in the background and {@link #onUpdated} is called once it's done
+     *
+     * @param groupId   ID of the group
+     * @param searchUri Current search criteria of the group
+     * @return Last computed content of the given group; null if it hasn't been computed yet with the given criteria
+     */
+    @Nullable
+    public synchronized Members getLastContent(long groupId, @NonNull String searchUri) {
+        Members m = members.get(groupId);
+        if (null == m || !m.searchUri.equals(searchUri)) {
+            scheduleRefresh(groupId, searchUri);
+            return null;
+        }
+        if (!modifiedIds.isEmpty() || outdatedGroups.contains(groupId))
+            scheduleRefresh(groupId, searchUri);
+        return m;
+    }
+
+    private synchronized void scheduleRefresh(long groupId, @NonNull String searchUri) {
+        if (!pendingRefreshes.add(groupId)) return;
+        executor.execute(() -> {
+            synchronized (this) {
+                pendingRefreshes.remove(groupId);
+            }
+            try {
+                getContent(groupId, searchUri);
+                onUpdated.run();
+            } catch (Exception e) {
+                Timber.w(e, "Couldn't compute content of dynamic group %d", groupId);
+            }
+        });
+    }
+
+    /**
+     * Forget the content of the given group
+     *
+     * @param groupId ID of the removed group
+     */
+    public synchronized void remove(long groupId) {
+        members.remove(groupId);
+        outdatedGroups.remove(groupId);
+        storage.remove(groupId);
+    }
+
+    /**
+     * Get the content of the given group, computing it if needed
+     * NB : Waits for the evaluations in progress; use {@link #getLastContent} on the UI thread
+     *
+     * @param groupId   ID of the group
+     * @param searchUri Current search criteria of the group
+     * @return Sorted IDs of the books of the group
+     */
+    public long[] getContent(long groupId, @NonNull String searchUri) {
+        synchronized (evaluationLock) {
+            load();
+            Members m;
+            boolean outdated;
+            synchronized (this) {
+                m = members.get(groupId);
+                outdated = outdatedGroups.contains(groupId);
+            }
+            if (null == m || !m.searchUri.equals(searchUri) || outdated) {
+                synchronized (this) {
+                    computing = true;
+                }
+                try {
+                    long[] ids = evaluator.evaluate(groupId, searchUri, null);
+                    Arrays.sort(ids);
+                    m = new Members(searchUri, ids, selectCover(ids));
+                    synchronized (this) {
+                        members.put(groupId, m);
+                        outdatedGroups.remove(groupId);
+                    }
+                    save(Collections.singletonMap(groupId, m));
+                } finally {
+                    synchronized (this) {
+                        computing = false;
+                    }
+                }
+            }
+            // Books modified while computing are evaluated right away
+            update();
+            synchronized (this) {
+                Members updated = members.get(groupId);
+                if (updated != null && updated.searchUri.equals(searchUri)) m = updated;
+            }
+            return m.ids.clone();
+        }
+    }
+
+    /**
+     * Evaluate the modified books against the criteria of every group
+     */
+    private void update() {
+        long[] ids;
+        Map<Long, Members> groups;
+        synchronized (this) {
+            if (modifiedIds.isEmpty()) return;
+            ids = new long[modifiedIds.size()];
+            int i = 0;
+            for (Long id : modifiedIds) ids[i++] = id;
+            modifiedIds = new HashSet<>();
+            groups = new HashMap<>(members);
+        }
+        Arrays.sort(ids);
+
+        try {
+            Map<Long, Members> updates = new HashMap<>();
+            for (Map.Entry<Long, Members> entry : groups.entrySet()) {
+                Members m = entry.getValue();
+                long[] matching = evaluator.evaluate(entry.getKey(), m.searchUri, ids);
+                Arrays.sort(matching);
+                long[] content = merge(m.ids, ids, matching);
+                // Modified books may have changed place in the sort order of the cover
+                Members updated = new Members(m.searchUri, content, selectCover(content));
+                synchronized (this) {
+                    // Don't overwrite content that has been removed or computed again in the meantime
+                    if (members.get(entry.getKey()) == m) {
+                        members.put(entry.getKey(), updated);
+                        updates.put(entry.getKey(), updated);
+                    }
+                }
+            }
+            save(updates);
+        } catch (RuntimeException e) {
+            // Evaluate them again next time
+            invalidate(ids);
+            throw e;
+        }
+    }
+
+    /**
+     * Store the given content; it is flagged as outdated if books have been modified since it has been computed
+     * NB : Holds the lock while storing so that flagging by {@link #invalidate} can't happen in-between
+     *
+     * @param contents Content to store; key = group ID
+     */
+    private synchronized void save(@NonNull Map<Long, Members> contents) {
+        boolean outdated = !modifiedIds.isEmpty();
+        // Content loaded as outdated stays flagged until it has been computed again
+        Map<Long, Members> toSave = new HashMap<>(contents);
+        toSave.keySet().removeAll(outdatedGroups);
+        if (!toSave.isEmpty()) storage.save(toSave, outdated);
+        // Content stored before may still be flagged; flag everything again when the next books are modified
+        storedOutdated = outdated && storedOutdated;
+    }
+
+    private long selectCover(long[] contentIds) {
+        return (0 == contentIds.length) ? 0 : coverSelector.select(contentIds);
+    }
+
+    /**
+     * Replace the given evaluated books inside the given content
+     *
+     * @param content   Sorted IDs of the books of a group
+     * @param evaluated Sorted IDs of the evaluated books
+     * @param matching  Sorted IDs of the evaluated books that belong to the group
+     * @return Sorted IDs of the books of the group
+     */
+    static long[] merge(long[] content, long[] evaluated, long[] matching) {
+        long[] result = new long[content.length + matching.length];
+        int size = 0;
+        int e = 0;
+        int m = 0;
+        for (long id : content) {
+            while (m < matching.length && matching[m] < id) result[size++] = matching[m++];
+            while (e < evaluated.length && evaluated[e] < id) e++;
+            // Evaluated books stay only if they still match
+            if (e < evaluated.length && evaluated[e] == id) continue;
+            result[size++] = id;
+        }
+        while (m < matching.length) result[size++] = matching[m++];
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+}
@@ -0,0 +1,91 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.objectbox.Box;
+import io.objectbox.BoxStore;
+import io.objectbox.query.Query;
+import me.devsaki.hentoid.database.domains.DynamicGroupContent;
+import me.devsaki.hentoid.database.domains.DynamicGroupContent_;
+import me.devsaki.hentoid.database.domains.Group;
+
+/**
+ * Storage of the content of dynamic groups inside the DB, as {@link DynamicGroupContent} entities
+ */
+class DynamicGroupStorage implements DynamicGroupIndex.Storage {
+
+    private final BoxStore store;
+
+    DynamicGroupStorage(@NonNull BoxStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Map<Long, DynamicGroupIndex.Members> load(@NonNull Set<Long> outdatedGroupIds) {
+        Box<DynamicGroupContent> box = store.boxFor(DynamicGroupContent.class);
+        Box<Group> groupBox = store.boxFor(Group.class);
+        List<DynamicGroupContent> contents = box.getAll();
+        Map<Long, DynamicGroupIndex.Members> result = new HashMap<>(contents.size());
+        List<DynamicGroupContent> orphans = new ArrayList<>();
+        for (DynamicGroupContent c : contents) {
+            // Groups that have been removed without going through ObjectBoxDB.deleteGroup
+            if (!groupBox.contains(c.getGroupId())) {
+                orphans.add(c);
+                continue;
+            }
+            result.put(c.getGroupId(), new DynamicGroupIndex.Members(c.getSearchUri(), c.getContentIds(), c.getCoverContentId()));
+            if (c.isOutdated()) outdatedGroupIds.add(c.getGroupId());
+        }
+        if (!orphans.isEmpty()) box.remove(orphans);
+        return result;
+    }
+
+    @Override
+    public void save(@NonNull Map<Long, DynamicGroupIndex.Members> contents, boolean outdated) {
+        Box<DynamicGroupContent> box = store.boxFor(DynamicGroupContent.class);
+        store.runInTx(() -> {
+            List<DynamicGroupContent> toSave = new ArrayList<>(contents.size());
+            for (Map.Entry<Long, DynamicGroupIndex.Members> entry : contents.entrySet()) {
+                DynamicGroupContent c = select(box, entry.getKey());
+                if (null == c) c = new DynamicGroupContent(entry.getKey());
+                DynamicGroupIndex.Members m = entry.getValue();
+                toSave.add(c.setSearchUri(m.searchUri).setContentIds(m.ids).setCoverContentId(m.coverId).setOutdated(outdated));
+            }
+            box.put(toSave);
+        });
+    }
+
+    @Override
+    public void setOutdated() {
+        Box<DynamicGroupContent> box = store.boxFor(DynamicGroupContent.class);
+        store.runInTx(() -> {
+            List<DynamicGroupContent> contents;
+            try (Query<DynamicGroupContent> q = box.query().equal(DynamicGroupContent_.outdated, false).build()) {
+                contents = q.find();
+            }
+            if (contents.isEmpty()) return;
+            for (DynamicGroupContent c : contents) c.setOutdated(true);
+            box.put(contents);
+        });
+    }
+
+    @Override
+    public void remove(long groupId) {
+        Box<DynamicGroupContent> box = store.boxFor(DynamicGroupContent.class);
+        try (Query<DynamicGroupContent> q = box.query().equal(DynamicGroupContent_.groupId, groupId).build()) {
+            q.remove();
+        }
+    }
+
+    private static DynamicGroupContent select(@NonNull Box<DynamicGroupContent> box, long groupId) {
+        try (Query<DynamicGroupContent> q = box.query().equal(DynamicGroupContent_.groupId, groupId).build()) {
+            return q.findFirst();
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package me.devsaki.hentoid.database;
 
 import android.content.Context;
-import android.net.Uri;
 import android.util.SparseIntArray;
 
 import androidx.annotation.NonNull;
@@ -11,7 +10,6 @@ import androidx.paging.DataSource;
 import androidx.paging.LivePagedListBuilder;
 import androidx.paging.PagedList;
 
-import com.annimon.stream.Optional;
 import com.annimon.stream.Stream;
 import com.annimon.stream.function.Consumer;
 
@@ -30,8 +28,6 @@ import io.objectbox.BoxStore;
 import io.objectbox.android.ObjectBoxDataSource;
 import io.objectbox.android.ObjectBoxLiveData;
 import io.objectbox.query.Query;
-import io.objectbox.relation.ToOne;
-import me.devsaki.hentoid.activities.bundles.SearchActivityBundle;
 import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Chapter;
 import me.devsaki.hentoid.database.domains.Content;
@@ -80,6 +76,10 @@ public class ObjectBoxDAO implements CollectionDAO {
         db.closeThreadResources();
     }
 
+    public void runInTx(@NonNull Runnable task) {
+        db.runInTx(task);
+    }
+
     public void cleanupOrphanAttributes() {
         db.cleanupOrphanAttributes();
     }
@@ -136,6 +136,11 @@ public class ObjectBoxDAO implements CollectionDAO {
         return db.selectAttribute(id);
     }
 
+    @Override
+    public Map<String, Attribute> selectAttributesByKey() {
+        return db.selectAttributesByKey();
+    }
+
     @Override
     public SearchHelper.AttributeQueryResult selectAttributeMasterDataPaged(
             @NonNull List<AttributeType> types,
@@ -326,7 +331,11 @@ public class ObjectBoxDAO implements CollectionDAO {
     }
 
     public long insertContent(@NonNull final Content content) {
-        Pair<Long, Set<Attribute>> result = db.insertContentAndAttributes(content);
+        return insertContent(content, null);
+    }
+
+    public long insertContent(@NonNull final Content content, @Nullable Map<String, Attribute> attributeCache) {
+        Pair<Long, Set<Attribute>> result = db.insertContentAndAttributes(content, attributeCache);
         // Attach new attributes to existing groups, if any
         for (Attribute a : result.getRight()) {
             Group g = selectGroupByName(Grouping.ARTIST.getId(), a.getName());
@@ -347,10 +356,22 @@ public class ObjectBoxDAO implements CollectionDAO {
         db.updateContentDeleteFlag(contentId, flag);
     }
 
+    public void updateContentsDeleteFlag(long[] contentIds, boolean flag) {
+        db.updateContentsDeleteFlag(contentIds, flag);
+    }
+
+    public long[] updateContents(long[] contentIds, @NonNull ContentUpdate update) {
+        return db.updateContents(contentIds, update);
+    }
+
     public void deleteContent(@NonNull final Content content) {
         db.deleteContentById(content.getId());
     }
 
+    public void deleteContents(long[] contentIds) {
+        db.deleteContentById(contentIds);
+    }
+
     public List<ErrorRecord> selectErrorRecordByContentId(long contentId) {
         return db.selectErrorRecordByContentId(contentId);
     }
@@ -475,12 +496,19 @@ public class ObjectBoxDAO implements CollectionDAO {
         // Dynamic grouping : groups are empty as they are dynamically populated
         //   -> Manually add items inside each of them
         //   -> Manually set a cover for each of them
+        //   -> Enrich them again each time their content has been computed in the background
         if (grouping == Grouping.DYNAMIC.getId()) {
             MediatorLiveData<List<Group>> livedata2 = new MediatorLiveData<>();
             livedata2.addSource(livedata, groups -> {
                 List<Group> enrichedWithItems = Stream.of(groups).map(this::enrichGroupWithItemsByQuery).toList();
                 livedata2.setValue(enrichedWithItems);
             });
+            livedata2.addSource(db.getDynamicGroupsUpdates(), time -> {
+                List<Group> groups = livedata.getValue();
+                if (null == groups) return;
+                List<Group> enrichedWithItems = Stream.of(groups).map(this::enrichGroupWithItemsByQuery).toList();
+                livedata2.setValue(enrichedWithItems);
+            });
             workingData = livedata2;
         }
 
@@ -495,24 +523,19 @@ public class ObjectBoxDAO implements CollectionDAO {
             workingData = livedata2;
         }
 
-        // Order by number of children (ObjectBox can't do that natively)
-        if (Preferences.Constant.ORDER_FIELD_CHILDREN == orderField) {
-            MediatorLiveData<List<Group>> result = new MediatorLiveData<>();
-            result.addSource(workingData, groups -> {
-                int sortOrder = orderDesc ? -1 : 1;
-                List<Group> orderedByNbChildren = Stream.of(groups).sortBy(g -> g.getItems().size() * sortOrder).toList();
-                result.setValue(orderedByNbChildren);
-            });
-            return result;
-        }
-
-        // Order by latest download date of children (ObjectBox can't do that natively)
-        if (Preferences.Constant.ORDER_FIELD_DOWNLOAD_PROCESSING_DATE == orderField) {
+        // Order groups whose items have been computed on the fly according to their computed summary
+        // NB : Other groups are ordered by the DB using their persisted summary
+        if ((grouping == Grouping.DL_DATE.getId() || grouping == Grouping.DYNAMIC.getId() || grouping == Grouping.CUSTOM.getId())
+                && (Preferences.Constant.ORDER_FIELD_CHILDREN == orderField || Preferences.Constant.ORDER_FIELD_DOWNLOAD_PROCESSING_DATE == orderField)) {
             MediatorLiveData<List<Group>> result = new MediatorLiveData<>();
             result.addSource(workingData, groups -> {
                 int sortOrder = orderDesc ? -1 : 1;
-                List<Group> orderedByDlDate = Stream.of(groups).sortBy(g -> getLatestDlDate(g) * sortOrder).toList();
-                result.setValue(orderedByDlDate);
+                List<Group> ordered;
+                if (Preferences.Constant.ORDER_FIELD_CHILDREN == orderField)
+                    ordered = Stream.of(groups).sortBy(g -> g.getNbItems() * sortOrder).toList();
+                else
+                    ordered = Stream.of(groups).sortBy(g -> g.getLatestDownloadDate() * sortOrder).toList();
+                result.setValue(ordered);
             });
             return result;
         }
@@ -524,17 +547,24 @@ public class ObjectBoxDAO implements CollectionDAO {
         List<GroupItem> items = selectGroupItemsByDlDate(g, minDays, maxDays);
         g.setItems(items);
         if (!items.isEmpty()) g.coverContent.setTarget(items.get(0).content.getTarget());
+        enrichSummary(g, Helper.getPrimitiveArrayFromList(Stream.of(items).map(GroupItem::getContentId).toList()));
 
         return g;
     }
 
     private Group enrichGroupWithItemsByQuery(@NonNull final Group g) {
-        List<GroupItem> items = selectGroupItemsByQuery(g);
+        // Content that hasn't been computed yet is signaled by DynamicGroupIndex once it's available
+        DynamicGroupIndex.Members members = db.selectLastDynamicGroupContent(g);
+        long[] contentIds = (null == members) ? new long[0] : members.ids;
+        List<GroupItem> items = new ArrayList<>(contentIds.length);
+        for (long id : contentIds) items.add(new GroupItem(id, g, -1));
         g.setItems(items);
-        if (!items.isEmpty()) {
-            Content c = selectContent(items.get(0).getContentId());
+        // Cover = first book according to the library's sort order
+        if (members != null && members.coverId > 0) {
+            Content c = selectContent(members.coverId);
             g.coverContent.setTarget(c);
         }
+        enrichSummary(g, contentIds);
         return g;
     }
 
@@ -546,18 +576,19 @@ public class ObjectBoxDAO implements CollectionDAO {
                 Content c = selectContent(items.get(0).getContentId());
                 g.coverContent.setTarget(c);
             }
+            enrichSummary(g, Helper.getPrimitiveArrayFromList(Stream.of(items).map(GroupItem::getContentId).toList()));
         }
         return g;
     }
 
-    private long getLatestDlDate(@NonNull final Group g) {
-        // Manually select all content as g.getContents won't work (unresolved items)
-        List<Content> contents = db.selectContentById(g.getContentIds());
-        if (contents != null) {
-            Optional<Long> maxDlDate = Stream.of(contents).map(Content::getDownloadDate).max(Long::compareTo);
-            return maxDlDate.isPresent() ? maxDlDate.get() : 0;
-        }
-        return 0;
+    /**
+     * Set the summary of the given group whose items are computed on the fly
+     * NB : The summary isn't persisted
+     */
+    private void enrichSummary(@NonNull final Group g, long[] contentIds) {
+        g.setNbItems(contentIds.length);
+        g.setLatestDownloadDate(db.selectMaxDownloadDate(contentIds));
+        g.setCoverUri(db.selectCoverUri(g.coverContent.getTargetId()));
     }
 
     @Nullable
@@ -611,18 +642,7 @@ public class ObjectBoxDAO implements CollectionDAO {
         if (-1 == item.order)
             item.order = db.getMaxGroupItemOrderFor(item.getGroupId()) + 1;
 
-        // If target group doesn't have a cover, get the corresponding Content's
-        ToOne<Content> groupCoverContent = item.group.getTarget().coverContent;
-        if (!groupCoverContent.isResolvedAndNotNull()) {
-            Content c;
-            if (!item.content.isResolvedAndNotNull()) {
-                c = selectContent(item.getContentId());
-            } else {
-                c = item.content.getTarget();
-            }
-            groupCoverContent.setAndPutTarget(c);
-        }
-
+        // NB : Count, latest download date and cover of the target group are updated by the DB
         return db.insertGroupItem(item);
     }
 
@@ -635,26 +655,15 @@ public class ObjectBoxDAO implements CollectionDAO {
         return Stream.of(contentResult).map(c -> new GroupItem(c, group, -1)).toList();
     }
 
-    private List<GroupItem> selectGroupItemsByQuery(@NonNull final Group group) {
-        SearchHelper.AdvancedSearchCriteria criteria = SearchActivityBundle.Companion.parseSearchUri(Uri.parse(group.searchUri));
-        ContentSearchManager.ContentSearchBundle bundle = ContentSearchManager.ContentSearchBundle.Companion.fromSearchCriteria(criteria);
-        List<Long> contentResult = ContentSearchManager.Companion.searchContentIds(bundle, this);
-        return Stream.of(contentResult).map(c -> new GroupItem(c, group, -1)).toList();
-    }
-
     public void deleteGroupItems(@NonNull final List<Long> groupItemIds) {
-        // Check if one of the GroupItems to delete is linked to the content that contains the group's cover picture
-        List<GroupItem> groupItems = db.selectGroupItems(Helper.getPrimitiveArrayFromList(groupItemIds));
-        for (GroupItem gi : groupItems) {
-            ToOne<Content> groupCoverContent = gi.group.getTarget().coverContent;
-            // If so, remove the cover picture
-            if (groupCoverContent.isResolvedAndNotNull() && groupCoverContent.getTargetId() == gi.content.getTargetId())
-                gi.group.getTarget().coverContent.setAndPutTarget(null);
-        }
-
+        // NB : Groups whose cover was one of the removed books get a new cover from the DB
         db.deleteGroupItems(Helper.getPrimitiveArrayFromList(groupItemIds));
     }
 
+    public void updateGroupCover(long groupId, long coverContentId) {
+        db.updateGroupCover(groupId, coverContentId);
+    }
+
     public void flagAllInternalBooks(@NonNull String rootPath, boolean includePlaceholders) {
         db.flagContentsForDeletion(DBHelper.safeFind(db.selectAllInternalBooksQ(rootPath, false, includePlaceholders)), true);
     }
@@ -788,41 +797,23 @@ public class ObjectBoxDAO implements CollectionDAO {
         insertContent(content);
 
         if (!db.isContentInQueue(content)) {
-            int targetPosition;
+            final int targetPosition;
             if (position == Preferences.Constant.QUEUE_NEW_DOWNLOADS_POSITION_BOTTOM) {
-                targetPosition = (int) db.selectMaxQueueOrder() + 1;
+                targetPosition = Integer.MAX_VALUE;
             } else { // Top - don't put #1 if queue is active not to interrupt current download
-                targetPosition = (isQueueActive) ? 2 : 1;
+                targetPosition = (isQueueActive) ? 1 : 0;
             }
-            insertQueueAndRenumber(content.getId(), targetPosition);
+            QueueRecord newRecord = new QueueRecord(content.getId(), 0);
+            db.reorderQueue(queue -> QueueRanks.insert(queue, newRecord, targetPosition));
         }
     }
 
-    private void insertQueueAndRenumber(long contentId, int order) {
-        List<QueueRecord> queue = DBHelper.safeFind(db.selectQueueRecordsQ(null));
-        QueueRecord newRecord = new QueueRecord(contentId, order);
-
-        // Put in the right place
-        if (order > queue.size()) queue.add(newRecord);
-        else {
-            int newOrder = Math.min(queue.size() + 1, order);
-            queue.add(newOrder - 1, newRecord);
-        }
-        // Renumber everything and save
-        int index = 1;
-        for (QueueRecord qr : queue) qr.setRank(index++);
-        db.updateQueue(queue);
-    }
-
     private long[] getDynamicGroupContent(long groupId) {
-        List<Long> result = Collections.emptyList();
         if (groupId > -1) {
             Group g = selectGroup(groupId);
-            if (g != null && g.grouping.equals(Grouping.DYNAMIC)) {
-                result = Stream.of(selectGroupItemsByQuery(g)).map(GroupItem::getContentId).toList();
-            }
+            if (g != null && g.grouping.equals(Grouping.DYNAMIC)) return db.selectDynamicGroupContent(g);
         }
-        return Helper.getPrimitiveArrayFromList(result);
+        return new long[0];
     }
 
     private List<Long> contentIdSearch(
@@ -906,6 +897,30 @@ public class ObjectBoxDAO implements CollectionDAO {
         db.updateQueue(queue);
     }
 
+    public void addToQueueBottom(@NonNull List<QueueRecord> records) {
+        db.reorderQueue(queue -> QueueRanks.append(queue, records));
+    }
+
+    public boolean moveQueue(int oldPosition, int newPosition) {
+        return db.reorderQueue(queue -> QueueRanks.move(queue, oldPosition, newPosition));
+    }
+
+    public boolean moveQueueTop(@NonNull List<Long> recordIds) {
+        return db.reorderQueue(queue -> QueueRanks.moveTop(queue, recordIds));
+    }
+
+    public boolean moveQueueBottom(@NonNull List<Long> recordIds) {
+        return db.reorderQueue(queue -> QueueRanks.moveBottom(queue, recordIds));
+    }
+
+    public boolean invertQueue() {
+        return db.reorderQueue(QueueRanks::invert);
+    }
+
+    public void rebalanceQueue() {
+        db.rebalanceQueue();
+    }
+
     public void deleteQueue(@NonNull Content content) {
         db.deleteQueueRecords(content);
     }
@@ -1020,6 +1035,18 @@ public class ObjectBoxDAO implements CollectionDAO {
         db.deleteRenamingRules(Helper.getPrimitiveArrayFromList(ids));
     }
 
+    public RenamingRuleMatcher selectRenamingRuleMatcher() {
+        return db.selectRenamingRuleMatcher();
+    }
+
+    public long[] selectAttributeIdsMatchingRule(@NonNull RenamingRule rule) {
+        return db.selectAttributeIdsMatchingRule(rule);
+    }
+
+    public long[] applyRenamingRule(@NonNull RenamingRule rule, long[] attributeIds) {
+        return db.applyRenamingRule(rule, attributeIds);
+    }
+
 
     // ONE-TIME USE QUERIES (MIGRATION & CLEANUP)
 
@@ -3,26 +3,36 @@ package me.devsaki.hentoid.database;
 import static com.annimon.stream.Collectors.toList;
 
 import android.content.Context;
+import android.net.Uri;
 import android.util.SparseIntArray;
 
 import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
 import com.annimon.stream.Collectors;
 import com.annimon.stream.Stream;
+import com.annimon.stream.function.Function;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
+import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
@@ -35,6 +45,7 @@ import io.objectbox.query.QueryBuilder;
 import io.objectbox.query.QueryCondition;
 import io.objectbox.relation.ToMany;
 import me.devsaki.hentoid.BuildConfig;
+import me.devsaki.hentoid.activities.bundles.SearchActivityBundle;
 import me.devsaki.hentoid.core.Consts;
 import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.AttributeLocation;
@@ -73,6 +84,7 @@ import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.util.RandomSeedSingleton;
+import me.devsaki.hentoid.util.SearchHelper;
 import me.devsaki.hentoid.util.file.ArchiveHelper;
 import me.devsaki.hentoid.widget.ContentSearchManager;
 import me.devsaki.hentoid.widget.ContentSearchManager.ContentSearchBundle;
@@ -86,6 +98,10 @@ public class ObjectBoxDB {
     private static final int[] libraryQueueStatus = ArrayUtils.addAll(libraryStatus, queueStatus);
 
     private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    // Number of contents removed in one single transaction
+    private static final int DELETE_CHUNK_SIZE = 250;
+
+    private static final String TITLE_INDEX_FILE = "title_index.bin";
 
     private static ObjectBoxDB instance;
 
@@ -95,9 +111,26 @@ public class ObjectBoxDB {
     private final Query<Content> contentFromAttributesSearchQ;
     private final Query<Content> contentFromSourceSearchQ;
 
+    // Index of the titles of all books, built in the background when it can't be loaded
+    private final TitleIndex titleIndex;
+    private final AtomicBoolean titleIndexLoading = new AtomicBoolean(false);
+
+    // Materialized content of the dynamic groups; emits the time of each background update
+    private final MutableLiveData<Long> dynamicGroupsUpdates = new MutableLiveData<>();
+    private final DynamicGroupIndex dynamicGroups;
+
+    // Version of the renaming rules, incremented each time they change
+    private final AtomicLong renamingRulesVersion = new AtomicLong(0);
+    // Compiled renaming rules, along with the version they've been built from; built on demand
+    private volatile ImmutablePair<Long, RenamingRuleMatcher> renamingRuleMatcher = null;
+
 
     private ObjectBoxDB(Context context) {
         store = MyObjectBox.builder().androidContext(context.getApplicationContext()).maxSizeInKByte(Preferences.getMaxDbSizeKb()).build();
+        titleIndex = new TitleIndex(new File(context.getApplicationContext().getFilesDir(), TITLE_INDEX_FILE));
+        loadTitleIndexAsync();
+        dynamicGroups = buildDynamicGroupIndex();
+        dynamicGroups.loadAsync();
 
         if (BuildConfig.DEBUG && BuildConfig.INCLUDE_OBJECTBOX_BROWSER) {
             boolean started = new Admin(store).start(context.getApplicationContext());
@@ -112,11 +145,21 @@ public class ObjectBoxDB {
     // For testing (store generated by the test framework)
     private ObjectBoxDB(BoxStore store) {
         this.store = store;
+        titleIndex = new TitleIndex(null);
+        dynamicGroups = buildDynamicGroupIndex();
         // Pre-cache intensive search queries
         contentFromAttributesSearchQ = buildContentFromAttributesSearchQ();
         contentFromSourceSearchQ = buildContentFromSourceSearchQ();
     }
 
+    private DynamicGroupIndex buildDynamicGroupIndex() {
+        return new DynamicGroupIndex(
+                this::evaluateDynamicGroup,
+                this::selectDynamicGroupCover,
+                new DynamicGroupStorage(store),
+                () -> dynamicGroupsUpdates.postValue(System.currentTimeMillis()));
+    }
+
     private Query<Content> buildContentFromAttributesSearchQ() {
         final QueryBuilder<Content> contentFromAttributesQueryBuilder = store.boxFor(Content.class).query();
         contentFromAttributesQueryBuilder.in(Content_.status, libraryStatus);
@@ -163,7 +206,23 @@ public class ObjectBoxDB {
         return store.sizeOnDisk();
     }
 
+    void runInTx(@NonNull Runnable task) {
+        store.runInTx(task);
+    }
+
     ImmutablePair<Long, Set<Attribute>> insertContentAndAttributes(Content content) {
+        return insertContentAndAttributes(content, null);
+    }
+
+    /**
+     * Insert the given content and resolve its attributes against existing ones
+     *
+     * @param content        Content to insert
+     * @param attributeCache Known attributes indexed with {@link #getAttributeKey}; if not null, used instead of querying the DB
+     *                       and enriched with newly inserted attributes
+     * @return ID of the inserted content and new artist/circle attributes that have been created
+     */
+    ImmutablePair<Long, Set<Attribute>> insertContentAndAttributes(Content content, @Nullable Map<String, Attribute> attributeCache) {
         ToMany<Attribute> attributes = content.getAttributes();
         Box<Attribute> attrBox = store.boxFor(Attribute.class);
         Set<Attribute> newAttrs = new HashSet<>();
@@ -178,7 +237,10 @@ public class ObjectBoxDB {
                 try (Query<Attribute> attrByUniqueKey = attrBox.query().equal(Attribute_.type, 0).equal(Attribute_.name, "", QueryBuilder.StringOrder.CASE_INSENSITIVE).build()) {
                     for (int i = 0; i < attributes.size(); i++) {
                         inputAttr = attributes.get(i);
-                        dbAttr = attrByUniqueKey.setParameter(Attribute_.name, inputAttr.getName()).setParameter(Attribute_.type, inputAttr.getType().getCode()).findFirst();
+                        if (attributeCache != null)
+                            dbAttr = attributeCache.get(getAttributeKey(inputAttr.getType(), inputAttr.getName()));
+                        else
+                            dbAttr = attrByUniqueKey.setParameter(Attribute_.name, inputAttr.getName()).setParameter(Attribute_.type, inputAttr.getType().getCode()).findFirst();
                         if (dbAttr != null) { // Existing attribute -> set the existing attribute
                             attributes.set(i, dbAttr);
                             dbAttr.addLocationsFrom(inputAttr);
@@ -191,24 +253,57 @@ public class ObjectBoxDB {
                     }
                 }
             }
-            return store.boxFor(Content.class).put(content);
+            long id = store.boxFor(Content.class).put(content);
+            // Download date and cover of the book might have changed
+            updateGroupSummaries(selectGroupIdsOf(id));
+            // New attributes have been given an ID by the insertion
+            if (attributeCache != null && attributes != null)
+                for (Attribute a : attributes)
+                    attributeCache.put(getAttributeKey(a.getType(), a.getName()), a);
+            return id;
         });
+        indexTitles(content);
+        dynamicGroups.invalidate(content.getId());
         return new ImmutablePair<>(result, newAttrs);
     }
 
+    /**
+     * Build a map of all stored attributes, indexed with {@link #getAttributeKey}
+     * NB : Meant for mass insertions, to avoid one query per inserted attribute
+     *
+     * @return All stored attributes, indexed with {@link #getAttributeKey}
+     */
+    Map<String, Attribute> selectAttributesByKey() {
+        List<Attribute> attrs = store.boxFor(Attribute.class).getAll();
+        Map<String, Attribute> result = new HashMap<>(attrs.size());
+        for (Attribute a : attrs) result.put(getAttributeKey(a.getType(), a.getName()), a);
+        return result;
+    }
+
+    // Same unicity rules as the attrByUniqueKey query (case-insensitive name + type)
+    private static String getAttributeKey(@NonNull AttributeType type, @NonNull String name) {
+        return type.getCode() + "." + name.toLowerCase();
+    }
+
     long insertContentCore(@NonNull Content content) {
-        return store.boxFor(Content.class).put(content);
+        long result = store.boxFor(Content.class).put(content);
+        indexTitles(content);
+        dynamicGroups.invalidate(result);
+        return result;
     }
 
     // Faster alternative to insertContent when Content fields only need to be updated
     void updateContentObject(Content content) {
         store.boxFor(Content.class).put(content);
+        indexTitles(content);
+        dynamicGroups.invalidate(content.getId());
     }
 
     void updateContentStatus(@NonNull final StatusContent updateFrom, @NonNull final StatusContent updateTo) {
         List<Content> contentList = selectContentByStatus(updateFrom);
         for (Content c : contentList) c.setStatus(updateTo);
         store.boxFor(Content.class).put(contentList);
+        dynamicGroups.invalidate(Helper.getPrimitiveArrayFromList(Stream.of(contentList).map(Content::getId).toList()));
     }
 
     void updateContentDeleteFlag(long contentId, boolean flag) {
@@ -221,6 +316,53 @@ public class ObjectBoxDB {
         });
     }
 
+    void updateContentsDeleteFlag(long[] contentIds, boolean flag) {
+        store.runInTx(() -> {
+            List<Content> contents = store.boxFor(Content.class).get(contentIds);
+            List<Content> toSave = new ArrayList<>(contents.size());
+            for (Content c : contents) {
+                if (c != null) {
+                    c.setIsBeingProcessed(flag);
+                    toSave.add(c);
+                }
+            }
+            store.boxFor(Content.class).put(toSave);
+        });
+    }
+
+    /**
+     * Apply the given update to the given books in one single transaction
+     * NB : Relations of the books aren't loaded; books being processed are left untouched if the update requires it
+     *
+     * @param contentIds IDs of the books to update
+     * @param update     Update to apply
+     * @return IDs of the updated books
+     */
+    long[] updateContents(long[] contentIds, @NonNull ContentUpdate update) {
+        Box<Content> contentBox = store.boxFor(Content.class);
+        long[] result = store.callInTxNoException(() -> {
+            List<Content> contents = contentBox.get(contentIds);
+            List<Content> updated = new ArrayList<>(contents.size());
+            for (Content c : contents) {
+                if (null == c || (c.isBeingProcessed() && update.isSkipProcessed())) continue;
+                update.applyTo(c);
+                updated.add(c);
+            }
+            contentBox.put(updated);
+            long[] ids = Helper.getPrimitiveArrayFromList(Stream.of(updated).map(Content::getId).toList());
+
+            if (update.isResetReadStats() && ids.length > 0) {
+                Box<ImageFile> imgBox = store.boxFor(ImageFile.class);
+                List<ImageFile> imgs = DBHelper.safeFind(imgBox.query().in(ImageFile_.contentId, ids).equal(ImageFile_.read, true));
+                for (ImageFile img : imgs) img.setRead(false);
+                imgBox.put(imgs);
+            }
+            return ids;
+        });
+        dynamicGroups.invalidate(result);
+        return result;
+    }
+
     List<Content> selectContentByStatus(StatusContent status) {
         return selectContentByStatusCodes(new int[]{status.getCode()});
     }
@@ -295,56 +437,50 @@ public class ObjectBoxDB {
     /**
      * Remove the given content and all related objects from the DB
      * NB : ObjectBox v2.3.1 does not support cascade delete, so everything has to be done manually
+     * NB2 : Contents are removed by chunks of {@link #DELETE_CHUNK_SIZE}, in one transaction per chunk
      *
      * @param contentId IDs of the contents to be removed from the DB
      */
     void deleteContentById(long[] contentId) {
-        Box<ErrorRecord> errorBox = store.boxFor(ErrorRecord.class);
-        Box<ImageFile> imageFileBox = store.boxFor(ImageFile.class);
-        Box<Chapter> chapterBox = store.boxFor(Chapter.class);
-        Box<Content> contentBox = store.boxFor(Content.class);
+        for (int i = 0; i < contentId.length; i += DELETE_CHUNK_SIZE)
+            deleteContentChunk(Arrays.copyOfRange(contentId, i, Math.min(i + DELETE_CHUNK_SIZE, contentId.length)));
+        titleIndex.remove(contentId);
+        dynamicGroups.invalidate(contentId);
+    }
+
+    private void deleteContentChunk(long[] contentIds) {
         Box<GroupItem> groupItemBox = store.boxFor(GroupItem.class);
         Box<Group> groupBox = store.boxFor(Group.class);
 
-        for (long id : contentId) {
-            Content c = contentBox.get(id);
-            if (c != null) {
-                store.runInTx(() -> {
-                    if (c.getImageFiles() != null) {
-                        imageFileBox.remove(c.getImageFiles());
-                        c.getImageFiles().clear();                                      // Clear links to all imageFiles
-                    }
-
-                    if (c.getChapters() != null) {
-                        chapterBox.remove(c.getChapters());
-                        c.getChapters().clear();                                      // Clear links to all chapters
-                    }
-
-                    if (c.getErrorLog() != null) {
-                        errorBox.remove(c.getErrorLog());
-                        c.getErrorLog().clear();                                    // Clear links to all errorRecords
-                    }
-
-                    // Clear links to all attributes
-                    // NB : Properly removing all attributes here is too costly, especially on large collections
-                    // It's done by calling cleanupOrphanAttributes
-                    c.getAttributes().clear();
-
-                    // Delete corresponding groupItem
-                    List<GroupItem> groupItems = DBHelper.safeFind(groupItemBox.query().equal(GroupItem_.contentId, id));
-                    for (GroupItem groupItem : groupItems) {
-                        // If we're not in the Custom grouping and it's the only item of its group, delete the group
-                        Group g = groupItem.group.getTarget();
-                        if (g != null && !g.grouping.equals(Grouping.CUSTOM) && g.items.size() < 2)
-                            groupBox.remove(g);
-                        // Delete the item
-                        groupItemBox.remove(groupItem);
-                    }
-
-                    contentBox.remove(c);                                           // Remove the content itself
-                });
+        store.runInTx(() -> {
+            DBHelper.safeRemove(store.boxFor(ImageFile.class).query().in(ImageFile_.contentId, contentIds));
+            DBHelper.safeRemove(store.boxFor(Chapter.class).query().in(Chapter_.contentId, contentIds));
+            DBHelper.safeRemove(store.boxFor(ErrorRecord.class).query().in(ErrorRecord_.contentId, contentIds));
+
+            // Delete corresponding groupItems
+            List<GroupItem> groupItems = DBHelper.safeFind(groupItemBox.query().in(GroupItem_.contentId, contentIds));
+            Set<Long> groupIds = new HashSet<>();
+            for (GroupItem gi : groupItems) groupIds.add(gi.getGroupId());
+            groupItemBox.remove(groupItems);
+
+            // If we're not in the Custom grouping and the group is now empty, delete the group
+            // Update the others once for the whole chunk
+            Set<Long> remainingGroupIds = new HashSet<>();
+            try (Query<GroupItem> countQ = groupItemBox.query().equal(GroupItem_.groupId, 0).build()) {
+                for (Group g : groupBox.get(groupIds)) {
+                    if (null == g) continue;
+                    if (!g.grouping.equals(Grouping.CUSTOM) && 0 == countQ.setParameter(GroupItem_.groupId, g.id).count())
+                        groupBox.remove(g);
+                    else remainingGroupIds.add(g.id);
+                }
             }
-        }
+            updateGroupSummaries(remainingGroupIds);
+
+            // Remove the contents themselves, along with their links to attributes
+            // NB : Properly removing all attributes here is too costly, especially on large collections
+            // It's done by calling cleanupOrphanAttributes
+            store.boxFor(Content.class).remove(contentIds);
+        });
     }
 
     /**
@@ -405,6 +541,30 @@ public class ObjectBoxDB {
         queueRecordBox.put(queue);
     }
 
+    /**
+     * Apply the given operation to the queue and save the records whose rank has changed, in one single transaction
+     *
+     * @param operation Operation to apply; consumes the records of the queue sorted by rank and returns those whose rank has changed
+     * @return True if the first record of the queue has changed
+     */
+    boolean reorderQueue(@NonNull final Function<List<QueueRecord>, List<QueueRecord>> operation) {
+        return store.callInTxNoException(() -> {
+            List<QueueRecord> queue = DBHelper.safeFind(selectQueueRecordsQ(null));
+            long firstId = queue.isEmpty() ? -1 : queue.get(0).id;
+            List<QueueRecord> changed = operation.apply(queue);
+            if (!changed.isEmpty()) store.boxFor(QueueRecord.class).put(changed);
+            return !queue.isEmpty() && queue.get(0).id != firstId;
+        });
+    }
+
+    void rebalanceQueue() {
+        store.runInTx(() -> {
+            List<QueueRecord> queue = DBHelper.safeFind(selectQueueRecordsQ(null));
+            if (QueueRanks.needsRebalance(queue))
+                store.boxFor(QueueRecord.class).put(QueueRanks.rebalance(queue));
+        });
+    }
+
     void deleteQueueRecords(@NonNull Content content) {
         deleteQueueRecords(content.getId());
     }
@@ -715,7 +875,11 @@ public class ObjectBoxDB {
         if (searchBundle.getFilterRating() > -1)
             qc = qc.and(Content_.rating.equal(searchBundle.getFilterRating()));
 
-        qc = qc.and(Content_.title.contains(searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE).or(Content_.uniqueSiteId.equal(searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE)).or(Content_.id.oneOf(additionalIds)));
+        long[] titleIds = searchTitleIndex(searchBundle.getQuery());
+        if (titleIds != null)
+            qc = qc.and(Content_.id.oneOf(ArrayUtils.addAll(titleIds, additionalIds)));
+        else
+            qc = qc.and(Content_.title.contains(searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE).or(Content_.uniqueSiteId.equal(searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE)).or(Content_.id.oneOf(additionalIds)));
 
         if (searchBundle.getGroupId() > 0) {
             if (0 == dynamicGroupContentIds.length) { // Classic group
@@ -762,10 +926,15 @@ public class ObjectBoxDB {
             contentQuery.equal(Content_.rating, searchBundle.getFilterRating());
 
 
-        contentQuery.contains(Content_.title, searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE);
-        contentQuery.or().equal(Content_.uniqueSiteId, searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE);
-        //        query.or().link(Content_.attributes).contains(Attribute_.name, queryStr, QueryBuilder.StringOrder.CASE_INSENSITIVE); // Use of or() here is not possible yet with ObjectBox v2.3.1
-        contentQuery.or().in(Content_.id, additionalIds);
+        long[] titleIds = searchTitleIndex(searchBundle.getQuery());
+        if (titleIds != null) {
+            contentQuery.in(Content_.id, ArrayUtils.addAll(titleIds, additionalIds));
+        } else {
+            contentQuery.contains(Content_.title, searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE);
+            contentQuery.or().equal(Content_.uniqueSiteId, searchBundle.getQuery(), QueryBuilder.StringOrder.CASE_INSENSITIVE);
+            //        query.or().link(Content_.attributes).contains(Attribute_.name, queryStr, QueryBuilder.StringOrder.CASE_INSENSITIVE); // Use of or() here is not possible yet with ObjectBox v2.3.1
+            contentQuery.or().in(Content_.id, additionalIds);
+        }
         if (searchBundle.getGroupId() > 0) {
             if (0 == dynamicGroupContentIds.length) // Classic group
                 contentQuery.in(Content_.id, selectFilteredContent(searchBundle.getGroupId()));
@@ -845,15 +1014,92 @@ public class ObjectBoxDB {
         // querying Content and attributes have to be done separately
         long[] ids = DBHelper.safeFindIds(selectContentUniversalAttributesQ(searchBundle, dynamicGroupContentIds, statuses));
         try (Query<Content> query = selectContentUniversalContentQ(searchBundle, ids, dynamicGroupContentIds, statuses)) {
-            if (searchBundle.getSortField() != Preferences.Constant.ORDER_FIELD_RANDOM) {
-                result = query.findIds();
-            } else {
+            if (searchBundle.getSortField() == Preferences.Constant.ORDER_FIELD_RANDOM) {
                 result = shuffleRandomSortId(query);
+            } else if (searchBundle.getSortField() == Preferences.Constant.ORDER_FIELD_NONE) {
+                // No explicit order => most relevant titles first
+                result = sortByTitleRelevance(query.findIds(), searchBundle.getQuery());
+            } else {
+                result = query.findIds();
             }
         }
         return result;
     }
 
+    /**
+     * Get the IDs of the books of the given dynamic group, from its materialized content
+     *
+     * @param group Dynamic group to get the books of
+     * @return Sorted IDs of the books of the given dynamic group
+     */
+    long[] selectDynamicGroupContent(@NonNull Group group) {
+        return dynamicGroups.getContent(group.id, group.searchUri);
+    }
+
+    /**
+     * Get the last computed content of the given dynamic group, without waiting for it to be computed
+     * NB : Missing or outdated content is computed in the background; see {@link #getDynamicGroupsUpdates}
+     *
+     * @param group Dynamic group to get the books of
+     * @return Last computed content of the given dynamic group; null if it hasn't been computed yet
+     */
+    @Nullable
+    DynamicGroupIndex.Members selectLastDynamicGroupContent(@NonNull Group group) {
+        return dynamicGroups.getLastContent(group.id, group.searchUri);
+    }
+
+    /**
+     * @return LiveData that emits each time the content of dynamic groups has been computed in the background
+     */
+    LiveData<Long> getDynamicGroupsUpdates() {
+        return dynamicGroupsUpdates;
+    }
+
+    /**
+     * Select the cover of a dynamic group : its first book according to the library's sort order
+     *
+     * @param contentIds IDs of the books of the dynamic group
+     * @return ID of the first book of the given ones according to the library's sort order
+     */
+    private long selectDynamicGroupCover(@NonNull long[] contentIds) {
+        QueryBuilder<Content> qb = store.boxFor(Content.class).query().in(Content_.id, contentIds);
+        applySortOrder(qb, Preferences.getContentSortField(), Preferences.isContentSortDesc());
+        try (Query<Content> q = qb.build()) {
+            long[] result = q.findIds(0, 1);
+            return (result.length > 0) ? result[0] : contentIds[0];
+        }
+    }
+
+    /**
+     * Evaluate the search criteria of the given dynamic group
+     *
+     * @param groupId    ID of the dynamic group
+     * @param searchUri  Search criteria of the dynamic group
+     * @param contentIds IDs of the books to evaluate; null to evaluate the whole collection
+     * @return IDs of the books matching the criteria of the group, among the given ones
+     */
+    long[] evaluateDynamicGroup(long groupId, @NonNull String searchUri, @Nullable long[] contentIds) {
+        if (contentIds != null && 0 == contentIds.length) return new long[0];
+
+        SearchHelper.AdvancedSearchCriteria criteria = SearchActivityBundle.Companion.parseSearchUri(Uri.parse(searchUri));
+        ContentSearchBundle bundle = ContentSearchBundle.Companion.fromSearchCriteria(criteria);
+        // Order is irrelevant here
+        bundle.setSortField(Preferences.Constant.ORDER_FIELD_NONE);
+        // Only evaluate the given books by using them as the content of the group
+        long[] scope = new long[0];
+        if (contentIds != null) {
+            bundle.setGroupId(groupId);
+            scope = contentIds;
+        }
+
+        if (!criteria.getQuery().isEmpty()) { // Universal search
+            long[] ids = DBHelper.safeFindIds(selectContentUniversalAttributesQ(bundle, scope, libraryStatus));
+            return DBHelper.safeFindIds(selectContentUniversalContentQ(bundle, ids, scope, libraryStatus));
+        } else { // Advanced search
+            return DBHelper.safeFindIds(selectContentSearchContentQ(bundle, scope, criteria.getAttributes()));
+        }
+    }
+
     private long[] selectFilteredContent(long groupId) {
         if (groupId < 1) return new long[0];
 
@@ -1156,11 +1402,79 @@ public class ObjectBoxDB {
 
     List<Content> selectContentWithTitle(@NonNull String word, int[] contentStatusCodes) {
         QueryBuilder<Content> query = store.boxFor(Content.class).query();
-        query.contains(Content_.title, word, QueryBuilder.StringOrder.CASE_INSENSITIVE);
+        long[] titleIds = searchTitleIndex(word);
+        if (titleIds != null) query.in(Content_.id, titleIds);
+        else query.contains(Content_.title, word, QueryBuilder.StringOrder.CASE_INSENSITIVE);
         query.in(Content_.status, contentStatusCodes);
         return DBHelper.safeFind(query);
     }
 
+    private void indexTitles(@NonNull Content content) {
+        titleIndex.put(content.getId(), content.getTitle(), content.getReplacementTitle(), content.getUniqueSiteId());
+    }
+
+    /**
+     * Search the given query inside the titles and unique site IDs of all books, using the title index
+     *
+     * @param query Query to search
+     * @return IDs of the matching books, from the most relevant to the least relevant;
+     * null if the title index can't be used (e.g. not loaded yet), in which case the DB has to be queried directly
+     */
+    @Nullable
+    private long[] searchTitleIndex(@NonNull String query) {
+        if (!titleIndex.isReady()) {
+            loadTitleIndexAsync();
+            return null;
+        }
+        return titleIndex.search(query);
+    }
+
+    /**
+     * Load the title index, or build it from the DB if it can't be loaded, in the background
+     */
+    private void loadTitleIndexAsync() {
+        if (titleIndex.isReady() || !titleIndexLoading.compareAndSet(false, true)) return;
+        Thread thread = new Thread(() -> {
+            try {
+                if (!titleIndex.load()) buildTitleIndex();
+            } catch (Exception e) {
+                Timber.w(e, "Couldn't load title index");
+            } finally {
+                titleIndexLoading.set(false);
+                store.closeThreadResources();
+            }
+        }, "title-index-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void buildTitleIndex() {
+        long start = System.currentTimeMillis();
+        try (Query<Content> query = store.boxFor(Content.class).query().build()) {
+            query.forEach(c -> titleIndex.buildPut(c.getId(), c.getTitle(), c.getReplacementTitle(), c.getUniqueSiteId()));
+        }
+        titleIndex.endBuild();
+        Timber.i("Title index built : %d books in %d ms", titleIndex.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Sort the given books by relevance of their titles to the given query
+     * NB : Books that don't match through their titles (e.g. through their attributes) are put last
+     *
+     * @param ids   IDs of the books to sort
+     * @param query Query to sort against
+     * @return Sorted IDs
+     */
+    private long[] sortByTitleRelevance(long[] ids, @NonNull String query) {
+        long[] ranked = searchTitleIndex(query);
+        if (null == ranked) return ids;
+        Set<Long> idSet = Helper.getSetFromPrimitiveArray(ids);
+        LinkedHashSet<Long> result = new LinkedHashSet<>(ids.length);
+        for (long id : ranked) if (idSet.contains(id)) result.add(id);
+        for (long id : ids) result.add(id);
+        return Helper.getPrimitiveArrayFromList(Stream.of(result).toList());
+    }
+
     private QueryCondition<Content> applyContentLocationFilter(@NonNull QueryCondition<Content> qc, @ContentHelper.Location int location) {
         switch (location) {
             case ContentHelper.Location.PRIMARY:
@@ -1481,26 +1795,187 @@ public class ObjectBoxDB {
     }
 
     public long insertRenamingRule(@NonNull RenamingRule rule) {
-        return store.boxFor(RenamingRule.class).put(rule);
+        long result = store.boxFor(RenamingRule.class).put(rule);
+        renamingRulesVersion.incrementAndGet();
+        return result;
     }
 
     public void insertRenamingRules(@NonNull List<RenamingRule> rules) {
         store.boxFor(RenamingRule.class).put(rules);
+        renamingRulesVersion.incrementAndGet();
     }
 
     public void deleteRenamingRules(long[] ids) {
         store.boxFor(RenamingRule.class).remove(ids);
+        renamingRulesVersion.incrementAndGet();
+    }
+
+    /**
+     * Get all renaming rules, compiled for matching
+     * NB : Rules are only compiled again after they have been modified
+     *
+     * @return All renaming rules, by order of creation
+     */
+    RenamingRuleMatcher selectRenamingRuleMatcher() {
+        long version = renamingRulesVersion.get();
+        ImmutablePair<Long, RenamingRuleMatcher> cached = renamingRuleMatcher;
+        if (cached != null && cached.left == version) return cached.right;
+
+        RenamingRuleMatcher result = new RenamingRuleMatcher(DBHelper.safeFind(store.boxFor(RenamingRule.class).query().order(RenamingRule_.id)));
+        // Rules modified while they were being read => don't keep a matcher that may be outdated
+        if (renamingRulesVersion.get() == version)
+            renamingRuleMatcher = new ImmutablePair<>(version, result);
+        return result;
+    }
+
+    /**
+     * Get the IDs of the attributes whose name matches the source name of the given rule
+     *
+     * @param rule Rule to match
+     * @return IDs of the attributes that match the given rule
+     */
+    long[] selectAttributeIdsMatchingRule(@NonNull RenamingRule rule) {
+        QueryBuilder<Attribute> qb = store.boxFor(Attribute.class).query().equal(Attribute_.type, rule.getAttributeType().getCode());
+        String source = rule.getSourceName();
+        int starIndex = source.indexOf('*');
+        if (-1 == starIndex) {
+            qb.equal(Attribute_.name, source, QueryBuilder.StringOrder.CASE_INSENSITIVE);
+        } else {
+            String prefix = source.substring(0, starIndex);
+            String suffix = source.substring(starIndex + 1);
+            if (!prefix.isEmpty()) qb.startsWith(Attribute_.name, prefix, QueryBuilder.StringOrder.CASE_INSENSITIVE);
+            if (!suffix.isEmpty()) qb.endsWith(Attribute_.name, suffix, QueryBuilder.StringOrder.CASE_INSENSITIVE);
+        }
+        try (Query<Attribute> q = qb.build()) {
+            return q.findIds();
+        }
+    }
+
+    /**
+     * Rename the given attributes according to the given rule, in one transaction
+     * Attributes whose new name is already used by another attribute of the same type are merged into the latter
+     * Attributes that don't match the given rule, or that match a rule that takes precedence over it, are left untouched
+     *
+     * @param rule         Rule to apply
+     * @param attributeIds IDs of the attributes to rename
+     * @return IDs of the books whose attributes have been renamed or merged
+     */
+    long[] applyRenamingRule(@NonNull RenamingRule rule, long[] attributeIds) {
+        RenamingRuleMatcher matcher = selectRenamingRuleMatcher();
+        Box<Attribute> attrBox = store.boxFor(Attribute.class);
+        Box<AttributeLocation> locationBox = store.boxFor(AttributeLocation.class);
+        Box<Content> contentBox = store.boxFor(Content.class);
+        Box<Group> groupBox = store.boxFor(Group.class);
+        Box<GroupItem> groupItemBox = store.boxFor(GroupItem.class);
+        Set<Long> result = new HashSet<>();
+        boolean updateAuthor = rule.getAttributeType().equals(AttributeType.ARTIST) || rule.getAttributeType().equals(AttributeType.CIRCLE);
+        long now = Instant.now().toEpochMilli();
+
+        store.runInTx(() -> {
+            try (Query<Attribute> attrByUniqueKey = attrBox.query().equal(Attribute_.type, 0).equal(Attribute_.name, "", QueryBuilder.StringOrder.CASE_INSENSITIVE).build()) {
+                for (Attribute attr : attrBox.get(attributeIds)) {
+                    if (null == attr || !rule.doesMatchSourceName(attr.getName())) continue;
+                    RenamingRule matchingRule = matcher.match(attr.getType(), attr.getName());
+                    if (matchingRule != null && matchingRule.id != rule.id) continue;
+                    String newName = rule.getTargetName(attr.getName());
+                    if (newName.equals(attr.getName())) continue;
+
+                    Attribute target = attrByUniqueKey.setParameter(Attribute_.name, newName).setParameter(Attribute_.type, attr.getType().getCode()).findFirst();
+                    List<Content> contents = new ArrayList<>(attr.contents);
+                    if (null == target || target.getId() == attr.getId()) { // Simple renaming
+                        attr.setName(newName);
+                        attrBox.put(attr);
+                        Group group = attr.getLinkedGroup();
+                        if (group != null) {
+                            group.name = newName;
+                            groupBox.put(group);
+                        }
+                    } else { // Merge into the attribute that already has the new name
+                        for (Content c : contents) {
+                            c.getAttributes().removeById(attr.getId());
+                            if (null == c.getAttributes().getById(target.getId())) c.getAttributes().add(target);
+                        }
+                        List<AttributeLocation> locations = new ArrayList<>(attr.getLocations());
+                        target.addLocationsFrom(attr);
+                        attrBox.put(target);
+                        // Locations of sites the target attribute already has
+                        for (AttributeLocation loc : locations)
+                            if (!target.getLocations().contains(loc)) locationBox.remove(loc);
+                        mergeAttributeGroups(attr, target, groupBox, groupItemBox);
+                        attrBox.remove(attr);
+                    }
+                    for (Content c : contents) {
+                        if (updateAuthor) c.computeAuthor();
+                        c.setLastEditDate(now);
+                        result.add(c.getId());
+                    }
+                    contentBox.put(contents);
+                }
+            }
+        });
+        long[] resultIds = Helper.getPrimitiveLongArrayFromSet(result);
+        dynamicGroups.invalidate(resultIds);
+        return resultIds;
+    }
+
+    /**
+     * Move the books of the group of the given source attribute to the group of the given target attribute
+     * NB : Meant to be called inside a transaction
+     *
+     * @param source Attribute that is merged into the target attribute
+     * @param target Attribute the source attribute is merged into
+     */
+    private void mergeAttributeGroups(@NonNull Attribute source, @NonNull Attribute target, @NonNull Box<Group> groupBox, @NonNull Box<GroupItem> groupItemBox) {
+        Group sourceGroup = source.getLinkedGroup();
+        if (null == sourceGroup) return;
+        Group targetGroup = target.getLinkedGroup();
+        if (null == targetGroup) { // The group of the source attribute becomes the group of the target attribute
+            sourceGroup.name = target.getName();
+            groupBox.put(sourceGroup);
+            target.putGroup(sourceGroup);
+            return;
+        }
+
+        Set<Long> targetContentIds = new HashSet<>();
+        for (GroupItem gi : targetGroup.getItems()) targetContentIds.add(gi.getContentId());
+        int order = targetGroup.getItems().size();
+        for (GroupItem gi : sourceGroup.getItems()) {
+            if (targetContentIds.add(gi.getContentId())) {
+                gi.group.setTarget(targetGroup);
+                gi.order = order++;
+                groupItemBox.put(gi);
+            } else {
+                groupItemBox.remove(gi);
+            }
+        }
+        groupBox.remove(sourceGroup);
+        updateGroupSummaries(Collections.singleton(targetGroup.id));
     }
 
 
     // GROUPS
 
     long insertGroup(Group group) {
-        return store.boxFor(Group.class).put(group);
+        long result = store.boxFor(Group.class).put(group);
+        if (group.grouping.equals(Grouping.DYNAMIC)) dynamicGroups.refreshAsync(result, group.searchUri);
+        return result;
     }
 
     long insertGroupItem(GroupItem item) {
-        return store.boxFor(GroupItem.class).put(item);
+        return store.callInTxNoException(() -> {
+            long result = store.boxFor(GroupItem.class).put(item);
+            updateGroupSummaries(Collections.singleton(item.getGroupId()));
+            return result;
+        });
+    }
+
+    void insertGroupItems(@NonNull List<GroupItem> items) {
+        store.runInTx(() -> {
+            store.boxFor(GroupItem.class).put(items);
+            Set<Long> groupIds = new HashSet<>();
+            for (GroupItem gi : items) groupIds.add(gi.getGroupId());
+            updateGroupSummaries(groupIds);
+        });
     }
 
     List<GroupItem> selectGroupItems(long[] groupItemIds) {
@@ -1514,7 +1989,98 @@ public class ObjectBoxDB {
     }
 
     void deleteGroupItems(long[] groupItemIds) {
-        store.boxFor(GroupItem.class).remove(groupItemIds);
+        store.runInTx(() -> {
+            Box<GroupItem> groupItemBox = store.boxFor(GroupItem.class);
+            Set<Long> groupIds = new HashSet<>();
+            for (GroupItem gi : groupItemBox.get(groupItemIds))
+                if (gi != null) groupIds.add(gi.getGroupId());
+            groupItemBox.remove(groupItemIds);
+            updateGroupSummaries(groupIds);
+        });
+    }
+
+    /**
+     * Set the book whose cover is used as the given group's cover
+     *
+     * @param groupId        ID of the group to set the cover for
+     * @param coverContentId ID of the book whose cover to use; must be inside the group
+     */
+    void updateGroupCover(long groupId, long coverContentId) {
+        store.runInTx(() -> {
+            Group g = store.boxFor(Group.class).get(groupId);
+            if (null == g) return;
+            g.coverContent.setTargetId(coverContentId);
+            store.boxFor(Group.class).put(g);
+            updateGroupSummaries(Collections.singleton(groupId));
+        });
+    }
+
+    /**
+     * Update the summary of the given groups (number of items, latest download date of their books, cover)
+     * according to their current items
+     * NB : Meant to be called inside the transaction that changes their items
+     * - The current cover is kept as long as its book is still inside the group; the first book is used otherwise
+     * - Only the groups whose summary has changed are saved
+     *
+     * @param groupIds IDs of the groups to update
+     */
+    void updateGroupSummaries(@NonNull Collection<Long> groupIds) {
+        if (groupIds.isEmpty()) return;
+        Box<Group> groupBox = store.boxFor(Group.class);
+        List<Group> toSave = new ArrayList<>();
+        try (Query<GroupItem> itemsQ = store.boxFor(GroupItem.class).query().equal(GroupItem_.groupId, 0).order(GroupItem_.order).build()) {
+            for (Group g : groupBox.get(groupIds)) {
+                if (null == g) continue;
+                List<GroupItem> items = itemsQ.setParameter(GroupItem_.groupId, g.id).find();
+                long[] contentIds = new long[items.size()];
+                for (int i = 0; i < items.size(); i++) contentIds[i] = items.get(i).getContentId();
+
+                long coverContentId = g.coverContent.getTargetId();
+                if (!ArrayUtils.contains(contentIds, coverContentId))
+                    coverContentId = (contentIds.length > 0) ? contentIds[0] : 0;
+                long latestDownloadDate = selectMaxDownloadDate(contentIds);
+                String coverUri = selectCoverUri(coverContentId);
+
+                if (g.getNbItems() != contentIds.length
+                        || g.getLatestDownloadDate() != latestDownloadDate
+                        || g.coverContent.getTargetId() != coverContentId
+                        || !g.getCoverUri().equals(coverUri)) {
+                    g.setNbItems(contentIds.length).setLatestDownloadDate(latestDownloadDate).setCoverUri(coverUri);
+                    g.coverContent.setTargetId(coverContentId);
+                    toSave.add(g);
+                }
+            }
+        }
+        groupBox.put(toSave);
+    }
+
+    private Collection<Long> selectGroupIdsOf(long contentId) {
+        try (Query<GroupItem> q = store.boxFor(GroupItem.class).query().equal(GroupItem_.contentId, contentId).build()) {
+            return Helper.getListFromPrimitiveArray(q.property(GroupItem_.groupId).findLongs());
+        }
+    }
+
+    /**
+     * @param contentIds IDs of the books to get the latest download date from
+     * @return Latest download date of the given books; 0 if none
+     */
+    long selectMaxDownloadDate(long[] contentIds) {
+        if (0 == contentIds.length) return 0;
+        try (Query<Content> q = store.boxFor(Content.class).query().in(Content_.id, contentIds).build()) {
+            return Math.max(0, q.property(Content_.downloadDate).max());
+        }
+    }
+
+    /**
+     * @param contentId ID of the book to get the cover URI from
+     * @return URI of the cover picture of the given book; empty string if none
+     */
+    String selectCoverUri(long contentId) {
+        if (contentId < 1) return "";
+        Content c = store.boxFor(Content.class).get(contentId);
+        if (null == c) return "";
+        ImageFile cover = DBHelper.safeFindFirst(store.boxFor(ImageFile.class).query().equal(ImageFile_.contentId, contentId).equal(ImageFile_.isCover, true));
+        return (cover != null) ? cover.getUsableUri() : c.getCoverImageUrl();
     }
 
     long countGroupsFor(@NonNull final Grouping grouping) {
@@ -1556,7 +2122,11 @@ public class ObjectBoxDB {
         Property<Group> property = Group_.name;
         if (Preferences.Constant.ORDER_FIELD_CUSTOM == orderField || grouping == Grouping.DL_DATE.getId())
             property = Group_.order;
-        // Order by number of children / download date is done by the DAO
+        else if (Preferences.Constant.ORDER_FIELD_CHILDREN == orderField)
+            property = Group_.nbItems;
+        else if (Preferences.Constant.ORDER_FIELD_DOWNLOAD_PROCESSING_DATE == orderField)
+            property = Group_.latestDownloadDate;
+        // NB : Groups whose items are computed on the fly are ordered again by the DAO
 
         if (orderDesc) qb.orderDesc(property);
         else qb.order(property);
@@ -1588,6 +2158,7 @@ public class ObjectBoxDB {
 
     void deleteGroup(long groupId) {
         store.boxFor(Group.class).remove(groupId);
+        dynamicGroups.remove(groupId);
     }
 
     Query<Group> selectGroupsByGroupingQ(int groupingId) {
@@ -1666,8 +2237,8 @@ public class ObjectBoxDB {
         return DBHelper.safeFind(store.boxFor(Content.class).query().in(Content_.status, libraryStatus).isNull(Content_.readProgress));
     }
 
-    List<Group> selectGroupsWithNoCoverContent() {
-        return DBHelper.safeFind(store.boxFor(Group.class).query().isNull(Group_.coverContentId).or().equal(Group_.coverContentId, 0));
+    long[] selectGroupsWithNoSummary() {
+        return DBHelper.safeFindIds(store.boxFor(Group.class).query().isNull(Group_.nbItems));
     }
 
     List<Content> selectContentWithNullCompleteField() {
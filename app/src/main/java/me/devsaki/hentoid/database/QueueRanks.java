@@ -0,0 +1,234 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.devsaki.hentoid.database.domains.QueueRecord;
+
+/**
+ * Sparse ranking of the queue records
+ * <p>
+ * Ranks are spaced by {@link #GAP}, so that a record can be moved or inserted by giving it a rank between
+ * those of its new neighbours, without renumbering the other records.
+ * When there's no room left between two neighbours, the whole queue is spread again (see {@link #rebalance});
+ * that also happens in the background when ranks are getting too close (see {@link #needsRebalance}).
+ * <p>
+ * All methods take the records of the queue sorted by rank, update that list to reflect the operation
+ * and return the records whose rank has changed (i.e. the records to save)
+ */
+public final class QueueRanks {
+
+    // Space between the ranks of two successive records after a rebalance
+    public static final int GAP = 1024;
+    // Space under which ranks are considered too close
+    static final int MIN_GAP = 4;
+    // Bounds of the ranks, keeping far away from integer overflow
+    private static final long MIN_RANK = Integer.MIN_VALUE / 2;
+    private static final long MAX_RANK = Integer.MAX_VALUE / 2;
+
+    private QueueRanks() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Move the record at the given position to the given position
+     *
+     * @param queue       Records of the queue, sorted by rank
+     * @param oldPosition Position of the record to move
+     * @param newPosition Position to move the record to
+     * @return Records whose rank has changed
+     */
+    public static List<QueueRecord> move(@NonNull List<QueueRecord> queue, int oldPosition, int newPosition) {
+        if (oldPosition == newPosition || oldPosition < 0 || oldPosition >= queue.size())
+            return Collections.emptyList();
+        newPosition = Math.max(0, Math.min(queue.size() - 1, newPosition));
+        QueueRecord record = queue.remove(oldPosition);
+        queue.add(newPosition, record);
+        return placeAt(queue, newPosition);
+    }
+
+    /**
+     * Insert the given record at the given position
+     *
+     * @param queue    Records of the queue, sorted by rank
+     * @param record   Record to insert
+     * @param position Position to insert the record at; inserted at the end if greater than the size of the queue
+     * @return Records whose rank has changed, including the inserted one
+     */
+    public static List<QueueRecord> insert(@NonNull List<QueueRecord> queue, @NonNull QueueRecord record, int position) {
+        position = Math.max(0, Math.min(queue.size(), position));
+        queue.add(position, record);
+        return placeAt(queue, position);
+    }
+
+    /**
+     * Add the given new records at the bottom of the queue, keeping the order they're given in
+     *
+     * @param queue   Records of the queue, sorted by rank
+     * @param records Records to add
+     * @return Records whose rank has changed, including the added ones
+     */
+    public static List<QueueRecord> append(@NonNull List<QueueRecord> queue, @NonNull List<QueueRecord> records) {
+        if (records.isEmpty()) return Collections.emptyList();
+        int nbExisting = queue.size();
+        queue.addAll(records);
+        if (0 == nbExisting) return rebalance(queue);
+
+        long lastRank = queue.get(nbExisting - 1).getRank();
+        if (lastRank + (long) records.size() * GAP > MAX_RANK) return rebalance(queue);
+        for (int i = 0; i < records.size(); i++)
+            records.get(i).setRank((int) (lastRank + (long) (i + 1) * GAP));
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * Move the given records to the top of the queue, keeping the order they're given in
+     *
+     * @param queue     Records of the queue, sorted by rank
+     * @param recordIds IDs of the records to move
+     * @return Records whose rank has changed
+     */
+    public static List<QueueRecord> moveTop(@NonNull List<QueueRecord> queue, @NonNull List<Long> recordIds) {
+        List<QueueRecord> moved = extract(queue, recordIds);
+        if (moved.isEmpty()) return moved;
+        queue.addAll(0, moved);
+        if (queue.size() == moved.size()) return rebalance(queue);
+
+        long firstRank = queue.get(moved.size()).getRank();
+        if (firstRank - (long) moved.size() * GAP < MIN_RANK) return rebalance(queue);
+        for (int i = 0; i < moved.size(); i++)
+            moved.get(i).setRank((int) (firstRank - (long) (moved.size() - i) * GAP));
+        return moved;
+    }
+
+    /**
+     * Move the given records to the bottom of the queue, keeping the order they're given in
+     *
+     * @param queue     Records of the queue, sorted by rank
+     * @param recordIds IDs of the records to move
+     * @return Records whose rank has changed
+     */
+    public static List<QueueRecord> moveBottom(@NonNull List<QueueRecord> queue, @NonNull List<Long> recordIds) {
+        List<QueueRecord> moved = extract(queue, recordIds);
+        if (moved.isEmpty()) return moved;
+        int nbRemaining = queue.size();
+        queue.addAll(moved);
+        if (0 == nbRemaining) return rebalance(queue);
+
+        long lastRank = queue.get(nbRemaining - 1).getRank();
+        if (lastRank + (long) moved.size() * GAP > MAX_RANK) return rebalance(queue);
+        for (int i = 0; i < moved.size(); i++)
+            moved.get(i).setRank((int) (lastRank + (long) (i + 1) * GAP));
+        return moved;
+    }
+
+    /**
+     * Invert the order of the queue
+     *
+     * @param queue Records of the queue, sorted by rank
+     * @return Records whose rank has changed
+     */
+    public static List<QueueRecord> invert(@NonNull List<QueueRecord> queue) {
+        Collections.reverse(queue);
+        return rebalance(queue);
+    }
+
+    /**
+     * Spread the ranks of the queue evenly, keeping its order
+     *
+     * @param queue Records of the queue, in the order to keep
+     * @return Records whose rank has changed
+     */
+    public static List<QueueRecord> rebalance(@NonNull List<QueueRecord> queue) {
+        List<QueueRecord> result = new ArrayList<>();
+        for (int i = 0; i < queue.size(); i++) {
+            QueueRecord record = queue.get(i);
+            int rank = (i + 1) * GAP;
+            if (record.getRank() != rank) {
+                record.setRank(rank);
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param queue Records of the queue, sorted by rank
+     * @return True if the ranks of some records have become too close, or too close to their bounds
+     */
+    public static boolean needsRebalance(@NonNull List<QueueRecord> queue) {
+        if (queue.isEmpty()) return false;
+        if (queue.get(0).getRank() < MIN_RANK / 2 || queue.get(queue.size() - 1).getRank() > MAX_RANK / 2)
+            return true;
+        for (int i = 1; i < queue.size(); i++)
+            if ((long) queue.get(i).getRank() - queue.get(i - 1).getRank() < MIN_GAP) return true;
+        return false;
+    }
+
+    /**
+     * Give the record at the given position a rank between those of its neighbours
+     * NB : The whole queue is spread again if there's no room between them
+     */
+    private static List<QueueRecord> placeAt(@NonNull List<QueueRecord> queue, int position) {
+        QueueRecord record = queue.get(position);
+        Integer rank = rankBetween(
+                (position > 0) ? queue.get(position - 1).getRank() : null,
+                (position < queue.size() - 1) ? queue.get(position + 1).getRank() : null);
+        if (null == rank) return rebalance(queue);
+        record.setRank(rank);
+        return Collections.singletonList(record);
+    }
+
+    /**
+     * Get a rank between the two given ranks
+     *
+     * @param before Rank of the previous record; null if none
+     * @param after  Rank of the next record; null if none
+     * @return Rank between the two given ranks; null if there's no room between them
+     */
+    @Nullable
+    static Integer rankBetween(@Nullable Integer before, @Nullable Integer after) {
+        long result;
+        if (null == before && null == after) result = GAP;
+        else if (null == before) result = (long) after - GAP;
+        else if (null == after) result = (long) before + GAP;
+        else if ((long) after - before < 2) return null;
+        else result = ((long) before + after) / 2;
+        if (result < MIN_RANK || result > MAX_RANK) return null;
+        return (int) result;
+    }
+
+    /**
+     * Remove the records with the given IDs from the given queue
+     *
+     * @return Removed records, in the order of the given IDs
+     */
+    private static List<QueueRecord> extract(@NonNull List<QueueRecord> queue, @NonNull Collection<Long> recordIds) {
+        Set<Long> ids = new LinkedHashSet<>(recordIds);
+        Map<Long, QueueRecord> removed = new HashMap<>(ids.size());
+        List<QueueRecord> remaining = new ArrayList<>(queue.size());
+        for (QueueRecord record : queue) {
+            if (ids.contains(record.id)) removed.put(record.id, record);
+            else remaining.add(record);
+        }
+        queue.clear();
+        queue.addAll(remaining);
+
+        // Keep the order of the given IDs
+        List<QueueRecord> result = new ArrayList<>(removed.size());
+        for (Long id : ids) {
+            QueueRecord record = removed.get(id);
+            if (record != null) result.add(record);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,196 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import me.devsaki.hentoid.database.domains.RenamingRule;
+import me.devsaki.hentoid.enums.AttributeType;
+
+/**
+ * Renaming rules compiled for fast matching against attribute names
+ * <p>
+ * Rules are split per attribute type; for each type :
+ * - rules without wildcard are stored in a hash map indexed by their lowercased source name
+ * - rules with a wildcard (e.g. "prefix*suffix") are stored in a trie of their prefix, or in a
+ * trie of their reversed suffix when they don't have any prefix
+ * <p>
+ * Matching is case-insensitive; only the first '*' of a source name is a wildcard.
+ * When several rules match the same name, the rule without wildcard wins; then the wildcard
+ * rule with the longest literal part (prefix + suffix); then the first rule of the list.
+ * <p>
+ * Immutable once built : build a new instance when the rules change
+ */
+public class RenamingRuleMatcher {
+
+    private static class Wildcard {
+        final RenamingRule rule;
+        final String prefix;
+        final String suffix;
+        final int order;
+
+        Wildcard(@NonNull RenamingRule rule, @NonNull String prefix, @NonNull String suffix, int order) {
+            this.rule = rule;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.order = order;
+        }
+
+        boolean isBetterThan(@Nullable Wildcard other) {
+            if (null == other) return true;
+            int literalLength = prefix.length() + suffix.length();
+            int otherLiteralLength = other.prefix.length() + other.suffix.length();
+            if (literalLength != otherLiteralLength) return literalLength > otherLiteralLength;
+            return order < other.order;
+        }
+    }
+
+    private static class Node {
+        Map<Character, Node> children = null;
+        List<Wildcard> rules = null;
+
+        Node getOrCreateChild(char c) {
+            if (null == children) children = new HashMap<>(4);
+            Node result = children.get(c);
+            if (null == result) {
+                result = new Node();
+                children.put(c, result);
+            }
+            return result;
+        }
+
+        @Nullable
+        Node getChild(char c) {
+            return (null == children) ? null : children.get(c);
+        }
+
+        void addRule(@NonNull Wildcard rule) {
+            if (null == rules) rules = new ArrayList<>(1);
+            rules.add(rule);
+        }
+    }
+
+    private static class TypeMatcher {
+        // Key = lowercased source name
+        final Map<String, RenamingRule> exactRules = new HashMap<>();
+        // Wildcard rules with a prefix, indexed by their prefix
+        final Node prefixTrie = new Node();
+        // Wildcard rules without a prefix, indexed by their reversed suffix
+        final Node suffixTrie = new Node();
+
+        void add(@NonNull RenamingRule rule, int order) {
+            String source = rule.getSourceName().toLowerCase(Locale.ROOT);
+            int starIndex = source.indexOf('*');
+            if (-1 == starIndex) {
+                if (!exactRules.containsKey(source)) exactRules.put(source, rule);
+                return;
+            }
+            Wildcard wildcard = new Wildcard(rule, source.substring(0, starIndex), source.substring(starIndex + 1), order);
+            Node node;
+            if (!wildcard.prefix.isEmpty()) {
+                node = prefixTrie;
+                for (int i = 0; i < wildcard.prefix.length(); i++)
+                    node = node.getOrCreateChild(wildcard.prefix.charAt(i));
+            } else {
+                node = suffixTrie;
+                for (int i = wildcard.suffix.length() - 1; i >= 0; i--)
+                    node = node.getOrCreateChild(wildcard.suffix.charAt(i));
+            }
+            node.addRule(wildcard);
+        }
+
+        @Nullable
+        Wildcard matchWildcard(@NonNull String name) {
+            Wildcard result = null;
+
+            // Rules with a prefix : check the suffix of those whose prefix matches
+            Node node = prefixTrie;
+            int index = 0;
+            while (node != null) {
+                if (node.rules != null)
+                    for (Wildcard w : node.rules)
+                        if (name.length() >= w.prefix.length() + w.suffix.length() && name.endsWith(w.suffix) && w.isBetterThan(result))
+                            result = w;
+                if (index >= name.length()) break;
+                node = node.getChild(name.charAt(index++));
+            }
+
+            // Rules without a prefix : their suffix matches by construction
+            node = suffixTrie;
+            index = name.length() - 1;
+            while (node != null) {
+                if (node.rules != null)
+                    for (Wildcard w : node.rules)
+                        if (w.isBetterThan(result)) result = w;
+                if (index < 0) break;
+                node = node.getChild(name.charAt(index--));
+            }
+
+            return result;
+        }
+    }
+
+    private final Map<AttributeType, TypeMatcher> matchers = new HashMap<>();
+    private final int size;
+
+
+    /**
+     * @param rules Rules to compile, by order of precedence
+     */
+    public RenamingRuleMatcher(@NonNull List<RenamingRule> rules) {
+        int nbRules = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            RenamingRule rule = rules.get(i);
+            if (null == rule.getAttributeType() || null == rule.getSourceName() || null == rule.getTargetName())
+                continue;
+            TypeMatcher matcher = matchers.get(rule.getAttributeType());
+            if (null == matcher) {
+                matcher = new TypeMatcher();
+                matchers.put(rule.getAttributeType(), matcher);
+            }
+            matcher.add(rule, i);
+            nbRules++;
+        }
+        size = nbRules;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * Get the rule that applies to the given attribute
+     *
+     * @param type Type of the attribute
+     * @param name Name of the attribute
+     * @return Rule that applies to the given attribute; null if none
+     */
+    @Nullable
+    public RenamingRule match(@NonNull AttributeType type, @NonNull String name) {
+        TypeMatcher matcher = matchers.get(type);
+        if (null == matcher) return null;
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        RenamingRule result = matcher.exactRules.get(lowerName);
+        if (result != null) return result;
+        Wildcard wildcard = matcher.matchWildcard(lowerName);
+        return (null == wildcard) ? null : wildcard.rule;
+    }
+
+    /**
+     * Get the new name of the given attribute
+     *
+     * @param type Type of the attribute
+     * @param name Name of the attribute
+     * @return New name of the given attribute; null if no rule applies to it
+     */
+    @Nullable
+    public String apply(@NonNull AttributeType type, @NonNull String name) {
+        RenamingRule rule = match(type, name);
+        return (null == rule) ? null : rule.getTargetName(name);
+    }
+}
@@ -0,0 +1,478 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Trigram index of the titles of the books of the collection, used to search titles
+ * without scanning every title stored in the DB
+ * <p>
+ * The indexed texts of a book (title, replacement title and unique site ID) are lowercased;
+ * each trigram of these texts points to the sorted list of the IDs of the books containing it.
+ * Queries are answered by intersecting the lists of the trigrams of the query, then by checking that
+ * each candidate actually contains the query, as the DB's case-insensitive "contains" would.
+ * Results are ranked by relevance (see RANK_*)
+ * NB : Unlike the DB search, replacement titles are searched too, and unique site IDs can match partially
+ * <p>
+ * The index is kept up to date by {@link ObjectBoxDB} when books are inserted, updated or removed.
+ * It is persisted to a file that is deleted as soon as the index is modified, then saved again shortly after;
+ * a missing file therefore means the index has to be rebuilt from the DB
+ */
+public class TitleIndex {
+
+    private static final int VERSION = 1;
+    private static final int GRAM_LENGTH = 3;
+    private static final long SAVE_DELAY_MS = 5000;
+
+    // Separates the indexed texts of a book; trigrams spanning two texts are ignored
+    private static final char SEPARATOR = '\u0000';
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile(String.valueOf(SEPARATOR));
+
+    // Ranks of the results, from the most relevant to the least relevant
+    // An indexed text is the query
+    static final int RANK_EXACT = 0;
+    // An indexed text starts with the query
+    static final int RANK_PREFIX = 1;
+    // The query starts a word of an indexed text
+    static final int RANK_WORD_PREFIX = 2;
+    // The query is inside an indexed text
+    static final int RANK_PHRASE = 3;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    @Nullable
+    private final File file;
+
+    // Key = book ID; value = indexed texts, lowercased and joined with SEPARATOR
+    private final Map<Long, String> texts = new HashMap<>();
+    // Key = trigram; value = IDs of the books whose indexed texts contain it
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    private volatile boolean ready = false;
+    // True if the file reflects the current state of the index
+    private boolean persisted = false;
+    // Incremented each time the index is modified
+    private long modCount = 0;
+    // False if the file is known not to exist
+    private boolean fileMayExist = true;
+    // IDs of the books that have been updated before the index was ready
+    private final Set<Long> updatedDuringBuild = new HashSet<>();
+
+    private final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "title-index");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+
+
+    /**
+     * Sorted list of book IDs
+     * NB : IDs are usually added in increasing order; the list is only sorted again when needed
+     */
+    private static class Postings {
+        long[] ids = new long[4];
+        int size = 0;
+        boolean sorted = true;
+
+        void add(long id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            if (size > 0 && ids[size - 1] > id) sorted = false;
+            ids[size++] = id;
+        }
+
+        void remove(long id) {
+            sort();
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) return;
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        void sort() {
+            if (sorted) return;
+            Arrays.sort(ids, 0, size);
+            sorted = true;
+        }
+    }
+
+    /**
+     * @param file File to persist the index to; null not to persist it
+     */
+    public TitleIndex(@Nullable File file) {
+        this.file = file;
+    }
+
+    /**
+     * Indicate if the index can be used to answer queries
+     *
+     * @return True if the index has been loaded or built
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized int size() {
+        return texts.size();
+    }
+
+    /**
+     * Index the given texts of the given book, replacing those previously indexed for it
+     *
+     * @param id        ID of the book
+     * @param bookTexts Texts to index (title, alternate titles, unique site ID...)
+     */
+    public synchronized void put(long id, @NonNull String... bookTexts) {
+        if (!ready) updatedDuringBuild.add(id);
+        // Until the index is ready, any update makes its file stale
+        if (doPut(id, bookTexts) || !ready) onModified();
+    }
+
+    /**
+     * Remove the given books from the index
+     *
+     * @param ids IDs of the books to remove
+     */
+    public synchronized void remove(long... ids) {
+        boolean modified = false;
+        for (long id : ids) {
+            if (!ready) updatedDuringBuild.add(id);
+            modified |= doRemove(id);
+        }
+        if (modified || !ready) onModified();
+    }
+
+    private boolean doPut(long id, @NonNull String... bookTexts) {
+        String text = joinTexts(bookTexts);
+        String previous = texts.get(id);
+        if (text.equals(previous)) return false;
+
+        if (previous != null) doRemove(id);
+        if (text.isEmpty()) return previous != null;
+
+        texts.put(id, text);
+        for (long gram : getTrigrams(text)) {
+            Postings p = postings.get(gram);
+            if (null == p) {
+                p = new Postings();
+                postings.put(gram, p);
+            }
+            p.add(id);
+        }
+        return true;
+    }
+
+    private boolean doRemove(long id) {
+        String previous = texts.remove(id);
+        if (null == previous) return false;
+        for (long gram : getTrigrams(previous)) {
+            Postings p = postings.get(gram);
+            if (null == p) continue;
+            p.remove(id);
+            if (0 == p.size) postings.remove(gram);
+        }
+        return true;
+    }
+
+    /**
+     * Search the books whose indexed texts contain the given query
+     *
+     * @param query Query to search (case-insensitive)
+     * @return IDs of the matching books, from the most relevant to the least relevant;
+     * null if the index can't answer the query (not ready or query too short), in which case the DB has to be scanned
+     */
+    @Nullable
+    public synchronized long[] search(@NonNull String query) {
+        if (!ready) return null;
+        String phrase = normalize(query);
+        if (phrase.trim().isEmpty()) return null;
+
+        // Posting lists of all trigrams, from the shortest to the longest
+        long[] grams = getTrigrams(phrase);
+        if (0 == grams.length) return null;
+        List<Postings> lists = new ArrayList<>(grams.length);
+        for (long gram : grams) {
+            Postings p = postings.get(gram);
+            if (null == p) return new long[0];
+            p.sort();
+            lists.add(p);
+        }
+        Collections.sort(lists, (o1, o2) -> Integer.compare(o1.size, o2.size));
+
+        long[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int nbCandidates = candidates.length;
+        for (int i = 1; i < lists.size() && nbCandidates > 0; i++)
+            nbCandidates = intersect(candidates, nbCandidates, lists.get(i));
+
+        // Verify and rank candidates
+        List<long[]> results = new ArrayList<>(); // [rank, id]
+        for (int i = 0; i < nbCandidates; i++) {
+            String text = texts.get(candidates[i]);
+            if (null == text) continue;
+            int rank = rank(text, phrase);
+            if (rank != NO_MATCH) results.add(new long[]{rank, candidates[i]});
+        }
+        Collections.sort(results, (o1, o2) -> (o1[0] != o2[0]) ? Long.compare(o1[0], o2[0]) : Long.compare(o1[1], o2[1]));
+
+        long[] result = new long[results.size()];
+        for (int i = 0; i < result.length; i++) result[i] = results.get(i)[1];
+        return result;
+    }
+
+    /**
+     * Keep the given candidates that are in the given posting list
+     *
+     * @return Number of remaining candidates, kept at the beginning of the candidates array
+     */
+    private static int intersect(long[] candidates, int nbCandidates, @NonNull Postings p) {
+        int result = 0;
+        int j = 0;
+        for (int i = 0; i < nbCandidates && j < p.size; i++) {
+            long id = candidates[i];
+            while (j < p.size && p.ids[j] < id) j++;
+            if (j < p.size && p.ids[j] == id) candidates[result++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Rank the given indexed texts against the given query
+     *
+     * @param text   Indexed texts of a book
+     * @param phrase Normalized query
+     * @return Rank of the texts (see RANK_*); NO_MATCH if they don't contain the query
+     */
+    static int rank(@NonNull String text, @NonNull String phrase) {
+        int result = NO_MATCH;
+        for (String part : SEPARATOR_PATTERN.split(text)) {
+            if (part.equals(phrase)) return RANK_EXACT;
+            int index = part.indexOf(phrase);
+            if (0 == index) result = Math.min(result, RANK_PREFIX);
+            else if (index > 0)
+                result = Math.min(result, startsWord(part, phrase, index) ? RANK_WORD_PREFIX : RANK_PHRASE);
+        }
+        return result;
+    }
+
+    /**
+     * Indicate if the given word starts a word of the given text, starting at the given occurrence
+     */
+    private static boolean startsWord(@NonNull String text, @NonNull String word, int index) {
+        while (index > -1) {
+            if (0 == index || !Character.isLetterOrDigit(text.charAt(index - 1))) return true;
+            index = text.indexOf(word, index + 1);
+        }
+        return false;
+    }
+
+    static String normalize(@NonNull String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    private static String joinTexts(@NonNull String... bookTexts) {
+        StringBuilder sb = new StringBuilder();
+        for (String t : bookTexts) {
+            if (null == t || t.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            sb.append(normalize(t).replace(SEPARATOR, ' '));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the distinct trigrams of the given text, encoded as the three 16-bit chars of each trigram
+     */
+    private static long[] getTrigrams(@NonNull String text) {
+        long[] result = new long[Math.max(0, text.length() - GRAM_LENGTH + 1)];
+        int size = 0;
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            char c1 = text.charAt(i);
+            char c2 = text.charAt(i + 1);
+            char c3 = text.charAt(i + 2);
+            if (SEPARATOR == c1 || SEPARATOR == c2 || SEPARATOR == c3) continue;
+            result[size++] = ((long) c1 << 32) | ((long) c2 << 16) | c3;
+        }
+        Arrays.sort(result, 0, size);
+        int nbDistinct = 0;
+        for (int i = 0; i < size; i++)
+            if (0 == i || result[i] != result[i - 1]) result[nbDistinct++] = result[i];
+        return Arrays.copyOf(result, nbDistinct);
+    }
+
+
+    // == BUILD & PERSISTENCE
+
+    /**
+     * Index the given book as part of a build, when the index couldn't be loaded
+     * NB : Books updated or removed through put and remove before the index is ready have precedence over the built ones
+     */
+    synchronized void buildPut(long id, @NonNull String... bookTexts) {
+        if (!updatedDuringBuild.contains(id)) doPut(id, bookTexts);
+    }
+
+    synchronized void endBuild() {
+        updatedDuringBuild.clear();
+        ready = true;
+        persisted = false;
+        scheduleSave();
+    }
+
+    private void onModified() {
+        if (fileMayExist && file != null) {
+            if (file.exists() && !file.delete())
+                Timber.w("Couldn't invalidate title index %s", file.getAbsolutePath());
+            fileMayExist = false;
+        }
+        persisted = false;
+        modCount++;
+        if (ready) scheduleSave();
+    }
+
+    private void scheduleSave() {
+        if (null == file) return;
+        if (savePending.compareAndSet(false, true))
+            saveExecutor.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Save the index to its file
+     * NB : The index is serialized in memory; searches don't wait for the file to be written
+     */
+    void save() {
+        savePending.set(false);
+        if (null == file) return;
+        Buffer data = new Buffer();
+        long savedModCount;
+        synchronized (this) {
+            if (!ready || persisted) return;
+            serialize(data);
+            savedModCount = modCount;
+        }
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+            sink.writeAll(data);
+        } catch (IOException e) {
+            Timber.w(e);
+            return;
+        }
+        synchronized (this) {
+            // Modified while being written => the file is already stale; the next save will write it again
+            if (modCount != savedModCount) {
+                if (!tmp.delete()) Timber.w("Couldn't delete %s", tmp.getAbsolutePath());
+                return;
+            }
+            if (tmp.renameTo(file)) {
+                persisted = true;
+                fileMayExist = true;
+            } else Timber.w("Couldn't save title index to %s", file.getAbsolutePath());
+        }
+    }
+
+    private void serialize(@NonNull Buffer sink) {
+        sink.writeInt(VERSION);
+        sink.writeInt(texts.size());
+        for (Map.Entry<Long, String> entry : texts.entrySet()) {
+            byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            sink.writeLong(entry.getKey());
+            sink.writeInt(bytes.length);
+            sink.write(bytes);
+        }
+        sink.writeInt(postings.size());
+        for (Map.Entry<Long, Postings> entry : postings.entrySet()) {
+            Postings p = entry.getValue();
+            p.sort();
+            sink.writeLong(entry.getKey());
+            sink.writeInt(p.size);
+            // IDs are stored as variable-length deltas
+            long previous = 0;
+            for (int i = 0; i < p.size; i++) {
+                writeVarLong(sink, p.ids[i] - previous);
+                previous = p.ids[i];
+            }
+        }
+    }
+
+    /**
+     * Load the index from its file
+     *
+     * @return True if the index has been loaded; false if it has to be built
+     */
+    synchronized boolean load() {
+        // Books updated before loading aren't up to date in the file, which has been deleted anyway
+        if (null == file || !updatedDuringBuild.isEmpty() || !file.exists()) return false;
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            if (source.readInt() != VERSION) return false;
+            int nbTexts = source.readInt();
+            for (int i = 0; i < nbTexts; i++) {
+                long id = source.readLong();
+                int length = source.readInt();
+                texts.put(id, source.readUtf8(length));
+            }
+            int nbPostings = source.readInt();
+            for (int i = 0; i < nbPostings; i++) {
+                long gram = source.readLong();
+                Postings p = new Postings();
+                p.size = source.readInt();
+                p.ids = new long[Math.max(4, p.size)];
+                long previous = 0;
+                for (int j = 0; j < p.size; j++) {
+                    previous += readVarLong(source);
+                    p.ids[j] = previous;
+                }
+                postings.put(gram, p);
+            }
+        } catch (IOException | RuntimeException e) {
+            Timber.w(e, "Couldn't load title index");
+            texts.clear();
+            postings.clear();
+            return false;
+        }
+        ready = true;
+        persisted = true;
+        return true;
+    }
+
+    private static void writeVarLong(@NonNull Buffer sink, long value) {
+        while ((value & ~0x7FL) != 0) {
+            sink.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        sink.writeByte((int) value);
+    }
+
+    private static long readVarLong(@NonNull BufferedSource source) throws IOException {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = source.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+}
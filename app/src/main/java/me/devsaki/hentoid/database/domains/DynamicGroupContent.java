@@ -0,0 +1,75 @@
+package me.devsaki.hentoid.database.domains;
+
+import io.objectbox.annotation.Entity;
+import io.objectbox.annotation.Id;
+import io.objectbox.annotation.Index;
+
+/**
+ * Materialized content of a dynamic group, i.e. IDs of the books matching its search criteria
+ * <p>
+ * Kept apart from {@link Group} so that saving a Group that has been loaded earlier doesn't overwrite
+ * content that has been computed in the meantime; no need to save that into JSON
+ */
+@Entity
+public class DynamicGroupContent {
+
+    @Id
+    public long id;
+    @Index
+    private long groupId;
+    // Search criteria the content has been computed with
+    private String searchUri;
+    // Sorted IDs of the books of the group
+    private long[] contentIds;
+    private long coverContentId;
+    // True if books may have been inserted, updated or removed since the content has been computed
+    private boolean outdated;
+
+
+    public DynamicGroupContent() { // Required by ObjectBox when an alternate constructor exists
+    }
+
+    public DynamicGroupContent(long groupId) {
+        this.groupId = groupId;
+    }
+
+    public long getGroupId() {
+        return groupId;
+    }
+
+    public String getSearchUri() {
+        return (null == searchUri) ? "" : searchUri;
+    }
+
+    public DynamicGroupContent setSearchUri(String searchUri) {
+        this.searchUri = searchUri;
+        return this;
+    }
+
+    public long[] getContentIds() {
+        return (null == contentIds) ? new long[0] : contentIds;
+    }
+
+    public DynamicGroupContent setContentIds(long[] contentIds) {
+        this.contentIds = contentIds;
+        return this;
+    }
+
+    public long getCoverContentId() {
+        return coverContentId;
+    }
+
+    public DynamicGroupContent setCoverContentId(long coverContentId) {
+        this.coverContentId = coverContentId;
+        return this;
+    }
+
+    public boolean isOutdated() {
+        return outdated;
+    }
+
+    public DynamicGroupContent setOutdated(boolean outdated) {
+        this.outdated = outdated;
+        return this;
+    }
+}
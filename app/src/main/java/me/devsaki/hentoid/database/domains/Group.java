@@ -44,6 +44,14 @@ public class Group {
     private boolean favourite = false;
     private int rating = 0;
 
+    // Summary of the group's items, kept up to date by the DB whenever they change
+    // Useful to sort and display groups without loading their items; no need to save that into JSON
+    @Index
+    private int nbItems = 0;
+    @Index
+    private long latestDownloadDate = 0;
+    private String coverUri = "";
+
     // Needs to be in the DB to keep the information when deletion takes a long time
     // and user navigates away; no need to save that into JSON
     private boolean isBeingProcessed = false;
@@ -128,6 +136,42 @@ public class Group {
         return this;
     }
 
+    /**
+     * @return Number of books inside the group
+     */
+    public int getNbItems() {
+        return nbItems;
+    }
+
+    public Group setNbItems(int nbItems) {
+        this.nbItems = nbItems;
+        return this;
+    }
+
+    /**
+     * @return Latest download date of the books inside the group
+     */
+    public long getLatestDownloadDate() {
+        return latestDownloadDate;
+    }
+
+    public Group setLatestDownloadDate(long latestDownloadDate) {
+        this.latestDownloadDate = latestDownloadDate;
+        return this;
+    }
+
+    /**
+     * @return URI of the cover picture of the book used as the group's cover (see coverContent)
+     */
+    public String getCoverUri() {
+        return (null == coverUri) ? "" : coverUri;
+    }
+
+    public Group setCoverUri(String coverUri) {
+        this.coverUri = coverUri;
+        return this;
+    }
+
     public Group setHasCustomBookOrder(boolean hasCustomBookOrder) {
         this.hasCustomBookOrder = hasCustomBookOrder;
         return this;
@@ -53,6 +53,8 @@ public class RenamingRule {
 
     public void setSourceName(String sourceName) {
         this.sourceName = sourceName;
+        leftPart = null;
+        rightPart = null;
     }
 
     public void setTargetName(String targetName) {
@@ -63,25 +65,36 @@ public class RenamingRule {
         int starIndex = sourceName.indexOf('*');
         if (-1 == starIndex) return sourceName.equalsIgnoreCase(name);
         else {
-            boolean result = true;
+            if (null == leftPart) computeParts();
             String strLower = name.toLowerCase(Locale.ROOT);
-            if (!leftPart.isEmpty()) result = strLower.startsWith(leftPart);
-            if (!rightPart.isEmpty()) result &= strLower.endsWith(rightPart);
-            return result;
+            return strLower.length() >= leftPart.length() + rightPart.length()
+                    && strLower.startsWith(leftPart)
+                    && strLower.endsWith(rightPart);
         }
     }
 
+    /**
+     * Get the new name of the given attribute name, that is supposed to match the source name of this rule
+     * The first '*' of the target name is replaced by the part of the given name matched by the source name's wildcard
+     *
+     * @param name Attribute name to get the new name for
+     * @return New name of the given attribute name
+     */
     public String getTargetName(@NonNull String name) {
-        if (!targetName.contains("*")) return targetName;
+        int targetStarIndex = targetName.indexOf('*');
+        if (-1 == targetStarIndex) return targetName;
 
         int starIndex = sourceName.indexOf('*');
         if (-1 == starIndex) return targetName;
         else {
-            String sourceWildcard = name;
-            if (!leftPart.isEmpty()) sourceWildcard = sourceWildcard.substring(leftPart.length());
-            if (!rightPart.isEmpty())
-                sourceWildcard = sourceWildcard.substring(0, sourceWildcard.length() - rightPart.length() - 1);
-            return targetName.replaceFirst("\\*", sourceWildcard);
+            if (null == leftPart) computeParts();
+            // Lowercasing may change the length of some names; the wildcard is then taken from the lowercased name
+            String str = name;
+            String strLower = name.toLowerCase(Locale.ROOT);
+            if (strLower.length() != name.length()) str = strLower;
+            String sourceWildcard = str.substring(leftPart.length(), Math.max(leftPart.length(), str.length() - rightPart.length()));
+            // Plain substitution, as the wildcard may contain regex special chars
+            return targetName.substring(0, targetStarIndex) + sourceWildcard + targetName.substring(targetStarIndex + 1);
         }
     }
 
@@ -89,7 +102,7 @@ public class RenamingRule {
         int starIndex = sourceName.indexOf('*');
         if (starIndex > -1) {
             leftPart = sourceName.substring(0, starIndex).toLowerCase(Locale.ROOT);
-            rightPart = (starIndex < sourceName.length() - 1) ? sourceName.substring(starIndex + 1, sourceName.length() - 1).toLowerCase(Locale.ROOT) : "";
+            rightPart = sourceName.substring(starIndex + 1).toLowerCase(Locale.ROOT);
         }
     }
 
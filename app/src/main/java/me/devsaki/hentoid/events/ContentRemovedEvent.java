@@ -0,0 +1,16 @@
+package me.devsaki.hentoid.events;
+
+import me.devsaki.hentoid.enums.Site;
+
+/**
+ * Tracks books that have been removed from the DB
+ */
+public class ContentRemovedEvent {
+    public final Site site;
+    public final String url;
+
+    public ContentRemovedEvent(final Site site, final String url) {
+        this.site = site;
+        this.url = url;
+    }
+}
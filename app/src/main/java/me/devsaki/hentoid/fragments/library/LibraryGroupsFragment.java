@@ -139,18 +139,18 @@ public class LibraryGroupsFragment extends Fragment implements
 
         @Override
         public boolean areContentsTheSame(GroupDisplayItem oldItem, GroupDisplayItem newItem) {
-            return oldItem.getGroup().coverContent.getTargetId() == newItem.getGroup().coverContent.getTargetId()
+            return oldItem.getGroup().getCoverUri().equals(newItem.getGroup().getCoverUri())
                     && oldItem.getGroup().isFavourite() == newItem.getGroup().isFavourite()
                     && oldItem.getGroup().getRating() == newItem.getGroup().getRating()
-                    && oldItem.getGroup().items.size() == newItem.getGroup().items.size();
+                    && oldItem.getGroup().getNbItems() == newItem.getGroup().getNbItems();
         }
 
         @Override
         public @org.jetbrains.annotations.Nullable Object getChangePayload(GroupDisplayItem oldItem, int oldPos, GroupDisplayItem newItem, int newPos) {
             GroupItemBundle diffBundleBuilder = new GroupItemBundle();
 
-            if (!newItem.getGroup().coverContent.isNull() && oldItem.getGroup().coverContent.getTargetId() != newItem.getGroup().coverContent.getTargetId()) {
-                diffBundleBuilder.setCoverUri(newItem.getGroup().coverContent.getTarget().getCover().getUsableUri());
+            if (!oldItem.getGroup().getCoverUri().equals(newItem.getGroup().getCoverUri())) {
+                diffBundleBuilder.setCoverUri(newItem.getGroup().getCoverUri());
             }
             if (oldItem.getGroup().isFavourite() != newItem.getGroup().isFavourite()) {
                 diffBundleBuilder.setFavourite(newItem.getGroup().isFavourite());
@@ -826,7 +826,7 @@ public class LibraryGroupsFragment extends Fragment implements
             case (Preferences.Constant.ORDER_FIELD_TITLE):
                 return (g.getName().isEmpty()) ? "" : (g.getName().charAt(0) + "").toUpperCase();
             case (Preferences.Constant.ORDER_FIELD_CHILDREN): {
-                return Integer.toString(g.getContentIds().size());
+                return Integer.toString(g.getNbItems());
             }
             case (Preferences.Constant.ORDER_FIELD_DOWNLOAD_PROCESSING_DATE): // too expensive to process here
             case (Preferences.Constant.ORDER_FIELD_NONE):
@@ -38,6 +38,7 @@ import me.devsaki.hentoid.util.ToastHelper
 import me.devsaki.hentoid.util.download.DownloadSpeedLimiter
 import me.devsaki.hentoid.util.download.RequestQueueManager
 import me.devsaki.hentoid.util.file.FileHelper
+import me.devsaki.hentoid.util.network.PersistentCookieJar
 import me.devsaki.hentoid.util.network.WebkitPackageHelper
 import me.devsaki.hentoid.viewmodels.PreferencesViewModel
 import me.devsaki.hentoid.viewmodels.ViewModelFactory
@@ -244,6 +245,7 @@ class PreferencesFragment : PreferenceFragmentCompat(),
             return
         } else {
             CookieManager.getInstance().removeAllCookies {
+                PersistentCookieJar.getInstance().clear()
                 caption = R.string.pref_browser_clear_cookies_ok
                 if (!it) caption = R.string.pref_browser_clear_cookies_ko
                 showSnackBar(caption)
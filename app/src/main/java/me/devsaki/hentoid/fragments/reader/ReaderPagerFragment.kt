@@ -3,8 +3,6 @@ package me.devsaki.hentoid.fragments.reader
 import android.animation.Animator
 import android.animation.AnimatorListenerAdapter
 import android.annotation.SuppressLint
-import android.content.SharedPreferences
-import android.content.SharedPreferences.OnSharedPreferenceChangeListener
 import android.graphics.Bitmap
 import android.graphics.Point
 import android.graphics.Typeface
@@ -101,9 +99,7 @@ class ReaderPagerFragment : Fragment(R.layout.fragment_reader_pager),
     private lateinit var adapter: ImagePagerAdapter
     private lateinit var llm: PrefetchLinearLayoutManager
     private lateinit var pageSnapWidget: PageSnapWidget
-    private val listener = OnSharedPreferenceChangeListener { _: SharedPreferences, key: String ->
-        onSharedPreferenceChanged(key)
-    }
+    private val listener = Preferences.OnChangeListener { key -> onSharedPreferenceChanged(key) }
     private lateinit var viewModel: ReaderViewModel
     private var absImageIndex = -1 // Absolute (book scale) 0-based image index
 
@@ -183,7 +179,21 @@ class ReaderPagerFragment : Fragment(R.layout.fragment_reader_pager),
         rescaleDebouncer = DebouncerK(this.lifecycleScope, 100) { scale: Float ->
             adapter.multiplyScale(scale)
         }
-        Preferences.registerPrefsChangedListener(listener)
+        Preferences.subscribe(
+            listener,
+            Preferences.Key.VIEWER_BROWSE_MODE,
+            Preferences.Key.VIEWER_HOLD_TO_ZOOM,
+            Preferences.Key.VIEWER_CONTINUOUS,
+            Preferences.Key.VIEWER_KEEP_SCREEN_ON,
+            Preferences.Key.VIEWER_ZOOM_TRANSITIONS,
+            Preferences.Key.VIEWER_SEPARATING_BARS,
+            Preferences.Key.VIEWER_AUTO_ROTATE,
+            Preferences.Key.VIEWER_IMAGE_DISPLAY,
+            Preferences.Key.VIEWER_RENDERING,
+            Preferences.Key.VIEWER_SWIPE_TO_FLING,
+            Preferences.Key.VIEWER_DISPLAY_PAGENUM,
+            Preferences.Key.VIEWER_PAGE_TURN_SWIPE
+        )
     }
 
     @SuppressLint("NonConstantResourceId")
@@ -338,7 +348,7 @@ class ReaderPagerFragment : Fragment(R.layout.fragment_reader_pager),
     }
 
     override fun onDestroy() {
-        Preferences.unregisterPrefsChangedListener(listener)
+        Preferences.unsubscribe(listener)
         adapter.setRecyclerView(null)
         adapter.destroy()
         super.onDestroy()
@@ -9,11 +9,13 @@ import android.view.ViewGroup
 import androidx.activity.OnBackPressedCallback
 import androidx.fragment.app.Fragment
 import androidx.lifecycle.ViewModelProvider
+import androidx.paging.PagedList
+import androidx.recyclerview.widget.AsyncDifferConfig
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.LinearLayoutManager
 import com.mikepenz.fastadapter.FastAdapter
 import com.mikepenz.fastadapter.IAdapter
-import com.mikepenz.fastadapter.adapters.ItemAdapter
-import com.mikepenz.fastadapter.diff.FastAdapterDiffUtil.set
+import com.mikepenz.fastadapter.paged.PagedModelAdapter
 import me.devsaki.hentoid.R
 import me.devsaki.hentoid.activities.DuplicateDetectorActivity
 import me.devsaki.hentoid.database.domains.DuplicateEntry
@@ -45,8 +47,25 @@ class DuplicateMainFragment : Fragment(R.layout.fragment_duplicate_main) {
     lateinit var viewModel: DuplicateViewModel
 
     // UI
-    private val itemAdapter = ItemAdapter<DuplicateItem>()
-    private val fastAdapter = FastAdapter.with(itemAdapter)
+    private val asyncDifferConfig =
+        AsyncDifferConfig.Builder(object : DiffUtil.ItemCallback<DuplicateEntry>() {
+            override fun areItemsTheSame(oldItem: DuplicateEntry, newItem: DuplicateEntry): Boolean {
+                return oldItem.referenceId == newItem.referenceId
+            }
+
+            override fun areContentsTheSame(
+                oldItem: DuplicateEntry,
+                newItem: DuplicateEntry
+            ): Boolean {
+                return oldItem.nbDuplicates == newItem.nbDuplicates
+                        && oldItem.referenceContent == newItem.referenceContent
+            }
+        }).build()
+    private val pagedItemAdapter = PagedModelAdapter<DuplicateEntry, DuplicateItem>(
+        asyncDifferConfig,
+        { DuplicateItem(null, DuplicateItem.ViewType.MAIN) },
+        { DuplicateItem(it, DuplicateItem.ViewType.MAIN) })
+    private val fastAdapter = FastAdapter.with(pagedItemAdapter)
     private lateinit var topPanel: DuplicateMainTopPanel
 
     // VARS
@@ -91,6 +110,8 @@ class DuplicateMainFragment : Fragment(R.layout.fragment_duplicate_main) {
         binding.list.layoutManager =
             LinearLayoutManager(requireContext(), LinearLayoutManager.VERTICAL, false)
         FastScrollerBuilder(binding.list).build()
+        val placeholder = DuplicateItem(null, DuplicateItem.ViewType.MAIN)
+        fastAdapter.registerItemFactory(placeholder.type, placeholder)
         binding.list.adapter = fastAdapter
 
         // Item click listener
@@ -129,7 +150,7 @@ class DuplicateMainFragment : Fragment(R.layout.fragment_duplicate_main) {
     }
 
     @Synchronized
-    private fun onDuplicatesChanged(duplicates: List<DuplicateEntry>) {
+    private fun onDuplicatesChanged(duplicates: PagedList<DuplicateEntry>) {
         Timber.i(">> New duplicates ! Size=%s", duplicates.size)
 
         // Update settings panel visibility
@@ -154,23 +175,9 @@ class DuplicateMainFragment : Fragment(R.layout.fragment_duplicate_main) {
 
         // TODO update UI title
 
-        // Group by reference book and count duplicates
-        val entries: MutableList<DuplicateEntry> = ArrayList()
-        // TODO use groupingBy + eachCount
-        val map =
-            duplicates.groupBy { it.referenceContent }.mapValues { it.value.sumOf { 1L } }
-                .toMap()
-        for (mapEntry in map) {
-            if (mapEntry.key != null) {
-                val entry = DuplicateEntry(mapEntry.key!!.id, mapEntry.key!!.size)
-                entry.referenceContent = mapEntry.key!!
-                entry.nbDuplicates = mapEntry.value.toInt()
-                entries.add(entry)
-            }
-        }
-        // Transform to DuplicateItem
-        val items = entries.map { DuplicateItem(it, DuplicateItem.ViewType.MAIN) }
-        set(itemAdapter, items)
+        // One entry per reference book, with its number of duplicates
+        // NB : Only items whose reference or count has changed are updated
+        pagedItemAdapter.submitList(duplicates)
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
@@ -236,7 +243,7 @@ class DuplicateMainFragment : Fragment(R.layout.fragment_duplicate_main) {
             // TODO find a way to display the "try again" message when the service doesn't stop normally
             topPanel.dismiss()
             topPanel.onServiceDestroyedEvent()
-            if (0 == itemAdapter.adapterItemCount)
+            if (0 == pagedItemAdapter.adapterItemCount)
                 binding.emptyTxt.text = context?.getText(R.string.duplicate_empty_no_result)
         }
     }
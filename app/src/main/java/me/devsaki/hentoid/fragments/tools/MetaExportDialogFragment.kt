@@ -2,6 +2,7 @@ package me.devsaki.hentoid.fragments.tools
 
 import android.graphics.PorterDuff
 import android.graphics.PorterDuffColorFilter
+import android.net.Uri
 import android.os.Build
 import android.os.Bundle
 import android.os.Handler
@@ -9,6 +10,7 @@ import android.os.Looper
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
+import androidx.annotation.StringRes
 import androidx.core.view.isVisible
 import androidx.fragment.app.DialogFragment
 import androidx.fragment.app.FragmentManager
@@ -17,7 +19,6 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder
 import com.google.android.material.snackbar.BaseTransientBottomBar
 import com.google.android.material.snackbar.Snackbar
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import me.devsaki.hentoid.R
@@ -25,21 +26,19 @@ import me.devsaki.hentoid.core.URL_GITHUB_WIKI_TRANSFER
 import me.devsaki.hentoid.core.startBrowserActivity
 import me.devsaki.hentoid.database.CollectionDAO
 import me.devsaki.hentoid.database.ObjectBoxDAO
-import me.devsaki.hentoid.database.domains.Content
+import me.devsaki.hentoid.database.domains.Group
 import me.devsaki.hentoid.databinding.DialogToolsMetaExportBinding
 import me.devsaki.hentoid.enums.AttributeType
 import me.devsaki.hentoid.enums.Grouping
 import me.devsaki.hentoid.enums.StorageLocation
-import me.devsaki.hentoid.json.JsonContentCollection
+import me.devsaki.hentoid.json.JsonContentCollectionWriter
 import me.devsaki.hentoid.util.ContentHelper
 import me.devsaki.hentoid.util.Helper
 import me.devsaki.hentoid.util.JsonHelper
 import me.devsaki.hentoid.util.ThemeHelper
 import me.devsaki.hentoid.util.file.FileHelper
 import timber.log.Timber
-import java.io.ByteArrayInputStream
 import java.io.IOException
-import java.nio.charset.StandardCharsets
 
 class MetaExportDialogFragment : DialogFragment(R.layout.dialog_tools_meta_export) {
 
@@ -218,65 +217,85 @@ class MetaExportDialogFragment : DialogFragment(R.layout.dialog_tools_meta_expor
             it.exportProgressBar.visibility = View.VISIBLE
 
             lifecycleScope.launch {
-                val result = withContext(Dispatchers.IO) {
-                    try {
-                        val collection = getExportedCollection(
+                // Message to display if the export fails; 0 if it succeeds
+                val failureMessage = withContext(Dispatchers.IO) {
+                    var targetUri: Uri? = null
+                    val message = try {
+                        val targetFileName = getTargetFileName(
                             exportLibrary,
                             exportFavsOnly,
-                            exportCustomGroups,
                             exportQueue,
                             exportBookmarks
                         )
-                        return@withContext JsonHelper.serializeToJson(
-                            collection,
-                            JsonContentCollection::class.java
+                        val uri = FileHelper.createNewDownloadFile(
+                            requireContext(),
+                            targetFileName,
+                            JsonHelper.JSON_MIME_TYPE
                         )
+                        targetUri = uri
+                        FileHelper.openDownloadOutputStream(requireContext(), uri).use { output ->
+                            // Using streaming here to support large collections
+                            JsonContentCollectionWriter(output).use { writer ->
+                                writeExportedCollection(
+                                    writer,
+                                    exportLibrary,
+                                    exportFavsOnly,
+                                    exportCustomGroups,
+                                    exportQueue,
+                                    exportBookmarks
+                                )
+                            }
+                        }
+                        0
+                    } catch (e: IOException) {
+                        Timber.w(e)
+                        R.string.copy_download_folder_fail
+                    } catch (e: IllegalArgumentException) {
+                        Timber.w(e)
+                        R.string.copy_download_folder_fail
                     } catch (e: Exception) {
                         Timber.w(e)
                         Helper.logException(e)
-                        Snackbar.make(
-                            it.root,
-                            R.string.export_failed,
-                            BaseTransientBottomBar.LENGTH_LONG
-                        ).show()
-                        // Dismiss after 3s, for the user to be able to see and use the snackbar
-                        delay(3000)
-                        dismissAllowingStateLoss()
+                        R.string.export_failed
+                    }
+                    // Don't leave a truncated file in the Downloads folder
+                    if (message != 0) targetUri?.let { uri ->
+                        FileHelper.removeDownloadFile(requireContext(), uri)
                     }
-                    return@withContext ""
+                    message
                 }
-                if (result.isNotEmpty()) {
+                if (0 == failureMessage) {
                     it.exportProgressBar.max = 2
                     it.exportProgressBar.progress = 1
                     it.exportProgressBar.isIndeterminate = false
-                    onJsonSerialized(
-                        result,
-                        exportLibrary,
-                        exportFavsOnly,
-                        exportQueue,
-                        exportBookmarks
-                    )
+                    onExportSuccess()
+                } else {
+                    onExportFailed(it, failureMessage)
                 }
                 it.exportProgressBar.progress = 2
             }
         }
     }
 
-    private fun getExportedCollection(
+    private fun writeExportedCollection(
+        writer: JsonContentCollectionWriter,
         exportLibrary: Boolean,
         exportFavsOnly: Boolean,
         exportCustomgroups: Boolean,
         exportQueue: Boolean,
         exportBookmarks: Boolean
-    ): JsonContentCollection {
-        val jsonContentCollection = JsonContentCollection()
+    ) {
+        // Sections are written in the order expected by JsonContentCollectionWriter
+        if (exportBookmarks) writer.writeBookmarks(dao.selectAllBookmarks())
 
-        if (exportLibrary) dao.streamAllInternalBooks(
-            getSelectedRootPath(locationIndex),
-            exportFavsOnly
-        ) { content: Content ->
-            jsonContentCollection.addToLibrary(content)
-        } // Using streaming here to support large collections
+        val groups = LinkedHashMap<Grouping, List<Group>>()
+        groups[Grouping.DYNAMIC] = dao.selectGroups(Grouping.DYNAMIC.id)
+        if (exportCustomgroups) groups[Grouping.CUSTOM] = dao.selectGroups(Grouping.CUSTOM.id)
+        writer.writeGroupings(groups)
+
+        if (exportLibrary) writer.writeLibrary { consumer ->
+            dao.streamAllInternalBooks(getSelectedRootPath(locationIndex), exportFavsOnly, consumer)
+        }
         if (exportQueue) {
             val regularQueue = dao.selectQueue()
             val errorsQueue = dao.selectErrorContent()
@@ -287,29 +306,17 @@ class MetaExportDialogFragment : DialogFragment(R.layout.dialog_tools_meta_expor
                     return@map c
                 }.toMutableList()
             exportedQueue.addAll(errorsQueue)
-            jsonContentCollection.queue = exportedQueue
+            writer.writeQueue(exportedQueue)
         }
-        jsonContentCollection.setGroups(
-            Grouping.DYNAMIC,
-            dao.selectGroups(Grouping.DYNAMIC.id)
-        )
-        if (exportCustomgroups) jsonContentCollection.setGroups(
-            Grouping.CUSTOM,
-            dao.selectGroups(Grouping.CUSTOM.id)
-        )
-        if (exportBookmarks) jsonContentCollection.bookmarks = dao.selectAllBookmarks()
-        jsonContentCollection.renamingRules =
-            dao.selectRenamingRules(AttributeType.UNDEFINED, null)
-        return jsonContentCollection
+        writer.writeRenamingRules(dao.selectRenamingRules(AttributeType.UNDEFINED, null))
     }
 
-    private fun onJsonSerialized(
-        json: String,
+    private fun getTargetFileName(
         exportLibrary: Boolean,
         exportFavsOnly: Boolean,
         exportQueue: Boolean,
         exportBookmarks: Boolean
-    ) {
+    ): String {
         // Use a random number to avoid erasing older exports by mistake
         var targetFileName = Helper.getRandomInt(9999).toString() + ".json"
         if (exportBookmarks) targetFileName = "bkmks-$targetFileName"
@@ -317,52 +324,40 @@ class MetaExportDialogFragment : DialogFragment(R.layout.dialog_tools_meta_expor
         if (exportLibrary && !exportFavsOnly) targetFileName =
             "library-$targetFileName" else if (exportLibrary) targetFileName =
             "favs-$targetFileName"
-        targetFileName = "export-$targetFileName"
-        try {
-            FileHelper.openNewDownloadOutputStream(
-                requireContext(),
-                targetFileName,
-                JsonHelper.JSON_MIME_TYPE
-            ).use { newDownload ->
-                ByteArrayInputStream(json.toByteArray(StandardCharsets.UTF_8))
-                    .use { input -> Helper.copy(input, newDownload) }
-            }
-            binding?.let {
-                Snackbar.make(
-                    it.root,
-                    R.string.copy_download_folder_success,
-                    BaseTransientBottomBar.LENGTH_LONG
-                )
-                    .setAction(R.string.open_folder) {
-                        FileHelper.openFile(
-                            requireContext(),
-                            FileHelper.getDownloadsFolder()
-                        )
-                    }
-                    .show()
-            }
-        } catch (e: IOException) {
-            binding?.let {
-                Snackbar.make(
-                    it.root,
-                    R.string.copy_download_folder_fail,
-                    BaseTransientBottomBar.LENGTH_LONG
-                ).show()
-            }
-        } catch (e: IllegalArgumentException) {
-            binding?.let {
-                Snackbar.make(
-                    it.root,
-                    R.string.copy_download_folder_fail,
-                    BaseTransientBottomBar.LENGTH_LONG
-                ).show()
-            }
+        return "export-$targetFileName"
+    }
+
+    private fun onExportSuccess() {
+        binding?.let {
+            Snackbar.make(
+                it.root,
+                R.string.copy_download_folder_success,
+                BaseTransientBottomBar.LENGTH_LONG
+            )
+                .setAction(R.string.open_folder) {
+                    FileHelper.openFile(
+                        requireContext(),
+                        FileHelper.getDownloadsFolder()
+                    )
+                }
+                .show()
         }
         dao.cleanup()
         // Dismiss after 3s, for the user to be able to see and use the snackbar
         Handler(Looper.getMainLooper()).postDelayed({ this.dismissAllowingStateLoss() }, 3000)
     }
 
+    private fun onExportFailed(binding: DialogToolsMetaExportBinding, @StringRes message: Int) {
+        Snackbar.make(
+            binding.root,
+            message,
+            BaseTransientBottomBar.LENGTH_LONG
+        ).show()
+        dao.cleanup()
+        // Dismiss after 3s, for the user to be able to see and use the snackbar
+        Handler(Looper.getMainLooper()).postDelayed({ this.dismissAllowingStateLoss() }, 3000)
+    }
+
     companion object {
         fun invoke(fragmentManager: FragmentManager) {
             val fragment = MetaExportDialogFragment()
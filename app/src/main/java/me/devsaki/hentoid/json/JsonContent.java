@@ -130,6 +130,30 @@ public class JsonContent {
         return result;
     }
 
+    public String getUrl() {
+        return url;
+    }
+
+    public Site getSite() {
+        return (null == site) ? Site.NONE : site;
+    }
+
+    public StatusContent getStatus() {
+        return status;
+    }
+
+    public void setStatus(StatusContent status) {
+        this.status = status;
+    }
+
+    public boolean isFrozen() {
+        return isFrozen;
+    }
+
+    public void setFrozen(boolean frozen) {
+        isFrozen = frozen;
+    }
+
     public Content toEntity(@Nullable final CollectionDAO dao) {
         Content result = new Content();
 
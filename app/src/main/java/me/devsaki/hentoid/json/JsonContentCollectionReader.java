@@ -0,0 +1,179 @@
+package me.devsaki.hentoid.json;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.annimon.stream.function.Consumer;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.RenamingRule;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.util.JsonHelper;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Streaming reader for files using the {@link JsonContentCollection} structure
+ * <p>
+ * Elements are deserialized and handed over to their consumer one by one, so that the whole
+ * collection never has to be loaded in memory. Sections without any consumer are skipped
+ * without being deserialized.
+ * <p>
+ * NB : Sections are read in the order they appear in the file (i.e. alphabetical order
+ * when the file has been produced by the app : bookmarks, groupings, library, queue, renamingRules)
+ */
+public class JsonContentCollectionReader {
+
+    private static final ByteString UTF8_BOM = ByteString.decodeHex("efbbbf");
+
+    private final JsonAdapter<JsonContent> contentAdapter = JsonHelper.getAdapter(JsonContent.class);
+    private final JsonAdapter<JsonCustomGrouping> groupingAdapter = JsonHelper.getAdapter(JsonCustomGrouping.class);
+    private final JsonAdapter<JsonBookmark> bookmarkAdapter = JsonHelper.getAdapter(JsonBookmark.class);
+    private final JsonAdapter<JsonRenamingRule> renamingRuleAdapter = JsonHelper.getAdapter(JsonRenamingRule.class);
+
+    private Consumer<JsonContent> libraryConsumer = null;
+    private Consumer<JsonContent> queueConsumer = null;
+    private final Map<Grouping, Consumer<Group>> groupConsumers = new EnumMap<>(Grouping.class);
+    private Consumer<SiteBookmark> bookmarkConsumer = null;
+    private Consumer<RenamingRule> renamingRuleConsumer = null;
+
+    private CountingSource countingSource = null;
+    private volatile boolean interrupted = false;
+
+
+    public JsonContentCollectionReader onLibrary(@Nullable Consumer<JsonContent> consumer) {
+        libraryConsumer = consumer;
+        return this;
+    }
+
+    public JsonContentCollectionReader onQueue(@Nullable Consumer<JsonContent> consumer) {
+        queueConsumer = consumer;
+        return this;
+    }
+
+    public JsonContentCollectionReader onGroups(@NonNull Grouping grouping, @Nullable Consumer<Group> consumer) {
+        if (null == consumer) groupConsumers.remove(grouping);
+        else groupConsumers.put(grouping, consumer);
+        return this;
+    }
+
+    public JsonContentCollectionReader onBookmarks(@Nullable Consumer<SiteBookmark> consumer) {
+        bookmarkConsumer = consumer;
+        return this;
+    }
+
+    public JsonContentCollectionReader onRenamingRules(@Nullable Consumer<RenamingRule> consumer) {
+        renamingRuleConsumer = consumer;
+        return this;
+    }
+
+    /**
+     * Stop reading as soon as possible
+     * NB : Can be called from inside a consumer
+     */
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    /**
+     * Get the number of bytes that have been consumed from the input stream so far
+     *
+     * @return Number of bytes consumed from the input stream
+     */
+    public long getBytesRead() {
+        return (null == countingSource) ? 0 : countingSource.bytesRead;
+    }
+
+    /**
+     * Read the given stream and feed its elements to the registered consumers
+     * NB : The given stream is closed at the end of the operation
+     *
+     * @param input Stream to read from
+     * @throws IOException If anything happens during I/O or if the JSON data is malformed
+     */
+    public void read(@NonNull InputStream input) throws IOException {
+        interrupted = false;
+        countingSource = new CountingSource(Okio.source(input));
+        BufferedSource source = Okio.buffer(countingSource);
+        try (JsonReader reader = JsonReader.of(source)) {
+            if (source.rangeEquals(0, UTF8_BOM)) source.skip(UTF8_BOM.size());
+            reader.setLenient(true);
+
+            reader.beginObject();
+            while (reader.hasNext() && !interrupted) {
+                switch (reader.nextName()) {
+                    case "library":
+                        readArray(reader, contentAdapter, libraryConsumer);
+                        break;
+                    case "queue":
+                        readArray(reader, contentAdapter, queueConsumer);
+                        break;
+                    case "groupings":
+                        readArray(reader, groupingAdapter, groupConsumers.isEmpty() ? null : this::onGrouping);
+                        break;
+                    case "bookmarks":
+                        readArray(reader, bookmarkAdapter, (null == bookmarkConsumer) ? null : b -> bookmarkConsumer.accept(b.toEntity()));
+                        break;
+                    case "renamingRules":
+                        readArray(reader, renamingRuleAdapter, (null == renamingRuleConsumer) ? null : r -> renamingRuleConsumer.accept(r.toEntity()));
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            if (!interrupted) reader.endObject();
+        }
+    }
+
+    private void onGrouping(@NonNull JsonCustomGrouping jsonGrouping) {
+        if (null == jsonGrouping.getGroupingId()) return;
+        Grouping grouping = Grouping.searchById(jsonGrouping.getGroupingId());
+        Consumer<Group> consumer = groupConsumers.get(grouping);
+        if (null == consumer) return;
+        for (JsonCustomGroup g : jsonGrouping.getGroups()) consumer.accept(g.toEntity(grouping));
+    }
+
+    private <T> void readArray(
+            @NonNull JsonReader reader,
+            @NonNull JsonAdapter<T> adapter,
+            @Nullable Consumer<T> consumer) throws IOException {
+        if (null == consumer || reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (interrupted) return;
+            T item = adapter.fromJson(reader);
+            if (item != null) consumer.accept(item);
+        }
+        reader.endArray();
+    }
+
+    private static class CountingSource extends ForwardingSource {
+        private volatile long bytesRead = 0;
+
+        CountingSource(@NonNull Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+            long result = super.read(sink, byteCount);
+            if (result > 0) bytesRead += result;
+            return result;
+        }
+    }
+}
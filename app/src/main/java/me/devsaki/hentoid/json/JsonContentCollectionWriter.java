@@ -0,0 +1,162 @@
+package me.devsaki.hentoid.json;
+
+import androidx.annotation.NonNull;
+
+import com.annimon.stream.function.Consumer;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.RenamingRule;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.util.JsonHelper;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Streaming writer for files using the {@link JsonContentCollection} structure
+ * <p>
+ * Elements are serialized one by one straight to the output stream, so that the whole
+ * collection never has to be loaded in memory.
+ * <p>
+ * Output is identical to the serialization of the equivalent {@link JsonContentCollection},
+ * which implies sections have to be written in the following order, each of them once :
+ * bookmarks, groupings, library, queue, renamingRules. Sections that are not explicitly written
+ * are written as empty arrays.
+ */
+public class JsonContentCollectionWriter implements Closeable {
+
+    // Same order as the one used by Moshi to serialize JsonContentCollection (alphabetical)
+    private static final String[] SECTIONS = {"bookmarks", "groupings", "library", "queue", "renamingRules"};
+
+    private final JsonAdapter<JsonContent> contentAdapter = JsonHelper.getAdapter(JsonContent.class);
+    private final JsonAdapter<JsonCustomGrouping> groupingAdapter = JsonHelper.getAdapter(JsonCustomGrouping.class);
+    private final JsonAdapter<JsonBookmark> bookmarkAdapter = JsonHelper.getAdapter(JsonBookmark.class);
+    private final JsonAdapter<JsonRenamingRule> renamingRuleAdapter = JsonHelper.getAdapter(JsonRenamingRule.class);
+
+    private final JsonWriter writer;
+    // Index of the next section to write
+    private int sectionIndex = 0;
+
+
+    /**
+     * Create a new writer on the given stream
+     *
+     * @param output Stream to write to; closed when the writer is closed
+     * @throws IOException If anything happens during I/O
+     */
+    public JsonContentCollectionWriter(@NonNull OutputStream output) throws IOException {
+        BufferedSink sink = Okio.buffer(Okio.sink(output));
+        writer = JsonWriter.of(sink);
+        writer.beginObject();
+    }
+
+    public void writeBookmarks(@NonNull List<SiteBookmark> bookmarks) throws IOException {
+        beginSection("bookmarks");
+        for (SiteBookmark b : bookmarks) bookmarkAdapter.toJson(writer, JsonBookmark.fromEntity(b));
+        endSection();
+    }
+
+    /**
+     * Write the groupings section
+     *
+     * @param groups Groups to write, indexed by grouping, in the map's iteration order
+     * @throws IOException If anything happens during I/O
+     */
+    public void writeGroupings(@NonNull Map<Grouping, List<Group>> groups) throws IOException {
+        beginSection("groupings");
+        for (Map.Entry<Grouping, List<Group>> entry : groups.entrySet())
+            groupingAdapter.toJson(writer, JsonCustomGrouping.fromEntity(entry.getKey(), entry.getValue()));
+        endSection();
+    }
+
+    /**
+     * Write the library section using the given content producer
+     * NB : The producer is expected to call the given consumer once for each book to write (e.g. ObjectBoxDAO.streamStoredContent)
+     *
+     * @param producer Producer of the books to write
+     * @throws IOException If anything happens during I/O
+     */
+    public void writeLibrary(@NonNull Consumer<Consumer<Content>> producer) throws IOException {
+        beginSection("library");
+        writeContents(producer);
+        endSection();
+    }
+
+    public void writeQueue(@NonNull List<Content> queue) throws IOException {
+        beginSection("queue");
+        writeContents(c -> {
+            for (Content content : queue) c.accept(content);
+        });
+        endSection();
+    }
+
+    public void writeRenamingRules(@NonNull List<RenamingRule> rules) throws IOException {
+        beginSection("renamingRules");
+        for (RenamingRule r : rules) renamingRuleAdapter.toJson(writer, JsonRenamingRule.fromEntity(r));
+        endSection();
+    }
+
+    private void writeContents(@NonNull Consumer<Consumer<Content>> producer) throws IOException {
+        // Consumer can't throw checked exceptions; they are tunneled through an unchecked exception
+        try {
+            producer.accept(c -> {
+                try {
+                    contentAdapter.toJson(writer, JsonContent.fromEntity(c, false));
+                } catch (IOException e) {
+                    throw new WrappedIOException(e);
+                }
+            });
+        } catch (WrappedIOException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    private void beginSection(@NonNull String name) throws IOException {
+        int index = Arrays.asList(SECTIONS).indexOf(name);
+        if (index < sectionIndex)
+            throw new IllegalStateException("Section " + name + " written out of order");
+        writeEmptySections(index);
+        writer.name(name);
+        writer.beginArray();
+    }
+
+    private void endSection() throws IOException {
+        writer.endArray();
+        sectionIndex++;
+    }
+
+    private void writeEmptySections(int untilIndex) throws IOException {
+        while (sectionIndex < untilIndex) {
+            writer.name(SECTIONS[sectionIndex]).beginArray().endArray();
+            sectionIndex++;
+        }
+    }
+
+    /**
+     * Complete the JSON structure and close the underlying stream
+     *
+     * @throws IOException If anything happens during I/O
+     */
+    @Override
+    public void close() throws IOException {
+        writeEmptySections(SECTIONS.length);
+        writer.endObject();
+        writer.close(); // Flushes and closes the sink
+    }
+
+    private static class WrappedIOException extends RuntimeException {
+        WrappedIOException(IOException cause) {
+            super(cause);
+        }
+    }
+}
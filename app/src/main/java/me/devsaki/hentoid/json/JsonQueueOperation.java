@@ -0,0 +1,111 @@
+package me.devsaki.hentoid.json;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.enums.StatusContent;
+
+/**
+ * Operation on the queue, as stored in the queue journal
+ * (see {@link me.devsaki.hentoid.util.QueueJournal})
+ */
+public class JsonQueueOperation {
+
+    public static final String OP_BASE = "base";        // Header; references the snapshot the journal applies to
+    public static final String OP_ADD = "add";          // Book added to the queue
+    public static final String OP_REMOVE = "remove";    // Book removed from the queue
+    public static final String OP_MOVE = "move";        // Book moved inside the queue
+    public static final String OP_STATUS = "status";    // Book status or frozen state changed
+    public static final String OP_UPDATE = "update";    // Any other property of the book changed; carries the whole book
+
+    private String op;
+    private String key;
+    private String after; // Key of the book the added or moved book is positioned after; null for first position
+    private JsonContent content;
+    private StatusContent status;
+    private boolean frozen;
+    private long snapshotHash;
+
+    private JsonQueueOperation() {
+    }
+
+    public static JsonQueueOperation base(long snapshotHash) {
+        JsonQueueOperation result = new JsonQueueOperation();
+        result.op = OP_BASE;
+        result.snapshotHash = snapshotHash;
+        return result;
+    }
+
+    public static JsonQueueOperation add(@NonNull Content content, @Nullable String after) {
+        JsonQueueOperation result = new JsonQueueOperation();
+        result.op = OP_ADD;
+        result.content = JsonContent.fromEntity(content, false);
+        result.after = after;
+        return result;
+    }
+
+    public static JsonQueueOperation update(@NonNull String key, @NonNull Content content) {
+        JsonQueueOperation result = new JsonQueueOperation();
+        result.op = OP_UPDATE;
+        result.key = key;
+        result.content = JsonContent.fromEntity(content, false);
+        return result;
+    }
+
+    public static JsonQueueOperation remove(@NonNull String key) {
+        JsonQueueOperation result = new JsonQueueOperation();
+        result.op = OP_REMOVE;
+        result.key = key;
+        return result;
+    }
+
+    public static JsonQueueOperation move(@NonNull String key, @Nullable String after) {
+        JsonQueueOperation result = new JsonQueueOperation();
+        result.op = OP_MOVE;
+        result.key = key;
+        result.after = after;
+        return result;
+    }
+
+    public static JsonQueueOperation status(@NonNull String key, @NonNull StatusContent status, boolean frozen) {
+        JsonQueueOperation result = new JsonQueueOperation();
+        result.op = OP_STATUS;
+        result.key = key;
+        result.status = status;
+        result.frozen = frozen;
+        return result;
+    }
+
+    public String getOp() {
+        return (null == op) ? "" : op;
+    }
+
+    @Nullable
+    public String getKey() {
+        return key;
+    }
+
+    @Nullable
+    public String getAfter() {
+        return after;
+    }
+
+    @Nullable
+    public JsonContent getContent() {
+        return content;
+    }
+
+    @Nullable
+    public StatusContent getStatus() {
+        return status;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public long getSnapshotHash() {
+        return snapshotHash;
+    }
+}
@@ -0,0 +1,30 @@
+package me.devsaki.hentoid.notification.renamingRule
+
+import android.content.Context
+import androidx.core.app.NotificationCompat
+import me.devsaki.hentoid.R
+import me.devsaki.hentoid.notification.updateJson.UpdateJsonNotificationChannel
+import me.devsaki.hentoid.util.ThemeHelper
+import me.devsaki.hentoid.util.notification.Notification
+import java.util.Locale
+
+class RenamingRuleProgressNotification(
+    private val progress: Int,
+    private val max: Int
+) : Notification {
+
+    private val progressPc: String = if (0 == max) "" else " %.2f%%".format(Locale.US, progress * 100.0 / max)
+
+    override fun onCreateNotification(context: Context): android.app.Notification {
+        return NotificationCompat.Builder(context, UpdateJsonNotificationChannel.ID)
+            .setSmallIcon(R.drawable.ic_hentoid_shape)
+            .setContentTitle(context.getString(R.string.notif_rules_progress))
+            .setContentInfo(progressPc)
+            .setProgress(max, progress, 0 == max)
+            .setColor(ThemeHelper.getColor(context, R.color.secondary_light))
+            .setLocalOnly(true)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .build()
+    }
+}
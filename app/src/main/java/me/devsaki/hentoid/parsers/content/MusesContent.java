@@ -21,6 +21,7 @@ import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.parsers.ParseHelper;
 import me.devsaki.hentoid.util.StringHelper;
+import me.devsaki.hentoid.util.network.HtmlParseLimits;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import pl.droidsonroids.jspoon.annotation.Selector;
 import timber.log.Timber;
@@ -139,7 +140,11 @@ public class MusesContent extends BaseContentParser {
 
         // Tags are not shown on the album page, but on the picture page (!)
         try {
-            Document doc = HttpHelper.getOnlineDocument(Site.MUSES.getUrl() + thumbLinks.get(thumbLinks.size() - 1).attr("href"));
+            // Only the tags are needed; no need to read the rest of the page
+            Document doc = HttpHelper.getOnlineDocument(
+                    Site.MUSES.getUrl() + thumbLinks.get(thumbLinks.size() - 1).attr("href"),
+                    null, true, true,
+                    new HtmlParseLimits().setStopSelector(".album-tags", 1));
             if (doc != null) {
                 Elements elements = doc.select(".album-tags a[href*='/search/tag']");
                 if (!elements.isEmpty())
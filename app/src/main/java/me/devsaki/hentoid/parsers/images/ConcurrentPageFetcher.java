@@ -0,0 +1,244 @@
+package me.devsaki.hentoid.parsers.images;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import me.devsaki.hentoid.util.network.HttpHelper;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Fetches the pages of a paginated listing (gallery thumbnail pages, chapters...) concurrently,
+ * while staying polite with the server
+ * <p>
+ * - No more than the given number of pages are fetched at the same time
+ * - Requests are spaced by at least the given interval
+ * - When the server signals it is rate-limiting requests, all requests are paused for the duration
+ * asked by the server (or an increasing backoff), and concurrency is reduced for the rest of the listing
+ * - A failing page is retried on its own, without restarting the whole listing
+ * <p>
+ * Results are returned in the order of the pages, whatever the order they have been fetched in
+ */
+class ConcurrentPageFetcher {
+
+    private static final long DEFAULT_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30 * 1000;
+
+    /**
+     * Loading and parsing of one page of the listing
+     *
+     * @param <T> Type of the result of the parsing
+     */
+    interface PageLoader<T> {
+        /**
+         * Load and parse the page at the given index
+         *
+         * @param pageIndex Index of the page to load (0-based)
+         * @return Result of the parsing; null if the page has no exploitable content
+         * @throws Exception If anything goes wrong; the page is then retried
+         */
+        @Nullable
+        T load(int pageIndex) throws Exception;
+    }
+
+    /**
+     * Exception signalling the server is rate-limiting requests
+     */
+    static class RateLimitedException extends IOException {
+        // Delay asked by the server before retrying; -1 if unspecified
+        final long retryAfterMs;
+
+        RateLimitedException(@NonNull String message, long retryAfterMs) {
+            super(message);
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    private final int maxConcurrency;
+    private final long minIntervalMs;
+    private final int maxRetries;
+
+    // Earliest time the next request can be sent (ms)
+    private long nextRequestTime = 0;
+
+
+    /**
+     * @param maxConcurrency Maximum number of pages to fetch at the same time
+     * @param minIntervalMs  Minimum interval between two requests (ms)
+     * @param maxRetries     Number of times a failing page is retried before giving up
+     */
+    ConcurrentPageFetcher(int maxConcurrency, long minIntervalMs, int maxRetries) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.minIntervalMs = minIntervalMs;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Throw a RateLimitedException if the given response signals the server is rate-limiting requests
+     *
+     * @param response Response to examine
+     * @throws RateLimitedException If the response signals the server is rate-limiting requests
+     */
+    static void checkRateLimit(@NonNull Response response) throws RateLimitedException {
+        if (429 != response.code() && 503 != response.code()) return;
+        long retryAfterMs = -1;
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                retryAfterMs = Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                // Date format isn't supported; fall back to the default backoff
+            }
+        }
+        response.close();
+        throw new RateLimitedException("HTTP " + response.code() + " @ " + response.request().url(), retryAfterMs);
+    }
+
+    /**
+     * Fetch the given number of pages using the given loader
+     *
+     * @param nbPages      Number of pages to fetch
+     * @param loader       Loading and parsing of one page
+     * @param isHalted     Indicates if the process has been halted; if so, fetching stops as soon as possible
+     * @param onPageLoaded Called each time a page has been loaded, from the fetching threads
+     * @param <T>          Type of the result of the parsing
+     * @return Results of the parsing of each page, in the order of the pages; results of pages
+     * that haven't been fetched because the process has been halted are null
+     * @throws Exception Exception thrown by the loader on the last attempt of the first page that has failed
+     */
+    <T> List<T> fetch(
+            int nbPages,
+            @NonNull PageLoader<T> loader,
+            @NonNull BooleanSupplier isHalted,
+            @NonNull Runnable onPageLoaded) throws Exception {
+        if (nbPages <= 0) return new ArrayList<>();
+
+        Object[] results = new Object[nbPages];
+        AtomicInteger nextPage = new AtomicInteger(0);
+        AtomicReference<Exception> failure = new AtomicReference<>(null);
+
+        int nbThreads = Math.min(maxConcurrency, nbPages);
+        // Threads still fetching pages; reduced when the server rate-limits requests
+        AtomicInteger nbWorkers = new AtomicInteger(nbThreads);
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads, r -> {
+            Thread t = new Thread(r, "page-fetcher-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nbThreads; t++)
+                futures.add(executor.submit(() -> {
+                    boolean retired = false;
+                    while (!retired && null == failure.get() && !isHalted.getAsBoolean()) {
+                        int pageIndex = nextPage.getAndIncrement();
+                        if (pageIndex >= nbPages) return null;
+                        try {
+                            for (int attempt = 0; ; attempt++) {
+                                waitForSlot();
+                                try {
+                                    results[pageIndex] = loader.load(pageIndex);
+                                    break;
+                                } catch (RateLimitedException e) {
+                                    Timber.i("Rate-limited while fetching page %d : %s", pageIndex, e.getMessage());
+                                    pause((e.retryAfterMs > 0) ? e.retryAfterMs : getBackoff(attempt));
+                                    // Reduce concurrency : the current thread leaves once its page is done
+                                    int n = nbWorkers.get();
+                                    if (!retired && n > 1 && nbWorkers.compareAndSet(n, n - 1))
+                                        retired = true;
+                                    if (attempt >= maxRetries) throw e;
+                                } catch (InterruptedException e) {
+                                    throw e;
+                                } catch (Exception e) {
+                                    Timber.w("Fetching page %d failed (attempt %d) : %s", pageIndex, attempt + 1, e.getMessage());
+                                    if (attempt >= maxRetries) throw e;
+                                    Thread.sleep(getBackoff(attempt));
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                            return null;
+                        }
+                        onPageLoaded.run();
+                    }
+                    return null;
+                }));
+            for (Future<?> f : futures) f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // NB : At least one thread is never retired, hence all pages are fetched unless halted or failed
+        Exception e = failure.get();
+        if (e != null) throw e;
+
+        @SuppressWarnings("unchecked")
+        List<T> result = (List<T>) new ArrayList<>(Arrays.asList(results));
+        return result;
+    }
+
+    /**
+     * Wait until the next request can be sent, and book the following slot
+     */
+    private void waitForSlot() throws InterruptedException {
+        long waitMs;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long slot = Math.max(now, nextRequestTime);
+            nextRequestTime = slot + minIntervalMs;
+            waitMs = slot - now;
+        }
+        if (waitMs > 0) Thread.sleep(waitMs);
+    }
+
+    /**
+     * Delay all upcoming requests by the given duration
+     */
+    private synchronized void pause(long durationMs) {
+        nextRequestTime = Math.max(nextRequestTime, System.currentTimeMillis() + durationMs);
+    }
+
+    private static long getBackoff(int attempt) {
+        return Math.min(MAX_BACKOFF_MS, DEFAULT_BACKOFF_MS << Math.min(attempt, 10));
+    }
+
+    /**
+     * Get the given page as a Response, signalling rate limits
+     *
+     * @param url             URL of the page
+     * @param headers         Headers to use when building the request
+     * @param useHentoidAgent True if the Hentoid User-Agent has to be used; false if a neutral User-Agent has to be used
+     * @param useWebviewAgent True if the WebView User-Agent has to be used
+     * @return Response of the server; never a rate-limit response
+     * @throws IOException If anything goes wrong; RateLimitedException if the server is rate-limiting requests
+     */
+    static Response getPage(
+            @NonNull String url,
+            @Nullable List<Pair<String, String>> headers,
+            boolean useHentoidAgent,
+            boolean useWebviewAgent) throws IOException {
+        Response response = HttpHelper.getOnlineResource(url, headers, true, useHentoidAgent, useWebviewAgent);
+        checkRateLimit(response);
+        return response;
+    }
+}
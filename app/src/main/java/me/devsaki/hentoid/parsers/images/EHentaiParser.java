@@ -43,6 +43,7 @@ import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.util.exception.EmptyResultException;
 import me.devsaki.hentoid.util.exception.LimitReachedException;
 import me.devsaki.hentoid.util.exception.PreparationInterruptedException;
+import me.devsaki.hentoid.util.network.HtmlParseLimits;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -60,6 +61,9 @@ public class EHentaiParser implements ImageListParser {
 
     private final ParseProgress progress = new ParseProgress();
 
+    // Shared by all galleries to avoid hitting the site's rate limits
+    private static final ConcurrentPageFetcher GALLERY_PAGE_FETCHER = new ConcurrentPageFetcher(3, 250, 2);
+
     static class MpvInfo {
         Integer gid;
         String mpvkey;
@@ -209,7 +213,7 @@ public class EHentaiParser implements ImageListParser {
             @NonNull final List<Pair<String, String>> headers,
             boolean useHentoidAgent,
             boolean useWebviewAgent,
-            @NonNull ParseProgress progress) throws IOException {
+            @NonNull ParseProgress progress) throws Exception {
         List<ImageFile> result = new ArrayList<>();
 
         // A.1- Detect the number of pages of the gallery
@@ -227,11 +231,21 @@ public class EHentaiParser implements ImageListParser {
         fetchPageUrls(galleryDoc, pageUrls);
 
         if (nbGalleryPages > 1) {
-            for (int i = 1; i < nbGalleryPages && !progress.isProcessHalted(); i++) {
-                Document pageDoc = getOnlineDocument(content.getGalleryUrl() + "/?p=" + i, headers, useHentoidAgent, useWebviewAgent);
-                if (pageDoc != null) fetchPageUrls(pageDoc, pageUrls);
-                progress.advance();
-            }
+            // Remaining gallery pages are fetched concurrently; index 0 is the 2nd page
+            List<List<String>> pagesUrls = GALLERY_PAGE_FETCHER.fetch(
+                    nbGalleryPages - 1,
+                    index -> {
+                        List<String> urls = new ArrayList<>();
+                        try (Response response = ConcurrentPageFetcher.getPage(content.getGalleryUrl() + "/?p=" + (index + 1), headers, useHentoidAgent, useWebviewAgent)) {
+                            ResponseBody body = response.body();
+                            if (body != null) fetchPageUrls(HttpHelper.parseDocument(body, "", null), urls);
+                        }
+                        return urls;
+                    },
+                    progress::isProcessHalted,
+                    progress::advance
+            );
+            for (List<String> urls : pagesUrls) if (urls != null) pageUrls.addAll(urls);
         }
 
         // 3- Open all pages and
@@ -341,7 +355,8 @@ public class EHentaiParser implements ImageListParser {
             int maxPages,
             Chapter chapter) throws Exception {
         List<Pair<String, String>> reqHeaders = HttpHelper.webkitRequestHeadersToOkHttpHeaders(requestHeaders, url);
-        Document doc = getOnlineDocument(url, reqHeaders, site.useHentoidAgent(), site.useWebviewAgent());
+        // Only the displayed image is needed; no need to read the rest of the page
+        Document doc = getOnlineDocument(url, reqHeaders, site.useHentoidAgent(), site.useWebviewAgent(), new HtmlParseLimits().setStopSelector("img#img", 1));
         if (doc != null) {
             String imageUrl = getDisplayedImageUrl(doc).toLowerCase();
             // If we have the 509.gif picture, it means the bandwidth limit for e-h has been reached
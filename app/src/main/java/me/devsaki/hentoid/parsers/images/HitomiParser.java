@@ -1,7 +1,6 @@
 package me.devsaki.hentoid.parsers.images;
 
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.webkit.URLUtil;
 import android.webkit.WebView;
 
@@ -16,10 +15,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
-import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.core.HentoidApp;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.ImageFile;
@@ -27,11 +23,10 @@ import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.json.sources.HitomiGalleryInfo;
 import me.devsaki.hentoid.parsers.ParseHelper;
-import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.JsonHelper;
-import me.devsaki.hentoid.util.StringHelper;
 import me.devsaki.hentoid.util.exception.EmptyResultException;
 import me.devsaki.hentoid.util.file.FileHelper;
+import me.devsaki.hentoid.util.network.BackgroundWebViewPool;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import me.devsaki.hentoid.views.HitomiBackgroundWebView;
 import okhttp3.Response;
@@ -43,6 +38,9 @@ import timber.log.Timber;
  */
 public class HitomiParser extends BaseImageListParser {
 
+    private static final long LOAD_TIMEOUT_MS = 15 * 1000;
+    private static final long EVAL_TIMEOUT_MS = 5 * 1000;
+
     @Override
     public List<ImageFile> parseImageListImpl(@NonNull Content onlineContent, @Nullable Content storedContent) throws Exception {
         String readerUrl = onlineContent.getReaderUrl();
@@ -89,29 +87,15 @@ public class HitomiParser extends BaseImageListParser {
         onlineContent.setUpdatedProperties(true);
 
         // Get pages URL
-        final AtomicBoolean done = new AtomicBoolean(false);
-        final AtomicReference<String> imagesStr = new AtomicReference<>();
-        Handler handler = new Handler(Looper.getMainLooper());
+        String jsResult;
         if (null == webview) {
-            handler.post(() -> {
-                if (BuildConfig.DEBUG) WebView.setWebContentsDebuggingEnabled(true);
-                HitomiBackgroundWebView hitomiWv = new HitomiBackgroundWebView(HentoidApp.getInstance(), Site.HITOMI);
-                Timber.d(">> loading url %s", pageUrl);
-                hitomiWv.loadUrl(pageUrl, () -> evaluateJs(hitomiWv, galleryInfo, imagesStr, done));
-                Timber.i(">> loading wv");
-            });
-        } else { // We suppose the caller is the main thread if the webview is provided
-            handler.post(() -> evaluateJs(webview, galleryInfo, imagesStr, done));
+            jsResult = evaluateWithPooledWebview(pageUrl, galleryInfo);
+        } else { // Page of the provided webview is already loaded
+            jsResult = BackgroundWebViewPool.getInstance().evaluateJavascript(webview, getJsPagesScript(galleryInfo), EVAL_TIMEOUT_MS, processHalted::get);
         }
-
-        int remainingIterations = 15; // Timeout
-        do {
-            Helper.pause(1000);
-        } while (!done.get() && !processHalted.get() && remainingIterations-- > 0);
         if (processHalted.get())
             throw new EmptyResultException("Unable to detect pages (empty result)");
 
-        String jsResult = imagesStr.get();
         if (null == jsResult || jsResult.isEmpty())
             throw new EmptyResultException("Unable to detect pages (empty result)");
 
@@ -132,14 +116,32 @@ public class HitomiParser extends BaseImageListParser {
         return result;
     }
 
-    // TODO doc
-    private void evaluateJs(@NonNull WebView webview, @NonNull String galleryInfo, @NonNull AtomicReference<String> imagesStr, @NonNull AtomicBoolean done) {
-        Timber.d(">> evaluating JS");
-        webview.evaluateJavascript(getJsPagesScript(galleryInfo), s -> {
-            Timber.d(">> JS evaluated");
-            imagesStr.set(StringHelper.protect(s));
-            done.set(true);
-        });
+    /**
+     * Compute the URLs of the pages of the given gallery with a pooled background webview
+     *
+     * @param pageUrl     URL of the reader page of the gallery
+     * @param galleryInfo Gallery info, as provided by the site
+     * @return Result of the script computing the URLs of the pages; null if it couldn't be run
+     */
+    @Nullable
+    private String evaluateWithPooledWebview(@NonNull String pageUrl, @NonNull String galleryInfo) throws InterruptedException {
+        String script = getJsPagesScript(galleryInfo);
+        long start = SystemClock.elapsedRealtime();
+        try (BackgroundWebViewPool.Lease lease = BackgroundWebViewPool.getInstance().lease(Site.HITOMI, HitomiBackgroundWebView.class, context -> new HitomiBackgroundWebView(context, Site.HITOMI))) {
+            long leaseMs = SystemClock.elapsedRealtime() - start;
+            // The page is loaded for every gallery, as the site's gg.js changes frequently
+            // NB : Only the WebView is reused, which saves its creation
+            if (!lease.loadUrl(pageUrl, LOAD_TIMEOUT_MS, processHalted::get)) {
+                lease.discard();
+                return null;
+            }
+            long loadMs = SystemClock.elapsedRealtime() - start - leaseMs;
+            String result = lease.evaluateJavascript(script, EVAL_TIMEOUT_MS, processHalted::get);
+            if (null == result) lease.discard();
+            Timber.d(">> pages computed in %d ms (webview %s in %d ms; page load %d ms)",
+                    SystemClock.elapsedRealtime() - start, lease.isCold() ? "created" : "reused", leaseMs, loadMs);
+            return result;
+        }
     }
 
     // TODO optimize
@@ -15,12 +15,17 @@ import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.parsers.ParseHelper;
 import me.devsaki.hentoid.util.exception.PreparationInterruptedException;
+import me.devsaki.hentoid.util.network.HttpHelper;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * Handles parsing of content from myreadingmanga.info
  */
 public class MrmParser extends BaseImageListParser {
 
+    private static final ConcurrentPageFetcher CHAPTER_FETCHER = new ConcurrentPageFetcher(4, 100, 2);
+
     @Override
     protected List<String> parseImages(@NonNull Content content) throws Exception {
         List<String> result = new ArrayList<>();
@@ -48,15 +53,23 @@ public class MrmParser extends BaseImageListParser {
         progressStart(content, null, chapterUrls.size());
 
         // 2. Open each chapter URL and get the image data until all images are found
-        for (String url : chapterUrls) {
-            doc = getOnlineDocument(url, headers, Site.MRM.useHentoidAgent(), Site.MRM.useWebviewAgent());
-            if (doc != null) {
-                List<Element> images = doc.select(".entry-content img");
-                for (Element e : images) result.add(ParseHelper.getImgSrc(e));
-            }
-            if (processHalted.get()) break;
-            progressPlus();
-        }
+        List<List<String>> chaptersImgs = CHAPTER_FETCHER.fetch(
+                chapterUrls.size(),
+                index -> {
+                    List<String> imgs = new ArrayList<>();
+                    try (Response response = ConcurrentPageFetcher.getPage(chapterUrls.get(index), headers, Site.MRM.useHentoidAgent(), Site.MRM.useWebviewAgent())) {
+                        ResponseBody body = response.body();
+                        if (body != null) {
+                            List<Element> images = HttpHelper.parseDocument(body, "", null).select(".entry-content img");
+                            for (Element e : images) imgs.add(ParseHelper.getImgSrc(e));
+                        }
+                    }
+                    return imgs;
+                },
+                processHalted::get,
+                this::progressPlus
+        );
+        for (List<String> imgs : chaptersImgs) if (imgs != null) result.addAll(imgs);
         // If the process has been halted manually, the result is incomplete and should not be returned as is
         if (processHalted.get()) throw new PreparationInterruptedException();
 
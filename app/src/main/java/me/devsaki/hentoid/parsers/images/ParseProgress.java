@@ -34,7 +34,7 @@ class ParseProgress {
         processHalted.set(true);
     }
 
-    void advance() {
+    synchronized void advance() {
         ParseHelper.signalProgress(contentId, storedId, ++currentStep, maxSteps);
     }
 
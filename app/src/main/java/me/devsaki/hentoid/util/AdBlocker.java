@@ -8,12 +8,12 @@ import androidx.core.util.Pair;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import me.devsaki.hentoid.BuildConfig;
@@ -26,26 +26,31 @@ import okhttp3.ResponseBody;
 import timber.log.Timber;
 
 public class AdBlocker {
+    // Max number of URLs kept in the dynamic blacklist cache
+    private static final int JS_BLACKLIST_CACHE_SIZE = 500;
+
     private final Site site;
 
     // List of blocked URLs (ads or annoying images) -- will be replaced by a blank stream
     // Universal lists (applied to all sites)
-    private static final Set<String> universalUrlBlacklist = new HashSet<>();
-    private static final Set<String> universalUrlWhitelist = new HashSet<>();
-    // Local lists (applied to current site)
-    private final Set<String> localUrlBlacklist = Collections.synchronizedSet(new HashSet<>());
-    private final Set<String> localUrlWhitelist = Collections.synchronizedSet(new HashSet<>());
-    private final Set<Pattern> jsUrlPatternWhitelist = Collections.synchronizedSet(new HashSet<>());
-    private final Set<String> jsContentBlacklist = Collections.synchronizedSet(new HashSet<>());
+    private static final SubstringMatcher universalUrlBlacklist;
+    private static final SubstringMatcher universalUrlWhitelist;
+    // Local lists (applied to current site); only used to build the matchers
+    private final Set<String> localUrlBlacklist = new HashSet<>();
+    private final Set<String> localUrlWhitelist = new HashSet<>();
+    private final Set<String> jsUrlPatternWhitelist = new HashSet<>();
+    private final Set<String> jsContentBlacklist = new HashSet<>();
+    // Matchers compiled from the local lists; replaced as a whole when the local lists change
+    private volatile Filters filters = new Filters(localUrlBlacklist, localUrlWhitelist, jsUrlPatternWhitelist, jsContentBlacklist);
 
-    private final Set<String> jsBlacklistCache = Collections.synchronizedSet(new HashSet<>());
+    private final Map<String, Boolean> jsBlacklistCache = Collections.synchronizedMap(new MaxSizeHashMap<>(JS_BLACKLIST_CACHE_SIZE));
 
 
     static {
         String[] appUrlBlacklist = HentoidApp.getInstance().getResources().getStringArray(R.array.blocked_domains);
-        universalUrlBlacklist.addAll(Arrays.asList(appUrlBlacklist));
+        universalUrlBlacklist = new SubstringMatcher(Arrays.asList(appUrlBlacklist));
         String[] appUrlWhitelist = HentoidApp.getInstance().getResources().getStringArray(R.array.allowed_domains);
-        universalUrlWhitelist.addAll(Arrays.asList(appUrlWhitelist));
+        universalUrlWhitelist = new SubstringMatcher(Arrays.asList(appUrlWhitelist));
     }
 
 
@@ -59,22 +64,16 @@ public class AdBlocker {
      * @param url URL to be examinated
      * @return True if URL is blacklisted according to current filters; false if not
      */
-    private boolean isUrlBlacklisted(@NonNull String url) {
+    private boolean isUrlBlacklisted(@NonNull String url, @NonNull Filters f) {
         // First search into the local list...
-        synchronized (localUrlBlacklist) {
-            for (String s : localUrlBlacklist) {
-                if (url.contains(s)) {
-                    if (BuildConfig.DEBUG) Timber.v("Blacklisted URL blocked (local) : %s", url);
-                    return true;
-                }
-            }
+        if (f.urlBlacklist.matches(url)) {
+            if (BuildConfig.DEBUG) Timber.v("Blacklisted URL blocked (local) : %s", url);
+            return true;
         }
         // ...then into the universal list
-        for (String s : universalUrlBlacklist) {
-            if (url.contains(s)) {
-                if (BuildConfig.DEBUG) Timber.v("Blacklisted URL blocked (global) : %s", url);
-                return true;
-            }
+        if (universalUrlBlacklist.matches(url)) {
+            if (BuildConfig.DEBUG) Timber.v("Blacklisted URL blocked (global) : %s", url);
+            return true;
         }
         return false;
     }
@@ -85,32 +84,21 @@ public class AdBlocker {
      * @param url URL to be examinated
      * @return True if URL is whitelisted according to current filters; false if not
      */
-    private boolean isUrlWhitelisted(@NonNull String url) {
+    private boolean isUrlWhitelisted(@NonNull String url, @NonNull Filters f) {
         // First search into the local simple list...
-        synchronized (localUrlWhitelist) {
-            for (String s : localUrlWhitelist) {
-                if (url.contains(s)) {
-                    if (BuildConfig.DEBUG) Timber.v("Whitelisted URL (local) : %s", url);
-                    return true;
-                }
-            }
+        if (f.urlWhitelist.matches(url)) {
+            if (BuildConfig.DEBUG) Timber.v("Whitelisted URL (local) : %s", url);
+            return true;
         }
         // ...then into the global simple list...
-        for (String s : universalUrlWhitelist) {
-            if (url.contains(s)) {
-                if (BuildConfig.DEBUG) Timber.v("Whitelisted URL (global) : %s", url);
-                return true;
-            }
+        if (universalUrlWhitelist.matches(url)) {
+            if (BuildConfig.DEBUG) Timber.v("Whitelisted URL (global) : %s", url);
+            return true;
         }
         // ...then into the js pattern list (more costly)
-        synchronized (jsUrlPatternWhitelist) {
-            for (Pattern p : jsUrlPatternWhitelist) {
-                Matcher matcher = p.matcher(url);
-                if (matcher.find()) {
-                    if (BuildConfig.DEBUG) Timber.v("Whitelisted URL (pattern) : %s", url);
-                    return true;
-                }
-            }
+        if (f.jsUrlPatternWhitelist != null && f.jsUrlPatternWhitelist.matcher(url).find()) {
+            if (BuildConfig.DEBUG) Timber.v("Whitelisted URL (pattern) : %s", url);
+            return true;
         }
         return false;
     }
@@ -120,8 +108,8 @@ public class AdBlocker {
      *
      * @param filter Filter to addAll to local blacklist
      */
-    public void addToUrlBlacklist(String... filter) {
-        Collections.addAll(localUrlBlacklist, filter);
+    public synchronized void addToUrlBlacklist(String... filter) {
+        if (Collections.addAll(localUrlBlacklist, filter)) compileFilters();
     }
 
     /**
@@ -129,8 +117,8 @@ public class AdBlocker {
      *
      * @param filter Filter to addAll to local whitelist
      */
-    public void addToJsUrlWhitelist(String... filter) {
-        Collections.addAll(localUrlWhitelist, filter);
+    public synchronized void addToJsUrlWhitelist(String... filter) {
+        if (Collections.addAll(localUrlWhitelist, filter)) compileFilters();
     }
 
     /**
@@ -138,8 +126,9 @@ public class AdBlocker {
      *
      * @param pattern Pattern to add
      */
-    public void addJsUrlPatternWhitelist(@NonNull final String pattern) {
-        jsUrlPatternWhitelist.add(Pattern.compile(pattern));
+    public synchronized void addJsUrlPatternWhitelist(@NonNull final String pattern) {
+        Pattern.compile(pattern); // Fail early if the pattern is invalid
+        if (jsUrlPatternWhitelist.add(pattern)) compileFilters();
     }
 
     /**
@@ -147,8 +136,16 @@ public class AdBlocker {
      *
      * @param sequence Sequence to add to the Javascript content blacklist
      */
-    public void addJsContentBlacklist(@NonNull final String sequence) {
-        jsContentBlacklist.add(sequence);
+    public synchronized void addJsContentBlacklist(@NonNull final String sequence) {
+        if (jsContentBlacklist.add(sequence)) compileFilters();
+    }
+
+    /**
+     * Replace the current matchers with matchers compiled from the current lists
+     * NB : Must be called while holding the lock on this instance
+     */
+    private void compileFilters() {
+        filters = new Filters(localUrlBlacklist, localUrlWhitelist, jsUrlPatternWhitelist, jsContentBlacklist);
     }
 
     /**
@@ -160,13 +157,14 @@ public class AdBlocker {
      */
     public boolean isBlocked(@NonNull final String url, @Nullable final Map<String, String> headers) {
         final String cleanUrl = url.toLowerCase();
+        final Filters f = filters;
 
         // 1- Accept whitelisted JS files
-        if (isUrlWhitelisted(cleanUrl)) return false;
+        if (isUrlWhitelisted(cleanUrl, f)) return false;
 
         // 2- Process usual blacklist and cached dynamic blacklist
-        if (isUrlBlacklisted(cleanUrl)) return true;
-        if (jsBlacklistCache.contains(cleanUrl)) {
+        if (isUrlBlacklisted(cleanUrl, f)) return true;
+        if (jsBlacklistCache.containsKey(cleanUrl)) {
             if (BuildConfig.DEBUG)
                 Timber.v("Blacklisted file BLOCKED (jsBlacklistCache) : %s", cleanUrl);
             return true;
@@ -178,9 +176,9 @@ public class AdBlocker {
         if (!isJs) return false;
 
         // If no grey list has been defined...
-        if (jsContentBlacklist.isEmpty()) {
+        if (f.jsContentBlacklist.isEmpty()) {
             // ...be lenient if there's no local whitelist set (vanilla adblocker); block instead as it has not been explicitly whitelisted
-            return (localUrlWhitelist.size() + jsUrlPatternWhitelist.size() > 0);
+            return (f.urlWhitelist.size() + f.nbJsUrlPatterns > 0);
         }
 
 
@@ -200,13 +198,10 @@ public class AdBlocker {
                 Timber.d(">> grey file downloaded : %s", url);
 
                 String jsBody = body.string().toLowerCase();
-                synchronized (jsContentBlacklist) {
-                    for (String s : jsContentBlacklist)
-                        if (jsBody.contains(s)) {
-                            Timber.d(">> grey file %s BLOCKED", url);
-                            jsBlacklistCache.add(cleanUrl);
-                            return true;
-                        }
+                if (f.jsContentBlacklist.matches(jsBody)) {
+                    Timber.d(">> grey file %s BLOCKED", url);
+                    jsBlacklistCache.put(cleanUrl, true);
+                    return true;
                 }
             } catch (IOException e) {
                 Timber.d(e, ">> I/O issue while retrieving %s", url);
@@ -222,4 +217,37 @@ public class AdBlocker {
         // Accept non-blocked (=grey) JS files
         return false;
     }
+
+    /**
+     * Immutable snapshot of the local lists, compiled for fast matching
+     */
+    private static class Filters {
+        final SubstringMatcher urlBlacklist;
+        final SubstringMatcher urlWhitelist;
+        // All whitelist patterns combined into one single alternation; null if there's none
+        final Pattern jsUrlPatternWhitelist;
+        final int nbJsUrlPatterns;
+        final SubstringMatcher jsContentBlacklist;
+
+        Filters(
+                @NonNull Collection<String> urlBlacklist,
+                @NonNull Collection<String> urlWhitelist,
+                @NonNull Collection<String> jsUrlPatternWhitelist,
+                @NonNull Collection<String> jsContentBlacklist) {
+            this.urlBlacklist = new SubstringMatcher(urlBlacklist);
+            this.urlWhitelist = new SubstringMatcher(urlWhitelist);
+            if (jsUrlPatternWhitelist.isEmpty()) {
+                this.jsUrlPatternWhitelist = null;
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (String p : jsUrlPatternWhitelist) {
+                    if (sb.length() > 0) sb.append('|');
+                    sb.append("(?:").append(p).append(')');
+                }
+                this.jsUrlPatternWhitelist = Pattern.compile(sb.toString());
+            }
+            this.nbJsUrlPatterns = jsUrlPatternWhitelist.size();
+            this.jsContentBlacklist = new SubstringMatcher(jsContentBlacklist);
+        }
+    }
 }
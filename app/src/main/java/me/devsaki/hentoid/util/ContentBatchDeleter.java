@@ -0,0 +1,302 @@
+package me.devsaki.hentoid.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.annimon.stream.Stream;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.events.ContentRemovedEvent;
+import me.devsaki.hentoid.util.file.FileHelper;
+import timber.log.Timber;
+
+/**
+ * Batch deletion of books, from the DB and from the storage
+ * <p>
+ * - Books are removed from the DB by chunks, in one transaction per chunk (see {@link CollectionDAO#deleteContents})
+ * - Files of each chunk are then removed in parallel, on a bounded pool of threads
+ * - Cover thumbnails of archives are found using an index of the app's files folder, built once per batch
+ * - Progress is reported at most once every {@link #PROGRESS_INTERVAL_MS}
+ */
+public class ContentBatchDeleter {
+
+    /**
+     * Storage of the books' files
+     */
+    interface FileRemover {
+        /**
+         * Remove the document at the given Uri, along with its children if it's a folder
+         *
+         * @param uri Uri of the document to remove
+         * @return True if the document has been removed; false if it couldn't be removed
+         * @throws FileNotFoundException If the document doesn't exist
+         */
+        boolean remove(@NonNull String uri) throws FileNotFoundException;
+    }
+
+    /**
+     * Receives the progress of the deletion
+     * NB : All methods are called from the thread that runs {@link #delete}
+     */
+    public interface Listener {
+        /**
+         * Called at most once every {@link #PROGRESS_INTERVAL_MS}, and once all books have been processed
+         *
+         * @param nbProcessed Number of books that have been processed, including failed ones
+         * @param nbErrors    Number of books whose files couldn't be removed
+         * @param title       Title of the latest processed book
+         */
+        void onProgress(int nbProcessed, int nbErrors, @NonNull String title);
+
+        /**
+         * Called for each book whose files couldn't be removed
+         *
+         * @param content Book whose files couldn't be removed
+         * @param message Description of the error
+         */
+        void onError(@NonNull Content content, @NonNull String message);
+    }
+
+    private static final int CHUNK_SIZE = 100;
+    private static final int NB_THREADS = 4;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    private final CollectionDAO dao;
+    private final FileRemover remover;
+    private final File thumbFolder;
+    private final int chunkSize;
+    private final int nbThreads;
+    private final long progressIntervalMs;
+
+    private volatile boolean stopped = false;
+
+
+    /**
+     * @param context Context to use
+     * @param dao     DAO to use
+     */
+    public ContentBatchDeleter(@NonNull Context context, @NonNull CollectionDAO dao) {
+        this(dao, new DocumentRemover(context.getContentResolver()), context.getFilesDir(), CHUNK_SIZE, NB_THREADS, PROGRESS_INTERVAL_MS);
+    }
+
+    /**
+     * @param dao                DAO to use
+     * @param remover            Storage of the books' files
+     * @param thumbFolder        Folder where the cover thumbnails of archives are stored
+     * @param chunkSize          Number of books removed from the DB in one single transaction
+     * @param nbThreads          Number of documents that can be removed at the same time
+     * @param progressIntervalMs Minimum delay between two progress reports
+     */
+    ContentBatchDeleter(
+            @NonNull CollectionDAO dao,
+            @NonNull FileRemover remover,
+            @NonNull File thumbFolder,
+            int chunkSize,
+            int nbThreads,
+            long progressIntervalMs) {
+        this.dao = dao;
+        this.remover = remover;
+        this.thumbFolder = thumbFolder;
+        this.chunkSize = chunkSize;
+        this.nbThreads = nbThreads;
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    /**
+     * Stop the current deletion after the chunk being processed
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Delete the given books from the DB and from the storage
+     * NB : Blocks until all books have been processed or the deletion has been stopped
+     *
+     * @param ids      IDs of the books to delete
+     * @param listener Listener to report progress to
+     * @return Number of books whose files couldn't be removed
+     */
+    public int delete(long[] ids, @Nullable Listener listener) {
+        Helper.assertNonUiThread();
+        stopped = false;
+        long[] contentIds = Helper.getPrimitiveArrayFromList(Stream.of(Helper.getListFromPrimitiveArray(ids)).filter(id -> id > 0).toList());
+        int nbProcessed = 0;
+        int nbErrors = 0;
+        long lastProgress = 0;
+        String title = "";
+        Map<Long, List<File>> thumbIndex = null;
+
+        // Flag the content as "being deleted" (triggers blink animation; lock operations)
+        dao.updateContentsDeleteFlag(contentIds, true);
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads, r -> {
+            Thread t = new Thread(r, "content-deleter-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        int index = 0;
+        try {
+            for (; index < contentIds.length && !stopped; index += chunkSize) {
+                long[] chunkIds = Arrays.copyOfRange(contentIds, index, Math.min(index + chunkSize, contentIds.length));
+                List<Content> contents = dao.selectContent(chunkIds);
+
+                // Remove from DB first to have a LiveData feedback, because file removal can take much time
+                dao.deleteContents(chunkIds);
+                for (Content c : contents)
+                    EventBus.getDefault().post(new ContentRemovedEvent(c.getSite(), c.getUrl()));
+
+                // The app's files folder is only listed if there are archives to delete
+                if (null == thumbIndex && Stream.of(contents).anyMatch(Content::isArchive))
+                    thumbIndex = indexThumbnails(thumbFolder);
+                final Map<Long, List<File>> thumbs = (null == thumbIndex) ? Collections.emptyMap() : thumbIndex;
+
+                // Remove files in parallel; results are collected on the calling thread as they come
+                CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+                Map<Future<String>, Content> tasks = new HashMap<>(contents.size());
+                for (Content c : contents) tasks.put(completion.submit(() -> removeFiles(c, thumbs)), c);
+                for (int i = 0; i < tasks.size(); i++) {
+                    Future<String> future = completion.take();
+                    Content c = tasks.get(future);
+                    if (null == c) continue;
+                    String error;
+                    try {
+                        error = future.get();
+                    } catch (ExecutionException e) {
+                        error = String.valueOf(e.getCause());
+                    }
+                    nbProcessed++;
+                    title = c.getTitle();
+                    if (error != null) {
+                        nbErrors++;
+                        Timber.w("Error when trying to delete %s : %s", c.getId(), error);
+                        if (listener != null) listener.onError(c, error);
+                    }
+                    long now = SystemClock.elapsedRealtime();
+                    if (listener != null && now - lastProgress >= progressIntervalMs) {
+                        lastProgress = now;
+                        listener.onProgress(nbProcessed, nbErrors, title);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+            // Unlock the books that haven't been processed
+            if (index < contentIds.length)
+                dao.updateContentsDeleteFlag(Arrays.copyOfRange(contentIds, index, contentIds.length), false);
+        }
+        if (listener != null) listener.onProgress(nbProcessed, nbErrors, title);
+        return nbErrors;
+    }
+
+    /**
+     * Remove the files of the given book
+     *
+     * @param content Book to remove the files of
+     * @param thumbs  Index of the cover thumbnails of archives
+     * @return Description of the error if the files couldn't be removed; null if they have been removed
+     */
+    @Nullable
+    private String removeFiles(@NonNull Content content, @NonNull Map<Long, List<File>> thumbs) {
+        // If the book has just starting being downloaded and there are no complete pictures on memory yet, it has no storage folder => nothing to delete
+        if (content.getStorageUri().isEmpty()) return null;
+        try {
+            if (!remover.remove(content.getStorageUri()))
+                return "Failed to delete " + content.getStorageUri();
+        } catch (FileNotFoundException e) {
+            return "Failed to find " + content.getStorageUri();
+        } catch (Exception e) {
+            // Provider errors (e.g. IllegalArgumentException, SecurityException) happen on certain devices
+            return "Failed to delete " + content.getStorageUri() + " : " + e.getMessage();
+        }
+        Timber.i("Removed : %s", content.getStorageUri());
+
+        // Remove the cover stored in the app's persistent folder
+        if (content.isArchive()) {
+            List<File> files = thumbs.get(content.getId());
+            if (files != null) for (File f : files) FileHelper.removeFile(f);
+        }
+        return null;
+    }
+
+    /**
+     * Index the files of the given folder by the book ID they're named after
+     *
+     * @param folder Folder to index
+     * @return Files of the given folder whose name is a book ID, indexed by book ID
+     */
+    static Map<Long, List<File>> indexThumbnails(@NonNull File folder) {
+        Map<Long, List<File>> result = new HashMap<>();
+        File[] files = folder.listFiles();
+        if (null == files) return result;
+        for (File f : files) {
+            if (!f.isFile()) continue;
+            long id;
+            try {
+                id = Long.parseLong(FileHelper.getFileNameWithoutExtension(f.getName()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            List<File> list = result.get(id);
+            if (null == list) {
+                list = new ArrayList<>(1);
+                result.put(id, list);
+            }
+            list.add(f);
+        }
+        return result;
+    }
+
+    /**
+     * Removes documents using the storage access framework
+     */
+    private static class DocumentRemover implements FileRemover {
+        private final ContentResolver resolver;
+
+        DocumentRemover(@NonNull ContentResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public boolean remove(@NonNull String uri) throws FileNotFoundException {
+            Uri docUri = Uri.parse(uri);
+            if (ContentResolver.SCHEME_FILE.equals(docUri.getScheme())) {
+                File file = new File(docUri.getPath());
+                if (!file.exists()) throw new FileNotFoundException(uri);
+                FileHelper.removeFile(file);
+                return !file.exists();
+            }
+            // Direct call, without the existence checks made by DocumentFile
+            return DocumentsContract.deleteDocument(resolver, docUri);
+        }
+    }
+}
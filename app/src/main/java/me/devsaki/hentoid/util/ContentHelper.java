@@ -21,7 +21,6 @@ import com.annimon.stream.Optional;
 import com.annimon.stream.Stream;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.load.model.LazyHeaders;
-import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
 import net.greypanther.natsort.CaseInsensitiveSimpleNaturalComparator;
 
@@ -30,6 +29,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.greenrobot.eventbus.EventBus;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -70,10 +70,10 @@ import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.enums.StorageLocation;
+import me.devsaki.hentoid.events.ContentRemovedEvent;
 import me.devsaki.hentoid.events.DownloadCommandEvent;
 import me.devsaki.hentoid.events.ProcessEvent;
 import me.devsaki.hentoid.json.JsonContent;
-import me.devsaki.hentoid.json.JsonContentCollection;
 import me.devsaki.hentoid.parsers.ContentParserFactory;
 import me.devsaki.hentoid.parsers.content.ContentParser;
 import me.devsaki.hentoid.parsers.images.ImageListParser;
@@ -87,6 +87,7 @@ import me.devsaki.hentoid.util.file.FileExplorer;
 import me.devsaki.hentoid.util.file.FileHelper;
 import me.devsaki.hentoid.util.image.ImageHelper;
 import me.devsaki.hentoid.util.network.CloudflareHelper;
+import me.devsaki.hentoid.util.network.GalleryPageCache;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import me.devsaki.hentoid.util.network.WebkitPackageHelper;
 import me.devsaki.hentoid.util.string_similarity.Cosine;
@@ -274,42 +275,30 @@ public final class ContentHelper {
     }
 
     /**
-     * Update the JSON file that stores the queue with the current contents of the queue
+     * Persist the JSON files of the given books in the background
+     * NB : Successive requests for the same book are coalesced into one single write (see {@link ContentJsonWriter})
      *
-     * @param context Context to be used
-     * @param dao     DAO to be used
-     * @return True if the queue JSON file has been updated properly; false instead
+     * @param context    Context to use
+     * @param contentIds IDs of the books to persist the JSON for
      */
-    public static boolean updateQueueJson(@NonNull Context context, @NonNull CollectionDAO dao) {
-        Helper.assertNonUiThread();
-        List<QueueRecord> queue = dao.selectQueue();
-        List<Content> errors = dao.selectErrorContent();
-
-        // Save current queue (to be able to restore it in case the app gets uninstalled)
-        List<Content> queuedContent = Stream.of(queue).map(qr -> {
-            Content c = qr.getContent().getTarget();
-            if (c != null) c.setFrozen(qr.isFrozen());
-            return c;
-        }).withoutNulls().toList();
-        if (errors != null) queuedContent.addAll(errors);
-
-        DocumentFile rootFolder = FileHelper.getDocumentFromTreeUriString(context, Preferences.getStorageUri(StorageLocation.PRIMARY_1));
-        if (null == rootFolder) return false;
+    public static void persistJsonLater(@NonNull Context context, long... contentIds) {
+        if (0 == contentIds.length) return;
+        ContentJsonWriter.getInstance(context).requestPersist(contentIds);
+    }
 
-        try {
-            JsonContentCollection contentCollection = new JsonContentCollection();
-            contentCollection.setQueue(queuedContent);
-
-            JsonHelper.jsonToFile(context, contentCollection, JsonContentCollection.class, rootFolder, Consts.QUEUE_JSON_FILE_NAME);
-        } catch (IOException | IllegalArgumentException e) {
-            // NB : IllegalArgumentException might happen for an unknown reason on certain devices
-            // even though all the file existence checks are in place
-            // ("Failed to determine if primary:.Hentoid/queue.json is child of primary:.Hentoid: java.io.FileNotFoundException: Missing file for primary:.Hentoid/queue.json at /storage/emulated/0/.Hentoid/queue.json")
-            Timber.e(e);
-            FirebaseCrashlytics crashlytics = FirebaseCrashlytics.getInstance();
-            crashlytics.recordException(e);
-            return false;
-        }
+    /**
+     * Update the JSON file that stores the queue with the current contents of the queue
+     * NB : The update is asynchronous; successive updates are coalesced and only the changes
+     * are appended to the queue journal (see {@link QueueJournal})
+     *
+     * @param context    Context to be used
+     * @param dao        DAO to be used
+     * @param contentIds IDs of the queued books whose properties (other than status and frozen state) have changed
+     * @return True if the queue JSON file update has been scheduled; false instead
+     */
+    public static boolean updateQueueJson(@NonNull Context context, @NonNull CollectionDAO dao, long... contentIds) {
+        if (Preferences.getStorageUri(StorageLocation.PRIMARY_1).isEmpty()) return false;
+        QueueJournal.getInstance().requestPersist(context, contentIds);
         return true;
     }
 
@@ -362,7 +351,7 @@ public final class ContentHelper {
         if (markAsCompleted) content.setCompleted(true);
         dao.replaceImageList(content.getId(), images);
         dao.insertContent(content);
-        persistJson(context, content);
+        persistJsonLater(context, content.getId());
     }
 
     /**
@@ -401,6 +390,7 @@ public final class ContentHelper {
         // Remove from DB
         // NB : start with DB to have a LiveData feedback, because file removal can take much time
         dao.deleteContent(content);
+        EventBus.getDefault().post(new ContentRemovedEvent(content.getSite(), content.getUrl()));
 
         if (content.isArchive()) { // Remove an archive
             DocumentFile archive = FileHelper.getFileFromSingleUriString(context, content.getStorageUri());
@@ -512,7 +502,20 @@ public final class ContentHelper {
      * @return ID of the newly added Content
      */
     public static long addContent(@NonNull final Context context, @NonNull final CollectionDAO dao, @NonNull final Content content) {
-        long newContentId = dao.insertContent(content);
+        return addContent(context, dao, content, null);
+    }
+
+    /**
+     * Add new content to the library
+     *
+     * @param context        Context to use
+     * @param dao            DAO to use
+     * @param content        Content to add to the library
+     * @param attributeCache Known attributes, as given by {@link CollectionDAO#selectAttributesByKey()}; null to query the DB
+     * @return ID of the newly added Content
+     */
+    public static long addContent(@NonNull final Context context, @NonNull final CollectionDAO dao, @NonNull final Content content, @Nullable final Map<String, Attribute> attributeCache) {
+        long newContentId = dao.insertContent(content, attributeCache);
         content.setId(newContentId);
 
         // Perform group operations only if
@@ -1194,41 +1197,50 @@ public final class ContentHelper {
         if (!cookieStr.isEmpty())
             requestHeadersList.add(new Pair<>(HttpHelper.HEADER_COOKIE_KEY, cookieStr));
 
-        Response response = HttpHelper.getOnlineResourceFast(url, requestHeadersList, site.useMobileAgent(), site.useHentoidAgent(), site.useWebviewAgent());
-
-        // Raise exception if blocked by Cloudflare
-        if (503 == response.code() && site.isUseCloudflare())
-            throw new CloudflareHelper.CloudflareProtectedException();
-
-        // Scram if the response is a redirection or an error
-        if (response.code() >= 300) return Optional.empty();
-
-        // Scram if the response is something else than html
-        Pair<String, String> contentType = HttpHelper.cleanContentType(StringHelper.protect(response.header(HttpHelper.HEADER_CONTENT_TYPE, "")));
-        if (!contentType.first.isEmpty() && !contentType.first.equals("text/html"))
-            return Optional.empty();
+        GalleryPageCache.Page page = GalleryPageCache.getInstance().fetch(site, url, requestHeadersList,
+                headers -> HttpHelper.getOnlineResourceFast(url, headers, site.useMobileAgent(), site.useHentoidAgent(), site.useWebviewAgent()));
+        Response response = page.getResponse();
 
-        // Scram if the response is empty
-        ResponseBody body = response.body();
-        if (null == body) return Optional.empty();
-
-        Class<? extends ContentParser> c = ContentParserFactory.getInstance().getContentParserClass(site);
-        final Jspoon jspoon = Jspoon.create();
-        HtmlAdapter<? extends ContentParser> htmlAdapter = jspoon.adapter(c); // Unchecked but alright
-
-        ContentParser contentParser = htmlAdapter.fromInputStream(body.byteStream(), new URL(url));
-        Content newContent = contentParser.toContent(url);
+        Content newContent;
+        Content cachedContent = page.getCachedContent();
+        if (cachedContent != null) { // Page hasn't changed since it was last parsed
+            newContent = copyParsedProperties(cachedContent, new Content());
+        } else {
+            // Raise exception if blocked by Cloudflare
+            if (503 == response.code() && site.isUseCloudflare())
+                throw new CloudflareHelper.CloudflareProtectedException();
+
+            // Scram if the response is a redirection or an error
+            if (response.code() >= 300) return Optional.empty();
+
+            // Scram if the response is something else than html
+            Pair<String, String> contentType = HttpHelper.cleanContentType(StringHelper.protect(response.header(HttpHelper.HEADER_CONTENT_TYPE, "")));
+            if (!contentType.first.isEmpty() && !contentType.first.equals("text/html"))
+                return Optional.empty();
+
+            // Scram if the response is empty
+            byte[] data = page.getData();
+            if (null == data) return Optional.empty();
+
+            Class<? extends ContentParser> c = ContentParserFactory.getInstance().getContentParserClass(site);
+            final Jspoon jspoon = Jspoon.create();
+            HtmlAdapter<? extends ContentParser> htmlAdapter = jspoon.adapter(c); // Unchecked but alright
+
+            ContentParser contentParser = htmlAdapter.fromInputStream(new ByteArrayInputStream(data), new URL(url));
+            newContent = contentParser.toContent(url);
+
+            if (newContent.getStatus() != null && newContent.getStatus().equals(StatusContent.IGNORED)) {
+                String canonicalUrl = contentParser.getCanonicalUrl();
+                if (!canonicalUrl.isEmpty() && !canonicalUrl.equalsIgnoreCase(url))
+                    return parseFromScratch(canonicalUrl);
+                else return Optional.empty();
+            }
+            page.store(newContent);
+        }
         newContent.setJsonUri("");
         newContent.setStorageUri("");
         newContent.setArchiveLocationUri("");
 
-        if (newContent.getStatus() != null && newContent.getStatus().equals(StatusContent.IGNORED)) {
-            String canonicalUrl = contentParser.getCanonicalUrl();
-            if (!canonicalUrl.isEmpty() && !canonicalUrl.equalsIgnoreCase(url))
-                return parseFromScratch(canonicalUrl);
-            else return Optional.empty();
-        }
-
         // Clear existing chapters to avoid issues with extra chapter detection
         newContent.clearChapters();
 
@@ -1259,37 +1271,47 @@ public final class ContentHelper {
         if (!cookieStr.isEmpty())
             requestHeadersList.add(new Pair<>(HttpHelper.HEADER_COOKIE_KEY, cookieStr));
 
-        Response response = HttpHelper.getOnlineResourceFast(url, requestHeadersList, content.getSite().useMobileAgent(), content.getSite().useHentoidAgent(), content.getSite().useWebviewAgent());
-
-        // Scram if the response is a redirection or an error
-        if (response.code() >= 300) return Optional.empty();
-
-        // Scram if the response is something else than html
-        Pair<String, String> contentType = HttpHelper.cleanContentType(StringHelper.protect(response.header(HttpHelper.HEADER_CONTENT_TYPE, "")));
-        if (!contentType.first.isEmpty() && !contentType.first.equals("text/html"))
-            return Optional.empty();
-
-        // Scram if the response is empty
-        ResponseBody body = response.body();
-        if (null == body) return Optional.empty();
+        Site site = content.getSite();
+        GalleryPageCache.Page page = GalleryPageCache.getInstance().fetch(site, url, requestHeadersList,
+                headers -> HttpHelper.getOnlineResourceFast(url, headers, site.useMobileAgent(), site.useHentoidAgent(), site.useWebviewAgent()));
+        Response response = page.getResponse();
 
-        Class<? extends ContentParser> c = ContentParserFactory.getInstance().getContentParserClass(content.getSite());
-        final Jspoon jspoon = Jspoon.create();
-        HtmlAdapter<? extends ContentParser> htmlAdapter = jspoon.adapter(c); // Unchecked but alright
-
-        ContentParser contentParser = htmlAdapter.fromInputStream(body.byteStream(), new URL(url));
-        Content newContent = contentParser.update(content, url, true);
+        Content newContent;
+        Content cachedContent = page.getCachedContent();
+        if (cachedContent != null) { // Page hasn't changed since it was last parsed
+            newContent = copyParsedProperties(cachedContent, content);
+        } else {
+            // Scram if the response is a redirection or an error
+            if (response.code() >= 300) return Optional.empty();
+
+            // Scram if the response is something else than html
+            Pair<String, String> contentType = HttpHelper.cleanContentType(StringHelper.protect(response.header(HttpHelper.HEADER_CONTENT_TYPE, "")));
+            if (!contentType.first.isEmpty() && !contentType.first.equals("text/html"))
+                return Optional.empty();
+
+            // Scram if the response is empty
+            byte[] data = page.getData();
+            if (null == data) return Optional.empty();
+
+            Class<? extends ContentParser> c = ContentParserFactory.getInstance().getContentParserClass(site);
+            final Jspoon jspoon = Jspoon.create();
+            HtmlAdapter<? extends ContentParser> htmlAdapter = jspoon.adapter(c); // Unchecked but alright
+
+            ContentParser contentParser = htmlAdapter.fromInputStream(new ByteArrayInputStream(data), new URL(url));
+            newContent = contentParser.update(content, url, true);
+
+            if (newContent.getStatus() != null && newContent.getStatus().equals(StatusContent.IGNORED)) {
+                String canonicalUrl = contentParser.getCanonicalUrl();
+                if (!canonicalUrl.isEmpty() && !canonicalUrl.equalsIgnoreCase(url))
+                    return reparseFromScratch(content, canonicalUrl);
+                else return Optional.empty();
+            }
+            page.store(newContent);
+        }
         newContent.setJsonUri("");
         newContent.setStorageUri("");
         newContent.setArchiveLocationUri("");
 
-        if (newContent.getStatus() != null && newContent.getStatus().equals(StatusContent.IGNORED)) {
-            String canonicalUrl = contentParser.getCanonicalUrl();
-            if (!canonicalUrl.isEmpty() && !canonicalUrl.equalsIgnoreCase(url))
-                return reparseFromScratch(content, canonicalUrl);
-            else return Optional.empty();
-        }
-
         // Clear existing chapters to avoid issues with extra chapter detection
         newContent.clearChapters();
 
@@ -1301,6 +1323,26 @@ public final class ContentHelper {
         return Optional.of(newContent);
     }
 
+    /**
+     * Copy the properties set by content parsers from the given source to the given target
+     *
+     * @param source Content to copy the properties from
+     * @param target Content to copy the properties to
+     * @return Target Content, for convenience
+     */
+    private static Content copyParsedProperties(@NonNull final Content source, @NonNull final Content target) {
+        target.setSite(source.getSite());
+        target.setUrl(source.getUrl());
+        target.setUniqueSiteId(source.getUniqueSiteId());
+        target.setTitle(source.getTitle());
+        target.setCoverImageUrl(source.getCoverImageUrl());
+        target.setUploadDate(source.getUploadDate());
+        target.putAttributes(new ArrayList<>(source.getAttributes()));
+        target.setImageFiles(new ArrayList<>(source.getImageFiles()));
+        target.setQtyPages(source.getQtyPages());
+        return target;
+    }
+
     /**
      * Query source to fetch all image file names and URLs of a given book
      *
@@ -0,0 +1,317 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import timber.log.Timber;
+
+/**
+ * Write-behind persistence of the books' JSON files
+ * <p>
+ * - Books whose JSON file has to be written are marked as dirty; successive requests for the same book
+ * are coalesced into one single write
+ * - Dirty books are written after a short delay, in parallel on a bounded pool of writers
+ * - IDs of the dirty books are persisted to a local file, so that pending writes survive process death
+ * (see {@link #resume()}); that file is written on a dedicated thread so that requests never wait for file I/O
+ */
+public class ContentJsonWriter {
+
+    /**
+     * Storage of the JSON files
+     */
+    interface Storage {
+        /**
+         * Write the JSON file of the given book with its current values
+         *
+         * @param contentId ID of the book whose JSON file to write
+         * @throws IOException If anything happens during file I/O
+         */
+        void write(long contentId) throws IOException;
+    }
+
+    private static final String FILE_NAME = "json_pending.txt";
+    // Delay during which persistence requests are coalesced
+    private static final long COALESCE_DELAY_MS = 1000;
+    private static final int NB_WRITERS = 3;
+
+    private static ContentJsonWriter instance;
+
+    private final Storage storage;
+    private final File file;
+    private final long coalesceDelayMs;
+
+    // IDs of the books whose JSON file has to be written, in the order they've been requested
+    private final Set<Long> dirty = new LinkedHashSet<>();
+    private boolean flushScheduled = false;
+    // Writes are run one batch at a time so that the same file can't be written by two writers at once
+    private final Object writeLock = new Object();
+
+    private final AtomicInteger nbWrites = new AtomicInteger(0);
+    private final AtomicInteger nbWritesSaved = new AtomicInteger(0);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "json-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    // Writes of the file of the dirty books, run in the order they've been requested
+    private final ExecutorService fileWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "json-pending");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService writers;
+
+
+    public static synchronized ContentJsonWriter getInstance(@NonNull Context context) {
+        if (null == instance) {
+            Context appContext = context.getApplicationContext();
+            instance = new ContentJsonWriter(
+                    new ContentStorage(appContext),
+                    new File(appContext.getFilesDir(), FILE_NAME),
+                    COALESCE_DELAY_MS,
+                    NB_WRITERS);
+        }
+        return instance;
+    }
+
+    /**
+     * @param storage         Storage to write JSON files to
+     * @param file            File to persist the IDs of the dirty books into
+     * @param coalesceDelayMs Delay during which persistence requests are coalesced
+     * @param nbWriters       Number of JSON files that can be written at the same time
+     */
+    ContentJsonWriter(@NonNull Storage storage, @NonNull File file, long coalesceDelayMs, int nbWriters) {
+        this.storage = storage;
+        this.file = file;
+        this.coalesceDelayMs = coalesceDelayMs;
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        writers = Executors.newFixedThreadPool(nbWriters, r -> {
+            Thread t = new Thread(r, "json-writer-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Schedule the writes that were still pending when the app was last stopped
+     */
+    public synchronized void resume() {
+        dirty.addAll(load());
+        scheduleFlush();
+    }
+
+    /**
+     * Request the persistence of the JSON files of the given books
+     * NB : Requests happening before the books are written are merged into one single write;
+     * the calling thread never waits for any file I/O
+     *
+     * @param contentIds IDs of the books whose JSON file to write
+     */
+    public synchronized void requestPersist(long... contentIds) {
+        List<Long> added = new ArrayList<>(contentIds.length);
+        for (long id : contentIds) {
+            if (dirty.add(id)) added.add(id);
+            else nbWritesSaved.incrementAndGet();
+        }
+        if (added.isEmpty()) return;
+        fileWriter.execute(() -> append(added));
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled || dirty.isEmpty()) return;
+        flushScheduled = true;
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                flushScheduled = false;
+            }
+            flush();
+        }, coalesceDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the JSON files of all dirty books now
+     * NB : Blocks until all files have been written
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            long[] ids;
+            synchronized (this) {
+                ids = Helper.getPrimitiveLongArrayFromSet(dirty);
+                dirty.clear();
+            }
+            if (ids.length > 0) write(ids, null);
+        }
+    }
+
+    /**
+     * Write the JSON files of the given books now, whether they're dirty or not
+     * NB : Blocks until all files have been written
+     *
+     * @param contentIds IDs of the books whose JSON file to write
+     * @param onWritten  Called after each book has been processed; called from the writers' threads
+     */
+    public void persist(long[] contentIds, @Nullable Runnable onWritten) {
+        synchronized (writeLock) {
+            synchronized (this) {
+                for (long id : contentIds)
+                    if (dirty.remove(id)) nbWritesSaved.incrementAndGet();
+            }
+            write(contentIds, onWritten);
+        }
+    }
+
+    private void write(long[] contentIds, @Nullable Runnable onWritten) {
+        List<Callable<Void>> tasks = new ArrayList<>(contentIds.length);
+        for (long id : contentIds) {
+            tasks.add(() -> {
+                try {
+                    storage.write(id);
+                    nbWrites.incrementAndGet();
+                } catch (IOException | IllegalArgumentException e) {
+                    // NB : IllegalArgumentException might happen for an unknown reason on certain devices
+                    // even though all the file existence checks are in place
+                    Timber.w(e, "Error while writing the JSON file of book %s", id);
+                }
+                if (onWritten != null) onWritten.run();
+                return null;
+            });
+        }
+        try {
+            writers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
+            // Keep the books that might not have been written for the next flush
+            synchronized (this) {
+                for (long id : contentIds) dirty.add(id);
+            }
+        }
+        // Only keep the books that have been marked as dirty during the writes
+        fileWriter.execute(() -> {
+            List<Long> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(dirty);
+            }
+            save(pending);
+        });
+    }
+
+    /**
+     * Wait until the file of the dirty books is up to date with the requests made so far
+     */
+    void awaitFileWrites() throws InterruptedException, ExecutionException {
+        fileWriter.submit(() -> {
+        }).get();
+    }
+
+    /**
+     * @return Number of books whose JSON file is waiting to be written
+     */
+    public synchronized int getQueueDepth() {
+        return dirty.size();
+    }
+
+    /**
+     * @return Number of JSON files written since the app has started
+     */
+    public int getNbWrites() {
+        return nbWrites.get();
+    }
+
+    /**
+     * @return Number of writes that have been avoided by merging requests for the same book
+     */
+    public int getNbWritesSaved() {
+        return nbWritesSaved.get();
+    }
+
+    private Set<Long> load() {
+        Set<Long> result = new LinkedHashSet<>();
+        if (!file.exists()) return result;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    result.add(Long.parseLong(line.trim()));
+                } catch (NumberFormatException e) {
+                    // Torn line written when the process died; skip it
+                    Timber.d("Invalid line : %s", line);
+                }
+            }
+        } catch (IOException e) {
+            Timber.w(e);
+        }
+        return result;
+    }
+
+    private void append(@NonNull Collection<Long> contentIds) {
+        writeFile(contentIds, true);
+    }
+
+    private void save(@NonNull Collection<Long> contentIds) {
+        if (contentIds.isEmpty()) {
+            if (file.exists() && !file.delete()) Timber.w("Failed deleting %s", file.getAbsolutePath());
+        } else writeFile(contentIds, false);
+    }
+
+    private void writeFile(@NonNull Collection<Long> contentIds, boolean append) {
+        try (Writer writer = new FileWriter(file, append)) {
+            for (Long id : contentIds) writer.write(id + "\n");
+        } catch (IOException e) {
+            Timber.w(e);
+        }
+    }
+
+    /**
+     * Writes the JSON files of the books of the collection
+     */
+    private static class ContentStorage implements Storage {
+        private final Context context;
+
+        ContentStorage(@NonNull Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void write(long contentId) {
+            CollectionDAO dao = new ObjectBoxDAO(context);
+            try {
+                Content content = dao.selectContent(contentId);
+                if (null == content) return; // Book has been removed since
+                if (content.getJsonUri().isEmpty()) {
+                    // Keep the URI of the new file
+                    if (ContentHelper.createJson(context, content) != null)
+                        dao.insertContentCore(content);
+                } else ContentHelper.updateJson(context, content);
+            } finally {
+                dao.cleanup();
+            }
+        }
+    }
+}
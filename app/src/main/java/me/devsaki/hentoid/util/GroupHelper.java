@@ -20,7 +20,6 @@ import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.Group;
 import me.devsaki.hentoid.database.domains.GroupItem;
-import me.devsaki.hentoid.database.domains.ImageFile;
 import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.StorageLocation;
 import me.devsaki.hentoid.json.JsonContentCollection;
@@ -148,66 +147,23 @@ public final class GroupHelper {
         // Get all groupItems of the given content for custom grouping
         List<GroupItem> groupItems = dao.selectGroupItems(content.getId(), Grouping.CUSTOM);
 
-        if (!groupItems.isEmpty()) {
-            // Update the cover of the old groups if they used a picture from the book that is being moved
-            for (GroupItem gi : groupItems) {
-                Group g = gi.group.getTarget();
-                if (g != null && !g.coverContent.isNull()) {
-                    if (g.coverContent.getTargetId() == content.getId()) {
-                        updateGroupCover(g, content.getId(), dao);
-                    }
-                }
-            }
-
-            // Delete them all
+        // Delete them all
+        // NB : Old groups that used a picture from the book that is being moved get a new cover from the DB
+        if (!groupItems.isEmpty())
             dao.deleteGroupItems(Stream.of(groupItems).map(gi -> gi.id).toList());
-        }
 
         // Create the new links from the given content to the target group
         if (group != null) {
             GroupItem newGroupItem = new GroupItem(content, group, order);
+            // Commit new link to the DB; the target group gets a cover if it didn't have one
+            dao.insertGroupItem(newGroupItem);
             // Use this syntax because content will be persisted on JSON right after that
             content.groupItems.add(newGroupItem);
-            // Commit new link to the DB
-            content.groupItems.applyChangesToDb();
-
-            // Add a picture to the target group if it didn't have one
-            if (group.coverContent.isNull())
-                group.coverContent.setAndPutTarget(content);
         }
 
         return content;
     }
 
-    /**
-     * Update the given Group's cover according to the removed Content ID
-     * NB : This method does _not_ remove any Content from the given Group
-     *
-     * @param group             Group to update the cover from
-     * @param contentIdToRemove Content ID removed from the given Group
-     * @param dao               DAO to use
-     */
-    private static void updateGroupCover(@NonNull final Group group, long contentIdToRemove, @NonNull CollectionDAO dao) {
-        List<Long> contentIds = group.getContentIds();
-        List<Content> groupsContents = dao.selectContent(Helper.getPrimitiveArrayFromList(contentIds));
-
-        // Empty group cover if there's just one content inside
-        if (1 == groupsContents.size() && groupsContents.get(0).getId() == contentIdToRemove) {
-            group.coverContent.setAndPutTarget(null);
-            return;
-        }
-
-        // Choose 1st valid content cover
-        for (Content c : groupsContents)
-            if (c.getId() != contentIdToRemove) {
-                ImageFile cover = c.getCover();
-                if (cover.getId() > -1) {
-                    group.coverContent.setAndPutTarget(c);
-                    return;
-                }
-            }
-    }
-
     /**
      * Create a new group with the given name inside the Artists grouping
      *
@@ -244,24 +200,15 @@ public final class GroupHelper {
      */
     public static void removeContentFromGrouping(@NonNull Grouping grouping, @NonNull Content content, @NonNull CollectionDAO dao) {
         List<GroupItem> toRemove = new ArrayList<>();
-        List<Group> needCoverUpdate = new ArrayList<>();
-        for (GroupItem gi : content.groupItems) {
-            if (gi.group.getTarget().grouping.equals(grouping)) {
-                toRemove.add(gi);
-                if (gi.getGroup().coverContent.getTargetId() == content.getId())
-                    needCoverUpdate.add(gi.getGroup());
-            }
-        }
-
-        // If applicable, remove Group cover
-        if (!needCoverUpdate.isEmpty())
-            for (Group g : needCoverUpdate) updateGroupCover(g, content.getId(), dao);
+        for (GroupItem gi : content.groupItems)
+            if (gi.group.getTarget().grouping.equals(grouping)) toRemove.add(gi);
 
         // Remove content from grouping
         content.groupItems.removeAll(toRemove);
         dao.insertContentCore(content);
 
         // Remove GroupItems from the DB
+        // NB : Groups that used a picture from the given Content get a new cover from the DB
         dao.deleteGroupItems(Stream.of(toRemove).map(gi -> gi.id).toList());
     }
 }
@@ -24,6 +24,8 @@ import javax.annotation.Nullable;
 import me.devsaki.hentoid.enums.AttributeType;
 import me.devsaki.hentoid.json.adapters.AndroidPairAdapterFactory;
 import me.devsaki.hentoid.util.file.FileHelper;
+import okio.BufferedSink;
+import okio.Okio;
 import timber.log.Timber;
 
 /**
@@ -49,6 +51,18 @@ public class JsonHelper {
             .build();
 
 
+    /**
+     * Get the JSON adapter used by the app for the given type
+     * NB : Useful to (de)serialize elements one by one on a stream
+     *
+     * @param type Type to get the adapter for
+     * @param <K>  Type to get the adapter for
+     * @return JSON adapter for the given type
+     */
+    public static <K> JsonAdapter<K> getAdapter(Type type) {
+        return MOSHI.adapter(type);
+    }
+
     /**
      * Serialize the given object to JSON format
      *
@@ -98,8 +112,12 @@ public class JsonHelper {
      * @throws IOException If anything happens during file I/O
      */
     public static <K> void updateJson(K object, Type type, @Nonnull OutputStream output) throws IOException {
-        byte[] bytes = serializeToJson(object, type).getBytes();
-        output.write(bytes);
+        // Serialize straight to the output without building the whole JSON string in memory
+        // NB : The sink isn't closed as the output belongs to the caller
+        BufferedSink sink = Okio.buffer(Okio.sink(output));
+        JsonAdapter<K> jsonAdapter = MOSHI.adapter(type);
+        jsonAdapter.toJson(sink, object);
+        sink.flush();
         if (output instanceof FileOutputStream) FileHelper.sync((FileOutputStream) output);
         output.flush();
     }
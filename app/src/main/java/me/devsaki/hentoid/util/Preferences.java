@@ -6,14 +6,19 @@ import android.os.Build;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
 import com.annimon.stream.Stream;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.enums.Grouping;
@@ -38,6 +43,25 @@ public final class Preferences {
 
     private static SharedPreferences sharedPreferences;
 
+    // Values of sharedPreferences; read by the getters instead of sharedPreferences itself
+    // NB : Never modified; replaced as a whole each time values change (see updateSnapshot)
+    private static volatile PreferencesSnapshot snapshot;
+
+    // Listeners of all changes, called once the snapshot has been refreshed
+    private static final List<SharedPreferences.OnSharedPreferenceChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Key => Listeners subscribed to the changes of that key
+    private static final Map<String, List<OnChangeListener>> keyListeners = new ConcurrentHashMap<>();
+
+    // Strong reference, as SharedPreferences only keeps weak references to its listeners
+    private static final SharedPreferences.OnSharedPreferenceChangeListener snapshotUpdater = (prefs, key) -> onPreferenceChanged(key);
+
+    /**
+     * Listener for the changes of specific preferences
+     */
+    public interface OnChangeListener {
+        void onPreferenceChanged(@NonNull String key);
+    }
+
     public static void init(Context context) {
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
 
@@ -46,23 +70,129 @@ public final class Preferences {
             Timber.d("Shared Prefs Key Mismatch! Clearing Prefs!");
             sharedPreferences.edit().clear().apply();
         }
+        refreshSnapshot();
+        sharedPreferences.registerOnSharedPreferenceChangeListener(snapshotUpdater);
     }
 
     public static void performHousekeeping() {
         // Fling factor -> Swipe to fling (v1.9.0)
-        if (sharedPreferences.contains(Key.VIEWER_FLING_FACTOR)) {
+        if (snapshot.contains(Key.VIEWER_FLING_FACTOR)) {
             int flingFactor = getIntPref(Key.VIEWER_FLING_FACTOR, 0);
-            sharedPreferences.edit().putBoolean(Key.VIEWER_SWIPE_TO_FLING, flingFactor > 0).apply();
-            sharedPreferences.edit().remove(Key.VIEWER_FLING_FACTOR).apply();
+            edit().putBoolean(Key.VIEWER_SWIPE_TO_FLING, flingFactor > 0).apply();
+            edit().remove(Key.VIEWER_FLING_FACTOR).apply();
         }
     }
 
+    /**
+     * Register the given listener to the changes of all preferences
+     * NB : Unlike listeners registered to SharedPreferences directly, the listener is called once
+     * the new values have become readable through the getters
+     */
     public static void registerPrefsChangedListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
-        sharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+        if (!listeners.contains(listener)) listeners.add(listener);
     }
 
     public static void unregisterPrefsChangedListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
-        sharedPreferences.unregisterOnSharedPreferenceChangeListener(listener);
+        listeners.remove(listener);
+    }
+
+    /**
+     * Subscribe the given listener to the changes of the given preferences
+     * NB : The listener is called on the main thread, after the new values have become readable through the getters
+     *
+     * @param listener Listener to subscribe
+     * @param keys     Keys of the preferences to listen to
+     */
+    public static void subscribe(@NonNull OnChangeListener listener, @NonNull String... keys) {
+        for (String key : keys) {
+            List<OnChangeListener> subscribers = keyListeners.get(key);
+            if (null == subscribers) {
+                subscribers = new CopyOnWriteArrayList<>();
+                List<OnChangeListener> existing = keyListeners.putIfAbsent(key, subscribers);
+                if (existing != null) subscribers = existing;
+            }
+            if (!subscribers.contains(listener)) subscribers.add(listener);
+        }
+    }
+
+    /**
+     * Unsubscribe the given listener from all the preferences it has subscribed to
+     *
+     * @param listener Listener to unsubscribe
+     */
+    public static void unsubscribe(@NonNull OnChangeListener listener) {
+        for (List<OnChangeListener> subscribers : keyListeners.values()) subscribers.remove(listener);
+    }
+
+    private static void onPreferenceChanged(@Nullable String key) {
+        if (null == key) refreshSnapshot(); // Preferences have been cleared
+        else updateSnapshot(key); // No-op if the value has been written through Preferences
+        for (SharedPreferences.OnSharedPreferenceChangeListener listener : listeners)
+            listener.onSharedPreferenceChanged(sharedPreferences, key);
+        if (key != null) notifyListeners(key);
+        else for (String k : keyListeners.keySet()) notifyListeners(k); // Preferences have been cleared
+    }
+
+    private static void notifyListeners(@NonNull String key) {
+        List<OnChangeListener> subscribers = keyListeners.get(key);
+        if (subscribers != null)
+            for (OnChangeListener listener : subscribers) listener.onPreferenceChanged(key);
+    }
+
+    private static synchronized void refreshSnapshot() {
+        snapshot = new PreferencesSnapshot(sharedPreferences.getAll());
+    }
+
+    /**
+     * Replace the snapshot with one that holds the current value of the given preference
+     * NB : The value is read while holding the lock so that it can't replace a more recent value set by an editor
+     *
+     * @param key Key of the preference that has changed
+     */
+    private static synchronized void updateSnapshot(@NonNull String key) {
+        snapshot = snapshot.with(false, Collections.singletonMap(key, readValue(key)));
+    }
+
+    /**
+     * Replace the snapshot with one that holds the given changes
+     *
+     * @param cleared True if all preferences have been removed before applying the given changes
+     * @param changes Key => New value; null if the key is removed
+     */
+    private static synchronized void updateSnapshot(boolean cleared, @NonNull Map<String, Object> changes) {
+        snapshot = snapshot.with(cleared, changes);
+    }
+
+    /**
+     * Read the current value of the given preference
+     * NB : The value is read with the type of the value held by the snapshot, to avoid copying all values through getAll
+     *
+     * @param key Key of the preference to read
+     * @return Current value of the given preference; null if it isn't set
+     */
+    @Nullable
+    private static Object readValue(@NonNull String key) {
+        if (!sharedPreferences.contains(key)) return null;
+        Object current = snapshot.get(key);
+        try {
+            if (current instanceof String) return sharedPreferences.getString(key, null);
+            if (current instanceof Boolean) return sharedPreferences.getBoolean(key, false);
+            if (current instanceof Integer) return sharedPreferences.getInt(key, 0);
+            if (current instanceof Long) return sharedPreferences.getLong(key, 0);
+            if (current instanceof Float) return sharedPreferences.getFloat(key, 0);
+            if (current instanceof Set) return sharedPreferences.getStringSet(key, null);
+        } catch (ClassCastException e) {
+            // The type of the value has changed
+        }
+        return sharedPreferences.getAll().get(key);
+    }
+
+    /**
+     * @return Editor of the preferences that refreshes the values read by the getters as soon as its changes are applied,
+     * without waiting for the change listener that is called on the main thread
+     */
+    private static SharedPreferences.Editor edit() {
+        return new SnapshotEditor(sharedPreferences.edit());
     }
 
     public static Map<String, Object> extractPortableInformation() {
@@ -82,37 +212,37 @@ public final class Preferences {
     public static void importInformation(Map<String, ?> settings) {
         for (Map.Entry<String, ?> entry : settings.entrySet()) {
             if (entry.getValue() instanceof Integer) {
-                sharedPreferences.edit().putInt(entry.getKey(), (Integer) entry.getValue()).apply();
+                edit().putInt(entry.getKey(), (Integer) entry.getValue()).apply();
             } else if (entry.getValue() instanceof String) {
-                sharedPreferences.edit().putString(entry.getKey(), (String) entry.getValue()).apply();
+                edit().putString(entry.getKey(), (String) entry.getValue()).apply();
             } else if (entry.getValue() instanceof Boolean) {
-                sharedPreferences.edit().putBoolean(entry.getKey(), (Boolean) entry.getValue()).apply();
+                edit().putBoolean(entry.getKey(), (Boolean) entry.getValue()).apply();
             } else if (entry.getValue() instanceof Float) {
-                sharedPreferences.edit().putFloat(entry.getKey(), (Float) entry.getValue()).apply();
+                edit().putFloat(entry.getKey(), (Float) entry.getValue()).apply();
             } else if (entry.getValue() instanceof Long) {
-                sharedPreferences.edit().putLong(entry.getKey(), (Long) entry.getValue()).apply();
+                edit().putLong(entry.getKey(), (Long) entry.getValue()).apply();
             }
         }
     }
 
     private static int getIntPref(@NonNull String key, int defaultValue) {
-        if (null == sharedPreferences) return defaultValue;
-        return Integer.parseInt(sharedPreferences.getString(key, Integer.toString(defaultValue)) + "");
+        if (null == snapshot) return defaultValue;
+        return snapshot.getIntFromString(key, defaultValue);
     }
 
     private static void setIntPref(@NonNull String key, int value) {
         if (null == sharedPreferences) return;
-        sharedPreferences.edit().putString(key, Integer.toString(value)).apply();
+        edit().putString(key, Integer.toString(value)).apply();
     }
 
     private static long getLongPref(@NonNull String key, long defaultValue) {
-        if (null == sharedPreferences) return defaultValue;
-        return Long.parseLong(sharedPreferences.getString(key, Long.toString(defaultValue)) + "");
+        if (null == snapshot) return defaultValue;
+        return snapshot.getLongFromString(key, defaultValue);
     }
 
     private static boolean getBoolPref(@NonNull String key, boolean defaultValue) {
-        if (null == sharedPreferences) return defaultValue;
-        return sharedPreferences.getBoolean(key, defaultValue);
+        if (null == snapshot) return defaultValue;
+        return snapshot.getBoolean(key, defaultValue);
     }
 
 
@@ -123,7 +253,7 @@ public final class Preferences {
     }
 
     public static void setIsFirstRunProcessComplete(boolean isFirstRunProcessComplete) {
-        sharedPreferences.edit().putBoolean(Key.WELCOME_DONE, isFirstRunProcessComplete).apply();
+        edit().putBoolean(Key.WELCOME_DONE, isFirstRunProcessComplete).apply();
     }
 
     public static boolean isRefreshJson1Complete() {
@@ -131,7 +261,7 @@ public final class Preferences {
     }
 
     public static void setIsRefreshJson1Complete(boolean value) {
-        sharedPreferences.edit().putBoolean(Key.REFRESH_JSON_1_DONE, value).apply();
+        edit().putBoolean(Key.REFRESH_JSON_1_DONE, value).apply();
     }
 
     public static boolean isAnalyticsEnabled() {
@@ -147,7 +277,7 @@ public final class Preferences {
     }
 
     public static void setIsFirstRun(boolean isFirstRun) {
-        sharedPreferences.edit().putBoolean(Key.FIRST_RUN, isFirstRun).apply();
+        edit().putBoolean(Key.FIRST_RUN, isFirstRun).apply();
     }
 
     public static boolean isBrowserMode() {
@@ -155,7 +285,7 @@ public final class Preferences {
     }
 
     public static void setBrowserMode(boolean value) {
-        sharedPreferences.edit().putBoolean(Key.BROWSER_MODE, value).apply();
+        edit().putBoolean(Key.BROWSER_MODE, value).apply();
     }
 
     public static boolean isImportQueueEmptyBooks() {
@@ -167,7 +297,7 @@ public final class Preferences {
     }
 
     public static void setLibraryDisplay(int displayMode) {
-        sharedPreferences.edit().putString(Key.LIBRARY_DISPLAY, Integer.toString(displayMode)).apply();
+        edit().putString(Key.LIBRARY_DISPLAY, Integer.toString(displayMode)).apply();
     }
 
     public static boolean isForceEnglishLocale() {
@@ -175,11 +305,11 @@ public final class Preferences {
     }
 
     public static int getContentSortField() {
-        return sharedPreferences.getInt(Key.ORDER_CONTENT_FIELD, Default.ORDER_CONTENT_FIELD);
+        return snapshot.getInt(Key.ORDER_CONTENT_FIELD, Default.ORDER_CONTENT_FIELD);
     }
 
     public static void setContentSortField(int sortField) {
-        sharedPreferences.edit().putInt(Key.ORDER_CONTENT_FIELD, sortField).apply();
+        edit().putInt(Key.ORDER_CONTENT_FIELD, sortField).apply();
     }
 
     public static boolean isContentSortDesc() {
@@ -187,15 +317,15 @@ public final class Preferences {
     }
 
     public static void setContentSortDesc(boolean isDesc) {
-        sharedPreferences.edit().putBoolean(Key.ORDER_CONTENT_DESC, isDesc).apply();
+        edit().putBoolean(Key.ORDER_CONTENT_DESC, isDesc).apply();
     }
 
     public static int getGroupSortField() {
-        return sharedPreferences.getInt(Key.ORDER_GROUP_FIELD, Default.ORDER_GROUP_FIELD);
+        return snapshot.getInt(Key.ORDER_GROUP_FIELD, Default.ORDER_GROUP_FIELD);
     }
 
     public static void setGroupSortField(int sortField) {
-        sharedPreferences.edit().putInt(Key.ORDER_GROUP_FIELD, sortField).apply();
+        edit().putInt(Key.ORDER_GROUP_FIELD, sortField).apply();
     }
 
     public static boolean isGroupSortDesc() {
@@ -203,15 +333,15 @@ public final class Preferences {
     }
 
     public static void setGroupSortDesc(boolean isDesc) {
-        sharedPreferences.edit().putBoolean(Key.ORDER_GROUP_DESC, isDesc).apply();
+        edit().putBoolean(Key.ORDER_GROUP_DESC, isDesc).apply();
     }
 
     public static int getRuleSortField() {
-        return sharedPreferences.getInt(Key.ORDER_RULE_FIELD, Default.ORDER_RULE_FIELD);
+        return snapshot.getInt(Key.ORDER_RULE_FIELD, Default.ORDER_RULE_FIELD);
     }
 
     public static void setRuleSortField(int sortField) {
-        sharedPreferences.edit().putInt(Key.ORDER_RULE_FIELD, sortField).apply();
+        edit().putInt(Key.ORDER_RULE_FIELD, sortField).apply();
     }
 
     public static boolean isRuleSortDesc() {
@@ -219,7 +349,7 @@ public final class Preferences {
     }
 
     public static void setRuleSortDesc(boolean isDesc) {
-        sharedPreferences.edit().putBoolean(Key.ORDER_RULE_DESC, isDesc).apply();
+        edit().putBoolean(Key.ORDER_RULE_DESC, isDesc).apply();
     }
 
     public static int getSearchAttributesSortOrder() {
@@ -235,11 +365,11 @@ public final class Preferences {
     }
 
     public static String getAppLockPin() {
-        return sharedPreferences.getString(Key.APP_LOCK, "");
+        return snapshot.getString(Key.APP_LOCK, "");
     }
 
     public static void setAppLockPin(String pin) {
-        sharedPreferences.edit().putString(Key.APP_LOCK, pin).apply();
+        edit().putString(Key.APP_LOCK, pin).apply();
     }
 
     public static boolean getEndlessScroll() {
@@ -251,7 +381,7 @@ public final class Preferences {
     }
 
     public static void setTopFabEnabled(boolean value) {
-        sharedPreferences.edit().putBoolean(Key.TOP_FAB, value).apply();
+        edit().putBoolean(Key.TOP_FAB, value).apply();
     }
 
     public static boolean getRecentVisibility() {
@@ -259,19 +389,19 @@ public final class Preferences {
     }
 
     private static String getStorageUri() {
-        return sharedPreferences.getString(Key.PRIMARY_STORAGE_URI, "");
+        return snapshot.getString(Key.PRIMARY_STORAGE_URI, "");
     }
 
     private static void setStorageUri(String uri) {
-        sharedPreferences.edit().putString(Key.PRIMARY_STORAGE_URI, uri).apply();
+        edit().putString(Key.PRIMARY_STORAGE_URI, uri).apply();
     }
 
     private static String getStorageUri2() {
-        return sharedPreferences.getString(Key.PRIMARY_STORAGE_URI_2, "");
+        return snapshot.getString(Key.PRIMARY_STORAGE_URI_2, "");
     }
 
     private static void setStorageUri2(String uri) {
-        sharedPreferences.edit().putString(Key.PRIMARY_STORAGE_URI_2, uri).apply();
+        edit().putString(Key.PRIMARY_STORAGE_URI_2, uri).apply();
     }
 
     public static String getStorageUri(StorageLocation location) {
@@ -333,11 +463,11 @@ public final class Preferences {
     }
 
     public static String getExternalLibraryUri() {
-        return sharedPreferences.getString(Key.EXTERNAL_LIBRARY_URI, "");
+        return snapshot.getString(Key.EXTERNAL_LIBRARY_URI, "");
     }
 
     public static void setExternalLibraryUri(String uri) {
-        sharedPreferences.edit().putString(Key.EXTERNAL_LIBRARY_URI, uri).apply();
+        edit().putString(Key.EXTERNAL_LIBRARY_URI, uri).apply();
     }
 
     public static boolean isDeleteExternalLibrary() {
@@ -456,7 +586,7 @@ public final class Preferences {
     }
 
     public static void setReaderBrowseMode(int browseMode) {
-        sharedPreferences.edit().putString(Key.VIEWER_BROWSE_MODE, Integer.toString(browseMode)).apply();
+        edit().putString(Key.VIEWER_BROWSE_MODE, Integer.toString(browseMode)).apply();
     }
 
     public static boolean isContentSmoothRendering(final Map<String, String> bookPrefs) {
@@ -549,7 +679,7 @@ public final class Preferences {
     }
 
     public static void setReaderSlideshowDelay(int value) {
-        sharedPreferences.edit().putString(Key.VIEWER_SLIDESHOW_DELAY, Integer.toString(value)).apply();
+        edit().putString(Key.VIEWER_SLIDESHOW_DELAY, Integer.toString(value)).apply();
     }
 
     public static int getReaderSlideshowDelayVertical() {
@@ -557,7 +687,7 @@ public final class Preferences {
     }
 
     public static void setReaderSlideshowDelayVertical(int value) {
-        sharedPreferences.edit().putString(Key.VIEWER_SLIDESHOW_DELAY_VERTICAL, Integer.toString(value)).apply();
+        edit().putString(Key.VIEWER_SLIDESHOW_DELAY_VERTICAL, Integer.toString(value)).apply();
     }
 
     public static int getReaderSeparatingBars() {
@@ -585,7 +715,7 @@ public final class Preferences {
     }
 
     public static void setLastKnownAppVersionCode(int versionCode) {
-        sharedPreferences.edit().putString(Key.LAST_KNOWN_APP_VERSION_CODE, Integer.toString(versionCode)).apply();
+        edit().putString(Key.LAST_KNOWN_APP_VERSION_CODE, Integer.toString(versionCode)).apply();
     }
 
     public static boolean isQueueAutostart() {
@@ -629,7 +759,7 @@ public final class Preferences {
     }
 
     public static List<String> getBlockedTags() {
-        return Stream.of(sharedPreferences.getString(Key.DL_BLOCKED_TAGS, "").split(",")).map(String::trim).filterNot(String::isEmpty).toList();
+        return Stream.of(snapshot.getString(Key.DL_BLOCKED_TAGS, "").split(",")).map(String::trim).filterNot(String::isEmpty).toList();
     }
 
     public static int getTagBlockingBehaviour() {
@@ -637,7 +767,7 @@ public final class Preferences {
     }
 
     public static List<Site> getActiveSites() {
-        String siteCodesStr = sharedPreferences.getString(Key.ACTIVE_SITES, Default.ACTIVE_SITES) + "";
+        String siteCodesStr = snapshot.getString(Key.ACTIVE_SITES, Default.ACTIVE_SITES) + "";
         if (siteCodesStr.isEmpty()) return Collections.emptyList();
 
         return Stream.of(siteCodesStr.split(",")).distinct().map(s -> Site.searchByCode(Long.parseLong(s))).toList();
@@ -645,7 +775,7 @@ public final class Preferences {
 
     public static void setActiveSites(List<Site> activeSites) {
         List<Integer> siteCodes = Stream.of(activeSites).map(Site::getCode).distinct().toList();
-        sharedPreferences.edit().putString(Key.ACTIVE_SITES, android.text.TextUtils.join(",", siteCodes)).apply();
+        edit().putString(Key.ACTIVE_SITES, android.text.TextUtils.join(",", siteCodes)).apply();
     }
 
     public static int getColorTheme() {
@@ -653,7 +783,7 @@ public final class Preferences {
     }
 
     public static void setColorTheme(int colorTheme) {
-        sharedPreferences.edit().putString(Key.COLOR_THEME, Integer.toString(colorTheme)).apply();
+        edit().putString(Key.COLOR_THEME, Integer.toString(colorTheme)).apply();
     }
 
     public static boolean isLockOnAppRestore() {
@@ -661,7 +791,7 @@ public final class Preferences {
     }
 
     public static void setLockOnAppRestore(boolean lockOnAppRestore) {
-        sharedPreferences.edit().putBoolean(Key.LOCK_ON_APP_RESTORE, lockOnAppRestore).apply();
+        edit().putBoolean(Key.LOCK_ON_APP_RESTORE, lockOnAppRestore).apply();
     }
 
     public static int getLockTimer() {
@@ -669,7 +799,7 @@ public final class Preferences {
     }
 
     public static void setLockTimer(int lockTimer) {
-        sharedPreferences.edit().putString(Key.LOCK_TIMER, Integer.toString(lockTimer)).apply();
+        edit().putString(Key.LOCK_TIMER, Integer.toString(lockTimer)).apply();
     }
 
     public static long getMaxDbSizeKb() {
@@ -681,7 +811,7 @@ public final class Preferences {
     }
 
     public static void setGroupingDisplay(int groupingDisplay) {
-        sharedPreferences.edit().putString(Key.GROUPING_DISPLAY, Integer.toString(groupingDisplay)).apply();
+        edit().putString(Key.GROUPING_DISPLAY, Integer.toString(groupingDisplay)).apply();
     }
 
     public static int getArtistGroupVisibility() {
@@ -689,7 +819,7 @@ public final class Preferences {
     }
 
     public static void setArtistGroupVisibility(int artistGroupVisibility) {
-        sharedPreferences.edit().putString(Key.ARTIST_GROUP_VISIBILITY, Integer.toString(artistGroupVisibility)).apply();
+        edit().putString(Key.ARTIST_GROUP_VISIBILITY, Integer.toString(artistGroupVisibility)).apply();
     }
 
     public static int getReaderDeleteAskMode() {
@@ -697,7 +827,7 @@ public final class Preferences {
     }
 
     public static void setReaderDeleteAskMode(int viewerDeleteAskMode) {
-        sharedPreferences.edit().putString(Key.VIEWER_DELETE_ASK_MODE, Integer.toString(viewerDeleteAskMode)).apply();
+        edit().putString(Key.VIEWER_DELETE_ASK_MODE, Integer.toString(viewerDeleteAskMode)).apply();
     }
 
     public static int getReaderDeleteTarget() {
@@ -705,7 +835,7 @@ public final class Preferences {
     }
 
     public static void setReaderDeleteTarget(int viewerDeleteTarget) {
-        sharedPreferences.edit().putString(Key.VIEWER_DELETE_TARGET, Integer.toString(viewerDeleteTarget)).apply();
+        edit().putString(Key.VIEWER_DELETE_TARGET, Integer.toString(viewerDeleteTarget)).apply();
     }
 
     public static int getDuplicateSensitivity() {
@@ -713,7 +843,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateSensitivity(int duplicateSensitivity) {
-        sharedPreferences.edit().putString(Key.DUPLICATE_SENSITIVITY, Integer.toString(duplicateSensitivity)).apply();
+        edit().putString(Key.DUPLICATE_SENSITIVITY, Integer.toString(duplicateSensitivity)).apply();
     }
 
     public static boolean isDuplicateUseTitle() {
@@ -721,7 +851,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateUseTitle(boolean useTitle) {
-        sharedPreferences.edit().putBoolean(Key.DUPLICATE_USE_TITLE, useTitle).apply();
+        edit().putBoolean(Key.DUPLICATE_USE_TITLE, useTitle).apply();
     }
 
     public static boolean isDuplicateUseCover() {
@@ -729,7 +859,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateUseCover(boolean useCover) {
-        sharedPreferences.edit().putBoolean(Key.DUPLICATE_USE_COVER, useCover).apply();
+        edit().putBoolean(Key.DUPLICATE_USE_COVER, useCover).apply();
     }
 
     public static boolean isDuplicateUseArtist() {
@@ -737,7 +867,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateUseArtist(boolean useArtist) {
-        sharedPreferences.edit().putBoolean(Key.DUPLICATE_USE_ARTIST, useArtist).apply();
+        edit().putBoolean(Key.DUPLICATE_USE_ARTIST, useArtist).apply();
     }
 
     public static boolean isDuplicateUseSameLanguage() {
@@ -745,7 +875,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateUseSameLanguage(boolean useSameLanguage) {
-        sharedPreferences.edit().putBoolean(Key.DUPLICATE_USE_SAME_LANGUAGE, useSameLanguage).apply();
+        edit().putBoolean(Key.DUPLICATE_USE_SAME_LANGUAGE, useSameLanguage).apply();
     }
 
     public static boolean isDuplicateBrowserUseTitle() {
@@ -769,7 +899,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateIgnoreChapters(boolean value) {
-        sharedPreferences.edit().putBoolean(Key.DUPLICATE_IGNORE_CHAPTERS, value).apply();
+        edit().putBoolean(Key.DUPLICATE_IGNORE_CHAPTERS, value).apply();
     }
 
     public static int getDuplicateLastIndex() {
@@ -777,7 +907,7 @@ public final class Preferences {
     }
 
     public static void setDuplicateLastIndex(int lastIndex) {
-        sharedPreferences.edit().putString(Key.DUPLICATE_LAST_INDEX, Integer.toString(lastIndex)).apply();
+        edit().putString(Key.DUPLICATE_LAST_INDEX, Integer.toString(lastIndex)).apply();
     }
 
     public static boolean isDownloadDuplicateAsk() {
@@ -785,7 +915,7 @@ public final class Preferences {
     }
 
     public static void setDownloadDuplicateAsk(boolean value) {
-        sharedPreferences.edit().putBoolean(Key.DOWNLOAD_DUPLICATE_ASK, value).apply();
+        edit().putBoolean(Key.DOWNLOAD_DUPLICATE_ASK, value).apply();
     }
 
     public static boolean isDownloadPlusDuplicateTry() {
@@ -793,7 +923,7 @@ public final class Preferences {
     }
 
     public static void setDownloadDuplicateTry(boolean value) {
-        sharedPreferences.edit().putBoolean(Key.DOWNLOAD_PLUS_DUPLICATE_TRY, value).apply();
+        edit().putBoolean(Key.DOWNLOAD_PLUS_DUPLICATE_TRY, value).apply();
     }
 
     public static boolean isDownloadEhHires() {
@@ -805,7 +935,7 @@ public final class Preferences {
     }
 
     public static void setReaderCurrentContent(long value) {
-        sharedPreferences.edit().putString(Key.VIEWER_CURRENT_CONTENT, Long.toString(value)).apply();
+        edit().putString(Key.VIEWER_CURRENT_CONTENT, Long.toString(value)).apply();
     }
 
     public static int getReaderCurrentPageNum() {
@@ -813,7 +943,7 @@ public final class Preferences {
     }
 
     public static void setReaderCurrentPageNum(int value) {
-        sharedPreferences.edit().putString(Key.VIEWER_CURRENT_PAGENUM, Integer.toString(value)).apply();
+        edit().putString(Key.VIEWER_CURRENT_PAGENUM, Integer.toString(value)).apply();
     }
 
     public static int getReaderGalleryColumns() {
@@ -825,7 +955,96 @@ public final class Preferences {
     }
 
     public static String getLanguageFilterButtonValue() {
-        return sharedPreferences.getString(Key.BROWSER_LANGUAGE_FILTER_VALUE, "english");
+        return snapshot.getString(Key.BROWSER_LANGUAGE_FILTER_VALUE, "english");
+    }
+
+    /**
+     * Editor that applies its changes to the snapshot too, all at once
+     */
+    private static final class SnapshotEditor implements SharedPreferences.Editor {
+        private final SharedPreferences.Editor editor;
+        // Key => New value; null if the key is removed
+        private final Map<String, Object> changes = new HashMap<>();
+        private boolean cleared = false;
+
+        SnapshotEditor(@NonNull SharedPreferences.Editor editor) {
+            this.editor = editor;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            editor.putString(key, value);
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            editor.putStringSet(key, values);
+            changes.put(key, (null == values) ? null : new HashSet<>(values));
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            editor.putInt(key, value);
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            editor.putLong(key, value);
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            editor.putFloat(key, value);
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            editor.putBoolean(key, value);
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            editor.remove(key);
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            editor.clear();
+            cleared = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean result = editor.commit();
+            applyToSnapshot();
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            // Changes are visible in memory as soon as apply returns
+            editor.apply();
+            applyToSnapshot();
+        }
+
+        private void applyToSnapshot() {
+            // Same order as SharedPreferences : clear first, then the other changes
+            updateSnapshot(cleared, changes);
+        }
     }
 
     public static final class Key {
@@ -877,7 +1096,7 @@ public final class Preferences {
         static final String WEBVIEW_OVERRIDE_OVERVIEW_LISTS = "pref_webview_override_overview_lists";
         static final String WEBVIEW_INITIAL_ZOOM_LISTS = "pref_webview_initial_zoom_lists";
         static final String BROWSER_RESUME_LAST = "pref_browser_resume_last";
-        static final String BROWSER_AUGMENTED = "pref_browser_augmented";
+        public static final String BROWSER_AUGMENTED = "pref_browser_augmented";
         public static final String BROWSER_MARK_DOWNLOADED = "browser_mark_downloaded";
         public static final String BROWSER_MARK_MERGED = "browser_mark_merged";
         public static final String BROWSER_MARK_BLOCKED = "browser_mark_blocked";
@@ -0,0 +1,214 @@
+package me.devsaki.hentoid.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable copy of the values of a SharedPreferences, to be read without going through SharedPreferences' lock
+ * <p>
+ * Changes are applied by building a new snapshot (see {@link #with}), that replaces the previous one as a whole;
+ * readers of a snapshot thus never see part of the changes of an editor
+ * Numeric values stored as strings (see ListPreference) are parsed once, when the snapshot is built
+ * NB : Values are typed the way SharedPreferences types them; a value read with another type is considered missing
+ */
+final class PreferencesSnapshot {
+
+    private final Map<String, Boolean> booleans;
+    private final Map<String, Integer> ints;
+    private final Map<String, Long> longs;
+    private final Map<String, Float> floats;
+    private final Map<String, String> strings;
+    private final Map<String, Set<String>> stringSets;
+    // Numeric values parsed from the strings above
+    private final Map<String, Long> parsedStrings;
+
+
+    private PreferencesSnapshot(@NonNull Builder builder) {
+        booleans = builder.booleans;
+        ints = builder.ints;
+        longs = builder.longs;
+        floats = builder.floats;
+        strings = builder.strings;
+        stringSets = builder.stringSets;
+        parsedStrings = builder.parsedStrings;
+    }
+
+    /**
+     * Build a snapshot of the given values
+     *
+     * @param values Values to copy, as given by SharedPreferences.getAll
+     */
+    PreferencesSnapshot(@NonNull Map<String, ?> values) {
+        this(new Builder(null).putAll(values));
+    }
+
+    /**
+     * Build a new snapshot with the given changes applied to the values of this one
+     *
+     * @param cleared True if all values have been removed before applying the given changes
+     * @param changes Key => New value; null if the key is removed
+     * @return New snapshot; this snapshot if its values already match the given changes
+     */
+    PreferencesSnapshot with(boolean cleared, @NonNull Map<String, ?> changes) {
+        if (!cleared) {
+            boolean changed = false;
+            for (Map.Entry<String, ?> entry : changes.entrySet()) {
+                Object current = get(entry.getKey());
+                if ((null == current) ? (entry.getValue() != null) : !current.equals(entry.getValue())) {
+                    changed = true;
+                    break;
+                }
+            }
+            if (!changed) return this;
+        }
+        return new PreferencesSnapshot(new Builder(cleared ? null : this).putAll(changes));
+    }
+
+    boolean contains(@NonNull String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return Value of the given key, with the type SharedPreferences gives it; null if it isn't set
+     */
+    @Nullable
+    Object get(@NonNull String key) {
+        Object result = strings.get(key);
+        if (null == result) result = booleans.get(key);
+        if (null == result) result = ints.get(key);
+        if (null == result) result = longs.get(key);
+        if (null == result) result = floats.get(key);
+        if (null == result) result = stringSets.get(key);
+        return result;
+    }
+
+    boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        Boolean value = booleans.get(key);
+        return (null == value) ? defaultValue : value;
+    }
+
+    int getInt(@NonNull String key, int defaultValue) {
+        Integer value = ints.get(key);
+        return (null == value) ? defaultValue : value;
+    }
+
+    long getLong(@NonNull String key, long defaultValue) {
+        Long value = longs.get(key);
+        return (null == value) ? defaultValue : value;
+    }
+
+    @Nullable
+    String getString(@NonNull String key, @Nullable String defaultValue) {
+        String value = strings.get(key);
+        return (null == value) ? defaultValue : value;
+    }
+
+    /**
+     * Get the int value of the given key, that is stored as a string
+     * NB : Throws a NumberFormatException if the value isn't an int, as Integer.parseInt would
+     */
+    int getIntFromString(@NonNull String key, int defaultValue) {
+        Long parsed = parsedStrings.get(key);
+        if (parsed != null && parsed == parsed.intValue()) return parsed.intValue();
+        String value = strings.get(key);
+        return (null == value) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Get the long value of the given key, that is stored as a string
+     * NB : Throws a NumberFormatException if the value isn't a long, as Long.parseLong would
+     */
+    long getLongFromString(@NonNull String key, long defaultValue) {
+        Long parsed = parsedStrings.get(key);
+        if (parsed != null) return parsed;
+        String value = strings.get(key);
+        return (null == value) ? defaultValue : Long.parseLong(value);
+    }
+
+    /**
+     * Copies the values of a snapshot and applies changes to them
+     */
+    private static final class Builder {
+        private final Map<String, Boolean> booleans;
+        private final Map<String, Integer> ints;
+        private final Map<String, Long> longs;
+        private final Map<String, Float> floats;
+        private final Map<String, String> strings;
+        private final Map<String, Set<String>> stringSets;
+        private final Map<String, Long> parsedStrings;
+
+        /**
+         * @param source Snapshot to copy the values of; null to start from no value
+         */
+        Builder(@Nullable PreferencesSnapshot source) {
+            booleans = (null == source) ? new HashMap<>() : new HashMap<>(source.booleans);
+            ints = (null == source) ? new HashMap<>() : new HashMap<>(source.ints);
+            longs = (null == source) ? new HashMap<>() : new HashMap<>(source.longs);
+            floats = (null == source) ? new HashMap<>() : new HashMap<>(source.floats);
+            strings = (null == source) ? new HashMap<>() : new HashMap<>(source.strings);
+            stringSets = (null == source) ? new HashMap<>() : new HashMap<>(source.stringSets);
+            // Parsed values of the strings that don't change are kept
+            parsedStrings = (null == source) ? new HashMap<>() : new HashMap<>(source.parsedStrings);
+        }
+
+        /**
+         * @param values Key => New value; null if the key is removed
+         */
+        Builder putAll(@NonNull Map<String, ?> values) {
+            for (Map.Entry<String, ?> entry : values.entrySet()) put(entry.getKey(), entry.getValue());
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void put(@NonNull String key, @Nullable Object value) {
+            // The type of the value may have changed
+            booleans.remove(key);
+            ints.remove(key);
+            longs.remove(key);
+            floats.remove(key);
+            strings.remove(key);
+            stringSets.remove(key);
+            parsedStrings.remove(key);
+
+            if (value instanceof String) {
+                strings.put(key, (String) value);
+                Long parsed = parseLong((String) value);
+                if (parsed != null) parsedStrings.put(key, parsed);
+            } else if (value instanceof Boolean) {
+                booleans.put(key, (Boolean) value);
+            } else if (value instanceof Integer) {
+                ints.put(key, (Integer) value);
+            } else if (value instanceof Long) {
+                longs.put(key, (Long) value);
+            } else if (value instanceof Float) {
+                floats.put(key, (Float) value);
+            } else if (value instanceof Set) {
+                stringSets.put(key, Collections.unmodifiableSet(new HashSet<>((Set<String>) value)));
+            }
+        }
+
+        /**
+         * @return Value of the given string if it's a long; null if not
+         */
+        @Nullable
+        private static Long parseLong(@NonNull String value) {
+            // Avoid the cost of a NumberFormatException for strings that obviously aren't numbers
+            if (value.isEmpty() || value.length() > 20) return null;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if ((c < '0' || c > '9') && !(0 == i && (c == '-' || c == '+'))) return null;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
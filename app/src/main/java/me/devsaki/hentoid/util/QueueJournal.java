@@ -0,0 +1,557 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+
+import com.google.firebase.crashlytics.FirebaseCrashlytics;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+import me.devsaki.hentoid.R;
+import me.devsaki.hentoid.core.Consts;
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.QueueRecord;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.enums.StorageLocation;
+import me.devsaki.hentoid.json.JsonContent;
+import me.devsaki.hentoid.json.JsonContentCollection;
+import me.devsaki.hentoid.json.JsonQueueOperation;
+import me.devsaki.hentoid.util.file.FileHelper;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Persistence of the queue as a snapshot (queue.json) followed by a journal of the operations
+ * that happened since the snapshot has been written (queue.journal)
+ * <p>
+ * - Each state change only appends the corresponding operations to the journal, one per line
+ * - Persistence requests are coalesced : a burst of changes produces one single append
+ * - The journal is periodically compacted into a new snapshot
+ * - The journal starts with a header that references the hash of the snapshot it applies to;
+ * a journal that doesn't match its snapshot (e.g. interrupted compaction) is ignored
+ * - Torn or unreadable lines at the end of the journal are ignored
+ * <p>
+ * NB : The state of the persisted books is kept in memory to compute the operations. Order, status
+ * and frozen state are read from the DB at each write; the other properties of a book are only
+ * compared for the books callers declare as changed (and during compactions)
+ */
+public class QueueJournal {
+
+    // Delay during which persistence requests are coalesced
+    private static final long COALESCE_DELAY_MS = 750;
+    // Number of journaled operations that triggers a compaction
+    private static final int COMPACTION_THRESHOLD = 500;
+
+    private static final JsonAdapter<JsonQueueOperation> OPERATION_ADAPTER = JsonHelper.getAdapter(JsonQueueOperation.class);
+    private static final JsonAdapter<JsonContent> CONTENT_ADAPTER = JsonHelper.getAdapter(JsonContent.class);
+
+    private static QueueJournal instance;
+
+    // State of the queue as it is currently persisted; null if unknown
+    private List<ItemState> persistedState = null;
+    private int nbOperations = 0;
+    private final AtomicBoolean persistScheduled = new AtomicBoolean(false);
+    // IDs of the books whose properties have changed since the last write
+    private final Set<Long> changedIds = new HashSet<>();
+
+
+    QueueJournal() {
+        // Nothing special do to here
+    }
+
+    public static synchronized QueueJournal getInstance() {
+        if (null == instance) instance = new QueueJournal();
+        return instance;
+    }
+
+    /**
+     * Request the persistence of the current state of the queue
+     * NB : Requests happening during the coalescing delay are merged into one single write
+     *
+     * @param context    Context to use
+     * @param contentIds IDs of the books whose properties (other than status and frozen state) have changed
+     */
+    public void requestPersist(@NonNull final Context context, long... contentIds) {
+        synchronized (changedIds) {
+            for (long id : contentIds) changedIds.add(id);
+        }
+        if (!persistScheduled.compareAndSet(false, true)) return;
+
+        final Context appContext = context.getApplicationContext();
+        //noinspection ResultOfMethodCallIgnored
+        Completable.timer(COALESCE_DELAY_MS, TimeUnit.MILLISECONDS, Schedulers.io())
+                .subscribe(() -> {
+                    persistScheduled.set(false);
+                    CollectionDAO dao = new ObjectBoxDAO(appContext);
+                    try {
+                        persist(appContext, dao);
+                    } finally {
+                        dao.cleanup();
+                    }
+                }, Timber::w);
+    }
+
+    /**
+     * Persist the current state of the queue
+     *
+     * @param context Context to use
+     * @param dao     DAO to use
+     * @return True if the queue has been persisted properly; false instead
+     */
+    public synchronized boolean persist(@NonNull final Context context, @NonNull final CollectionDAO dao) {
+        Helper.assertNonUiThread();
+        DocumentFile rootFolder = FileHelper.getDocumentFromTreeUriString(context, Preferences.getStorageUri(StorageLocation.PRIMARY_1));
+        if (null == rootFolder) return false;
+
+        List<Content> queue = getPersistedQueue(dao);
+        Set<Long> changed;
+        synchronized (changedIds) {
+            changed = new HashSet<>(changedIds);
+            changedIds.clear();
+        }
+
+        try {
+            // Unknown persisted state (e.g. first write of the session) or journal too long
+            if (null == persistedState || nbOperations >= COMPACTION_THRESHOLD)
+                return compact(context, rootFolder, queue);
+
+            List<ItemState> currentState = toStates(queue, persistedState, changed);
+            List<JsonQueueOperation> operations = diff(persistedState, currentState, queue);
+            if (operations.isEmpty()) return true;
+
+            DocumentFile journal = FileHelper.findFile(context, rootFolder, Consts.QUEUE_JOURNAL_FILE_NAME);
+            if (null == journal) return compact(context, rootFolder, queue);
+
+            try (OutputStream output = FileHelper.getAppendOutputStream(context, journal)) {
+                if (null == output) return compact(context, rootFolder, queue);
+                writeOperations(operations, output);
+            }
+            persistedState = currentState;
+            nbOperations += operations.size();
+            Timber.i(context.getString(R.string.queue_json_saved));
+        } catch (IOException | IllegalArgumentException e) {
+            // NB : IllegalArgumentException might happen for an unknown reason on certain devices
+            // even though all the file existence checks are in place
+            Timber.e(e);
+            FirebaseCrashlytics crashlytics = FirebaseCrashlytics.getInstance();
+            crashlytics.recordException(e);
+            Timber.w(context.getString(R.string.queue_json_failed));
+            persistedState = null; // Force a compaction on the next write
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the given queue as a new snapshot and reset the journal
+     */
+    private boolean compact(@NonNull final Context context, @NonNull final DocumentFile rootFolder, @NonNull final List<Content> queue) throws IOException {
+        JsonContentCollection contentCollection = new JsonContentCollection();
+        contentCollection.setQueue(queue);
+        byte[] data = JsonHelper.serializeToJson(contentCollection, JsonContentCollection.class).getBytes(StandardCharsets.UTF_8);
+
+        DocumentFile snapshot = FileHelper.findOrCreateDocumentFile(context, rootFolder, JsonHelper.JSON_MIME_TYPE, Consts.QUEUE_JSON_FILE_NAME);
+        if (null == snapshot) throw new IOException("Failed creating file " + Consts.QUEUE_JSON_FILE_NAME);
+        try (OutputStream output = FileHelper.getOutputStream(context, snapshot)) {
+            if (null == output) throw new IOException("Failed opening file " + Consts.QUEUE_JSON_FILE_NAME);
+            output.write(data);
+            output.flush();
+        }
+
+        DocumentFile journal = FileHelper.findOrCreateDocumentFile(context, rootFolder, FileHelper.DEFAULT_MIME_TYPE, Consts.QUEUE_JOURNAL_FILE_NAME);
+        if (null == journal) throw new IOException("Failed creating file " + Consts.QUEUE_JOURNAL_FILE_NAME);
+        try (OutputStream output = FileHelper.getOutputStream(context, journal)) {
+            if (null == output) throw new IOException("Failed opening file " + Consts.QUEUE_JOURNAL_FILE_NAME);
+            writeOperations(Collections.singletonList(JsonQueueOperation.base(Helper.hash64(data))), output);
+        }
+
+        persistedState = toStates(queue);
+        nbOperations = 0;
+        Timber.i(context.getString(R.string.queue_json_saved));
+        return true;
+    }
+
+    /**
+     * Get the books to persist, in the order they have to be persisted in
+     * (queued books followed by books in error)
+     *
+     * @param dao DAO to use
+     * @return Books to persist
+     */
+    static List<Content> getPersistedQueue(@NonNull final CollectionDAO dao) {
+        List<Content> result = new ArrayList<>();
+        for (QueueRecord qr : dao.selectQueue()) {
+            Content c = qr.getContent().getTarget();
+            if (c != null) {
+                c.setFrozen(qr.isFrozen());
+                result.add(c);
+            }
+        }
+        List<Content> errors = dao.selectErrorContent();
+        if (errors != null) result.addAll(errors);
+        return result;
+    }
+
+    /**
+     * Compute the operations that transform the given previous state into the given current queue
+     * NB : Properties of all books are compared; to be used when their previous state isn't reliable
+     *
+     * @param previous Previous state of the queue
+     * @param current  Current queue
+     * @return Operations to apply to the previous state to get the current queue
+     */
+    static List<JsonQueueOperation> diff(@NonNull final List<ItemState> previous, @NonNull final List<Content> current) {
+        return diff(previous, toStates(current), current);
+    }
+
+    /**
+     * Compute the operations that transform the given previous state into the given current state
+     * <p>
+     * Books that are part of the longest sequence that is already in the right order stay where they are;
+     * all others are added or moved after their predecessor in the current queue
+     *
+     * @param previous        Previous state of the queue
+     * @param current         Current state of the queue
+     * @param currentContents Books of the current queue, in the same order as their state
+     * @return Operations to apply to the previous state to get the current queue
+     */
+    static List<JsonQueueOperation> diff(
+            @NonNull final List<ItemState> previous,
+            @NonNull final List<ItemState> current,
+            @NonNull final List<Content> currentContents) {
+        List<JsonQueueOperation> result = new ArrayList<>();
+
+        Map<String, Integer> currentIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < current.size(); i++) {
+            String key = current.get(i).key;
+            if (!currentIndexes.containsKey(key)) currentIndexes.put(key, i);
+        }
+
+        // Removals
+        Map<String, ItemState> previousStates = new HashMap<>();
+        Map<String, Integer> previousPositions = new HashMap<>();
+        for (ItemState s : previous) {
+            if (currentIndexes.containsKey(s.key)) {
+                previousPositions.put(s.key, previousPositions.size());
+                previousStates.put(s.key, s);
+            } else result.add(JsonQueueOperation.remove(s.key));
+        }
+
+        // Additions, moves, status changes and updates
+        Set<String> inOrder = getLongestOrderedSequence(currentIndexes.keySet(), previousPositions);
+        String after = null;
+        for (Map.Entry<String, Integer> entry : currentIndexes.entrySet()) {
+            String key = entry.getKey();
+            ItemState state = current.get(entry.getValue());
+            Content c = currentContents.get(entry.getValue());
+            ItemState prev = previousStates.get(key);
+            if (null == prev) {
+                result.add(JsonQueueOperation.add(c, after));
+            } else {
+                if (!inOrder.contains(key)) result.add(JsonQueueOperation.move(key, after));
+                // Updates carry the whole book, including its status
+                if (prev.detailsHash != state.detailsHash)
+                    result.add(JsonQueueOperation.update(key, c));
+                else if (prev.status != state.status || prev.frozen != state.frozen)
+                    result.add(JsonQueueOperation.status(key, c.getStatus(), c.isFrozen()));
+            }
+            after = key;
+        }
+        return result;
+    }
+
+    /**
+     * Get the keys of the longest subsequence of the given keys whose previous positions are increasing
+     */
+    private static Set<String> getLongestOrderedSequence(@NonNull final Set<String> keys, @NonNull final Map<String, Integer> previousPositions) {
+        List<String> sequence = new ArrayList<>();
+        for (String key : keys) if (previousPositions.containsKey(key)) sequence.add(key);
+
+        int n = sequence.size();
+        int[] tailPositions = new int[n]; // Smallest tail position of all increasing subsequences of length i+1
+        int[] tailIndexes = new int[n];   // Index of the corresponding tail inside sequence
+        int[] predecessors = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            Integer pos = previousPositions.get(sequence.get(i));
+            int position = (null == pos) ? 0 : pos;
+            int slot = Arrays.binarySearch(tailPositions, 0, length, position);
+            if (slot < 0) slot = -slot - 1;
+            tailPositions[slot] = position;
+            tailIndexes[slot] = i;
+            predecessors[i] = (slot > 0) ? tailIndexes[slot - 1] : -1;
+            if (slot == length) length++;
+        }
+
+        Set<String> result = new HashSet<>();
+        int index = (length > 0) ? tailIndexes[length - 1] : -1;
+        while (index > -1) {
+            result.add(sequence.get(index));
+            index = predecessors[index];
+        }
+        return result;
+    }
+
+    static void writeOperations(@NonNull final List<JsonQueueOperation> operations, @NonNull final OutputStream output) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (JsonQueueOperation op : operations) sb.append(OPERATION_ADAPTER.toJson(op)).append('\n');
+        // One single write to minimize the risk of torn writes
+        output.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    /**
+     * Read the persisted queue
+     *
+     * @param context  Context to use
+     * @param snapshot Queue snapshot file (queue.json)
+     * @param journal  Queue journal file (queue.journal); null if none
+     * @return Persisted queue; null if the snapshot couldn't be read
+     */
+    @Nullable
+    public static List<Content> readQueue(@NonNull final Context context, @NonNull final DocumentFile snapshot, @Nullable final DocumentFile journal) {
+        JsonContentCollection collection;
+        long snapshotHash;
+        try {
+            byte[] data;
+            try (InputStream input = FileHelper.getInputStream(context, snapshot)) {
+                if (null == input) throw new IOException("Failed opening file " + snapshot.getUri());
+                data = Okio.buffer(Okio.source(input)).readByteArray();
+            }
+            snapshotHash = Helper.hash64(data);
+            collection = JsonHelper.jsonToObject(new String(data, StandardCharsets.UTF_8), JsonContentCollection.class);
+        } catch (IOException | JsonDataException | IllegalArgumentException e) {
+            Timber.w(e);
+            return null;
+        }
+        if (null == collection) return null;
+
+        List<JsonContent> queue = collection.getJsonQueue();
+        if (journal != null) {
+            try (InputStream input = FileHelper.getInputStream(context, journal)) {
+                if (input != null) queue = replay(queue, snapshotHash, input);
+            } catch (IOException | IllegalArgumentException e) {
+                Timber.w(e);
+            }
+        }
+
+        List<Content> result = new ArrayList<>();
+        for (JsonContent jc : queue) result.add(jc.toEntity(null));
+        return result;
+    }
+
+    /**
+     * Read the operations of the given journal, up to the first torn or unreadable line
+     *
+     * @param journal Journal to read the operations from
+     * @return Operations stored in the given journal
+     * @throws IOException If anything happens during I/O
+     */
+    static List<JsonQueueOperation> readOperations(@NonNull final InputStream journal) throws IOException {
+        List<JsonQueueOperation> result = new ArrayList<>();
+        try (BufferedSource source = Okio.buffer(Okio.source(journal))) {
+            long lineEnd;
+            while ((lineEnd = source.indexOf((byte) '\n')) > -1) {
+                String line = source.readUtf8(lineEnd);
+                source.skip(1);
+                JsonQueueOperation op;
+                try {
+                    op = OPERATION_ADAPTER.fromJson(line);
+                } catch (IOException | JsonDataException e) {
+                    op = null;
+                }
+                // Unreadable line : stop there, as the following operations depend on it
+                if (null == op) break;
+                result.add(op);
+            }
+            // Anything left after the last line break is a torn write
+        }
+        return result;
+    }
+
+    /**
+     * Apply the operations of the given journal to the given snapshot
+     *
+     * @param snapshot     Queue, as stored in the snapshot
+     * @param snapshotHash Hash of the contents of the snapshot file
+     * @param journal      Journal to read the operations from
+     * @return Queue resulting from the application of the journal to the given snapshot
+     * @throws IOException If anything happens during I/O
+     */
+    static List<JsonContent> replay(@NonNull final List<JsonContent> snapshot, long snapshotHash, @NonNull final InputStream journal) throws IOException {
+        List<JsonQueueOperation> operations = readOperations(journal);
+        // Journal doesn't apply to the given snapshot
+        if (operations.isEmpty() || !operations.get(0).getOp().equals(JsonQueueOperation.OP_BASE) || operations.get(0).getSnapshotHash() != snapshotHash)
+            return snapshot;
+
+        // Books are linked to each other and indexed by key, so that each operation is applied in constant time
+        Node head = new Node(null);
+        Map<String, Node> nodes = new HashMap<>();
+        Node last = head;
+        for (JsonContent c : snapshot) {
+            String key = getKey(c.getSite(), c.getUrl());
+            if (nodes.containsKey(key)) continue;
+            Node node = new Node(c);
+            node.insertAfter(last);
+            nodes.put(key, node);
+            last = node;
+        }
+
+        for (JsonQueueOperation op : operations.subList(1, operations.size())) {
+            Node node = (null == op.getKey()) ? null : nodes.get(op.getKey());
+            switch (op.getOp()) {
+                case JsonQueueOperation.OP_ADD:
+                    JsonContent content = op.getContent();
+                    if (content != null) {
+                        String key = getKey(content.getSite(), content.getUrl());
+                        if (!nodes.containsKey(key)) {
+                            Node added = new Node(content);
+                            added.insertAfter(getNode(nodes, head, op.getAfter()));
+                            nodes.put(key, added);
+                        }
+                    }
+                    break;
+                case JsonQueueOperation.OP_REMOVE:
+                    if (node != null) {
+                        node.unlink();
+                        nodes.remove(op.getKey());
+                    }
+                    break;
+                case JsonQueueOperation.OP_MOVE:
+                    if (node != null) {
+                        node.unlink();
+                        Node target = getNode(nodes, head, op.getAfter());
+                        node.insertAfter((target == node) ? head : target);
+                    }
+                    break;
+                case JsonQueueOperation.OP_STATUS:
+                    if (node != null) {
+                        if (op.getStatus() != null) node.content.setStatus(op.getStatus());
+                        node.content.setFrozen(op.isFrozen());
+                    }
+                    break;
+                case JsonQueueOperation.OP_UPDATE:
+                    if (node != null && op.getContent() != null) node.content = op.getContent();
+                    break;
+                default:
+                    // Unknown operation; ignore
+            }
+        }
+
+        List<JsonContent> result = new ArrayList<>();
+        for (Node n = head.next; n != null; n = n.next) result.add(n.content);
+        return result;
+    }
+
+    /**
+     * Get the node of the given key; the head of the queue if none
+     */
+    private static Node getNode(@NonNull final Map<String, Node> nodes, @NonNull final Node head, @Nullable final String key) {
+        Node result = (null == key) ? null : nodes.get(key);
+        return (null == result) ? head : result;
+    }
+
+    static String getKey(@Nullable final Site site, @Nullable final String url) {
+        return ((null == site) ? Site.NONE : site).name() + " " + StringHelper.protect(url);
+    }
+
+    static List<ItemState> toStates(@NonNull final List<Content> queue) {
+        return toStates(queue, Collections.emptyList(), Collections.emptySet());
+    }
+
+    /**
+     * Get the state of the given books
+     * NB : Properties of the books that are neither new nor changed are assumed to be the same as in the given previous state
+     *
+     * @param queue      Books to get the state of
+     * @param previous   Previous state of the queue
+     * @param changedIds IDs of the books whose properties have changed since the previous state
+     * @return State of the given books
+     */
+    static List<ItemState> toStates(@NonNull final List<Content> queue, @NonNull final List<ItemState> previous, @NonNull final Set<Long> changedIds) {
+        Map<String, ItemState> previousStates = new HashMap<>();
+        for (ItemState s : previous) previousStates.put(s.key, s);
+
+        List<ItemState> result = new ArrayList<>();
+        for (Content c : queue) {
+            String key = getKey(c.getSite(), c.getUrl());
+            ItemState prev = previousStates.get(key);
+            long detailsHash = (prev != null && !changedIds.contains(c.getId())) ? prev.detailsHash : getDetailsHash(c);
+            result.add(new ItemState(key, c.getStatus(), c.isFrozen(), detailsHash));
+        }
+        return result;
+    }
+
+    /**
+     * Hash the persisted properties of the given book, except its status and frozen state
+     */
+    private static long getDetailsHash(@NonNull final Content c) {
+        JsonContent json = JsonContent.fromEntity(c, false);
+        json.setStatus(null);
+        json.setFrozen(false);
+        return Helper.hash64(CONTENT_ADAPTER.toJson(json).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class Node {
+        JsonContent content;
+        Node previous;
+        Node next;
+
+        Node(JsonContent content) {
+            this.content = content;
+        }
+
+        void insertAfter(@NonNull final Node node) {
+            previous = node;
+            next = node.next;
+            if (next != null) next.previous = this;
+            node.next = this;
+        }
+
+        void unlink() {
+            if (previous != null) previous.next = next;
+            if (next != null) next.previous = previous;
+            previous = null;
+            next = null;
+        }
+    }
+
+    static class ItemState {
+        final String key;
+        final StatusContent status;
+        final boolean frozen;
+        final long detailsHash;
+
+        ItemState(@NonNull String key, StatusContent status, boolean frozen, long detailsHash) {
+            this.key = key;
+            this.status = status;
+            this.frozen = frozen;
+            this.detailsHash = detailsHash;
+        }
+    }
+}
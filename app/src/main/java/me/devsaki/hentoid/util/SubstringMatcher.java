@@ -0,0 +1,138 @@
+package me.devsaki.hentoid.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable matcher that tells if a text contains any of a set of substrings
+ * <p>
+ * Uses an Aho-Corasick automaton : the text is read once, whatever the number of substrings,
+ * which gives the same result as calling text.contains(s) for every substring s
+ */
+public class SubstringMatcher {
+
+    public static final SubstringMatcher EMPTY = new SubstringMatcher(new ArrayList<>());
+
+    // Outgoing transitions of each state, sorted by character
+    private final char[][] labels;
+    private final int[][] targets;
+    // State to fall back to when a state has no transition for the read character
+    private final int[] fail;
+    // True if reaching the state means one of the substrings has been found
+    private final boolean[] output;
+    private final int size;
+
+
+    /**
+     * @param substrings Substrings to look for
+     */
+    public SubstringMatcher(@NonNull Collection<String> substrings) {
+        // 1- Build the trie of the substrings
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        List<Boolean> terminal = new ArrayList<>();
+        terminal.add(false);
+        int nbSubstrings = 0;
+        for (String s : substrings) {
+            int state = 0;
+            for (int i = 0; i < s.length(); i++) {
+                Integer next = trie.get(state).get(s.charAt(i));
+                if (null == next) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(false);
+                    trie.get(state).put(s.charAt(i), next);
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+            nbSubstrings++;
+        }
+        size = nbSubstrings;
+
+        int nbStates = trie.size();
+        labels = new char[nbStates][];
+        targets = new int[nbStates][];
+        fail = new int[nbStates];
+        output = new boolean[nbStates];
+        for (int i = 0; i < nbStates; i++) {
+            Map<Character, Integer> transitions = trie.get(i);
+            labels[i] = new char[transitions.size()];
+            targets[i] = new int[transitions.size()];
+            int index = 0;
+            for (Map.Entry<Character, Integer> t : transitions.entrySet()) {
+                labels[i][index] = t.getKey();
+                targets[i][index++] = t.getValue();
+            }
+            output[i] = terminal.get(i);
+        }
+
+        // 2- Compute failure links, breadth-first
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) queue.add(child);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                int next = transition(f, c);
+                while (next < 0 && f != 0) {
+                    f = fail[f];
+                    next = transition(f, c);
+                }
+                fail[child] = (next < 0 || next == child) ? 0 : next;
+                output[child] |= output[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return (index < 0) ? -1 : targets[state][index];
+    }
+
+    /**
+     * Get the number of substrings the matcher looks for
+     *
+     * @return Number of substrings the matcher looks for
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    /**
+     * Indicate if the given text contains any of the substrings
+     *
+     * @param text Text to examine
+     * @return True if the given text contains any of the substrings; false if not
+     */
+    public boolean matches(@NonNull String text) {
+        if (output[0]) return true; // Empty substring
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = transition(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = transition(state, c);
+            }
+            state = (next < 0) ? 0 : next;
+            if (output[state]) return true;
+        }
+        return false;
+    }
+}
@@ -33,6 +33,7 @@ import me.devsaki.hentoid.util.exception.NetworkingException;
 import me.devsaki.hentoid.util.exception.UnsupportedContentException;
 import me.devsaki.hentoid.util.file.FileHelper;
 import me.devsaki.hentoid.util.image.ImageHelper;
+import me.devsaki.hentoid.util.network.HostProtocols;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -89,9 +90,41 @@ public class DownloadHelper {
         Response response = failFast ?
                 HttpHelper.getOnlineResourceFast(url, requestHeaders, site.useMobileAgent(), site.useHentoidAgent(), site.useWebviewAgent()) :
                 HttpHelper.getOnlineResourceDownloader(url, requestHeaders, site.useMobileAgent(), site.useHentoidAgent(), site.useWebviewAgent());
-        Timber.d("DOWNLOADING %d - RESPONSE %s", resourceId, response.code());
-        if (response.code() >= 300)
+        return writeToFile(response, resourceId, targetFolderUri, targetFileName, forceMimeType, interruptDownload, notifyProgress);
+    }
+
+    /**
+     * Write the body of the given response to the given disk location
+     *
+     * @param response          Response to write the body of; closed by this method
+     * @param resourceId        ID of the corresponding resource (for logging purposes only)
+     * @param targetFolderUri   Uri of the folder where to save the downloaded resource
+     * @param targetFileName    Name of the file to save the downloaded resource
+     * @param forceMimeType     Forced mime-type of the downloaded resource (null for auto-set)
+     * @param interruptDownload Used to interrupt the download whenever the value switches to true. If that happens, the file will be deleted.
+     * @param notifyProgress    Consumer called with the download progress %
+     * @return Pair containing
+     * - Left : Uri of downloaded file
+     * - Right : Detected mime-type of the downloaded resource
+     * @throws IOException,UnsupportedContentException,DownloadInterruptedException if anything goes wrong
+     */
+    public static ImmutablePair<Uri, String> writeToFile(
+            @NonNull Response response,
+            int resourceId,
+            @NonNull Uri targetFolderUri,
+            @NonNull String targetFileName,
+            String forceMimeType,
+            @NonNull final AtomicBoolean interruptDownload,
+            Consumer<Float> notifyProgress) throws
+            IOException, UnsupportedContentException, DownloadInterruptedException, IllegalStateException {
+        Helper.assertNonUiThread();
+        String url = response.request().url().toString();
+        HostProtocols.record(response);
+        Timber.d("DOWNLOADING %d - RESPONSE %s (%s)", resourceId, response.code(), response.protocol());
+        if (response.code() >= 300) {
+            response.close();
             throw new NetworkingException(response.code(), "Network error " + response.code(), null);
+        }
 
         ResponseBody body = response.body();
         if (null == body)
@@ -154,6 +187,34 @@ public class DownloadHelper {
         throw new DownloadInterruptedException("Download interrupted");
     }
 
+    /**
+     * Copy the given file, previously downloaded from the same URL, to the given disk location
+     *
+     * @param sourceFileUri   Uri of the file to copy
+     * @param mimeType        Mime-type of the file to copy
+     * @param targetFolderUri Uri of the folder where to save the copy
+     * @param targetFileName  Name of the file to save the copy
+     * @return Uri of the copy
+     * @throws IOException if anything goes wrong
+     */
+    public static Uri copyToFile(
+            @NonNull Uri sourceFileUri,
+            @NonNull String mimeType,
+            @NonNull Uri targetFolderUri,
+            @NonNull String targetFileName) throws IOException {
+        Helper.assertNonUiThread();
+        Context context = HentoidApp.getInstance();
+        Uri targetFileUri = createFile(targetFolderUri, targetFileName, mimeType);
+        try (InputStream in = FileHelper.getInputStream(context, sourceFileUri); OutputStream out = FileHelper.getOutputStream(context, targetFileUri)) {
+            Helper.copy(in, out);
+        } catch (IOException e) {
+            FileHelper.removeFile(context, targetFileUri);
+            throw e;
+        }
+        Timber.d("COPIED %s TO %s", sourceFileUri.getPath(), targetFileUri.getPath());
+        return targetFileUri;
+    }
+
     private static Uri createFile(@NonNull Uri targetFolderUri, @NonNull String targetFileName, @NonNull String mimeType) throws IOException {
         String targetFileNameFinal = targetFileName + "." + FileHelper.getExtensionFromMimeType(mimeType);
         // Keep the extension if the target file name is provided with one
@@ -0,0 +1,92 @@
+package me.devsaki.hentoid.util.download
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Runs identical requests (e.g. downloads of the same URL) only once
+ * - Callers asking for a key that is currently being processed wait for the running request and share its result
+ * - The results of the last completed requests are kept, so that a request arriving right after
+ * an identical one (e.g. book cover that is also its first page) can use its result
+ *
+ * Callers that share a result are told so, in order to process it for their own use
+ * (e.g. copy the file downloaded by another request)
+ *
+ * @param maxRecentResults Number of completed results to keep
+ */
+class RequestCoalescer<K, V>(private val maxRecentResults: Int = 0) {
+
+    // Requests being processed
+    private val inFlight = ConcurrentHashMap<K, CompletableDeferred<V>>()
+
+    // Last completed results, in access order
+    private val recentResults = object : LinkedHashMap<K, V>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, V>?): Boolean {
+            return size > maxRecentResults
+        }
+    }
+
+
+    /**
+     * Result of a request
+     *
+     * @param value  Value produced by the request
+     * @param shared True if the value has been produced by another caller
+     */
+    data class Result<V>(val value: V, val shared: Boolean)
+
+    /**
+     * Run the given request, or share the result of an identical one
+     * NB : If the identical request this call waits for fails, the given request is run on its own
+     *
+     * @param key     Key identifying identical requests
+     * @param request Request to run
+     * @return Result of the request
+     */
+    suspend fun run(key: K, request: suspend () -> V): Result<V> {
+        synchronized(recentResults) { recentResults[key] }?.let { return Result(it, true) }
+
+        val own = CompletableDeferred<V>()
+        val running = inFlight.putIfAbsent(key, own)
+        if (running != null) {
+            try {
+                return Result(running.await(), true)
+            } catch (e: Exception) {
+                // Failure of the other request doesn't mean this one would fail too (e.g. interrupted download)
+                currentCoroutineContext().ensureActive()
+                return Result(request.invoke(), false)
+            }
+        }
+
+        try {
+            val result = request.invoke()
+            if (maxRecentResults > 0) synchronized(recentResults) { recentResults[key] = result }
+            own.complete(result)
+            return Result(result, false)
+        } catch (e: Throwable) {
+            own.completeExceptionally(e)
+            throw e
+        } finally {
+            inFlight.remove(key, own)
+        }
+    }
+
+    /**
+     * Forget the completed result of the given key (e.g. when it can't be used anymore)
+     */
+    fun forget(key: K) {
+        synchronized(recentResults) { recentResults.remove(key) }
+    }
+
+    /**
+     * Number of requests being processed
+     */
+    val nbInFlight: Int
+        get() = inFlight.size
+
+    fun clear() {
+        synchronized(recentResults) { recentResults.clear() }
+    }
+}
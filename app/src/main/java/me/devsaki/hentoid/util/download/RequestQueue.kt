@@ -1,25 +1,25 @@
 package me.devsaki.hentoid.util.download
 
 import android.net.Uri
-import androidx.documentfile.provider.DocumentFile
-import com.annimon.stream.Optional
 import com.annimon.stream.function.BiConsumer
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
-import me.devsaki.hentoid.enums.Site
-import me.devsaki.hentoid.util.Helper
 import me.devsaki.hentoid.util.StringHelper
 import me.devsaki.hentoid.util.exception.DownloadInterruptedException
 import me.devsaki.hentoid.util.exception.NetworkingException
 import me.devsaki.hentoid.util.exception.ParseException
 import me.devsaki.hentoid.util.network.HttpHelper
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Response
 import org.apache.commons.lang3.tuple.ImmutablePair
-import org.apache.commons.lang3.tuple.ImmutableTriple
 import timber.log.Timber
 import java.io.FileNotFoundException
+import java.io.IOException
 import java.util.Queue
 import java.util.concurrent.ConcurrentLinkedQueue
-import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.coroutines.resumeWithException
 
 class RequestQueue(
     private val successHandler: BiConsumer<RequestOrder, Uri>,
@@ -29,6 +29,9 @@ class RequestQueue(
         private set
     private val downloadsQueue: Queue<RequestOrder> = ConcurrentLinkedQueue()
 
+    // Downloads of the same URL (e.g. book cover that is also its first page) are only made once
+    private val coalescer = RequestCoalescer<String, ImmutablePair<Uri, String>>(RECENT_DOWNLOADS)
+
     fun start() {
         active = true
     }
@@ -52,18 +55,10 @@ class RequestQueue(
 
         downloadsQueue.add(requestOrder)
         try {
-            val res = withContext(Dispatchers.IO) {
-                downloadPic(
-                    requestOrder.site,
-                    requestOrder.url,
-                    requestOrder.headers,
-                    requestOrder.targetDir,
-                    requestOrder.fileName,
-                    requestOrder.pageIndex,
-                    requestOrder.killSwitch
-                )
-            }
-            handleSuccess(requestOrder, res)
+            val res = coalescer.run(requestOrder.url) { downloadPic(requestOrder) }
+            val targetFileUri =
+                if (res.shared) copyPic(requestOrder, res.value) else res.value.left
+            handleSuccess(requestOrder, targetFileUri)
         } catch (e: Exception) {
             handleError(requestOrder, e)
         }
@@ -73,21 +68,15 @@ class RequestQueue(
         downloadsQueue.remove(requestOrder)
     }
 
-    private fun handleSuccess(
-        requestOrder: RequestOrder,
-        resultOpt: Optional<ImmutableTriple<Int, Uri, String>>
-    ) {
+    private fun handleSuccess(requestOrder: RequestOrder, targetFileUri: Uri?) {
         // Nothing to download => this is actually an error
-        if (resultOpt.isEmpty) {
+        if (null == targetFileUri) {
             handleError(requestOrder, ParseException("No image found"))
             return
         }
 
         handleComplete(requestOrder)
-        successHandler.accept(
-            requestOrder,
-            resultOpt.get().middle
-        )
+        successHandler.accept(requestOrder, targetFileUri)
     }
 
     private fun handleError(requestOrder: RequestOrder, t: Throwable) {
@@ -117,30 +106,19 @@ class RequestQueue(
     }
 
     /**
-     * Download the picture at the given index to the given folder
+     * Download the picture of the given request order to its target folder
+     * NB : The calling thread is released while waiting for the response
      *
-     * @param pageIndex    Index of the picture to download
-     * @param targetFolder Folder to download to
-     * @param killSwitch   Switch to interrupt the download
-     * @return Optional triple with
-     * - The page index
-     * - The Uri of the downloaded file
+     * @param order Request order to process
+     * @return Pair with
+     * - The Uri of the downloaded file (null if nothing has been downloaded)
      * - The Mime-type of the downloaded file
-     *
-     * The return value is empty if the download fails
      */
-    private fun downloadPic(
-        site: Site,
-        url: String,
-        headers: Map<String, String>,
-        targetFolder: DocumentFile,
-        targetFileNameNoExt: String,
-        pageIndex: Int,
-        killSwitch: AtomicBoolean
-    ): Optional<ImmutableTriple<Int, Uri, String>> {
-        Helper.assertNonUiThread()
-
-        val requestHeaders = HttpHelper.webkitRequestHeadersToOkHttpHeaders(headers, url)
+    private suspend fun downloadPic(order: RequestOrder): ImmutablePair<Uri, String> {
+        if (order.killSwitch.get()) throw DownloadInterruptedException("Download interrupted")
+
+        val url = HttpHelper.fixUrl(order.url, order.site.url)
+        val requestHeaders = HttpHelper.webkitRequestHeadersToOkHttpHeaders(order.headers, url)
         requestHeaders.add(
             androidx.core.util.Pair(
                 "Accept",
@@ -148,29 +126,80 @@ class RequestQueue(
             )
         ) // Required to pass through cloudflare filtering on some sites
 
-        // Initiate download
-        val result: ImmutablePair<Uri, String> = DownloadHelper.downloadToFile(
-            site,
+        Timber.d("DOWNLOADING %d %s", order.pageIndex, url)
+        val response = HttpHelper.newOnlineResourceDownloaderCall(
             url,
-            pageIndex,
-            HttpHelper.webkitRequestHeadersToOkHttpHeaders(headers, url),
-            targetFolder.uri,
-            targetFileNameNoExt,
-            null,
-            false,
-            killSwitch,
-            null
-        )
+            HttpHelper.webkitRequestHeadersToOkHttpHeaders(order.headers, url),
+            order.site.useMobileAgent(),
+            order.site.useHentoidAgent(),
+            order.site.useWebviewAgent()
+        ).await()
+
+        return withContext(Dispatchers.IO) {
+            DownloadHelper.writeToFile(
+                response,
+                order.pageIndex,
+                order.targetDir.uri,
+                order.fileName,
+                null,
+                order.killSwitch,
+                null
+            )
+        }
+    }
 
-        val targetFileUri = result.left
-        val mimeType = result.right
+    /**
+     * Copy the picture downloaded by another request order of the same URL to the target folder
+     * of the given request order; download it again if the copy fails
+     *
+     * @param order      Request order to process
+     * @param downloaded Uri and Mime-type of the picture downloaded for the other request order
+     * @return Uri of the copy
+     */
+    private suspend fun copyPic(order: RequestOrder, downloaded: ImmutablePair<Uri, String>): Uri? {
+        if (null == downloaded.left) return null
+        if (order.killSwitch.get()) throw DownloadInterruptedException("Download interrupted")
+        return try {
+            withContext(Dispatchers.IO) {
+                DownloadHelper.copyToFile(
+                    downloaded.left,
+                    downloaded.right,
+                    order.targetDir.uri,
+                    order.fileName
+                )
+            }
+        } catch (e: IOException) {
+            Timber.d(e, "Couldn't copy %s; downloading it again", downloaded.left)
+            coalescer.forget(order.url)
+            downloadPic(order).left
+        }
+    }
 
-        return Optional.of(
-            ImmutableTriple(
-                pageIndex,
-                targetFileUri,
-                mimeType
-            )
-        )
+    companion object {
+        // Number of completed downloads whose files are reused by later requests of the same URL
+        private const val RECENT_DOWNLOADS = 32
+    }
+}
+
+/**
+ * Wait for the response of the call without blocking the calling thread
+ * NB : The call is run on OkHttp's dispatcher, which caps the number of simultaneous calls per host
+ */
+internal suspend fun Call.await(): Response = suspendCancellableCoroutine { continuation ->
+    enqueue(object : Callback {
+        override fun onResponse(call: Call, response: Response) {
+            continuation.resume(response) { response.close() }
+        }
+
+        override fun onFailure(call: Call, e: IOException) {
+            continuation.resumeWithException(e)
+        }
+    })
+    continuation.invokeOnCancellation {
+        try {
+            cancel()
+        } catch (t: Throwable) {
+            // Ignore
+        }
     }
-}
\ No newline at end of file
+}
@@ -10,11 +10,13 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
 import me.devsaki.hentoid.util.Helper
 import me.devsaki.hentoid.util.Preferences
+import me.devsaki.hentoid.util.network.HostProtocols
 import me.devsaki.hentoid.util.network.OkHttpClientSingleton
 import timber.log.Timber
 import java.util.Collections
 import java.util.LinkedList
 import kotlin.math.ceil
+import kotlin.math.max
 import kotlin.math.min
 
 /**
@@ -32,6 +34,7 @@ class RequestQueueManager private constructor(
         private set
 
     // Actual number of allowed parallel download threads
+    @Volatile
     private var downloadThreadCount = 0
 
     // Requests waiting to be executed
@@ -40,10 +43,15 @@ class RequestQueueManager private constructor(
     // Requests being currently executed
     private val activeRequests: MutableSet<RequestOrder> = Collections.synchronizedSet(HashSet())
 
+    // Follows the download thread count chosen by the user while downloads are running
+    private val appContext = context.applicationContext
+    private val prefsListener = Preferences.OnChangeListener { onThreadCountChanged() }
+
 
     init {
         downloadThreadCount = getPreferredThreadCount(context)
         init(resetActiveRequests = false, cancelQueue = true)
+        Preferences.subscribe(prefsListener, Preferences.Key.DL_THREADS_QUANTITY_LISTS)
     }
 
     /**
@@ -116,7 +124,7 @@ class RequestQueueManager private constructor(
      */
     fun queueRequest(order: RequestOrder) {
         CoroutineScope(Dispatchers.Default).launch {
-            if (isNewRequestAllowed()) executeRequest(order) else {
+            if (isNewRequestAllowed(Uri.parse(order.url).host)) executeRequest(order) else {
                 synchronized(waitingRequestQueue) {
                     waitingRequestQueue.add(order)
                     Timber.d(
@@ -129,20 +137,53 @@ class RequestQueueManager private constructor(
     }
 
     /**
-     * Indicates whether a new request can be executed or not
-     * NB : This call might _block_ the calling thread according to the current download rate limit
+     * Indicates whether a new request to the given host can be executed or not
+     *
+     * @param host Host of the new request
      */
-    private fun isNewRequestAllowed(): Boolean {
-        val remainingSlots = downloadThreadCount - nbActiveRequests
+    private fun isNewRequestAllowed(host: String?): Boolean {
+        val remainingSlots = getMaxActiveRequests(host) - nbActiveRequests
         if (remainingSlots < 1) return false
         return true
     }
 
+    /**
+     * Return the maximum number of requests to run in parallel for the given host
+     * Hosts that multiplex requests over one HTTP/2 connection are allowed more parallel requests
+     * than the download thread count, which is sized for HTTP/1.1 connections;
+     * requests only hold a thread while writing their response, so that doesn't take more threads
+     * NB : Caps set by sites apply whatever the protocol
+     *
+     * @param host Host to get the maximum for
+     */
+    fun getMaxActiveRequests(host: String?): Int {
+        if (downloadThreadCap > -1 || !HostProtocols.isMultiplexed(host)) return downloadThreadCount
+        return maxMultiplexedRequests
+    }
+
+    /**
+     * Maximum number of requests to run in parallel on multiplexed connections
+     */
+    val maxMultiplexedRequests: Int
+        get() = max(
+            downloadThreadCount,
+            min(downloadThreadCount * MULTIPLEXED_REQUESTS_FACTOR, MAX_MULTIPLEXED_REQUESTS)
+        )
+
+    private val nextWaitingHost: String?
+        get() {
+            synchronized(waitingRequestQueue) {
+                return waitingRequestQueue.peekFirst()?.let { Uri.parse(it.url).host }
+            }
+        }
+
     /**
      * Refill the queue with the allowed number of requests
      */
     private fun refill() {
-        if (nbActiveRequests < downloadThreadCount) {
+        // Several slots free up at once when the host turns out to be multiplexed
+        val freeSlots = getMaxActiveRequests(nextWaitingHost) - nbActiveRequests
+        repeat(freeSlots) {
             CoroutineScope(Dispatchers.Default).launch {
                 try {
                     doRefill()
@@ -157,10 +198,10 @@ class RequestQueueManager private constructor(
      * Refill the queue with the allowed number of requests
      */
     private suspend fun doRefill() {
-        var newRequestAllowed = isNewRequestAllowed()
+        var newRequestAllowed = isNewRequestAllowed(nextWaitingHost)
         while (!newRequestAllowed && 0 == nbActiveRequests) { // Dry queue
             Helper.pause(250)
-            newRequestAllowed = isNewRequestAllowed()
+            newRequestAllowed = isNewRequestAllowed(nextWaitingHost)
         }
         if (newRequestAllowed) {
             val o: RequestOrder?
@@ -249,6 +290,16 @@ class RequestQueueManager private constructor(
         return result
     }
 
+    /**
+     * Apply the download thread count chosen by the user, unless it is currently capped
+     */
+    private fun onThreadCountChanged() {
+        if (downloadThreadCap > -1) return
+        downloadThreadCount = getPreferredThreadCount(appContext)
+        Timber.d("Downloader : Download thread count set to %d", downloadThreadCount)
+        refill()
+    }
+
     /**
      * Return the automatic download thread count calculated from the device's memory capacity
      *
@@ -278,6 +329,12 @@ class RequestQueueManager private constructor(
     }
 
     companion object {
+        // Multiplier of the download thread count for hosts speaking HTTP/2
+        private const val MULTIPLEXED_REQUESTS_FACTOR = 3
+
+        // Maximum number of parallel requests for hosts speaking HTTP/2
+        private const val MAX_MULTIPLEXED_REQUESTS = 12
+
         @Volatile
         private var instance: RequestQueueManager? = null
 
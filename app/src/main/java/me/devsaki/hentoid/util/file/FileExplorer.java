@@ -21,9 +21,9 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import me.devsaki.hentoid.util.MaxSizeHashMap;
 import timber.log.Timber;
@@ -36,7 +36,8 @@ public class FileExplorer implements Closeable {
     private static final String DOCPROVIDER_PATH_DOCUMENT = "document";
     private static final String DOCPROVIDER_PATH_TREE = "tree";
 
-    private static final Map<String, Boolean> providersCache = new HashMap<>();
+    // Shared by all instances, which may be used concurrently
+    private static final Map<String, Boolean> providersCache = new ConcurrentHashMap<>();
     private final MaxSizeHashMap<String, String> documentIdCache = new MaxSizeHashMap<>(2000);
 
     private final ContentProviderClient client;
@@ -212,7 +213,8 @@ public class FileExplorer implements Closeable {
                 DocumentsContract.Document.COLUMN_DOCUMENT_ID,
                 DocumentsContract.Document.COLUMN_DISPLAY_NAME,
                 DocumentsContract.Document.COLUMN_MIME_TYPE,
-                DocumentsContract.Document.COLUMN_SIZE}, null, null, null);
+                DocumentsContract.Document.COLUMN_SIZE,
+                DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null);
     }
 
     /**
@@ -241,10 +243,11 @@ public class FileExplorer implements Closeable {
                     final String documentName = c.getString(1);
                     boolean isFolder = c.getString(2).equals(DocumentsContract.Document.MIME_TYPE_DIR);
                     final long documentSize = c.getLong(3);
+                    final long documentLastModified = c.isNull(4) ? 0 : c.getLong(4);
 
                     // FileProvider doesn't take query selection arguments into account, so the selection has to be done manually
                     if ((null == nameFilter || nameFilter.accept(documentName)) && ((listFiles && !isFolder) || (listFolders && isFolder)))
-                        results.add(new DocumentProperties(buildDocumentUriUsingTreeCached(parent.getUri(), documentId), documentName, documentSize, isFolder));
+                        results.add(new DocumentProperties(buildDocumentUriUsingTreeCached(parent.getUri(), documentId), documentName, documentSize, isFolder, documentLastModified));
 
                     // Don't do the whole loop if the point is to find a single element
                     if (stopFirst && !results.isEmpty()) break;
@@ -307,7 +310,7 @@ public class FileExplorer implements Closeable {
             // Following line should be the proper way to go but it's inefficient as it calls queryIntentContentProviders from scratch repeatedly
             //DocumentFile docFile = DocumentFile.fromTreeUri(context, uri.left);
             if (docFile != null)
-                resultFiles.add(new CachedDocumentFile(docFile, result.name, result.size, result.isDirectory));
+                resultFiles.add(new CachedDocumentFile(docFile, result.name, result.size, result.isDirectory, result.lastModified));
         }
         return resultFiles;
     }
@@ -424,12 +427,14 @@ public class FileExplorer implements Closeable {
         final String name;
         final long size;
         final boolean isDirectory;
+        final long lastModified;
 
-        public DocumentProperties(Uri uri, String name, long size, boolean isDirectory) {
+        public DocumentProperties(Uri uri, String name, long size, boolean isDirectory, long lastModified) {
             this.uri = uri;
             this.name = name;
             this.size = size;
             this.isDirectory = isDirectory;
+            this.lastModified = lastModified;
         }
     }
 }
@@ -304,6 +304,19 @@ public class FileHelper {
         return context.getContentResolver().openOutputStream(target.getUri(), "rwt"); // Always truncate file to whatever data needs to be written
     }
 
+    /**
+     * Create an OutputStream that appends data to the end of the given file
+     *
+     * @param context Context to use
+     * @param target  File to open the OutputStream on
+     * @return New OutputStream opened on the given file
+     * @throws IOException In case something horrible happens during I/O
+     */
+    @Nullable
+    public static OutputStream getAppendOutputStream(@NonNull final Context context, @NonNull final DocumentFile target) throws IOException {
+        return context.getContentResolver().openOutputStream(target.getUri(), "wa");
+    }
+
     /**
      * Create an OutputStream for the file at the given Uri
      * NB : File length will be truncated to the length of the written data
@@ -778,22 +791,69 @@ public class FileHelper {
      */
     // TODO document what happens when a file with the same name already exists there before the call
     public static OutputStream openNewDownloadOutputStream(@NonNull final Context context, @NonNull final String fileName, @NonNull final String mimeType) throws IOException {
+        return openDownloadOutputStream(context, createNewDownloadFile(context, fileName, mimeType));
+    }
+
+    /**
+     * Create a brand new file in the device's Downloads folder
+     *
+     * @param context  Context to use
+     * @param fileName Name of the file to create
+     * @param mimeType Mime-type of the file to create
+     * @return Uri of the new file, to be used with openDownloadOutputStream and removeDownloadFile
+     * @throws IOException If something horrible happens during I/O
+     */
+    public static Uri createNewDownloadFile(@NonNull final Context context, @NonNull final String fileName, @NonNull final String mimeType) throws IOException {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            return openNewDownloadOutputStreamQ(context, fileName, mimeType);
+            return createNewDownloadFileQ(context, fileName, mimeType);
         } else {
-            return openNewDownloadOutputStreamLegacy(fileName);
+            return Uri.fromFile(createNewDownloadFileLegacy(fileName));
         }
     }
 
     /**
-     * Legacy (non-SAF, pre-Android 10) version of openNewDownloadOutputStream
-     * Return an opened OutputStream in a brand new file created in the device's Downloads folder
+     * Return an opened OutputStream on the given file of the device's Downloads folder
+     *
+     * @param context Context to use
+     * @param fileUri Uri of the file, as given by createNewDownloadFile
+     * @return Opened OutputStream on the given file
+     * @throws IOException If something horrible happens during I/O
+     */
+    public static OutputStream openDownloadOutputStream(@NonNull final Context context, @NonNull final Uri fileUri) throws IOException {
+        if (ContentResolver.SCHEME_FILE.equals(fileUri.getScheme())) {
+            String path = fileUri.getPath();
+            if (null != path) return getOutputStream(new File(path));
+        } else {
+            OutputStream result = context.getContentResolver().openOutputStream(fileUri);
+            if (result != null) return result;
+        }
+        throw new IOException("Couldn't open download file : " + fileUri);
+    }
+
+    /**
+     * Delete the given file of the device's Downloads folder
+     *
+     * @param context Context to use
+     * @param fileUri Uri of the file, as given by createNewDownloadFile
+     */
+    public static void removeDownloadFile(@NonNull final Context context, @NonNull final Uri fileUri) {
+        if (ContentResolver.SCHEME_FILE.equals(fileUri.getScheme())) {
+            removeFile(context, fileUri);
+        } else {
+            // MediaStore items aren't documents; they have to be deleted through the resolver
+            context.getContentResolver().delete(fileUri, null, null);
+        }
+    }
+
+    /**
+     * Legacy (non-SAF, pre-Android 10) version of createNewDownloadFile
+     * Create a brand new file in the device's Downloads folder
      *
      * @param fileName Name of the file to create
-     * @return Opened OutputStream in a brand new file created in the device's Downloads folder
+     * @return Brand new file created in the device's Downloads folder
      * @throws IOException If something horrible happens during I/O
      */
-    private static OutputStream openNewDownloadOutputStreamLegacy(@NonNull final String fileName) throws IOException {
+    private static File createNewDownloadFileLegacy(@NonNull final String fileName) throws IOException {
         File downloadsFolder = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
         if (null == downloadsFolder) throw new IOException("Downloads folder not found");
 
@@ -801,31 +861,30 @@ public class FileHelper {
         if (!target.exists() && !target.createNewFile())
             throw new IOException("Could not create new file in downloads folder");
 
-        return getOutputStream(target);
+        return target;
     }
 
     /**
-     * Android 10 version of openNewDownloadOutputStream
+     * Android 10 version of createNewDownloadFile
      * https://gitlab.com/commonsguy/download-wrangler/blob/master/app/src/main/java/com/commonsware/android/download/DownloadRepository.kt
-     * Return an opened OutputStream in a brand new file created in the device's Downloads folder
+     * Create a brand new file in the device's Downloads folder
      *
      * @param context  Context to use
      * @param fileName Name of the file to create
      * @param mimeType Mime-type of the file to create
-     * @return Opened OutputStream in a brand new file created in the device's Downloads folder
+     * @return Uri of the brand new file created in the device's Downloads folder
      * @throws IOException If something horrible happens during I/O
      */
     @TargetApi(29)
-    private static OutputStream openNewDownloadOutputStreamQ(@NonNull final Context context, @NonNull final String fileName, @NonNull final String mimeType) throws IOException {
+    private static Uri createNewDownloadFileQ(@NonNull final Context context, @NonNull final String fileName, @NonNull final String mimeType) throws IOException {
         ContentValues values = new ContentValues();
         values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
         values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
 
-        ContentResolver resolver = context.getContentResolver();
-        Uri targetFileUri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+        Uri targetFileUri = context.getContentResolver().insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
         if (null == targetFileUri) throw new IOException("Target URI could not be formed");
 
-        return resolver.openOutputStream(targetFileUri);
+        return targetFileUri;
     }
 
     /**
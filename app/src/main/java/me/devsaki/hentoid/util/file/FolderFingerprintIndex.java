@@ -0,0 +1,271 @@
+package me.devsaki.hentoid.util.file;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.devsaki.hentoid.util.JsonHelper;
+import me.devsaki.hentoid.util.StringHelper;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Persisted index of the fingerprints of the book folders of a library, used to skip the
+ * folders that haven't changed since the last scan
+ * <p>
+ * The fingerprint of a folder is computed from the name, size and modification date
+ * of each of its direct children, which covers the addition, removal, renaming and
+ * modification of the folder's files (including its JSON file)
+ * NB : Changes inside subfolders aren't covered; folders whose books are read from their
+ * subfolders (e.g. chapter folders) must not be recorded
+ * <p>
+ * The modification date of the folder itself, as given by the listing of its parent, can also be
+ * recorded. It changes whenever a child is added, removed or renamed, which allows unchanged
+ * folders to be skipped without listing them. Files rewritten in place keep the folder's date;
+ * such edits are only detected by the fingerprint.
+ * <p>
+ * The index is considered unavailable (i.e. a full scan is required) when it is missing,
+ * unreadable, or has been built for another library root
+ */
+public class FolderFingerprintIndex {
+
+    private static final int VERSION = 1;
+
+    private static final JsonAdapter<IndexData> ADAPTER = JsonHelper.getAdapter(IndexData.class);
+
+    private final File file;
+    private final String rootUri;
+    // Index loaded from storage; null if unavailable
+    private final Map<String, Entry> previous;
+    // Index being built by the current scan
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+
+    private FolderFingerprintIndex(@NonNull File file, @NonNull String rootUri, @Nullable Map<String, Entry> previous) {
+        this.file = file;
+        this.rootUri = rootUri;
+        this.previous = previous;
+    }
+
+    /**
+     * Load the index stored in the given file
+     *
+     * @param file    File the index is stored in
+     * @param rootUri Uri of the root of the library the index is used for
+     * @return Loaded index; if the stored index is missing or inconsistent, an index that is unavailable
+     */
+    public static FolderFingerprintIndex load(@NonNull File file, @NonNull String rootUri) {
+        Map<String, Entry> entries = null;
+        if (file.exists()) {
+            try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+                IndexData data = ADAPTER.fromJson(source);
+                if (data != null && VERSION == data.version && rootUri.equals(data.rootUri) && data.entries != null)
+                    entries = data.entries;
+                else Timber.i("Fingerprint index %s is inconsistent; ignoring it", file.getName());
+            } catch (IOException | JsonDataException e) {
+                Timber.w(e);
+            }
+        }
+        return new FolderFingerprintIndex(file, rootUri, entries);
+    }
+
+    /**
+     * Indicate if the index can be used to skip folders
+     *
+     * @return True if the index can be used to skip folders; false if a full scan is required
+     */
+    public boolean isAvailable() {
+        return previous != null;
+    }
+
+    /**
+     * Compute the fingerprint of a folder from the given children
+     *
+     * @param children Direct children of the folder (files and folders)
+     * @return Fingerprint of the folder
+     */
+    public static long computeFingerprint(@NonNull List<DocumentFile> children) {
+        List<String> descriptors = new ArrayList<>(children.size());
+        for (DocumentFile f : children)
+            descriptors.add(StringHelper.protect(f.getName()) + "\u0000" + f.length() + "\u0000" + f.lastModified());
+        // Listing order isn't guaranteed
+        Collections.sort(descriptors);
+
+        // 64-bit FNV-1a
+        long result = 0xcbf29ce484222325L;
+        for (String d : descriptors) {
+            for (byte b : d.getBytes(StandardCharsets.UTF_8)) {
+                result ^= (b & 0xff);
+                result *= 0x100000001b3L;
+            }
+            result ^= 0xff; // Separator
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    /**
+     * Get the IDs of the books that have been found in the given folder during the last scan,
+     * provided the folder hasn't changed since then
+     * NB : Can be called from any thread
+     *
+     * @param folderUri Uri of the folder
+     * @param children  Current direct children of the folder
+     * @return IDs of the books found in the given folder; null if the folder is unknown or has changed
+     */
+    @Nullable
+    public List<Long> getUnchangedContentIds(@NonNull String folderUri, @NonNull List<DocumentFile> children) {
+        if (null == previous) return null;
+        Entry entry = previous.get(folderUri);
+        if (null == entry || entry.contentIds.isEmpty()) return null;
+        if (entry.childCount != children.size() || entry.fingerprint != computeFingerprint(children))
+            return null;
+        return entry.contentIds;
+    }
+
+    /**
+     * Get the IDs of the books that have been found in the given folder during the last scan,
+     * provided the folder's own modification date hasn't changed since then
+     * NB : Can be called from any thread
+     *
+     * @param folderUri          Uri of the folder
+     * @param folderLastModified Current modification date of the folder, as given by the listing of its parent
+     * @return IDs of the books found in the given folder; null if the folder is unknown, has no recorded date or has changed
+     */
+    @Nullable
+    public List<Long> getUnchangedContentIds(@NonNull String folderUri, long folderLastModified) {
+        if (null == previous || folderLastModified <= 0) return null;
+        Entry entry = previous.get(folderUri);
+        if (null == entry || entry.contentIds.isEmpty() || entry.folderLastModified != folderLastModified)
+            return null;
+        return entry.contentIds;
+    }
+
+    /**
+     * Record the given folder and the books found inside
+     *
+     * @param folderUri  Uri of the folder
+     * @param children   Current direct children of the folder
+     * @param contentIds IDs of the books found in the folder
+     */
+    public void put(@NonNull String folderUri, @NonNull List<DocumentFile> children, @NonNull List<Long> contentIds) {
+        put(folderUri, 0, children, contentIds);
+    }
+
+    /**
+     * Record the given folder, its modification date and the books found inside
+     *
+     * @param folderUri          Uri of the folder
+     * @param folderLastModified Modification date of the folder, as given by the listing of its parent; 0 if unknown
+     * @param children           Current direct children of the folder
+     * @param contentIds         IDs of the books found in the folder
+     */
+    public void put(@NonNull String folderUri, long folderLastModified, @NonNull List<DocumentFile> children, @NonNull List<Long> contentIds) {
+        current.put(folderUri, new Entry(children.size(), computeFingerprint(children), folderLastModified, contentIds));
+    }
+
+    /**
+     * Record the given folder as unchanged since the last scan
+     *
+     * @param folderUri Uri of the folder
+     */
+    public void keep(@NonNull String folderUri) {
+        if (null == previous) return;
+        Entry entry = previous.get(folderUri);
+        if (entry != null) current.put(folderUri, entry);
+    }
+
+    /**
+     * Record the given folder as unchanged since the last scan, with its current modification date
+     *
+     * @param folderUri          Uri of the folder
+     * @param folderLastModified Current modification date of the folder, as given by the listing of its parent
+     */
+    public void keep(@NonNull String folderUri, long folderLastModified) {
+        if (null == previous) return;
+        Entry entry = previous.get(folderUri);
+        if (entry != null)
+            current.put(folderUri, new Entry(entry.childCount, entry.fingerprint, folderLastModified, entry.contentIds));
+    }
+
+    /**
+     * Get the number of folders known by the previous scan that haven't been found by the current scan
+     *
+     * @return Number of folders that have been removed or changed beyond recognition since the last scan
+     */
+    public int getNbRemoved() {
+        if (null == previous) return 0;
+        int result = 0;
+        for (String key : previous.keySet()) if (!current.containsKey(key)) result++;
+        return result;
+    }
+
+    /**
+     * Get the number of folders known by the current scan that were unknown to the previous scan
+     *
+     * @return Number of folders that have been added since the last scan
+     */
+    public int getNbAdded() {
+        int result = 0;
+        for (String key : current.keySet()) if (null == previous || !previous.containsKey(key)) result++;
+        return result;
+    }
+
+    /**
+     * Persist the index built by the current scan, replacing the previous one
+     *
+     * @throws IOException If anything happens during I/O
+     */
+    public void save() throws IOException {
+        IndexData data = new IndexData();
+        data.version = VERSION;
+        data.rootUri = rootUri;
+        data.entries = new HashMap<>(current);
+
+        // Write to a temporary file first to avoid leaving a truncated index behind
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+            ADAPTER.toJson(sink, data);
+        }
+        if (!tmp.renameTo(file)) throw new IOException("Couldn't replace " + file.getName());
+    }
+
+    static class IndexData {
+        int version;
+        String rootUri;
+        Map<String, Entry> entries;
+    }
+
+    static class Entry {
+        int childCount;
+        long fingerprint;
+        long folderLastModified; // 0 if unknown
+        List<Long> contentIds;
+
+        Entry() {
+            // Required by Moshi
+        }
+
+        Entry(int childCount, long fingerprint, long folderLastModified, @NonNull List<Long> contentIds) {
+            this.childCount = childCount;
+            this.fingerprint = fingerprint;
+            this.folderLastModified = folderLastModified;
+            this.contentIds = new ArrayList<>(contentIds);
+        }
+    }
+}
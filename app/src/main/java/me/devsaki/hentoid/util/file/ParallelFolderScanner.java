@@ -0,0 +1,146 @@
+package me.devsaki.hentoid.util.file;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.annimon.stream.function.BiFunction;
+import com.annimon.stream.function.Supplier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * Scans folders using a bounded pool of threads, and hands the results over to one single consumer
+ * (typically the thread that writes the results to the DB)
+ * <p>
+ * - Each thread of the pool uses its own scanning resource (e.g. {@link FileExplorer})
+ * - Results are delivered in the order they are produced, not in the order the folders have been submitted
+ * - The number of results waiting to be consumed is bounded, so that a slow consumer doesn't
+ * cause the results to pile up in memory
+ *
+ * @param <F> Type of the folders to scan
+ * @param <R> Type of the scanning results
+ * @param <X> Type of the resource used by each thread to scan folders
+ */
+public class ParallelFolderScanner<F, R, X extends Closeable> implements Closeable {
+
+    private final ExecutorService executor;
+    private final CompletionService<R> completionService;
+    private final ThreadLocal<X> resource;
+    private final List<X> resources = new ArrayList<>();
+    private final BiFunction<X, F, R> scanner;
+    private final int maxInFlight;
+
+    // Folders waiting to be submitted to the pool
+    private final Deque<F> backlog = new ArrayDeque<>();
+    // Folders submitted to the pool whose result hasn't been consumed yet
+    private int inFlight = 0;
+
+
+    /**
+     * @param nbThreads       Number of threads to scan folders with
+     * @param resourceFactory Factory for the resource each thread uses to scan folders; called once per thread
+     * @param scanner         Scanning function; called on the pool's threads with the thread's resource
+     */
+    public ParallelFolderScanner(
+            int nbThreads,
+            @NonNull Supplier<X> resourceFactory,
+            @NonNull BiFunction<X, F, R> scanner) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        executor = Executors.newFixedThreadPool(nbThreads, r -> {
+            Thread t = new Thread(r, "folder-scanner-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        completionService = new ExecutorCompletionService<>(executor);
+        resource = new ThreadLocal<X>() {
+            @Override
+            protected X initialValue() {
+                X result = resourceFactory.get();
+                synchronized (resources) {
+                    resources.add(result);
+                }
+                return result;
+            }
+        };
+        this.scanner = scanner;
+        maxInFlight = nbThreads * 4;
+    }
+
+    /**
+     * Submit the given folders for scanning
+     *
+     * @param folders Folders to scan
+     */
+    public void submit(@NonNull Collection<F> folders) {
+        backlog.addAll(folders);
+        fill();
+    }
+
+    /**
+     * Get the next available scanning result, waiting for it if necessary
+     *
+     * @return Next available scanning result; null if all submitted folders have been scanned
+     * @throws InterruptedException If the calling thread has been interrupted while waiting
+     */
+    @Nullable
+    public R next() throws InterruptedException {
+        fill();
+        if (0 == inFlight) return null;
+        R result;
+        try {
+            result = completionService.take().get();
+        } catch (ExecutionException e) {
+            // Scanning functions are expected to handle their own errors
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            inFlight--;
+        }
+        fill();
+        return result;
+    }
+
+    private void fill() {
+        while (inFlight < maxInFlight && !backlog.isEmpty()) {
+            F folder = backlog.poll();
+            completionService.submit(() -> scanner.apply(resource.get(), folder));
+            inFlight++;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        // Don't close resources that are still in use
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+                Timber.w("Folder scanners still running");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (resources) {
+            for (X x : resources) {
+                try {
+                    x.close();
+                } catch (IOException e) {
+                    Timber.w(e);
+                }
+            }
+            resources.clear();
+        }
+    }
+}
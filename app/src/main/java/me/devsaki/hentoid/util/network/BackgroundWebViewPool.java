@@ -0,0 +1,427 @@
+package me.devsaki.hentoid.util.network;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.webkit.WebView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import me.devsaki.hentoid.core.HentoidApp;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.util.Helper;
+import me.devsaki.hentoid.util.StringHelper;
+import timber.log.Timber;
+
+/**
+ * Pool of background WebViews used to run the scripts of sites that can't be parsed without a browser
+ * <p>
+ * WebViews are leased per site and type from background threads, and given back to the pool when the lease is closed.
+ * Idle WebViews are kept warm for a little while, so that consecutive leases for the same site
+ * don't pay for the cold start of a WebView.
+ * <p>
+ * WebViews are created, used and destroyed on the main thread; the blocking methods of the leases
+ * wait for the main thread through latches and callbacks
+ */
+public class BackgroundWebViewPool {
+
+    // Idle WebViews are destroyed after that delay
+    private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+    private static final int MAX_IDLE_PER_KEY = 1;
+    private static final long LEASE_TIMEOUT_MS = 10 * 1000;
+    // Granularity of the checks of the halting conditions while waiting
+    private static final long HALT_CHECK_MS = 100;
+
+    /**
+     * WebView that signals the end of the loading of a page
+     */
+    public interface LoadableWebView {
+        /**
+         * Load the given URL
+         *
+         * @param url      URL to load
+         * @param onLoaded Called on the main thread when the page at the given URL has finished loading
+         */
+        void loadUrl(@NonNull String url, @NonNull Runnable onLoaded);
+    }
+
+    private static BackgroundWebViewPool instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Key = site and type of WebView; only accessed on the main thread
+    private final Map<String, Deque<PooledWebView>> idle = new HashMap<>();
+
+    private final Stats stats = new Stats();
+    private final long leaseTimeoutMs;
+
+
+    public static synchronized BackgroundWebViewPool getInstance() {
+        if (null == instance) instance = new BackgroundWebViewPool(LEASE_TIMEOUT_MS);
+        return instance;
+    }
+
+    /**
+     * @param leaseTimeoutMs Maximum time to wait for a WebView to be leased (ms)
+     */
+    BackgroundWebViewPool(long leaseTimeoutMs) {
+        this.leaseTimeoutMs = leaseTimeoutMs;
+    }
+
+    /**
+     * Lease a WebView of the given type for the given site, creating one with the given factory if no idle WebView is available
+     * NB : Must be called from a background thread
+     *
+     * @param site    Site to lease a WebView for
+     * @param type    Type of the WebView to lease
+     * @param factory Factory creating a WebView of the given type for the given site; called on the main thread
+     * @return Lease of the WebView; to be closed when the WebView isn't needed anymore
+     * @throws InterruptedException If the thread has been interrupted while waiting for the WebView
+     * @throws IllegalStateException If no WebView could be obtained in time
+     */
+    public Lease lease(@NonNull Site site, @NonNull Class<? extends WebView> type, @NonNull Function<Context, ? extends WebView> factory) throws InterruptedException {
+        Helper.assertNonUiThread();
+        long start = SystemClock.elapsedRealtime();
+        AtomicReference<PooledWebView> result = new AtomicReference<>();
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        CountDownLatch latch = new CountDownLatch(1);
+        handler.post(() -> {
+            String key = getKey(site, type);
+            PooledWebView pooled = takeIdle(key);
+            if (null == pooled) pooled = new PooledWebView(key, site, create(factory));
+            synchronized (abandoned) {
+                // Caller has given up waiting
+                if (abandoned.get()) release(pooled);
+                else result.set(pooled);
+            }
+            latch.countDown();
+        });
+        if (!latch.await(leaseTimeoutMs, TimeUnit.MILLISECONDS)) {
+            synchronized (abandoned) {
+                abandoned.set(true);
+                PooledWebView late = result.getAndSet(null);
+                if (late != null) handler.post(() -> release(late));
+            }
+            throw new IllegalStateException("Unable to obtain a WebView for " + site.getDescription());
+        }
+        PooledWebView pooled = result.get();
+        if (null == pooled) throw new IllegalStateException("Unable to obtain a WebView for " + site.getDescription());
+
+        boolean isCold = (0 == pooled.nbLeases++);
+        stats.recordLease(isCold, SystemClock.elapsedRealtime() - start);
+        return new Lease(pooled, isCold);
+    }
+
+    private static WebView create(@NonNull Function<Context, ? extends WebView> factory) {
+        try {
+            return factory.apply(HentoidApp.getInstance());
+        } catch (Resources.NotFoundException e) {
+            // Some older devices can crash when instantiating a WebView, due to a Resources$NotFoundException
+            // Creating with the application Context fixes this, but is not generally recommended for view creation
+            return factory.apply(Helper.getFixedContext(HentoidApp.getInstance()));
+        }
+    }
+
+    private static String getKey(@NonNull Site site, @NonNull Class<? extends WebView> type) {
+        return site.name() + "/" + type.getName();
+    }
+
+    /**
+     * Take an idle WebView with the given key from the pool (main thread only)
+     */
+    @Nullable
+    private PooledWebView takeIdle(@NonNull String key) {
+        Deque<PooledWebView> keyIdle = idle.get(key);
+        if (null == keyIdle || keyIdle.isEmpty()) return null;
+        PooledWebView result = keyIdle.pollLast();
+        if (result != null) handler.removeCallbacks(result.idleTimeout);
+        return result;
+    }
+
+    /**
+     * Give the given WebView back to the pool (main thread only)
+     */
+    private void release(@NonNull PooledWebView pooled) {
+        if (pooled.broken) {
+            destroy(pooled);
+            return;
+        }
+        Deque<PooledWebView> keyIdle = idle.get(pooled.key);
+        if (null == keyIdle) {
+            keyIdle = new ArrayDeque<>();
+            idle.put(pooled.key, keyIdle);
+        }
+        if (keyIdle.size() >= MAX_IDLE_PER_KEY) {
+            destroy(pooled);
+            return;
+        }
+        keyIdle.add(pooled);
+        handler.postDelayed(pooled.idleTimeout, IDLE_TIMEOUT_MS);
+    }
+
+    private void destroy(@NonNull PooledWebView pooled) {
+        handler.removeCallbacks(pooled.idleTimeout);
+        Deque<PooledWebView> keyIdle = idle.get(pooled.key);
+        if (keyIdle != null) keyIdle.remove(pooled);
+        pooled.webView.stopLoading();
+        pooled.webView.destroy();
+        Timber.d("Background WebView for %s destroyed", pooled.site.getDescription());
+    }
+
+    /**
+     * Destroy all idle WebViews
+     */
+    public void clear() {
+        handler.post(() -> {
+            for (Deque<PooledWebView> keyIdle : idle.values())
+                for (PooledWebView pooled : new ArrayDeque<>(keyIdle)) destroy(pooled);
+            idle.clear();
+        });
+    }
+
+    /**
+     * Get the statistics of the pool since the app has started
+     *
+     * @return Copy of the current statistics
+     */
+    public Stats getStats() {
+        return stats.copy();
+    }
+
+    /**
+     * Evaluate the given script in the page loaded by the given WebView and wait for its result
+     * NB : Must be called from a background thread
+     *
+     * @param webView   WebView to evaluate the script with
+     * @param script    Script to evaluate
+     * @param timeoutMs Maximum time to wait for the result (ms)
+     * @param isHalted  Indicates if waiting should be abandoned; null if it shouldn't
+     * @return Result of the evaluation (JSON value); null if the wait has timed out or has been halted
+     * @throws InterruptedException If the thread has been interrupted while waiting
+     */
+    @Nullable
+    public String evaluateJavascript(@NonNull WebView webView, @NonNull String script, long timeoutMs, @Nullable BooleanSupplier isHalted) throws InterruptedException {
+        Helper.assertNonUiThread();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<String> result = new AtomicReference<>();
+        handler.post(() -> webView.evaluateJavascript(script, s -> {
+            result.set(StringHelper.protect(s));
+            latch.countDown();
+        }));
+        return await(latch, timeoutMs, isHalted) ? result.get() : null;
+    }
+
+    /**
+     * Wait for the given latch to be released, giving up if the given condition is met
+     *
+     * @return True if the latch has been released; false if the wait has timed out or has been halted
+     */
+    private static boolean await(@NonNull CountDownLatch latch, long timeoutMs, @Nullable BooleanSupplier isHalted) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        long remaining = timeoutMs;
+        while (remaining > 0) {
+            if (latch.await(Math.min(remaining, HALT_CHECK_MS), TimeUnit.MILLISECONDS)) return true;
+            if (isHalted != null && isHalted.getAsBoolean()) return false;
+            remaining = deadline - SystemClock.elapsedRealtime();
+        }
+        return false;
+    }
+
+
+    private class PooledWebView {
+        final String key;
+        final Site site;
+        final WebView webView;
+        final Runnable idleTimeout;
+        int nbLeases = 0;
+        // True if the WebView shouldn't be reused
+        volatile boolean broken = false;
+
+        PooledWebView(@NonNull String key, @NonNull Site site, @NonNull WebView webView) {
+            this.key = key;
+            this.site = site;
+            this.webView = webView;
+            this.idleTimeout = () -> destroy(this);
+        }
+    }
+
+    /**
+     * Exclusive use of a pooled WebView
+     */
+    public class Lease implements Closeable {
+        private final PooledWebView pooled;
+        private final boolean isCold;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private Lease(@NonNull PooledWebView pooled, boolean isCold) {
+            this.pooled = pooled;
+            this.isCold = isCold;
+        }
+
+        /**
+         * Indicate if the WebView has just been created
+         */
+        public boolean isCold() {
+            return isCold;
+        }
+
+        /**
+         * Run the given action on the main thread with the leased WebView
+         *
+         * @param action Action to run
+         */
+        public void post(@NonNull Consumer<WebView> action) {
+            handler.post(() -> action.accept(pooled.webView));
+        }
+
+        /**
+         * Load the given URL and wait for the page to finish loading
+         * NB : The leased WebView must implement LoadableWebView
+         *
+         * @param url       URL to load
+         * @param timeoutMs Maximum time to wait for the page to finish loading (ms)
+         * @param isHalted  Indicates if waiting should be abandoned; null if it shouldn't
+         * @return True if the page has finished loading; false if the wait has timed out or has been halted
+         * @throws InterruptedException If the thread has been interrupted while waiting
+         */
+        public boolean loadUrl(@NonNull String url, long timeoutMs, @Nullable BooleanSupplier isHalted) throws InterruptedException {
+            if (!(pooled.webView instanceof LoadableWebView))
+                throw new IllegalStateException("WebView doesn't signal page loads");
+            long start = SystemClock.elapsedRealtime();
+            CountDownLatch latch = new CountDownLatch(1);
+            handler.post(() -> ((LoadableWebView) pooled.webView).loadUrl(url, latch::countDown));
+            boolean result = await(latch, timeoutMs, isHalted);
+            stats.recordLoad(SystemClock.elapsedRealtime() - start);
+            if (!result) Timber.i("Background WebView : %s didn't load within %d ms", url, timeoutMs);
+            return result;
+        }
+
+        /**
+         * Evaluate the given script in the page loaded by the WebView and wait for its result
+         *
+         * @param script    Script to evaluate
+         * @param timeoutMs Maximum time to wait for the result (ms)
+         * @param isHalted  Indicates if waiting should be abandoned; null if it shouldn't
+         * @return Result of the evaluation (JSON value); null if the wait has timed out or has been halted
+         * @throws InterruptedException If the thread has been interrupted while waiting
+         */
+        @Nullable
+        public String evaluateJavascript(@NonNull String script, long timeoutMs, @Nullable BooleanSupplier isHalted) throws InterruptedException {
+            long start = SystemClock.elapsedRealtime();
+            String result = BackgroundWebViewPool.this.evaluateJavascript(pooled.webView, script, timeoutMs, isHalted);
+            stats.recordEval(SystemClock.elapsedRealtime() - start);
+            return result;
+        }
+
+        /**
+         * Signal the WebView shouldn't be reused (e.g. it is stuck on a page)
+         */
+        public void discard() {
+            pooled.broken = true;
+        }
+
+        /**
+         * Give the WebView back to the pool
+         */
+        @Override
+        public void close() {
+            if (closed.getAndSet(true)) return;
+            handler.post(() -> release(pooled));
+        }
+    }
+
+    /**
+     * Time spent waiting for the pooled WebViews
+     */
+    public static class Stats {
+        private long nbLeases;
+        private long nbColdStarts;
+        // Time spent waiting for a WebView to be leased
+        private long leaseMs;
+        private long nbLoads;
+        // Time spent waiting for pages to load
+        private long loadMs;
+        private long nbEvals;
+        // Time spent waiting for scripts to be evaluated
+        private long evalMs;
+
+        synchronized void recordLease(boolean isCold, long durationMs) {
+            nbLeases++;
+            if (isCold) nbColdStarts++;
+            leaseMs += durationMs;
+        }
+
+        synchronized void recordLoad(long durationMs) {
+            nbLoads++;
+            loadMs += durationMs;
+        }
+
+        synchronized void recordEval(long durationMs) {
+            nbEvals++;
+            evalMs += durationMs;
+        }
+
+        synchronized Stats copy() {
+            Stats result = new Stats();
+            result.nbLeases = nbLeases;
+            result.nbColdStarts = nbColdStarts;
+            result.leaseMs = leaseMs;
+            result.nbLoads = nbLoads;
+            result.loadMs = loadMs;
+            result.nbEvals = nbEvals;
+            result.evalMs = evalMs;
+            return result;
+        }
+
+        public long getNbLeases() {
+            return nbLeases;
+        }
+
+        public long getNbColdStarts() {
+            return nbColdStarts;
+        }
+
+        public long getLeaseMs() {
+            return leaseMs;
+        }
+
+        public long getNbLoads() {
+            return nbLoads;
+        }
+
+        public long getLoadMs() {
+            return loadMs;
+        }
+
+        public long getNbEvals() {
+            return nbEvals;
+        }
+
+        public long getEvalMs() {
+            return evalMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%d leases (%d cold) %d ms; %d loads %d ms; %d evals %d ms",
+                    nbLeases, nbColdStarts, leaseMs, nbLoads, loadMs, nbEvals, evalMs);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import okhttp3.Dns;
+
+/**
+ * DNS resolver that keeps the answers of the given resolver for a fixed duration
+ * <p>
+ * Used in front of DNS over HTTPS, where each lookup would otherwise be an HTTP request
+ * NB : OkHttp's Dns interface doesn't expose the TTL of the records, hence the fixed duration;
+ * failed lookups aren't cached
+ */
+public class CachingDns implements Dns {
+
+    private final Dns delegate;
+    private final long ttlMs;
+    private final LongSupplier clock;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long expiresAt;
+
+        Entry(@NonNull List<InetAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @param delegate Resolver to cache the answers of
+     * @param ttlMs    Duration answers are kept for (ms)
+     */
+    public CachingDns(@NonNull Dns delegate, long ttlMs) {
+        this(delegate, ttlMs, System::currentTimeMillis);
+    }
+
+    CachingDns(@NonNull Dns delegate, long ttlMs, @NonNull LongSupplier clock) {
+        this.delegate = delegate;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    @NonNull
+    @Override
+    public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        long now = clock.getAsLong();
+        Entry entry = cache.get(hostname);
+        if (entry != null && entry.expiresAt > now) return entry.addresses;
+
+        List<InetAddress> result = delegate.lookup(hostname);
+        if (!result.isEmpty()) cache.put(hostname, new Entry(result, now + ttlMs));
+        return result;
+    }
+
+    /**
+     * Forget all cached answers
+     */
+    public void clear() {
+        cache.clear();
+    }
+}
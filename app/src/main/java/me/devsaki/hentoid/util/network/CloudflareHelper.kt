@@ -2,41 +2,32 @@ package me.devsaki.hentoid.util.network
 
 import android.annotation.SuppressLint
 import android.content.Context
-import android.content.res.Resources
-import android.os.Handler
-import android.os.Looper
+import android.os.SystemClock
 import android.webkit.*
 import me.devsaki.hentoid.BuildConfig
 import me.devsaki.hentoid.core.CLOUDFLARE_COOKIE
-import me.devsaki.hentoid.core.HentoidApp
 import me.devsaki.hentoid.enums.Site
-import me.devsaki.hentoid.util.Helper
 import me.devsaki.hentoid.util.Preferences
 import me.devsaki.hentoid.util.StringHelper
 import timber.log.Timber
 import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
 
 const val RELOAD_LIMIT = 3
 
+// Reload if nothing happens for that long
+private const val RELOAD_DELAY_MS = 7500L
+
+// Maximum time to wait for a page to finish loading before checking cookies again
+private const val COOKIE_CHECK_MS = 500L
+
 class CloudflareHelper {
 
-    private var webView: CloudflareWebView? = null
     private val stopped = AtomicBoolean(false)
 
-    init {
-        val handler = Handler(Looper.getMainLooper())
-        handler.post {
-            this.webView = try {
-                CloudflareWebView(HentoidApp.getInstance())
-            } catch (e: Resources.NotFoundException) {
-                // Some older devices can crash when instantiating a WebView, due to a Resources$NotFoundException
-                // Creating with the application Context fixes this, but is not generally recommended for view creation
-                CloudflareWebView(Helper.getFixedContext(HentoidApp.getInstance()))
-            }
-        }
-    }
-
 
     // TODO doc
     fun tryPassCloudflare(
@@ -45,7 +36,7 @@ class CloudflareHelper {
     ): Boolean {
         val oldCookieInternal: String = oldCookie ?: StringHelper.protect(
             HttpHelper.parseCookies(
-                HttpHelper.getCookies(revivedSite.url)
+                HttpHelper.getWebViewCookies(revivedSite.url)
             )[CLOUDFLARE_COOKIE]
         )
 
@@ -53,54 +44,72 @@ class CloudflareHelper {
         val domain = "." + HttpHelper.getDomainFromUri(revivedSite.url)
         HttpHelper.setCookies(domain, "$CLOUDFLARE_COOKIE=;Max-Age=0; secure; HttpOnly")
 
-        val handler = Handler(Looper.getMainLooper())
-        handler.post {
-            webView?.setUserAgent(revivedSite.userAgent)
-            webView?.setAgentProperties(
-                revivedSite.useMobileAgent(),
-                revivedSite.useHentoidAgent(),
-                revivedSite.useWebviewAgent()
-            )
-            webView?.loadUrl(revivedSite.url)
-        }
-        var reloadTimer = 0
-        var reloadCounter = 0
-        var passed = false
-        // Wait for cookies to refresh
-        do {
-            val cfcookie =
-                HttpHelper.parseCookies(HttpHelper.getCookies(revivedSite.url))[CLOUDFLARE_COOKIE]
-            if (cfcookie != null && cfcookie.isNotEmpty() && cfcookie != oldCookieInternal) {
-                Timber.d("CF-COOKIE : refreshed !")
-                passed = true
-            } else {
-                Timber.v("CF-COOKIE : not refreshed")
-                // Reload if nothing for 7.5s
-                reloadTimer++
-                if (reloadTimer > 5 && reloadCounter < RELOAD_LIMIT) {
-                    reloadTimer = 0
-                    reloadCounter++
-                    Timber.v("CF-COOKIE : RELOAD %d/%d", reloadCounter, RELOAD_LIMIT)
-                    handler.post {
-                        webView?.reload()
+        // Signalled each time the webview finishes loading a page
+        val pageFinished = AtomicReference(CountDownLatch(1))
+        try {
+            BackgroundWebViewPool.getInstance()
+                .lease(revivedSite, CloudflareWebView::class.java) { CloudflareWebView(it) }
+                .use { lease ->
+                    lease.post {
+                        val webView = it as CloudflareWebView
+                        webView.setUserAgent(revivedSite.userAgent)
+                        webView.setAgentProperties(
+                            revivedSite.useMobileAgent(),
+                            revivedSite.useHentoidAgent(),
+                            revivedSite.useWebviewAgent()
+                        )
+                        webView.client.onPageFinished = { pageFinished.get().countDown() }
+                        webView.loadUrl(revivedSite.url)
                     }
+                    var lastActivity = SystemClock.elapsedRealtime()
+                    var reloadCounter = 0
+                    var passed = false
+                    var givenUp = false
+                    // Wait for cookies to refresh
+                    // NB : Cookies are checked each time a page finishes loading (challenge pages redirect once solved),
+                    // and regularly in-between as they can also be set by scripts
+                    do {
+                        val latch = pageFinished.get()
+                        if (latch.await(COOKIE_CHECK_MS, TimeUnit.MILLISECONDS)) {
+                            lastActivity = SystemClock.elapsedRealtime()
+                            pageFinished.set(CountDownLatch(1))
+                        }
+                        val cfcookie =
+                            HttpHelper.parseCookies(HttpHelper.getWebViewCookies(revivedSite.url))[CLOUDFLARE_COOKIE]
+                        if (cfcookie != null && cfcookie.isNotEmpty() && cfcookie != oldCookieInternal) {
+                            Timber.d("CF-COOKIE : refreshed !")
+                            passed = true
+                        } else if (SystemClock.elapsedRealtime() - lastActivity > RELOAD_DELAY_MS) {
+                            // Reload if nothing for 7.5s
+                            Timber.v("CF-COOKIE : not refreshed")
+                            lastActivity = SystemClock.elapsedRealtime()
+                            if (reloadCounter < RELOAD_LIMIT) {
+                                reloadCounter++
+                                Timber.v("CF-COOKIE : RELOAD %d/%d", reloadCounter, RELOAD_LIMIT)
+                                lease.post { it.reload() }
+                            } else {
+                                givenUp = true
+                            }
+                        }
+                    } while (!givenUp && !passed && !stopped.get())
+
+                    lease.post { (it as CloudflareWebView).client.onPageFinished = null }
+                    if (!passed) lease.discard()
+                    return passed
                 }
-            }
-            // We're polling the DB because we can't observe LiveData from a background service
-            Helper.pause(1500)
-        } while (reloadCounter < RELOAD_LIMIT && !passed && !stopped.get())
-
-        return passed
+        } catch (e: InterruptedException) {
+            Timber.d(e)
+            Thread.currentThread().interrupt()
+            return false
+        } catch (e: IllegalStateException) {
+            // No WebView could be leased in time
+            Timber.w(e)
+            return false
+        }
     }
 
     fun clear() {
         stopped.set(true)
-        webView?.removeAllViews()
-        val handler = Handler(Looper.getMainLooper())
-        handler.post {
-            webView?.destroy()
-        }
-        webView = null
     }
 
     class CloudflareProtectedException : Exception()
@@ -148,6 +157,13 @@ class CloudflareHelper {
         var useHentoidAgent = false
         var useWebviewAgent = false
 
+        // Called on the main thread each time a page finishes loading
+        var onPageFinished: (() -> Unit)? = null
+
+        override fun onPageFinished(view: WebView, url: String) {
+            onPageFinished?.invoke()
+        }
+
         /**
          * Note : this method is called by a non-UI thread
          */
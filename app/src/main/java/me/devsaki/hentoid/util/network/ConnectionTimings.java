@@ -0,0 +1,160 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Gathers the connection timings of the calls made by the OkHttp clients it is installed on
+ * - DNS resolution, TCP connection and TLS handshake times
+ * - Time to first byte (from the start of the call to the reception of the response headers)
+ * - Number of calls that opened a new connection vs. reused a pooled one
+ */
+public class ConnectionTimings implements EventListener.Factory {
+
+    private long nbCalls;
+    private long nbConnections;
+    private long nbHandshakes;
+    private long dnsMs;
+    private long connectMs;
+    private long handshakeMs;
+    private long ttfbMs;
+
+
+    @NonNull
+    @Override
+    public EventListener create(@NonNull Call call) {
+        return new Listener();
+    }
+
+    private synchronized void record(@NonNull Listener l) {
+        nbCalls++;
+        if (l.connectEnd > 0) nbConnections++;
+        if (l.secureConnectEnd > 0) nbHandshakes++;
+        if (l.dnsEnd > 0) dnsMs += toMs(l.dnsEnd - l.dnsStart);
+        if (l.connectEnd > 0) connectMs += toMs(l.connectEnd - l.connectStart);
+        if (l.secureConnectEnd > 0) handshakeMs += toMs(l.secureConnectEnd - l.secureConnectStart);
+        if (l.responseHeadersStart > 0) ttfbMs += toMs(l.responseHeadersStart - l.callStart);
+    }
+
+    private static long toMs(long nanos) {
+        return nanos / 1000000;
+    }
+
+    public synchronized long getNbCalls() {
+        return nbCalls;
+    }
+
+    /**
+     * @return Number of calls that had to open a new connection
+     */
+    public synchronized long getNbConnections() {
+        return nbConnections;
+    }
+
+    /**
+     * @return Number of calls that had to perform a TLS handshake
+     */
+    public synchronized long getNbHandshakes() {
+        return nbHandshakes;
+    }
+
+    public synchronized long getDnsMs() {
+        return dnsMs;
+    }
+
+    public synchronized long getConnectMs() {
+        return connectMs;
+    }
+
+    public synchronized long getHandshakeMs() {
+        return handshakeMs;
+    }
+
+    public synchronized long getTtfbMs() {
+        return ttfbMs;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH, "%d calls; %d connections (%d TLS); DNS %d ms; connect %d ms; TLS %d ms; avg TTFB %d ms",
+                nbCalls, nbConnections, nbHandshakes, dnsMs, connectMs, handshakeMs, (nbCalls > 0) ? ttfbMs / nbCalls : 0);
+    }
+
+    /**
+     * Timestamps of one call (ns)
+     * NB : In case of redirects, TTFB is measured on the first response; connection timings on the last connection
+     */
+    private class Listener extends EventListener {
+        long callStart;
+        long dnsStart;
+        long dnsEnd;
+        long connectStart;
+        long connectEnd;
+        long secureConnectStart;
+        long secureConnectEnd;
+        long responseHeadersStart;
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+            dnsEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+            secureConnectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy, @Nullable Protocol protocol) {
+            connectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(@NonNull Call call) {
+            if (0 == responseHeadersStart) responseHeadersStart = System.nanoTime();
+        }
+
+        @Override
+        public void callEnd(@NonNull Call call) {
+            record(this);
+        }
+
+        @Override
+        public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+            record(this);
+        }
+    }
+}
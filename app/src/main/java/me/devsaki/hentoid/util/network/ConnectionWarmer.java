@@ -0,0 +1,137 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import me.devsaki.hentoid.util.download.DownloadRateLimiter;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Opens connections to the hosts of a book's images before they are downloaded, so that
+ * the first downloads don't have to wait for DNS resolution, TCP connection and TLS handshake
+ * <p>
+ * Each host is resolved, then called once with HEAD on the first of its URLs; the connection
+ * then stays in the connection pool of the clients until it's used by the actual downloads
+ * NB : HEAD calls count towards the site's download rate limit (see {@link DownloadRateLimiter})
+ */
+public class ConnectionWarmer {
+
+    // Maximum number of hosts warmed up for one book
+    private static final int MAX_HOSTS = 4;
+
+    private static ConnectionWarmer instance;
+
+    private final Supplier<OkHttpClient> client;
+    private final LongSupplier clock;
+    // Blocks until the site's rate limit allows another request
+    private final Runnable rateLimiter;
+    // Duration a host stays warm after being warmed up (ms)
+    private final long warmDurationMs;
+    // Key = scheme, host and port; value = time it has been warmed up
+    private final Map<String, Long> warmedHosts = new ConcurrentHashMap<>();
+
+    private final AtomicInteger threadIndex = new AtomicInteger(0);
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "connection-warmer-" + threadIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+
+    public static synchronized ConnectionWarmer getInstance() {
+        if (null == instance)
+            instance = new ConnectionWarmer(
+                    () -> OkHttpClientSingleton.getInstance(4000, 15000, true),
+                    OkHttpClientSingleton.KEEP_ALIVE_MS / 2,
+                    System::currentTimeMillis,
+                    DownloadRateLimiter.INSTANCE::take);
+        return instance;
+    }
+
+    /**
+     * @param client         Client whose connection pool to warm up
+     * @param warmDurationMs Duration a host isn't warmed up again after being warmed up (ms)
+     * @param clock          Current time (ms)
+     * @param rateLimiter    Called before each call to a host; blocks until the rate limit allows it
+     */
+    ConnectionWarmer(@NonNull Supplier<OkHttpClient> client, long warmDurationMs, @NonNull LongSupplier clock, @NonNull Runnable rateLimiter) {
+        this.client = client;
+        this.warmDurationMs = warmDurationMs;
+        this.clock = clock;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Warm up connections to the hosts of the given URLs, in the background
+     *
+     * @param urls    URLs about to be downloaded
+     * @param headers Headers to use when calling the URLs (referer, user-agent...)
+     * @return One Future per host being warmed up
+     */
+    public List<Future<?>> warmUp(@NonNull Collection<String> urls, @Nullable List<Pair<String, String>> headers) {
+        // First URL of each host
+        Map<String, HttpUrl> hosts = new LinkedHashMap<>();
+        for (String url : urls) {
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            if (null == httpUrl) continue;
+            String key = httpUrl.scheme() + "://" + httpUrl.host() + ":" + httpUrl.port();
+            if (!hosts.containsKey(key)) hosts.put(key, httpUrl);
+            if (hosts.size() >= MAX_HOSTS) break;
+        }
+
+        List<Future<?>> result = new ArrayList<>();
+        long now = clock.getAsLong();
+        for (Map.Entry<String, HttpUrl> entry : hosts.entrySet()) {
+            Long warmedAt = warmedHosts.get(entry.getKey());
+            if (warmedAt != null && now - warmedAt < warmDurationMs) continue;
+            warmedHosts.put(entry.getKey(), now);
+            result.add(executor.submit(() -> warmUp(entry.getValue(), headers)));
+        }
+        return result;
+    }
+
+    private void warmUp(@NonNull HttpUrl url, @Nullable List<Pair<String, String>> headers) {
+        OkHttpClient okHttpClient = client.get();
+        try {
+            // Resolve first; the result stays in the client's DNS cache even if the call fails
+            okHttpClient.dns().lookup(url.host());
+
+            Request.Builder builder = new Request.Builder().url(url).head();
+            if (headers != null)
+                for (Pair<String, String> header : headers)
+                    if (header.second != null) builder.header(header.first, header.second);
+            rateLimiter.run();
+            try (Response response = okHttpClient.newCall(builder.build()).execute()) {
+                Timber.v("Warmed up %s (%d)", url.host(), response.code());
+            }
+        } catch (IOException e) {
+            Timber.d("Couldn't warm up %s : %s", url.host(), e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the hosts that have been warmed up (e.g. when connections have been reset)
+     */
+    public void clear() {
+        warmedHosts.clear();
+    }
+}
@@ -0,0 +1,455 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.Pair;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import me.devsaki.hentoid.core.HentoidApp;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.json.JsonContent;
+import me.devsaki.hentoid.util.Helper;
+import me.devsaki.hentoid.util.JsonHelper;
+import me.devsaki.hentoid.util.file.FileHelper;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * On-disk cache of the gallery pages parsed by the app, used to avoid downloading and parsing
+ * again gallery pages that haven't changed since they were last parsed
+ * <p>
+ * Each entry is keyed by the URL of the gallery and stores
+ * - The validators sent by the server (ETag and Last-Modified), used to send conditional requests
+ * - The hash of the page, used to detect unchanged pages when the server ignores validators
+ * - The Content parsed from the page
+ * <p>
+ * Entries expire after a duration that depends on the site, counted from the last time the page
+ * has been downloaded. The total size of the cache is bounded; least recently used entries are
+ * evicted first
+ */
+public class GalleryPageCache {
+
+    private static final String CACHE_FOLDER = "gallery_pages";
+    private static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024; // 10 MB
+    private static final long DEFAULT_TTL_MS = TimeUnit.DAYS.toMillis(7);
+
+    // Sites whose galleries regularly get new chapters or new versions
+    private static final Map<Site, Long> SITE_TTL_MS = new EnumMap<>(Site.class);
+
+    static {
+        long oneDay = TimeUnit.DAYS.toMillis(1);
+        for (Site s : new Site[]{Site.EHENTAI, Site.EXHENTAI, Site.MANHWA, Site.TOONILY, Site.ALLPORNCOMIC, Site.PIXIV, Site.MRM})
+            SITE_TTL_MS.put(s, oneDay);
+    }
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final JsonAdapter<Entry> ADAPTER = JsonHelper.getAdapter(Entry.class);
+
+    private static GalleryPageCache instance;
+
+
+    /**
+     * Call to the server to fetch a gallery page
+     */
+    public interface Fetcher {
+        /**
+         * Fetch the gallery page
+         *
+         * @param headers Headers to send with the request
+         * @return Response of the server
+         * @throws IOException If anything goes wrong during the call
+         */
+        Response fetch(@NonNull List<Pair<String, String>> headers) throws IOException;
+    }
+
+    // Null if the cache folder couldn't be created (cache disabled)
+    private final File folder;
+    private final long maxSize;
+    private final LongSupplier clock;
+
+    // Key = file name; value = file size; ordered from the least recently used to the most recently used
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean indexLoaded = false;
+    private long totalSize = 0;
+
+    private final Stats stats = new Stats();
+
+
+    public static synchronized GalleryPageCache getInstance() {
+        if (null == instance) {
+            File folder = FileHelper.getOrCreateCacheFolder(HentoidApp.getInstance(), CACHE_FOLDER);
+            if (null == folder) Timber.w("Unable to create gallery page cache folder");
+            instance = new GalleryPageCache(folder, DEFAULT_MAX_SIZE, System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    GalleryPageCache(@Nullable File folder, long maxSize, @NonNull LongSupplier clock) {
+        this.folder = folder;
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the duration after which entries of the given site expire
+     *
+     * @param site Site to get the duration for
+     * @return Duration after which entries of the given site expire (ms)
+     */
+    public static long getTtl(@NonNull Site site) {
+        Long result = SITE_TTL_MS.get(site);
+        return (null == result) ? DEFAULT_TTL_MS : result;
+    }
+
+    /**
+     * Fetch the gallery page at the given URL, using a conditional request if the page is cached
+     * <p>
+     * If the returned page is unchanged, the Content parsed from the cached page is available
+     * and the body doesn't need to be parsed again. If not, the parsed Content should be
+     * given back to the page with {@link Page#store(Content)} to populate the cache
+     *
+     * @param site    Site of the gallery
+     * @param url     URL of the gallery page
+     * @param headers Headers to send with the request; validators are added when the page is cached
+     * @param fetcher Call to the server
+     * @return Fetched page
+     * @throws IOException If anything goes wrong during the call
+     */
+    public Page fetch(@NonNull Site site, @NonNull String url, @NonNull List<Pair<String, String>> headers, @NonNull Fetcher fetcher) throws IOException {
+        Entry entry = get(site, url);
+        if (entry != null) {
+            if (entry.etag != null && !entry.etag.isEmpty()) headers.add(new Pair<>(HEADER_IF_NONE_MATCH, entry.etag));
+            if (entry.lastModified != null && !entry.lastModified.isEmpty())
+                headers.add(new Pair<>(HEADER_IF_MODIFIED_SINCE, entry.lastModified));
+        }
+
+        Response response = fetcher.fetch(headers);
+        synchronized (stats) {
+            stats.nbRequests++;
+        }
+
+        if (entry != null && 304 == response.code()) {
+            response.close();
+            synchronized (stats) {
+                stats.nbNotModified++;
+                stats.nbBytesSaved += entry.size;
+            }
+            // The server has just confirmed the page : reset its expiry
+            entry.timestamp = clock.getAsLong();
+            write(keyOf(url), entry);
+            return new Page(this, site, url, response, null, entry.toContent());
+        }
+
+        byte[] data = null;
+        ResponseBody body = response.body();
+        if (response.isSuccessful() && body != null) data = body.bytes();
+
+        if (entry != null && data != null && entry.hash == Helper.hash64(data)) {
+            // Server ignores validators, but the page hasn't changed
+            synchronized (stats) {
+                stats.nbUnchanged++;
+            }
+            // The page has just been downloaded again : reset its expiry
+            entry.timestamp = clock.getAsLong();
+            write(keyOf(url), entry);
+            return new Page(this, site, url, response, data, entry.toContent());
+        }
+
+        return new Page(this, site, url, response, data, null);
+    }
+
+    /**
+     * Get the cached entry of the given gallery page, if it exists and hasn't expired
+     */
+    @Nullable
+    private synchronized Entry get(@NonNull Site site, @NonNull String url) {
+        if (null == folder) return null;
+        loadIndex();
+        String key = keyOf(url);
+        if (null == index.get(key)) return null; // Also marks the entry as recently used
+
+        File file = new File(folder, key);
+        Entry result = null;
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            result = ADAPTER.fromJson(source);
+        } catch (IOException | JsonDataException e) {
+            Timber.w(e);
+        }
+        // Hash collision, expired or unreadable entry
+        if (null == result || !canonicalize(url).equals(result.url) || null == result.content || clock.getAsLong() - result.timestamp > getTtl(site)) {
+            remove(key);
+            return null;
+        }
+        if (!file.setLastModified(clock.getAsLong())) Timber.v("Unable to touch %s", key);
+        return result;
+    }
+
+    /**
+     * Store the given Content, parsed from the given page
+     */
+    private synchronized void put(@NonNull String url, @NonNull Response response, @NonNull byte[] data, @NonNull Content content) {
+        if (null == folder) return;
+        String etag = response.header(HEADER_ETAG);
+        String lastModified = response.header(HEADER_LAST_MODIFIED);
+
+        Entry entry = new Entry();
+        entry.url = canonicalize(url);
+        entry.etag = (null == etag) ? "" : etag;
+        entry.lastModified = (null == lastModified) ? "" : lastModified;
+        entry.hash = Helper.hash64(data);
+        entry.size = data.length;
+        entry.timestamp = clock.getAsLong();
+        entry.content = JsonContent.fromEntity(content, true);
+        entry.uniqueSiteId = content.getUniqueSiteId();
+        write(keyOf(url), entry);
+    }
+
+    private synchronized void write(@NonNull String key, @NonNull Entry entry) {
+        if (null == folder) return;
+        loadIndex();
+        File file = new File(folder, key);
+        try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+            ADAPTER.toJson(sink, entry);
+        } catch (IOException e) {
+            Timber.w(e);
+            remove(key);
+            return;
+        }
+        Long previousSize = index.put(key, file.length());
+        if (previousSize != null) totalSize -= previousSize;
+        totalSize += file.length();
+
+        // Evict least recently used entries
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            totalSize -= eldest.getValue();
+            it.remove();
+            File eldestFile = new File(folder, eldest.getKey());
+            if (!eldestFile.delete()) Timber.w("Unable to delete %s", eldestFile.getName());
+        }
+    }
+
+    private synchronized void remove(@NonNull String key) {
+        if (null == folder) return;
+        Long size = index.remove(key);
+        if (size != null) totalSize -= size;
+        File file = new File(folder, key);
+        if (file.exists() && !file.delete()) Timber.w("Unable to delete %s", key);
+    }
+
+    /**
+     * Build the index of the cached entries from the cache folder, ordered by last use
+     */
+    private void loadIndex() {
+        if (indexLoaded || null == folder) return;
+        indexLoaded = true;
+        File[] files = folder.listFiles();
+        if (null == files) return;
+        Arrays.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        for (File f : files) {
+            index.put(f.getName(), f.length());
+            totalSize += f.length();
+        }
+    }
+
+    /**
+     * Remove all entries from the cache
+     */
+    public synchronized void clear() {
+        if (null == folder) return;
+        loadIndex();
+        for (String key : index.keySet()) {
+            File file = new File(folder, key);
+            if (!file.delete()) Timber.w("Unable to delete %s", key);
+        }
+        index.clear();
+        totalSize = 0;
+    }
+
+    /**
+     * Get the total size of the cached entries
+     *
+     * @return Total size of the cached entries (bytes)
+     */
+    public synchronized long getSize() {
+        loadIndex();
+        return totalSize;
+    }
+
+    /**
+     * Get the usage statistics of the cache since the app has started
+     *
+     * @return Copy of the current usage statistics
+     */
+    public Stats getStats() {
+        synchronized (stats) {
+            Stats result = new Stats();
+            result.nbRequests = stats.nbRequests;
+            result.nbNotModified = stats.nbNotModified;
+            result.nbUnchanged = stats.nbUnchanged;
+            result.nbBytesSaved = stats.nbBytesSaved;
+            return result;
+        }
+    }
+
+    private static String keyOf(@NonNull String url) {
+        return String.format(Locale.ENGLISH, "%016x.json", Helper.hash64(canonicalize(url).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Get the canonical form of the given URL, so that all spellings of the same page share one entry
+     * (case of the scheme and host, default port, percent-encoding, fragment)
+     */
+    static String canonicalize(@NonNull String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url.trim());
+        if (null == httpUrl) return url.trim();
+        return httpUrl.newBuilder().fragment(null).build().toString();
+    }
+
+
+    /**
+     * Gallery page fetched through the cache
+     */
+    public static class Page {
+        private final GalleryPageCache cache;
+        private final Site site;
+        private final String url;
+        private final Response response;
+        private final byte[] data;
+        private final Content cachedContent;
+
+        Page(@NonNull GalleryPageCache cache, @NonNull Site site, @NonNull String url, @NonNull Response response, @Nullable byte[] data, @Nullable Content cachedContent) {
+            this.cache = cache;
+            this.site = site;
+            this.url = url;
+            this.response = response;
+            this.data = data;
+            this.cachedContent = cachedContent;
+        }
+
+        /**
+         * Get the response of the server; its body has already been consumed
+         */
+        public Response getResponse() {
+            return response;
+        }
+
+        /**
+         * Indicate if the page hasn't changed since it has been cached
+         */
+        public boolean isUnchanged() {
+            return cachedContent != null;
+        }
+
+        /**
+         * Get the Content parsed from the cached page; only available if the page is unchanged
+         */
+        @Nullable
+        public Content getCachedContent() {
+            return cachedContent;
+        }
+
+        /**
+         * Get the body of the page; null if the page hasn't been downloaded (unchanged page or error)
+         */
+        @Nullable
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Store the given Content, parsed from the body of the page
+         *
+         * @param content Content parsed from the body of the page
+         */
+        public void store(@NonNull Content content) {
+            if (data != null && response.isSuccessful()) cache.put(url, response, data, content);
+            else Timber.d("Page %s (%s) can't be cached", url, site.getDescription());
+        }
+    }
+
+    /**
+     * Usage statistics of the cache
+     */
+    public static class Stats {
+        // Number of gallery pages fetched through the cache
+        long nbRequests;
+        // Number of pages the server has answered with a 304
+        long nbNotModified;
+        // Number of pages that have been downloaded again but were identical to the cached version
+        long nbUnchanged;
+        // Number of bytes that didn't have to be downloaded
+        long nbBytesSaved;
+
+        public long getNbRequests() {
+            return nbRequests;
+        }
+
+        public long getNbNotModified() {
+            return nbNotModified;
+        }
+
+        public long getNbUnchanged() {
+            return nbUnchanged;
+        }
+
+        public long getNbBytesSaved() {
+            return nbBytesSaved;
+        }
+
+        /**
+         * Get the ratio of pages that didn't have to be parsed again
+         *
+         * @return Hit rate, between 0 and 1
+         */
+        public double getHitRate() {
+            return (0 == nbRequests) ? 0 : (nbNotModified + nbUnchanged) * 1.0 / nbRequests;
+        }
+    }
+
+    static class Entry {
+        String url;
+        String etag;
+        String lastModified;
+        long hash;
+        long size;
+        // Time of the last download of the page (ms)
+        long timestamp;
+        JsonContent content;
+        // Not part of JsonContent, and not always computable from the URL
+        String uniqueSiteId;
+
+        Content toContent() {
+            Content result = content.toEntity(null);
+            if (uniqueSiteId != null && !uniqueSiteId.isEmpty()) result.setUniqueSiteId(uniqueSiteId);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/**
+ * Remembers the protocol negotiated with each host downloads are made from
+ * <p>
+ * Hosts speaking HTTP/2 multiplex concurrent requests as streams over a single connection,
+ * which allows running more parallel downloads than HTTP/1.1 hosts without opening more connections
+ */
+public class HostProtocols {
+
+    // Key = host; value = last protocol negotiated with that host
+    private static final Map<String, Protocol> protocols = new ConcurrentHashMap<>();
+
+
+    private HostProtocols() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Record the protocol of the given response
+     */
+    public static void record(@NonNull Response response) {
+        record(response.request().url().host(), response.protocol());
+    }
+
+    public static void record(@NonNull String host, @NonNull Protocol protocol) {
+        protocols.put(host, protocol);
+    }
+
+    /**
+     * @return Last protocol negotiated with the given host; null if no request has been made to it yet
+     */
+    @Nullable
+    public static Protocol getProtocol(@NonNull String host) {
+        return protocols.get(host);
+    }
+
+    /**
+     * @return True if the given host is known to multiplex requests over a single connection
+     */
+    public static boolean isMultiplexed(@Nullable String host) {
+        if (null == host) return false;
+        Protocol protocol = protocols.get(host);
+        return Protocol.HTTP_2 == protocol || Protocol.H2_PRIOR_KNOWLEDGE == protocol || Protocol.QUIC == protocol;
+    }
+
+    public static void clear() {
+        protocols.clear();
+    }
+}
@@ -0,0 +1,88 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+/**
+ * Limits to apply when reading and parsing an online HTML document
+ * <p>
+ * - Max body size : bytes beyond that size are neither downloaded nor parsed
+ * - Stop selector : reading stops as soon as the given number of complete elements matching the given selector have been read;
+ * the resulting document is then truncated after these elements
+ */
+public class HtmlParseLimits {
+
+    private long maxBodySize = -1;
+    private String stopSelector = null;
+    private int stopCount = 1;
+
+
+    /**
+     * Set the maximum number of bytes to read from the response body
+     *
+     * @param maxBodySize Maximum number of bytes to read; -1 for no limit
+     * @return Current instance
+     */
+    public HtmlParseLimits setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
+    /**
+     * Stop reading the response body when enough elements matching the given selector have been read
+     *
+     * @param selector CSS selector of the elements to look for
+     * @param count    Number of complete elements to read before stopping
+     * @return Current instance
+     */
+    public HtmlParseLimits setStopSelector(@NonNull String selector, int count) {
+        this.stopSelector = selector;
+        this.stopCount = Math.max(1, count);
+        return this;
+    }
+
+    long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    boolean hasStopSelector() {
+        return stopSelector != null;
+    }
+
+    /**
+     * Indicate if the given (possibly truncated) document contains enough complete elements matching the stop selector
+     *
+     * @param doc Document to examine
+     * @return True if reading can stop; false if not
+     */
+    boolean isSatisfiedBy(@NonNull Document doc) {
+        if (null == stopSelector) return false;
+        Elements elements = doc.select(stopSelector);
+        if (elements.size() < stopCount) return false;
+        return isComplete(elements.get(stopCount - 1));
+    }
+
+    /**
+     * Indicate if the given element of a truncated document has been entirely read
+     * i.e. if the parser has met anything after its end tag
+     */
+    private static boolean isComplete(@NonNull Element element) {
+        for (Element e = element; e != null; e = e.parent()) {
+            switch (e.normalName()) {
+                case "html":
+                case "body":
+                    return false;
+                case "head":
+                    // The body is always created by the parser; it only has elements once the head has been read
+                    Element body = e.nextElementSibling();
+                    return body != null && !body.children().isEmpty();
+                default:
+                    if (e.nextSibling() != null) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -10,11 +10,13 @@ import android.webkit.WebSettings;
 import androidx.annotation.NonNull;
 import androidx.core.util.Pair;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -29,11 +31,14 @@ import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.StringHelper;
 import me.devsaki.hentoid.util.file.FileHelper;
+import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
 import timber.log.Timber;
 
 /**
@@ -43,6 +48,9 @@ public class HttpHelper {
 
     static final int DEFAULT_REQUEST_TIMEOUT = 30000; // 30 seconds
 
+    // Size of the first chunk to parse when reading HTML documents with a stop selector
+    private static final long PARTIAL_PARSE_INITIAL_SIZE = 64 * 1024L;
+
     // Keywords of the HTTP protocol
     public static final String HEADER_ACCEPT_KEY = "accept";
     public static final String HEADER_COOKIE_KEY = "cookie";
@@ -98,8 +106,25 @@ public class HttpHelper {
      */
     @Nullable
     public static Document getOnlineDocument(String url, List<Pair<String, String>> headers, boolean useHentoidAgent, boolean useWebviewAgent) throws IOException {
+        return getOnlineDocument(url, headers, useHentoidAgent, useWebviewAgent, null);
+    }
+
+    /**
+     * Read an HTML resource from the given URL, using the given headers and agent and retrieve it as a Document,
+     * reading no more than what the given limits allow
+     *
+     * @param url             URL to read the resource from
+     * @param headers         Headers to use when building the request
+     * @param useHentoidAgent True if the Hentoid User-Agent has to be used; false if a neutral User-Agent has to be used
+     * @param limits          Limits to apply when reading the resource; null for no limit
+     * @return HTML resource read from the given URL represented as a Document
+     * @throws IOException in case something bad happens when trying to access the online resource
+     */
+    @Nullable
+    public static Document getOnlineDocument(String url, List<Pair<String, String>> headers, boolean useHentoidAgent, boolean useWebviewAgent, @Nullable HtmlParseLimits limits) throws IOException {
+        // NB : Closing the body before it has been entirely read cancels the rest of the download
         try (ResponseBody resource = getOnlineResource(url, headers, true, useHentoidAgent, useWebviewAgent).body()) {
-            if (resource != null) return Jsoup.parse(resource.string());
+            if (resource != null) return parseDocument(resource, "", limits);
         }
         return null;
     }
@@ -112,11 +137,56 @@ public class HttpHelper {
             @NonNull final String body,
             @NonNull final String mimeType) throws IOException {
         try (ResponseBody resource = postOnlineResource(url, headers, true, useHentoidAgent, useWebviewAgent, body, mimeType).body()) {
-            if (resource != null) return Jsoup.parse(resource.string());
+            if (resource != null) return parseDocument(resource, "", null);
         }
         return null;
     }
 
+    /**
+     * Parse the given response body as an HTML document, directly from its byte stream
+     * <p>
+     * The charset declared by the Content-Type header is used if any; if not, the charset is
+     * detected from the byte order mark or the meta tags of the document, UTF-8 being the default
+     *
+     * @param body    Response body to parse; isn't closed by this method
+     * @param baseUri Base URI of the document
+     * @param limits  Limits to apply when reading the body; null for no limit
+     * @return Parsed document
+     * @throws IOException in case something bad happens when reading the response body
+     */
+    public static Document parseDocument(@NonNull ResponseBody body, @NonNull String baseUri, @Nullable HtmlParseLimits limits) throws IOException {
+        MediaType contentType = body.contentType();
+        Charset headerCharset = (contentType != null) ? contentType.charset() : null;
+        String charsetName = (headerCharset != null) ? headerCharset.name() : null;
+        long maxBodySize = (limits != null) ? limits.getMaxBodySize() : -1;
+
+        if (null == limits || !limits.hasStopSelector()) {
+            InputStream is = body.byteStream();
+            if (maxBodySize > -1) is = new BoundedInputStream(is, maxBodySize);
+            return Jsoup.parse(is, charsetName, baseUri);
+        }
+
+        // Read the body by chunks of increasing size, parse what has been read so far after each chunk
+        // and stop as soon as enough elements have been found
+        // NB : As chunk size doubles every time, the cost of all intermediate parsings is at most that of the last one
+        BufferedSource source = body.source();
+        Buffer buffer = new Buffer();
+        long targetSize = PARTIAL_PARSE_INITIAL_SIZE;
+        while (true) {
+            if (maxBodySize > -1) targetSize = Math.min(targetSize, maxBodySize);
+            boolean exhausted = false;
+            while (buffer.size() < targetSize) {
+                if (-1 == source.read(buffer, targetSize - buffer.size())) {
+                    exhausted = true;
+                    break;
+                }
+            }
+            Document doc = Jsoup.parse(buffer.peek().inputStream(), charsetName, baseUri);
+            if (exhausted || buffer.size() == maxBodySize || limits.isSatisfiedBy(doc)) return doc;
+            targetSize *= 2;
+        }
+    }
+
     /**
      * Read a resource from the given URL with HTTP GET, using the given headers and agent
      *
@@ -154,6 +224,23 @@ public class HttpHelper {
         return OkHttpClientSingleton.getInstance(4000, 15000, followRedirects).newCall(request).execute();
     }
 
+    /**
+     * Prepare the call reading a resource from the given URL with HTTP GET, using the downloader's timeouts
+     * NB : Enqueue the call to wait for the response without blocking the calling thread
+     *
+     * @param url             URL to read the resource from
+     * @param headers         Headers to use when building the request
+     * @param useMobileAgent  True to use the mobile User-Agent; false to use the desktop User-Agent
+     * @param useHentoidAgent True to use the Hentoid User-Agent; false to use a neutral User-Agent
+     * @param useWebviewAgent True to reveal the use of a webview through the User-Agent; false to use a neutral User-Agent
+     * @return Call to execute or enqueue
+     */
+    public static Call newOnlineResourceDownloaderCall(@NonNull String url, @Nullable List<Pair<String, String>> headers, boolean useMobileAgent, boolean useHentoidAgent, boolean useWebviewAgent) {
+        Request.Builder requestBuilder = buildRequest(url, headers, useMobileAgent, useHentoidAgent, useWebviewAgent);
+        Request request = requestBuilder.get().build();
+        return OkHttpClientSingleton.getInstance(4000, 15000, true).newCall(request);
+    }
+
     /**
      * Read a resource from the given URL with HTTP POST, using the given headers and agent
      *
@@ -260,8 +347,9 @@ public class HttpHelper {
             for (Map.Entry<String, String> entry : webkitRequestHeaders.entrySet())
                 result.add(new Pair<>(entry.getKey(), entry.getValue()));
 
+        // Requests made on behalf of the WebView use its own cookies, which may have been set by scripts
         if (url != null)
-            addCurrentCookiesToHeader(url, result);
+            setCookieHeader(getWebViewCookies(url), result);
 
         return result;
     }
@@ -275,7 +363,10 @@ public class HttpHelper {
      * @param headers Structure to populate or update
      */
     public static void addCurrentCookiesToHeader(@NonNull final String url, @NonNull List<Pair<String, String>> headers) {
-        String cookieStr = getCookies(url);
+        setCookieHeader(getCookies(url), headers);
+    }
+
+    private static void setCookieHeader(@NonNull final String cookieStr, @NonNull List<Pair<String, String>> headers) {
         if (!cookieStr.isEmpty()) {
             for (int i = 0; i < headers.size(); i++) {
                 if (headers.get(i).first.equals(HEADER_COOKIE_KEY)) {
@@ -454,6 +545,7 @@ public class HttpHelper {
         Timber.v("Setting cookie for %s : %s", url, cookieStrToSet.toString());
 
         mgr.flush();
+        PersistentCookieJar.getInstance().importFromWebView(url);
     }
 
     /**
@@ -501,7 +593,18 @@ public class HttpHelper {
      * @return Raw cookies string for the given URL
      */
     public static String getCookies(@NonNull final String url) {
-        String result = CookieManager.getInstance().getCookie(url);
+        return PersistentCookieJar.getInstance().getCookieHeader(url);
+    }
+
+    /**
+     * Get current cookie headers for the given URL, as known by the WebView
+     * NB : Cookies of the app are refreshed on the way
+     *
+     * @param url URL to get cookies from
+     * @return Raw cookies string for the given URL
+     */
+    public static String getWebViewCookies(@NonNull final String url) {
+        String result = PersistentCookieJar.getInstance().importFromWebView(url);
         if (result != null) return HttpHelper.stripParams(result);
         else return "";
     }
@@ -549,15 +652,13 @@ public class HttpHelper {
      * @return Raw cookies string for the given URL
      */
     public static String peekCookies(@NonNull String url, @Nullable List<Pair<String, String>> headers, boolean useMobileAgent, boolean useHentoidAgent, boolean useWebviewAgent) {
-        try {
-            Response response = getOnlineResourceFast(url, headers, useMobileAgent, useHentoidAgent, useWebviewAgent);
-            List<String> cookielist = response.headers("Set-Cookie");
-            if (cookielist.isEmpty()) cookielist = response.headers("Set-Cookie");
-            return TextUtils.join("; ", cookielist);
+        // Cookies set by the response are stored by PersistentCookieJar
+        try (Response response = getOnlineResourceFast(url, headers, useMobileAgent, useHentoidAgent, useWebviewAgent)) {
+            Timber.v("Peeked cookies from %s (%d)", url, response.code());
         } catch (IOException e) {
             Timber.e(e);
         }
-        return "";
+        return getCookies(url);
     }
 
     /**
@@ -11,6 +11,9 @@ import me.devsaki.hentoid.core.HentoidApp;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.Preferences;
 import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -19,13 +22,29 @@ import timber.log.Timber;
 
 /**
  * Manages a single instance of OkHttpClient per timeout delay
+ * <p>
+ * All instances share the same connection pool, dispatcher and DNS resolver, so that connections
+ * opened by one of them can be reused by the others
  */
 @SuppressWarnings("squid:S3077")
 // https://stackoverflow.com/questions/11639746/what-is-the-point-of-making-the-singleton-instance-volatile-while-using-double-l
 public class OkHttpClientSingleton {
 
+    // Enough idle connections for parallel downloads from a couple of hosts
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    public static final long KEEP_ALIVE_MS = TimeUnit.MINUTES.toMillis(5);
+    // OkHttp's default
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+    private static final long DNS_CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
     private static volatile SparseArray<OkHttpClient> instance = new SparseArray<>();
 
+    private static final ConnectionTimings timings = new ConnectionTimings();
+    private static int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    // DNS over HTTPS resolver shared by all instances
+    private static CachingDns doHDns = null;
+    private static int doHDnsSource = DnsOverHttpsProviders.Source.NONE;
+
 
     private OkHttpClientSingleton() {
     }
@@ -61,14 +80,44 @@ public class OkHttpClientSingleton {
                 }
             }
             instance.clear();
+            doHDns = null;
+        }
+        ConnectionWarmer.getInstance().clear();
+    }
+
+    /**
+     * Timings of the connections made by all instances
+     */
+    public static ConnectionTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Set the maximum number of asynchronous requests to run in parallel for each host
+     *
+     * @param max Maximum number of asynchronous requests to run in parallel for each host; 0 or less for the default value
+     */
+    public static void setMaxRequestsPerHost(int max) {
+        synchronized (OkHttpClientSingleton.class) {
+            maxRequestsPerHost = (max > 0) ? max : DEFAULT_MAX_REQUESTS_PER_HOST;
+            OkHttpClient primaryClient = instance.get(0);
+            if (primaryClient != null)
+                primaryClient.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
         }
     }
 
     private static OkHttpClient buildBootstrapClient() {
         long CACHE_SIZE = 5L * 1024 * 1024; // 5 MB
 
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
         return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .eventListenerFactory(timings)
                 .addInterceptor(OkHttpClientSingleton::rewriteUserAgentInterceptor)
+                .addNetworkInterceptor(PersistentCookieJar.getInstance())
                 .cache(new Cache(HentoidApp.getInstance().getCacheDir(), CACHE_SIZE))
                 .build();
     }
@@ -92,16 +141,28 @@ public class OkHttpClientSingleton {
 
         // Add DNS over HTTPS if needed
         @DnsOverHttpsProviders.Source int doHSource = Preferences.getDnsOverHttps();
-        if (doHSource != DnsOverHttpsProviders.Source.NONE) {
+        if (doHSource != DnsOverHttpsProviders.Source.NONE)
+            result.dns(getDoHDns(primaryClient, doHSource));
+
+        return result.build();
+    }
+
+    /**
+     * Get the DNS over HTTPS resolver shared by all instances
+     * NB : Sharing the same resolver is necessary for instances to share their connections,
+     * as the resolver is part of what identifies a connection
+     */
+    private static synchronized Dns getDoHDns(@NonNull OkHttpClient primaryClient, @DnsOverHttpsProviders.Source int doHSource) {
+        if (null == doHDns || doHDnsSource != doHSource) {
             DnsOverHttps dns = new DnsOverHttps.Builder()
                     .client(primaryClient)
                     .url(DnsOverHttpsProviders.getPrimaryUrl(doHSource))
                     .bootstrapDnsHosts(DnsOverHttpsProviders.getHosts(doHSource))
                     .build();
-            result.dns(dns);
+            doHDns = new CachingDns(dns, DNS_CACHE_TTL_MS);
+            doHDnsSource = doHSource;
         }
-
-        return result.build();
+        return doHDns;
     }
 
     @NonNull
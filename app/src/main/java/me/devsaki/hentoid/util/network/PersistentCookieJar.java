@@ -0,0 +1,442 @@
+package me.devsaki.hentoid.util.network;
+
+import android.webkit.CookieManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.Types;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import me.devsaki.hentoid.core.HentoidApp;
+import me.devsaki.hentoid.util.JsonHelper;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Cookie store shared by all HTTP requests of the app, kept in sync with the WebView's CookieManager
+ * <p>
+ * - Cookies are indexed by domain, so that looking up the cookies of an URL doesn't need to cross into the WebView
+ * - Domain, path, secure and expiry rules follow RFC 6265 (see {@link Cookie#matches(HttpUrl)})
+ * - Persistent cookies are saved to disk, session cookies are kept in memory
+ * - Cookies set by HTTP responses are written through to the WebView
+ * - Cookies set by the WebView are imported the first time a host is queried, and each time the
+ * browser navigates (see {@link #importFromWebView(String)})
+ * <p>
+ * NB : The jar is installed as a network interceptor rather than as the OkHttpClient's CookieJar,
+ * as OkHttp's CookieJar replaces any cookie header explicitly set by the caller
+ */
+public class PersistentCookieJar implements CookieJar, Interceptor {
+
+    private static final String FILE_NAME = "cookies.json";
+    private static final long SAVE_DELAY_MS = 2000;
+    private static final String HEADER_COOKIE = "Cookie";
+
+    private static final JsonAdapter<List<StoredCookie>> ADAPTER = JsonHelper.getAdapter(Types.newParameterizedType(List.class, StoredCookie.class));
+
+    private static PersistentCookieJar instance;
+
+    /**
+     * Access to the cookies of the WebView
+     */
+    interface WebViewCookies {
+        /**
+         * @return Cookies of the given URL, as the value of a "Cookie" HTTP header; null if none
+         */
+        @Nullable
+        String getCookie(@NonNull String url);
+
+        /**
+         * Set the given cookie for the given URL
+         *
+         * @param url    URL to set the cookie for
+         * @param cookie Cookie to set, as the value of a "Set-Cookie" HTTP header
+         */
+        void setCookie(@NonNull String url, @NonNull String cookie);
+
+        /**
+         * Make sure the cookies of the WebView are persisted
+         */
+        void flush();
+    }
+
+    private static class WebViewCookieManager implements WebViewCookies {
+        @Nullable
+        @Override
+        public String getCookie(@NonNull String url) {
+            return CookieManager.getInstance().getCookie(url);
+        }
+
+        @Override
+        public void setCookie(@NonNull String url, @NonNull String cookie) {
+            CookieManager.getInstance().setCookie(url, cookie);
+        }
+
+        @Override
+        public void flush() {
+            CookieManager.getInstance().flush();
+        }
+    }
+
+    // Cookies indexed by domain
+    private final Map<String, List<Cookie>> cookies = new HashMap<>();
+    // Hosts whose cookies have already been imported from the WebView
+    private final Set<String> importedHosts = new HashSet<>();
+
+    @Nullable
+    private final File file;
+    private final WebViewCookies webView;
+    private final LongSupplier clock;
+
+    private final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cookie-jar");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+
+
+    public static synchronized PersistentCookieJar getInstance() {
+        if (null == instance)
+            instance = new PersistentCookieJar(
+                    new File(HentoidApp.getInstance().getFilesDir(), FILE_NAME),
+                    new WebViewCookieManager(),
+                    System::currentTimeMillis);
+        return instance;
+    }
+
+    /**
+     * @param file    File to persist cookies into; null to keep cookies in memory only
+     * @param webView Cookies of the WebView to synchronize with
+     * @param clock   Current time (ms)
+     */
+    PersistentCookieJar(@Nullable File file, @NonNull WebViewCookies webView, @NonNull LongSupplier clock) {
+        this.file = file;
+        this.webView = webView;
+        this.clock = clock;
+        load();
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<Cookie> loadForRequest(@NonNull HttpUrl url) {
+        if (!importedHosts.contains(url.host())) importFromWebView(url);
+
+        long now = clock.getAsLong();
+        List<Cookie> result = new ArrayList<>();
+        // Walk up the domain hierarchy : www.site.com, site.com, com
+        String domain = url.host();
+        while (true) {
+            List<Cookie> list = cookies.get(domain);
+            if (list != null) {
+                Iterator<Cookie> it = list.iterator();
+                while (it.hasNext()) {
+                    Cookie c = it.next();
+                    if (c.expiresAt() <= now) {
+                        it.remove();
+                        if (c.persistent()) scheduleSave();
+                    } else if (c.matches(url)) result.add(c);
+                }
+                if (list.isEmpty()) cookies.remove(domain);
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0) break;
+            domain = domain.substring(dot + 1);
+        }
+        // Cookies with longer paths first (RFC 6265 §5.4)
+        if (result.size() > 1)
+            result.sort((a, b) -> Integer.compare(b.path().length(), a.path().length()));
+        return result;
+    }
+
+    @Override
+    public void saveFromResponse(@NonNull HttpUrl url, @NonNull List<Cookie> newCookies) {
+        if (newCookies.isEmpty()) return;
+        synchronized (this) {
+            boolean changed = false;
+            for (Cookie c : newCookies) changed |= put(c);
+            if (changed) scheduleSave();
+        }
+        // Write through to the WebView
+        String urlStr = url.toString();
+        for (Cookie c : newCookies) webView.setCookie(urlStr, c.toString());
+    }
+
+    /**
+     * Store the given cookie, replacing the one with the same name, domain and path
+     * A cookie that has already expired removes the stored one
+     *
+     * @return True if persistent cookies have changed
+     */
+    private boolean put(@NonNull Cookie cookie) {
+        List<Cookie> list = cookies.get(cookie.domain());
+        boolean persistent = cookie.persistent();
+        if (list != null) {
+            Iterator<Cookie> it = list.iterator();
+            while (it.hasNext()) {
+                Cookie c = it.next();
+                if (c.name().equals(cookie.name()) && c.path().equals(cookie.path()) && c.hostOnly() == cookie.hostOnly()) {
+                    it.remove();
+                    persistent |= c.persistent();
+                }
+            }
+        }
+        if (cookie.expiresAt() > clock.getAsLong()) {
+            if (null == list) {
+                list = new ArrayList<>();
+                cookies.put(cookie.domain(), list);
+            }
+            list.add(cookie);
+        } else if (list != null && list.isEmpty()) cookies.remove(cookie.domain());
+        return persistent;
+    }
+
+    /**
+     * Get the cookies of the given URL
+     *
+     * @param url URL to get the cookies for
+     * @return Cookies of the given URL, as the value of a "Cookie" HTTP header; empty string if none
+     */
+    public String getCookieHeader(@NonNull String url) {
+        HttpUrl httpUrl = toHttpUrl(url);
+        if (null == httpUrl) return "";
+        return toHeader(loadForRequest(httpUrl));
+    }
+
+    /**
+     * Synchronize the cookies of the given URL with those of the WebView, which is the reference
+     * To be called when the WebView may have changed them (e.g. after navigating)
+     *
+     * @param url URL whose cookies to synchronize
+     * @return Cookies of the given URL as known by the WebView, as the value of a "Cookie" HTTP header; null if none
+     */
+    @Nullable
+    public String importFromWebView(@NonNull String url) {
+        HttpUrl httpUrl = toHttpUrl(url);
+        if (null == httpUrl) return webView.getCookie(url);
+        synchronized (this) {
+            return importFromWebView(httpUrl);
+        }
+    }
+
+    @Nullable
+    private String importFromWebView(@NonNull HttpUrl url) {
+        importedHosts.add(url.host());
+        String webViewCookiesStr = webView.getCookie(url.toString());
+        Map<String, String> webViewCookies = (null == webViewCookiesStr) ? new HashMap<>() : HttpHelper.parseCookies(webViewCookiesStr);
+
+        long now = clock.getAsLong();
+        Set<String> known = new HashSet<>();
+        String domain = url.host();
+        while (true) {
+            List<Cookie> list = cookies.get(domain);
+            if (list != null) {
+                List<Cookie> updated = new ArrayList<>();
+                Iterator<Cookie> it = list.iterator();
+                while (it.hasNext()) {
+                    Cookie c = it.next();
+                    if (c.expiresAt() <= now || !c.matches(url)) continue;
+                    String value = webViewCookies.get(c.name());
+                    if (null == value) { // Removed by the WebView
+                        it.remove();
+                        if (c.persistent()) scheduleSave();
+                    } else if (!value.equals(c.value())) { // Updated by the WebView; keep the other attributes
+                        it.remove();
+                        Cookie newCookie = withValue(c, value);
+                        if (newCookie != null) updated.add(newCookie);
+                        if (c.persistent()) scheduleSave();
+                    }
+                    known.add(c.name());
+                }
+                list.addAll(updated);
+                if (list.isEmpty()) cookies.remove(domain);
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0) break;
+            domain = domain.substring(dot + 1);
+        }
+
+        // Cookies unknown to the jar : the WebView doesn't tell their attributes, hence they are
+        // stored as session cookies of the host they have been read from
+        for (Map.Entry<String, String> entry : webViewCookies.entrySet()) {
+            if (known.contains(entry.getKey())) continue;
+            try {
+                // Session cookies : nothing to save
+                put(new Cookie.Builder()
+                        .name(entry.getKey())
+                        .value(entry.getValue())
+                        .hostOnlyDomain(url.host())
+                        .build());
+            } catch (IllegalArgumentException e) {
+                Timber.d("Invalid cookie %s : %s", entry.getKey(), e.getMessage());
+            }
+        }
+        return webViewCookiesStr;
+    }
+
+    @Nullable
+    private static Cookie withValue(@NonNull Cookie c, @NonNull String value) {
+        try {
+            Cookie.Builder builder = new Cookie.Builder()
+                    .name(c.name())
+                    .value(value)
+                    .path(c.path());
+            if (c.hostOnly()) builder.hostOnlyDomain(c.domain());
+            else builder.domain(c.domain());
+            if (c.persistent()) builder.expiresAt(c.expiresAt());
+            if (c.secure()) builder.secure();
+            if (c.httpOnly()) builder.httpOnly();
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            Timber.d("Invalid cookie %s : %s", c.name(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remove all cookies from the jar
+     * NB : Cookies of the WebView are left untouched
+     */
+    public void clear() {
+        synchronized (this) {
+            cookies.clear();
+            importedHosts.clear();
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Add the cookies of the jar to the request, keeping those explicitly set by the caller, and
+     * store the cookies set by the response
+     */
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        List<Cookie> jarCookies = loadForRequest(request.url());
+        if (!jarCookies.isEmpty()) {
+            String callerCookies = request.header(HEADER_COOKIE);
+            String header;
+            if (null == callerCookies || callerCookies.isEmpty()) header = toHeader(jarCookies);
+            else {
+                Map<String, String> callerCookiesMap = HttpHelper.parseCookies(callerCookies);
+                List<Cookie> missing = new ArrayList<>();
+                for (Cookie c : jarCookies)
+                    if (!callerCookiesMap.containsKey(c.name())) missing.add(c);
+                header = missing.isEmpty() ? callerCookies : callerCookies + "; " + toHeader(missing);
+            }
+            request = request.newBuilder().header(HEADER_COOKIE, header).build();
+        }
+        Response response = chain.proceed(request);
+        saveFromResponse(request.url(), Cookie.parseAll(request.url(), response.headers()));
+        return response;
+    }
+
+    private static String toHeader(@NonNull List<Cookie> cookies) {
+        StringBuilder sb = new StringBuilder();
+        for (Cookie c : cookies) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(c.name()).append('=').append(c.value());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse the given URL, accepting the domain-only URLs accepted by the WebView (e.g. ".site.com")
+     */
+    @Nullable
+    private static HttpUrl toHttpUrl(@NonNull String url) {
+        String result = url;
+        if (result.startsWith(".")) result = result.substring(1);
+        if (!result.startsWith("http")) result = "https://" + result;
+        return HttpUrl.parse(result);
+    }
+
+    private void scheduleSave() {
+        if (null == file) return;
+        if (savePending.compareAndSet(false, true))
+            saveExecutor.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Save the persistent cookies to disk
+     */
+    void save() {
+        savePending.set(false);
+        if (null == file) return;
+        List<StoredCookie> toSave = new ArrayList<>();
+        long now = clock.getAsLong();
+        synchronized (this) {
+            for (List<Cookie> list : cookies.values())
+                for (Cookie c : list)
+                    if (c.persistent() && c.expiresAt() > now)
+                        toSave.add(new StoredCookie(c));
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+            ADAPTER.toJson(sink, toSave);
+        } catch (IOException e) {
+            Timber.w(e);
+            return;
+        }
+        if (!tmp.renameTo(file)) Timber.w("Couldn't save cookies to %s", file.getAbsolutePath());
+        webView.flush();
+    }
+
+    private void load() {
+        if (null == file || !file.exists()) return;
+        List<StoredCookie> stored = null;
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            stored = ADAPTER.fromJson(source);
+        } catch (IOException | JsonDataException e) {
+            Timber.w(e);
+        }
+        if (null == stored) return;
+        synchronized (this) {
+            for (StoredCookie s : stored) {
+                HttpUrl url = HttpUrl.parse(s.url);
+                Cookie c = (null == url) ? null : Cookie.parse(url, s.cookie);
+                if (c != null) put(c);
+            }
+        }
+    }
+
+    static class StoredCookie {
+        // URL the cookie can be parsed against
+        String url;
+        // Cookie, as the value of a "Set-Cookie" HTTP header
+        String cookie;
+
+        StoredCookie() {
+        }
+
+        StoredCookie(@NonNull Cookie c) {
+            url = "https://" + c.domain() + c.path();
+            cookie = c.toString();
+        }
+    }
+}
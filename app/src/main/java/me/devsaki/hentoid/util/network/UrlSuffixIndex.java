@@ -0,0 +1,120 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of URLs that tells if a given link ends with any of the indexed URLs
+ * <p>
+ * Lookups take a time proportional to the length of the tested link, whatever the number of
+ * indexed URLs : the link is read backwards once, and each of its suffixes is looked up
+ * using a rolling hash that is only confirmed by an actual string comparison when it matches
+ * <p>
+ * NB : Thread-safe; URLs can be added and removed while lookups are being performed
+ */
+public class UrlSuffixIndex {
+
+    private static final long HASH_FACTOR = 1_000_003L;
+
+    // Indexed URLs
+    private final Set<String> urls = new HashSet<>();
+    // Key = hash of an indexed URL; value = number of indexed URLs with that hash
+    private final Map<Long, Integer> hashCounts = new HashMap<>();
+    // Index = length; value = number of indexed URLs with that length
+    private int[] lengthCounts = new int[64];
+
+
+    /**
+     * Add the given URL to the index
+     *
+     * @param url URL to add; empty URLs are ignored
+     */
+    public synchronized void add(@NonNull String url) {
+        if (url.isEmpty() || !urls.add(url)) return;
+        int length = url.length();
+        if (length >= lengthCounts.length) {
+            int[] newCounts = new int[Math.max(length + 1, lengthCounts.length * 2)];
+            System.arraycopy(lengthCounts, 0, newCounts, 0, lengthCounts.length);
+            lengthCounts = newCounts;
+        }
+        lengthCounts[length]++;
+        long hash = hash(url);
+        Integer count = hashCounts.get(hash);
+        hashCounts.put(hash, (null == count) ? 1 : count + 1);
+    }
+
+    /**
+     * Add all the given URLs to the index
+     *
+     * @param urls URLs to add
+     */
+    public synchronized void addAll(@NonNull Collection<String> urls) {
+        for (String url : urls) add(url);
+    }
+
+    /**
+     * Remove the given URL from the index
+     *
+     * @param url URL to remove
+     */
+    public synchronized void remove(@NonNull String url) {
+        if (!urls.remove(url)) return;
+        lengthCounts[url.length()]--;
+        long hash = hash(url);
+        Integer count = hashCounts.get(hash);
+        if (null == count || count <= 1) hashCounts.remove(hash);
+        else hashCounts.put(hash, count - 1);
+    }
+
+    /**
+     * Remove all URLs from the index
+     */
+    public synchronized void clear() {
+        urls.clear();
+        hashCounts.clear();
+        lengthCounts = new int[64];
+    }
+
+    /**
+     * Get the number of indexed URLs
+     *
+     * @return Number of indexed URLs
+     */
+    public synchronized int size() {
+        return urls.size();
+    }
+
+    /**
+     * Indicate if the given link ends with any of the indexed URLs
+     * (same result as testing link.endsWith(url) against every indexed URL)
+     *
+     * @param link Link to test
+     * @return True if the given link ends with any of the indexed URLs
+     */
+    public synchronized boolean matches(@NonNull String link) {
+        if (urls.isEmpty()) return false;
+        long hash = 0;
+        int maxLength = Math.min(link.length(), lengthCounts.length - 1);
+        for (int length = 1; length <= maxLength; length++) {
+            hash = hash * HASH_FACTOR + link.charAt(link.length() - length);
+            if (lengthCounts[length] > 0 && hashCounts.containsKey(hash)
+                    && urls.contains(link.substring(link.length() - length)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hash the given string backwards, the same way {@link #matches(String)} hashes suffixes
+     */
+    private static long hash(@NonNull String s) {
+        long result = 0;
+        for (int i = s.length() - 1; i >= 0; i--) result = result * HASH_FACTOR + s.charAt(i);
+        return result;
+    }
+}
@@ -38,10 +38,7 @@ import java.util.List;
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.activities.bundles.GroupItemBundle;
 import me.devsaki.hentoid.core.HentoidApp;
-import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.Group;
-import me.devsaki.hentoid.database.domains.GroupItem;
-import me.devsaki.hentoid.database.domains.ImageFile;
 import me.devsaki.hentoid.ui.BlinkAnimation;
 import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.Helper;
@@ -198,20 +195,10 @@ public class GroupDisplayItem extends AbstractItem<GroupDisplayItem.GroupViewHol
                 DragDropUtil.bindDragHandle(this, item);
             }
 
-            if (ivCover != null) {
-                Content coverContent = null;
-                if (!item.group.coverContent.isNull())
-                    coverContent = item.group.coverContent.getTarget();
-                else if (!item.group.items.isEmpty()) {
-                    if (item.group.items.get(0).content.isResolved()) {
-                        Content c = item.group.items.get(0).content.getTarget();
-                        if (c != null) coverContent = c;
-                    }
-                }
-                if (coverContent != null) attachCover(coverContent.getCover());
-            }
-            List<GroupItem> items = item.group.items;
-            String numberStr = (null == items || items.isEmpty()) ? ivFavourite.getContext().getString(R.string.empty) : items.size() + "";
+            // NB : Cover and number of books come from the group's summary to avoid loading its books
+            if (ivCover != null) attachCover(item.group.getCoverUri());
+            int nbItems = item.group.getNbItems();
+            String numberStr = (0 == nbItems) ? ivFavourite.getContext().getString(R.string.empty) : nbItems + "";
             title.setText(String.format("%s (%s)", item.group.name, numberStr));
 
             if (item.group.isFavourite()) {
@@ -230,9 +217,9 @@ public class GroupDisplayItem extends AbstractItem<GroupDisplayItem.GroupViewHol
                 ivRating.setImageResource(ContentHelper.getRatingResourceId(item.group.getRating()));
         }
 
-        private void attachCover(@NonNull ImageFile cover) {
+        private void attachCover(@NonNull String groupCoverUri) {
             String thumbLocation = coverUri;
-            if (thumbLocation.isEmpty()) thumbLocation = cover.getUsableUri();
+            if (thumbLocation.isEmpty()) thumbLocation = groupCoverUri;
             if (thumbLocation.isEmpty()) {
                 ivCover.setVisibility(View.INVISIBLE);
                 return;
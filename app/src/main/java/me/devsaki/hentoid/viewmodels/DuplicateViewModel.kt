@@ -38,7 +38,7 @@ class DuplicateViewModel(
 ) : AndroidViewModel(application) {
 
     // LiveData for the UI
-    val allDuplicates = duplicatesDao.getEntriesLive()
+    val allDuplicates = duplicatesDao.getReferencesLive()
     val selectedDuplicates = MutableLiveData<List<DuplicateEntry>>()
     val firstUse = MutableLiveData<Boolean>()
 
@@ -86,23 +86,25 @@ class DuplicateViewModel(
     }
 
     fun setContent(content: Content) {
-        if (null == allDuplicates.value) return
-        val selectedDupes =
-            allDuplicates.value!!.filter { it.referenceId == content.id }.toMutableList()
-        // Add reference item on top
-        val refEntry = DuplicateEntry(
-            content.id,
-            content.size,
-            content.id,
-            content.size,
-            2f,
-            2f,
-            2f
-        ) // Artificially give it a huge score to bring it to the top
-        refEntry.referenceContent = content
-        refEntry.duplicateContent = content
-        selectedDupes.add(0, refEntry)
-        selectedDuplicates.postValue(selectedDupes)
+        viewModelScope.launch {
+            val selectedDupes = withContext(Dispatchers.IO) {
+                duplicatesDao.getEntries(content.id)
+            }.toMutableList()
+            // Add reference item on top
+            val refEntry = DuplicateEntry(
+                content.id,
+                content.size,
+                content.id,
+                content.size,
+                2f,
+                2f,
+                2f
+            ) // Artificially give it a huge score to bring it to the top
+            refEntry.referenceContent = content
+            refEntry.duplicateContent = content
+            selectedDupes.add(0, refEntry)
+            selectedDuplicates.postValue(selectedDupes)
+        }
     }
 
     fun setBookChoice(content: Content, choice: Boolean) {
@@ -50,6 +50,7 @@ import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.activities.bundles.SearchActivityBundle;
 import me.devsaki.hentoid.core.Consts;
 import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.ContentUpdate;
 import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Chapter;
 import me.devsaki.hentoid.database.domains.Content;
@@ -433,87 +434,11 @@ public class LibraryViewModel extends AndroidViewModel {
 
 
     public void toggleContentCompleted(@NonNull final List<Content> content, @NonNull final Runnable onSuccess) {
-        compositeDisposable.add(
-                Observable.fromIterable(content)
-                        .observeOn(Schedulers.io())
-                        .map(c -> {
-                            doToggleContentCompleted(c.getId());
-                            return c;
-                        })
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(
-                                v -> onSuccess.run(),
-                                Timber::e
-                        )
-        );
-    }
-
-    /**
-     * Toggle the "completed" state of the given content
-     *
-     * @param contentId ID of the content whose completed state to toggle
-     */
-    private void doToggleContentCompleted(long contentId) {
-        Helper.assertNonUiThread();
-
-        // Check if given content still exists in DB
-        Content theContent = dao.selectContent(contentId);
-
-        if (theContent != null) {
-            if (theContent.isBeingProcessed()) return;
-            theContent.setCompleted(!theContent.isCompleted());
-            ContentHelper.persistJson(getApplication(), theContent);
-            dao.insertContentCore(theContent);
-            return;
-        }
-
-        throw new InvalidParameterException("Invalid ContentId : " + contentId);
+        updateContents(content, new ContentUpdate().toggleCompleted(), onSuccess);
     }
 
     public void resetReadStats(@NonNull final List<Content> content, @NonNull final Runnable onSuccess) {
-        compositeDisposable.add(
-                Observable.fromIterable(content)
-                        .observeOn(Schedulers.io())
-                        .map(c -> {
-                            doResetReadStats(c.getId());
-                            return c;
-                        })
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(
-                                v -> onSuccess.run(),
-                                Timber::e
-                        )
-        );
-    }
-
-    /**
-     * Reset read stats of the given content
-     *
-     * @param contentId ID of the content whose read stats to reset
-     */
-    private void doResetReadStats(long contentId) {
-        Helper.assertNonUiThread();
-
-        // Check if given content still exists in DB
-        Content theContent = dao.selectContent(contentId);
-
-        if (theContent != null) {
-            if (theContent.isBeingProcessed()) return;
-            theContent.setReads(0);
-            theContent.setReadPagesCount(0);
-            theContent.setLastReadPageIndex(0);
-            theContent.setLastReadDate(0);
-            List<ImageFile> imgs = theContent.getImageFiles();
-            if (imgs != null) {
-                for (ImageFile img : imgs) img.setRead(false);
-                dao.insertImageFiles(imgs);
-            }
-            ContentHelper.persistJson(getApplication(), theContent);
-            dao.insertContentCore(theContent);
-            return;
-        }
-
-        throw new InvalidParameterException("Invalid ContentId : " + contentId);
+        updateContents(content, new ContentUpdate().resetReadStats(), onSuccess);
     }
 
     /**
@@ -524,81 +449,46 @@ public class LibraryViewModel extends AndroidViewModel {
     public void toggleContentFavourite(@NonNull final Content content, @NonNull final Runnable onSuccess) {
         if (content.isBeingProcessed()) return;
 
-        compositeDisposable.add(
-                Single.fromCallable(() -> doToggleContentFavourite(content.getId()))
-                        .subscribeOn(Schedulers.io())
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(
-                                v -> onSuccess.run(),
-                                Timber::e
-                        )
-        );
+        updateContents(Collections.singletonList(content), new ContentUpdate().toggleFavourite(), onSuccess);
     }
 
     /**
-     * Toggle the "favourite" state of the given content
+     * Set the rating to the given value for the given content IDs
      *
-     * @param contentId ID of the content whose favourite state to toggle
-     * @return Resulting content
+     * @param contentIds   Content IDs to set the rating for
+     * @param targetRating Rating to set
+     * @param onSuccess    Runnable to call if the operation succeeds
      */
-    private Content doToggleContentFavourite(long contentId) {
-        Helper.assertNonUiThread();
-
-        // Check if given content still exists in DB
-        Content theContent = dao.selectContent(contentId);
-
-        if (theContent != null) {
-            theContent.setFavourite(!theContent.isFavourite());
-            ContentHelper.persistJson(getApplication(), theContent);
-            dao.insertContent(theContent);
-            return theContent;
-        }
+    public void rateContents(@NonNull final List<Long> contentIds, int targetRating, @NonNull final Runnable onSuccess) {
+        doUpdateContents(Helper.getPrimitiveArrayFromList(contentIds), new ContentUpdate().setRating(targetRating), onSuccess);
+    }
 
-        throw new InvalidParameterException("Invalid ContentId : " + contentId);
+    private void updateContents(@NonNull final List<Content> content, @NonNull final ContentUpdate update, @NonNull final Runnable onSuccess) {
+        doUpdateContents(Helper.getPrimitiveArrayFromList(Stream.of(content).map(Content::getId).toList()), update, onSuccess);
     }
 
     /**
-     * Set the rating to the given value for the given content IDs
+     * Apply the given update to the given books in one go, then update their JSON files in the background
      *
-     * @param contentIds   Content IDs to set the rating for
-     * @param targetRating Rating to set
-     * @param onSuccess    Runnable to call if the operation succeeds
+     * @param contentIds IDs of the books to update
+     * @param update     Update to apply
+     * @param onSuccess  Runnable to call if the operation succeeds
      */
-    public void rateContents(@NonNull final List<Long> contentIds, int targetRating, @NonNull final Runnable onSuccess) {
+    private void doUpdateContents(final long[] contentIds, @NonNull final ContentUpdate update, @NonNull final Runnable onSuccess) {
         compositeDisposable.add(
-                Observable.fromIterable(contentIds)
-                        .observeOn(Schedulers.io())
-                        .map(id -> doRateContent(id, targetRating))
+                Completable.fromRunnable(() -> {
+                            long[] updatedIds = dao.updateContents(contentIds, update);
+                            ContentHelper.persistJsonLater(getApplication(), updatedIds);
+                        })
+                        .subscribeOn(Schedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(
-                                v -> onSuccess.run(),
-                                Timber::w
+                                onSuccess::run,
+                                Timber::e
                         )
         );
     }
 
-    /**
-     * Set the rating to the given value for the given content ID
-     *
-     * @param contentId    Content ID to set the rating for
-     * @param targetRating Rating to set
-     */
-    private Content doRateContent(long contentId, int targetRating) {
-        Helper.assertNonUiThread();
-
-        // Check if given content still exists in DB
-        Content theContent = dao.selectContent(contentId);
-
-        if (theContent != null) {
-            theContent.setRating(targetRating);
-            ContentHelper.persistJson(getApplication(), theContent);
-            dao.insertContent(theContent);
-            return theContent;
-        }
-
-        throw new InvalidParameterException("Invalid ContentId : " + contentId);
-    }
-
     public void redownloadContent(
             @NonNull final List<Content> contentList,
             boolean reparseContent,
@@ -869,8 +759,7 @@ public class LibraryViewModel extends AndroidViewModel {
     }
 
     public void setGroupCoverContent(long groupId, @NonNull Content coverContent) {
-        Group localGroup = dao.selectGroup(groupId);
-        if (localGroup != null) localGroup.coverContent.setAndPutTarget(coverContent);
+        dao.updateGroupCover(groupId, coverContent.getId());
     }
 
     public void saveContentPositions(@NonNull final List<Content> orderedContent,
@@ -119,30 +119,10 @@ class QueueViewModel(
         if (oldPosition == newPosition) return
         Timber.d(">> move %s to %s", oldPosition, newPosition)
 
-        // Get unpaged data to be sure we have everything in one collection
-        val localQueue = dao.selectQueue()
-        if (oldPosition < 0 || oldPosition >= localQueue.size) return
-
-        // Move the item
-        val fromValue = localQueue[oldPosition]
-        val delta = if (oldPosition < newPosition) 1 else -1
-        var i = oldPosition
-        while (i != newPosition) {
-            localQueue[i] = localQueue[i + delta]
-            i += delta
-        }
-        localQueue[newPosition] = fromValue
-
-        // Renumber everything
-        var index = 1
-        for (qr in localQueue) qr.rank = index++
-
-        // Update queue in DB
-        dao.updateQueue(localQueue)
-
-        // If the 1st item is involved, signal it being skipped
-        if (0 == newPosition || 0 == oldPosition) EventBus.getDefault()
+        // Only the moved item is saved; signal skipping the 1st item if it has changed
+        if (dao.moveQueue(oldPosition, newPosition)) EventBus.getDefault()
             .post(DownloadCommandEvent(DownloadCommandEvent.Type.EV_SKIP))
+        rebalanceQueue()
     }
 
     /**
@@ -151,10 +131,11 @@ class QueueViewModel(
      * @param relativePositions Adapter positions of the items to move
      */
     fun moveTop(relativePositions: List<Int>) {
-        val absolutePositions = relativeToAbsolutePositions(relativePositions)
-        for ((processed, oldPos) in absolutePositions.withIndex()) {
-            moveAbsolute(oldPos, processed)
-        }
+        val recordIds = relativeToRecordIds(relativePositions)
+        if (recordIds.isEmpty()) return
+        if (dao.moveQueueTop(recordIds)) EventBus.getDefault()
+            .post(DownloadCommandEvent(DownloadCommandEvent.Type.EV_SKIP))
+        rebalanceQueue()
     }
 
     /**
@@ -163,26 +144,23 @@ class QueueViewModel(
      * @param relativePositions Adapter positions of the items to move
      */
     fun moveBottom(relativePositions: List<Int>) {
-        val absolutePositions = relativeToAbsolutePositions(relativePositions)
-        val dbQueue = dao.selectQueue() ?: return
-        val endPos = dbQueue.size - 1
-        for ((processed, oldPos) in absolutePositions.withIndex()) {
-            moveAbsolute(oldPos - processed, endPos)
-        }
+        val recordIds = relativeToRecordIds(relativePositions)
+        if (recordIds.isEmpty()) return
+        if (dao.moveQueueBottom(recordIds)) EventBus.getDefault()
+            .post(DownloadCommandEvent(DownloadCommandEvent.Type.EV_SKIP))
+        rebalanceQueue()
     }
 
-    private fun relativeToAbsolutePositions(relativePositions: List<Int>): List<Int> {
-        val result: MutableList<Int> = ArrayList()
-        val currentQueue = queue.value
-        val dbQueue = dao.selectQueue()
-        if (null == currentQueue || null == dbQueue) return relativePositions
-        for (position in relativePositions) {
-            for (i in dbQueue.indices) if (dbQueue[i].id == currentQueue[position].id) {
-                result.add(i)
-                break
-            }
-        }
-        return result
+    private fun relativeToRecordIds(relativePositions: List<Int>): List<Long> {
+        val currentQueue = queue.value ?: return emptyList()
+        return relativePositions.filter { it in currentQueue.indices }.map { currentQueue[it].id }
+    }
+
+    /**
+     * Spread the ranks of the queue again in the background if successive moves have brought them too close
+     */
+    private fun rebalanceQueue() {
+        viewModelScope.launch(Dispatchers.IO) { dao.rebalanceQueue() }
     }
 
     fun unpauseQueue() {
@@ -193,19 +171,9 @@ class QueueViewModel(
     }
 
     fun invertQueue() {
-        // Get unpaged data to be sure we have everything in one collection
-        val localQueue = dao.selectQueue()
-        if (localQueue.size < 2) return
-
-        // Renumber everything in reverse order
-        var index = 1
-        for (i in localQueue.indices.reversed()) {
-            localQueue[i].rank = index++
-        }
-
         // Update queue and signal skipping the 1st item
-        dao.updateQueue(localQueue)
-        EventBus.getDefault().post(DownloadCommandEvent(DownloadCommandEvent.Type.EV_SKIP))
+        if (dao.invertQueue()) EventBus.getDefault()
+            .post(DownloadCommandEvent(DownloadCommandEvent.Type.EV_SKIP))
     }
 
     /**
@@ -329,7 +297,7 @@ class QueueViewModel(
                             c.setErrorLog(errors)
                             dao.insertContent(c)
                             // Save the regular queue
-                            ContentHelper.updateQueueJson(getApplication(), dao)
+                            ContentHelper.updateQueueJson(getApplication(), dao, c.id)
                         }
                         errorCount.incrementAndGet()
                         onError.invoke(EmptyResultException("Redownload from scratch -> Content unreachable"))
@@ -376,7 +344,7 @@ class QueueViewModel(
                         dao.insertContent(theContent)
                     }
                 }
-                ContentHelper.updateQueueJson(getApplication(), dao)
+                ContentHelper.updateQueueJson(getApplication(), dao, *contentIds.toLongArray())
                 // Force display by updating queue
                 dao.updateQueue(dao.selectQueue())
             }
@@ -386,11 +354,11 @@ class QueueViewModel(
     fun toogleFreeze(recordId: List<Long>) {
         viewModelScope.launch {
             launch(Dispatchers.IO) {
-                val queue = dao.selectQueue()
-                queue.forEach {
-                    if (recordId.contains(it.id)) it.isFrozen = !it.isFrozen
-                }
-                dao.updateQueue(queue)
+                // Only save the toggled records
+                val ids = recordId.toHashSet()
+                val toggled = dao.selectQueue().filter { ids.contains(it.id) }
+                toggled.forEach { it.isFrozen = !it.isFrozen }
+                dao.updateQueue(toggled)
                 // Update queue JSON
                 ContentHelper.updateQueueJson(getApplication(), dao)
             }
@@ -653,8 +653,7 @@ class ReaderViewModel(
         dao.insertImageFiles(dbImages)
 
         // Persist new values in JSON
-        theContent.setImageFiles(dbImages)
-        ContentHelper.persistJson(getApplication<Application>().applicationContext, theContent)
+        ContentHelper.persistJsonLater(getApplication(), theContent.id)
     }
 
     /**
@@ -692,7 +691,7 @@ class ReaderViewModel(
         dao.insertContent(content)
 
         // Persist new values in JSON
-        ContentHelper.persistJson(getApplication<Application>().applicationContext, content)
+        ContentHelper.persistJsonLater(getApplication(), content.id)
         return content
     }
 
@@ -707,9 +706,7 @@ class ReaderViewModel(
                 withContext(Dispatchers.IO) {
                     targetContent.rating = rating
                     dao.insertContent(targetContent)
-                    ContentHelper.persistJson(
-                        getApplication<Application>().applicationContext, targetContent
-                    )
+                    ContentHelper.persistJsonLater(getApplication(), targetContent.id)
                 }
                 successCallback.invoke(rating)
             } catch (t: Throwable) {
@@ -904,21 +901,15 @@ class ReaderViewModel(
     fun updateContentPreferences(newPrefs: Map<String, String>) {
         viewModelScope.launch {
             try {
-                var theContent: Content?
                 withContext(Dispatchers.IO) {
-                    theContent = dao.selectContent(loadedContentId)
-                    theContent?.let {
+                    dao.selectContent(loadedContentId)?.let {
                         it.bookPreferences = newPrefs
                         dao.insertContent(it)
+                        // Persist in JSON
+                        ContentHelper.persistJsonLater(getApplication(), it.id)
                     }
                 }
                 reloadContent(true) // Must run on the main thread
-                withContext(Dispatchers.IO) {
-                    // Persist in JSON
-                    theContent?.let {
-                        ContentHelper.persistJson(getApplication(), it)
-                    }
-                }
             } catch (t: Throwable) {
                 Timber.e(t)
             }
@@ -13,6 +13,7 @@ import me.devsaki.hentoid.database.CollectionDAO
 import me.devsaki.hentoid.database.domains.RenamingRule
 import me.devsaki.hentoid.enums.AttributeType
 import me.devsaki.hentoid.util.Helper
+import me.devsaki.hentoid.workers.RenamingRuleWorker
 
 
 class RulesEditViewModel(
@@ -59,10 +60,11 @@ class RulesEditViewModel(
     fun createRule(type: AttributeType, source: String, target: String) {
         viewModelScope.launch {
             withContext(Dispatchers.IO) {
-                dao.insertRenamingRule(RenamingRule(type, source, target))
+                val id = dao.insertRenamingRule(RenamingRule(type, source, target))
                 Helper.updateRenamingRulesJson(
                     getApplication<Application>().applicationContext, dao
                 )
+                RenamingRuleWorker.applyRule(getApplication(), id)
             }
         }
     }
@@ -78,6 +80,7 @@ class RulesEditViewModel(
                     Helper.updateRenamingRulesJson(
                         getApplication<Application>().applicationContext, dao
                     )
+                    RenamingRuleWorker.applyRule(getApplication(), id)
                 }
             }
         }
@@ -21,12 +21,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.util.Preferences;
+import me.devsaki.hentoid.util.network.BackgroundWebViewPool;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import timber.log.Timber;
 
-public class HitomiBackgroundWebView extends WebView {
+public class HitomiBackgroundWebView extends WebView implements BackgroundWebViewPool.LoadableWebView {
 
     SingleLoadWebViewClient client;
 
@@ -53,7 +54,8 @@ public class HitomiBackgroundWebView extends WebView {
         setWebViewClient(client);
     }
 
-    public void loadUrl(@NonNull String url, Runnable onLoaded) {
+    @Override
+    public void loadUrl(@NonNull String url, @NonNull Runnable onLoaded) {
         client.startLoad(url, onLoaded);
         super.loadUrl(url);
     }
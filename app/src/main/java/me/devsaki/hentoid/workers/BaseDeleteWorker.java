@@ -3,6 +3,7 @@ package me.devsaki.hentoid.workers;
 import static me.devsaki.hentoid.util.GroupHelper.moveContentToCustomGroup;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.IdRes;
@@ -26,6 +27,7 @@ import me.devsaki.hentoid.events.ProcessEvent;
 import me.devsaki.hentoid.notification.delete.DeleteCompleteNotification;
 import me.devsaki.hentoid.notification.delete.DeleteProgressNotification;
 import me.devsaki.hentoid.notification.delete.DeleteStartNotification;
+import me.devsaki.hentoid.util.ContentBatchDeleter;
 import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.GroupHelper;
 import me.devsaki.hentoid.util.Helper;
@@ -41,6 +43,9 @@ import me.devsaki.hentoid.workers.data.DeleteData;
  */
 public abstract class BaseDeleteWorker extends BaseWorker {
 
+    // Minimum delay between two progress notifications (ms)
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
     private final long[] contentIds;
     private final long[] contentPurgeIds;
     private final boolean contentPurgeKeepCovers;
@@ -52,8 +57,10 @@ public abstract class BaseDeleteWorker extends BaseWorker {
 
     private int deleteProgress;
     private int nbError;
+    private long lastProgressNotification = 0;
 
     private final CollectionDAO dao;
+    private final ContentBatchDeleter deleter;
 
     protected BaseDeleteWorker(
             @NonNull Context context,
@@ -71,6 +78,7 @@ public abstract class BaseDeleteWorker extends BaseWorker {
         isDeleteGroupsOnly = inputData.isDeleteGroupsOnly();
 
         dao = new ObjectBoxDAO(context);
+        deleter = new ContentBatchDeleter(context, dao);
 
         // Queried here to avoid serialization hard-limit of androidx.work.Data.Builder
         // when passing a large long[] through DeleteData
@@ -97,7 +105,7 @@ public abstract class BaseDeleteWorker extends BaseWorker {
 
     @Override
     void onInterrupt() {
-        // Nothing to do here
+        deleter.stop();
     }
 
     @Override
@@ -124,44 +132,22 @@ public abstract class BaseDeleteWorker extends BaseWorker {
     }
 
     private void removeContentList(long[] ids) {
-        // Process the list 50 by 50 items
-        int nbPackets = (int) Math.ceil(ids.length / 50f);
-
-        for (int i = 0; i < nbPackets; i++) {
-            int minIndex = i * 50;
-            int maxIndex = Math.min((i + 1) * 50, ids.length);
-            // Flag the content as "being deleted" (triggers blink animation; lock operations)
-            for (int id = minIndex; id < maxIndex; id++) {
-                if (ids[id] > 0) dao.updateContentDeleteFlag(ids[id], true);
-                if (isStopped()) break;
-            }
-            // Delete it
-            for (int id = minIndex; id < maxIndex; id++) {
-                Content c = dao.selectContent(ids[id]);
-                if (c != null) deleteContent(c);
-                if (isStopped()) break;
+        deleter.delete(ids, new ContentBatchDeleter.Listener() {
+            private int nbProcessed = 0;
+
+            @Override
+            public void onProgress(int processed, int errors, @NonNull String title) {
+                deleteProgress += processed - nbProcessed;
+                nbProcessed = processed;
+                notifyProgress(title, false, true);
             }
-        }
-    }
 
-    /**
-     * Delete the given content
-     *
-     * @param content Content to be deleted
-     */
-    private void deleteContent(@NonNull final Content content) {
-        Helper.assertNonUiThread();
-        progressItem(content, false);
-        try {
-            ContentHelper.removeContent(getApplicationContext(), dao, content);
-            trace(Log.INFO, "Removed item: %s from database and file system.", content.getTitle());
-        } catch (ContentNotProcessedException cnre) {
-            nbError++;
-            trace(Log.WARN, "Error when trying to delete %s", content.getId());
-        } catch (Exception e) {
-            nbError++;
-            trace(Log.WARN, "Error when trying to delete %s : %s", content.getTitle(), e.getMessage());
-        }
+            @Override
+            public void onError(@NonNull Content content, @NonNull String message) {
+                nbError++;
+                trace(Log.WARN, "Error when trying to delete %s : %s", content.getTitle(), message);
+            }
+        });
     }
 
     private void purgeContentList(long[] ids, boolean keepCovers) {
@@ -256,9 +242,8 @@ public abstract class BaseDeleteWorker extends BaseWorker {
                 if (isStopped()) break;
             }
         } finally {
-            if (ContentHelper.updateQueueJson(getApplicationContext(), dao))
-                trace(Log.INFO, "Queue JSON successfully saved");
-            else trace(Log.WARN, "Queue JSON saving failed");
+            if (!ContentHelper.updateQueueJson(getApplicationContext(), dao))
+                trace(Log.WARN, "Queue JSON saving failed");
         }
     }
 
@@ -283,11 +268,26 @@ public abstract class BaseDeleteWorker extends BaseWorker {
 
         if (title != null) {
             deleteProgress++;
-            notificationManager.notify(new DeleteProgressNotification(title, deleteProgress + nbError, deleteMax, isPurge));
-            EventBus.getDefault().post(new ProcessEvent(ProcessEvent.EventType.PROGRESS, R.id.generic_progress, 0, deleteProgress, nbError, deleteMax));
+            notifyProgress(title, isPurge, false);
         }
     }
 
+    /**
+     * Notify the current progress
+     * NB : Notifications are throttled to avoid flooding the notification manager and the UI on large deletions
+     *
+     * @param title   Title of the latest processed item
+     * @param isPurge True if the current operation is a purge
+     * @param force   True to notify even if the latest notification is recent
+     */
+    private void notifyProgress(@NonNull String title, boolean isPurge, boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - lastProgressNotification < PROGRESS_INTERVAL_MS) return;
+        lastProgressNotification = now;
+        notificationManager.notify(new DeleteProgressNotification(title, deleteProgress + nbError, deleteMax, isPurge));
+        EventBus.getDefault().post(new ProcessEvent(ProcessEvent.EventType.PROGRESS, R.id.generic_progress, 0, deleteProgress, nbError, deleteMax));
+    }
+
     private void progressDone() {
         notificationManager.notify(new DeleteCompleteNotification(deleteMax, nbError > 0));
         EventBus.getDefault().postSticky(new ProcessEvent(ProcessEvent.EventType.COMPLETE, R.id.generic_progress, 0, deleteProgress, nbError, deleteMax));
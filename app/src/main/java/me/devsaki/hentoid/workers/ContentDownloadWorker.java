@@ -27,8 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.annotation.Nullable;
-
 import io.reactivex.Observable;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.schedulers.Schedulers;
@@ -37,6 +35,7 @@ import me.devsaki.hentoid.core.Consts;
 import me.devsaki.hentoid.core.HentoidApp;
 import me.devsaki.hentoid.database.CollectionDAO;
 import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.RenamingRuleMatcher;
 import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Chapter;
 import me.devsaki.hentoid.database.domains.Content;
@@ -44,8 +43,6 @@ import me.devsaki.hentoid.database.domains.ErrorRecord;
 import me.devsaki.hentoid.database.domains.GroupItem;
 import me.devsaki.hentoid.database.domains.ImageFile;
 import me.devsaki.hentoid.database.domains.QueueRecord;
-import me.devsaki.hentoid.database.domains.RenamingRule;
-import me.devsaki.hentoid.enums.AttributeType;
 import me.devsaki.hentoid.enums.ErrorType;
 import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.Site;
@@ -84,9 +81,11 @@ import me.devsaki.hentoid.util.exception.PreparationInterruptedException;
 import me.devsaki.hentoid.util.file.ArchiveHelper;
 import me.devsaki.hentoid.util.file.FileHelper;
 import me.devsaki.hentoid.util.image.ImageHelper;
+import me.devsaki.hentoid.util.network.ConnectionWarmer;
 import me.devsaki.hentoid.util.network.DownloadSpeedCalculator;
 import me.devsaki.hentoid.util.network.HttpHelper;
 import me.devsaki.hentoid.util.network.NetworkHelper;
+import me.devsaki.hentoid.util.network.OkHttpClientSingleton;
 import me.devsaki.hentoid.util.notification.Notification;
 import me.devsaki.hentoid.util.notification.NotificationManager;
 import timber.log.Timber;
@@ -376,6 +375,9 @@ public class ContentDownloadWorker extends BaseWorker {
         if (downloadInterrupted.get())
             return new ImmutablePair<>(QueuingResult.CONTENT_SKIPPED, null);
 
+        // Open connections to the image hosts while the rest of the preparation takes place
+        warmUpConnections(content, images);
+
         EventBus.getDefault().post(DownloadEvent.fromPreparationStep(DownloadEvent.Step.PREPARE_FOLDER, content));
 
         // Create destination folder for images to be downloaded
@@ -445,6 +447,11 @@ public class ContentDownloadWorker extends BaseWorker {
             Timber.d("Resetting parallel downloads count to default");
             requestQueueManager.initUsingDownloadThreadCount(getApplicationContext(), -1, true);
         }
+        // Downloads are run by OkHttp's dispatcher, which has to let every parallel download through
+        int maxRequestsPerHost = content.getSite().getParallelDownloadCap();
+        if (maxRequestsPerHost <= 0)
+            maxRequestsPerHost = requestQueueManager.getMaxMultiplexedRequests();
+        OkHttpClientSingleton.setMaxRequestsPerHost(maxRequestsPerHost);
         requestQueueManager.setNbRequestsPerSecond(content.getSite().getRequestsCapPerSecond());
         requestQueueManager.start();
 
@@ -522,15 +529,26 @@ public class ContentDownloadWorker extends BaseWorker {
 
         EventBus.getDefault().post(DownloadEvent.fromPreparationStep(DownloadEvent.Step.SAVE_QUEUE, content));
 
-        if (ContentHelper.updateQueueJson(getApplicationContext(), dao))
-            Timber.i(context.getString(R.string.queue_json_saved));
-        else Timber.w(context.getString(R.string.queue_json_failed));
+        if (!ContentHelper.updateQueueJson(getApplicationContext(), dao, content.getId()))
+            Timber.w(context.getString(R.string.queue_json_failed));
 
         EventBus.getDefault().post(DownloadEvent.fromPreparationStep(DownloadEvent.Step.START_DOWNLOAD, content));
 
         return new ImmutablePair<>(QueuingResult.CONTENT_FOUND, content);
     }
 
+    private void warmUpConnections(@NonNull Content content, @NonNull List<ImageFile> images) {
+        List<String> urls = new ArrayList<>();
+        for (ImageFile img : images)
+            if (!img.getUrl().isEmpty() && !img.needsPageParsing()) urls.add(img.getUrl());
+        if (urls.isEmpty()) return;
+
+        List<Pair<String, String>> headers = new ArrayList<>();
+        headers.add(new Pair<>(HttpHelper.HEADER_REFERER_KEY, content.getGalleryUrl()));
+        headers.add(new Pair<>(HttpHelper.HEADER_USER_AGENT, content.getSite().getUserAgent()));
+        ConnectionWarmer.getInstance().warmUp(urls, headers);
+    }
+
     private void enrichImageDownloadParams(@NonNull ImageFile img, @NonNull Content content) {
         // Enrich download params just in case
         Map<String, String> downloadParams;
@@ -823,9 +841,8 @@ public class ContentDownloadWorker extends BaseWorker {
                 EventBus.getDefault().post(new DownloadEvent(content, DownloadEvent.Type.EV_COMPLETE, pagesOK, pagesKO, nbImages, sizeDownloadedBytes));
 
                 Context context = getApplicationContext();
-                if (ContentHelper.updateQueueJson(context, dao))
-                    Timber.i(context.getString(R.string.queue_json_saved));
-                else Timber.w(context.getString(R.string.queue_json_failed));
+                if (!ContentHelper.updateQueueJson(context, dao))
+                    Timber.w(context.getString(R.string.queue_json_failed));
 
                 // Tracking Event (Download Completed)
                 HentoidApp.trackDownloadEvent("Completed");
@@ -1197,43 +1214,23 @@ public class ContentDownloadWorker extends BaseWorker {
         HentoidApp.trackDownloadEvent("Error");
 
         Context context = getApplicationContext();
-        if (ContentHelper.updateQueueJson(context, dao))
-            Timber.i(context.getString(R.string.queue_json_saved));
-        else Timber.w(context.getString(R.string.queue_json_failed));
+        if (!ContentHelper.updateQueueJson(context, dao, contentId))
+            Timber.w(context.getString(R.string.queue_json_failed));
 
         notificationManager.notify(new DownloadErrorNotification(content));
     }
 
     private void applyRenamingRules(@NonNull Content content) {
-        List<Attribute> newAttrs = new ArrayList<>();
-        List<RenamingRule> rules = dao.selectRenamingRules(AttributeType.UNDEFINED, "");
-        for (RenamingRule rule : rules) rule.computeParts();
+        RenamingRuleMatcher rules = dao.selectRenamingRuleMatcher();
+        if (rules.isEmpty()) return;
 
-        for (Attribute attr : content.getAttributes())
-            newAttrs.add(applyRenamingRule(attr, rules));
-
-        content.putAttributes(newAttrs);
-    }
-
-    private Attribute applyRenamingRule(@NonNull Attribute
-                                                attr, @NonNull List<RenamingRule> rules) {
-        Attribute result = attr;
-        for (RenamingRule rule : rules) {
-            if (attr.getType().equals(rule.getAttributeType())) {
-                String newName = processNewName(attr.getName(), rule);
-                if (newName != null) {
-                    result = new Attribute(attr.getType(), newName);
-                    break;
-                }
-            }
+        List<Attribute> newAttrs = new ArrayList<>();
+        for (Attribute attr : content.getAttributes()) {
+            String newName = rules.apply(attr.getType(), attr.getName());
+            newAttrs.add((null == newName) ? attr : new Attribute(attr.getType(), newName));
         }
-        return result;
-    }
 
-    @Nullable
-    private String processNewName(@NonNull String attrName, @NonNull RenamingRule rule) {
-        if (rule.doesMatchSourceName(attrName)) return rule.getTargetName(attrName);
-        else return null;
+        content.putAttributes(newAttrs);
     }
 
     private ImmutablePair<QueuingResult, Content> testFolder(@NonNull Context
@@ -19,6 +19,7 @@ import com.annimon.stream.Stream;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -45,6 +46,7 @@ import me.devsaki.hentoid.util.StringHelper;
 import me.devsaki.hentoid.util.file.ArchiveHelper;
 import me.devsaki.hentoid.util.file.FileExplorer;
 import me.devsaki.hentoid.util.file.FileHelper;
+import me.devsaki.hentoid.util.file.FolderFingerprintIndex;
 import me.devsaki.hentoid.util.image.ImageHelper;
 import me.devsaki.hentoid.util.notification.Notification;
 import timber.log.Timber;
@@ -57,6 +59,13 @@ public class ExternalImportWorker extends BaseWorker {
 
     private static final Pattern ENDS_WITH_NUMBER = Pattern.compile(".*\\d+(\\.\\d+)?$");
 
+    // Fingerprints of the folders scanned during the last import
+    private FolderFingerprintIndex index = null;
+    // IDs of the books whose folder hasn't changed since the last import
+    private final List<Long> unchangedContentIds = new ArrayList<>();
+    // Folders where books have been detected during the current import
+    private final List<ScannedFolder> scannedFolders = new ArrayList<>();
+
     public ExternalImportWorker(
             @NonNull Context context,
             @NonNull WorkerParameters parameters) {
@@ -126,6 +135,8 @@ public class ExternalImportWorker extends BaseWorker {
         DocumentFile logFile = null;
         try (FileExplorer explorer = new FileExplorer(context, Uri.parse(Preferences.getExternalLibraryUri()))) {
             List<Content> detectedContent = new ArrayList<>();
+            // Folders that haven't changed since the last import are skipped
+            index = FolderFingerprintIndex.load(getFingerprintIndexFile(context), Preferences.getExternalLibraryUri());
             // Deep recursive search starting from the place the user has selected
             CollectionDAO dao = new ObjectBoxDAO(context);
             try {
@@ -142,6 +153,9 @@ public class ExternalImportWorker extends BaseWorker {
             dao = new ObjectBoxDAO(context);
             try {
                 dao.flagAllExternalBooks();
+                // Keep books whose folder hasn't changed
+                for (Long id : unchangedContentIds) dao.updateContentDeleteFlag(id, false);
+                booksOK += unchangedContentIds.size();
             } finally {
                 dao.cleanup();
             }
@@ -193,7 +207,8 @@ public class ExternalImportWorker extends BaseWorker {
             } finally {
                 dao.cleanup();
             }
-            trace(Log.INFO, 2, log, "Import books complete - %s OK; %s KO; %s final count", booksOK + "", booksKO + "", detectedContent.size() + "");
+            trace(Log.INFO, 2, log, "Import books complete - %s OK; %s KO; %s final count", booksOK + "", booksKO + "", detectedContent.size() + unchangedContentIds.size() + "");
+            updateFingerprintIndex(log);
             eventComplete(PrimaryImportWorker.STEP_3_BOOKS, detectedContent.size(), booksOK, booksKO, null);
 
             // Write log in root folder
@@ -214,6 +229,40 @@ public class ExternalImportWorker extends BaseWorker {
         return logInfo;
     }
 
+    private static File getFingerprintIndexFile(@NonNull final Context context) {
+        return new File(context.getFilesDir(), "fingerprints_external.json");
+    }
+
+    /**
+     * Record the folders where books have been imported, and persist the index
+     */
+    private void updateFingerprintIndex(@NonNull final List<LogHelper.LogEntry> log) {
+        if (isStopped()) return;
+        for (ScannedFolder folder : scannedFolders) {
+            List<Long> ids = new ArrayList<>();
+            for (Content c : folder.contents) ids.add(c.getId());
+            // Books that haven't been imported (e.g. duplicates) have no ID; their folder will be scanned again next time
+            if (!ids.contains(0L)) index.put(folder.uri, folder.children, ids);
+        }
+        trace(Log.INFO, 2, log, "Folders : %s unchanged (skipped); %s new or changed; %s removed or changed", unchangedContentIds.size() + "", index.getNbAdded() + "", index.getNbRemoved() + "");
+        try {
+            index.save();
+        } catch (IOException e) {
+            Timber.w(e); // Not blocking; next import will be a full one
+        }
+    }
+
+    /**
+     * Indicate if all the given books are still part of the external library
+     */
+    private static boolean isExternalLibrary(@NonNull final List<Long> contentIds, @NonNull final CollectionDAO dao) {
+        for (Long id : contentIds) {
+            Content c = dao.selectContent(id);
+            if (null == c || !c.getStatus().equals(StatusContent.EXTERNAL)) return false;
+        }
+        return true;
+    }
+
     private void scanFolderRecursive(
             @NonNull final Context context,
             @NonNull final DocumentFile root,
@@ -249,34 +298,50 @@ public class ExternalImportWorker extends BaseWorker {
                 }
             }
 
-        // If at least 2 subfolders and everyone of them ends with a number, we've got a multi-chapter book
-        if (subFolders.size() >= 2) {
-            boolean allSubfoldersEndWithNumber = Stream.of(subFolders).map(DocumentFile::getName).withoutNulls().allMatch(n -> ENDS_WITH_NUMBER.matcher(n).matches());
-            if (allSubfoldersEndWithNumber) {
-                // Make certain folders contain actual books by peeking the 1st one (could be a false positive, i.e. folders per year '1990-2000')
-                int nbPicturesInside = explorer.countFiles(subFolders.get(0), ImageHelper.INSTANCE.getImageNamesFilter());
-                if (nbPicturesInside > 1) {
-                    DocumentFile json = ImportHelper.getFileWithName(jsons, Consts.JSON_FILE_NAME_V2);
-                    library.add(scanChapterFolders(context, root, subFolders, explorer, parentNames, dao, json));
+        String folderUri = root.getUri().toString();
+        List<Long> knownContentIds = index.getUnchangedContentIds(folderUri, files);
+        if (knownContentIds != null && isExternalLibrary(knownContentIds, dao)) {
+            // Folder hasn't changed since the last import => keep the books found there
+            unchangedContentIds.addAll(knownContentIds);
+            index.keep(folderUri);
+        } else {
+            int nbDetected = library.size();
+            // Fingerprints only cover direct children => folders whose books are built from subfolders can't be skipped
+            boolean readsSubfolders = false;
+            // If at least 2 subfolders and everyone of them ends with a number, we've got a multi-chapter book
+            if (subFolders.size() >= 2) {
+                boolean allSubfoldersEndWithNumber = Stream.of(subFolders).map(DocumentFile::getName).withoutNulls().allMatch(n -> ENDS_WITH_NUMBER.matcher(n).matches());
+                if (allSubfoldersEndWithNumber) {
+                    // Make certain folders contain actual books by peeking the 1st one (could be a false positive, i.e. folders per year '1990-2000')
+                    int nbPicturesInside = explorer.countFiles(subFolders.get(0), ImageHelper.INSTANCE.getImageNamesFilter());
+                    if (nbPicturesInside > 1) {
+                        readsSubfolders = true;
+                        DocumentFile json = ImportHelper.getFileWithName(jsons, Consts.JSON_FILE_NAME_V2);
+                        library.add(scanChapterFolders(context, root, subFolders, explorer, parentNames, dao, json));
+                    }
+                    // Look for archives inside
+                    int nbArchivesInside = explorer.countFiles(subFolders.get(0), ArchiveHelper.getArchiveNamesFilter());
+                    if (nbArchivesInside > 0) {
+                        readsSubfolders = true;
+                        List<Content> c = scanForArchives(context, subFolders, explorer, parentNames, dao);
+                        library.addAll(c);
+                    }
                 }
-                // Look for archives inside
-                int nbArchivesInside = explorer.countFiles(subFolders.get(0), ArchiveHelper.getArchiveNamesFilter());
-                if (nbArchivesInside > 0) {
-                    List<Content> c = scanForArchives(context, subFolders, explorer, parentNames, dao);
-                    library.addAll(c);
+            }
+            if (!archives.isEmpty()) { // We've got an archived book
+                for (DocumentFile archive : archives) {
+                    DocumentFile json = ImportHelper.getFileWithName(jsons, archive.getName());
+                    Content c = scanArchive(context, root, archive, parentNames, StatusContent.EXTERNAL, dao, json);
+                    if (!c.getStatus().equals(StatusContent.IGNORED)) library.add(c);
                 }
             }
-        }
-        if (!archives.isEmpty()) { // We've got an archived book
-            for (DocumentFile archive : archives) {
-                DocumentFile json = ImportHelper.getFileWithName(jsons, archive.getName());
-                Content c = scanArchive(context, root, archive, parentNames, StatusContent.EXTERNAL, dao, json);
-                if (!c.getStatus().equals(StatusContent.IGNORED)) library.add(c);
+            if (images.size() > 2 || !contentJsons.isEmpty()) { // We've got a book
+                DocumentFile json = ImportHelper.getFileWithName(contentJsons, Consts.JSON_FILE_NAME_V2);
+                library.add(scanBookFolder(context, root, explorer, parentNames, StatusContent.EXTERNAL, dao, images, json));
             }
-        }
-        if (images.size() > 2 || !contentJsons.isEmpty()) { // We've got a book
-            DocumentFile json = ImportHelper.getFileWithName(contentJsons, Consts.JSON_FILE_NAME_V2);
-            library.add(scanBookFolder(context, root, explorer, parentNames, StatusContent.EXTERNAL, dao, images, json));
+
+            if (library.size() > nbDetected && !readsSubfolders)
+                scannedFolders.add(new ScannedFolder(folderUri, files, new ArrayList<>(library.subList(nbDetected, library.size()))));
         }
 
         // Go down one level
@@ -315,4 +380,16 @@ public class ExternalImportWorker extends BaseWorker {
 
         return JsonHelper.jsonToFile(context, JsonContent.fromEntity(content), JsonContent.class, contentFolder, jsonName).getUri();
     }
+
+    private static class ScannedFolder {
+        final String uri;
+        final List<DocumentFile> children;
+        final List<Content> contents;
+
+        ScannedFolder(@NonNull String uri, @NonNull List<DocumentFile> children, @NonNull List<Content> contents) {
+            this.uri = uri;
+            this.children = children;
+            this.contents = contents;
+        }
+    }
 }
@@ -4,22 +4,26 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 import androidx.work.Data;
 import androidx.work.WorkerParameters;
 
-import com.annimon.stream.Optional;
 import com.annimon.stream.Stream;
+import com.squareup.moshi.JsonDataException;
 
 import org.greenrobot.eventbus.EventBus;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import io.reactivex.Completable;
 import io.reactivex.disposables.CompositeDisposable;
@@ -28,6 +32,7 @@ import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.core.Consts;
 import me.devsaki.hentoid.database.CollectionDAO;
 import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.ErrorRecord;
 import me.devsaki.hentoid.database.domains.Group;
@@ -42,7 +47,7 @@ import me.devsaki.hentoid.enums.StorageLocation;
 import me.devsaki.hentoid.events.ProcessEvent;
 import me.devsaki.hentoid.fragments.tools.MetaImportDialogFragment;
 import me.devsaki.hentoid.json.JsonContent;
-import me.devsaki.hentoid.json.JsonContentCollection;
+import me.devsaki.hentoid.json.JsonContentCollectionReader;
 import me.devsaki.hentoid.notification.import_.ImportCompleteNotification;
 import me.devsaki.hentoid.notification.import_.ImportProgressNotification;
 import me.devsaki.hentoid.notification.import_.ImportStartNotification;
@@ -50,7 +55,6 @@ import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.GroupHelper;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.ImportHelper;
-import me.devsaki.hentoid.util.JsonHelper;
 import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.util.StringHelper;
 import me.devsaki.hentoid.util.file.FileHelper;
@@ -64,12 +68,19 @@ import timber.log.Timber;
  */
 public class MetadataImportWorker extends BaseWorker {
 
+    // Number of items imported within the same DB transaction
+    private static final int BATCH_SIZE = 250;
+
     // Variable used during the import process
     private CollectionDAO dao;
-    private int totalItems = 0;
+    private JsonContentCollectionReader reader;
+    private Map<String, Attribute> attributeCache = null;
+    private final List<Group> groupBuffer = new ArrayList<>();
+    private final List<JsonContent> contentBuffer = new ArrayList<>();
+    private int emptyBooksOption;
+    private long totalBytes = 0;
     private int nbOK = 0;
     private int nbKO = 0;
-    private int queueSize;
     private Map<Site, List<DocumentFile>> siteFoldersCache = null;
     private final Map<Site, List<DocumentFile>> bookFoldersCache = new EnumMap<>(Site.class);
 
@@ -94,6 +105,7 @@ public class MetadataImportWorker extends BaseWorker {
     @Override
     void onInterrupt() {
         notificationDisposables.clear();
+        if (reader != null) reader.interrupt();
     }
 
     @Override
@@ -136,12 +148,15 @@ public class MetadataImportWorker extends BaseWorker {
             trace(Log.ERROR, "Couldn't find metadata JSON file at %s", jsonUri);
             return;
         }
-        Optional<JsonContentCollection> collectionOpt = deserialiseJson(context, jsonFile);
-        if (collectionOpt.isEmpty()) {
+        this.emptyBooksOption = emptyBooksOption;
+        totalBytes = jsonFile.length();
+
+        // Replacing data : the whole file is checked before anything is deleted
+        if (!add && !isReadable(context, jsonFile, importLibrary, importQueue, importCustomGroups, importBookmarks)) {
             trace(Log.ERROR, "Couldn't deserialize JSON file");
             return;
         }
-        JsonContentCollection collection = collectionOpt.get();
+        if (isStopped()) return;
 
         dao = new ObjectBoxDAO(context);
         if (!add) {
@@ -150,72 +165,156 @@ public class MetadataImportWorker extends BaseWorker {
             if (importCustomGroups) dao.deleteAllGroups(Grouping.CUSTOM);
             if (importBookmarks) dao.deleteAllBookmarks();
         }
+        // Resolve attributes in memory instead of querying them for each imported book
+        if (importLibrary || importQueue) attributeCache = dao.selectAttributesByKey();
+
+        List<SiteBookmark> bookmarks = new ArrayList<>();
+        reader = new JsonContentCollectionReader();
+        if (importBookmarks) reader.onBookmarks(bookmarks::add);
+        if (importCustomGroups) reader.onGroups(Grouping.CUSTOM, g -> onItemRead(context, g));
+        if (importLibrary) reader.onLibrary(c -> onItemRead(context, c));
+        if (importQueue) reader.onQueue(c -> onItemRead(context, c));
+
+        try (InputStream input = FileHelper.getInputStream(context, jsonFile)) {
+            if (null == input) throw new IOException("Couldn't open " + jsonUri);
+            reader.read(input);
+        } catch (IOException | IllegalArgumentException | JsonDataException e) {
+            Timber.w(e);
+            trace(Log.ERROR, "Couldn't deserialize JSON file");
+            return;
+        }
+        if (isStopped()) return;
+
+        // Import what remains in the buffers
+        flushItems(context);
 
         // Done in one shot
         if (importBookmarks) {
-            List<SiteBookmark> bookmarks = collection.getBookmarks();
-            totalItems += bookmarks.size();
             ImportHelper.importBookmarks(dao, bookmarks);
             nbOK += bookmarks.size();
         }
 
-        List<JsonContent> contentToImport = new ArrayList<>();
-        if (importLibrary) contentToImport.addAll(collection.getJsonLibrary());
-        if (importQueue) contentToImport.addAll(collection.getJsonQueue());
-        queueSize = (int) dao.countAllQueueBooks();
-
-        totalItems += contentToImport.size();
-
-        if (importCustomGroups) {
-            List<Group> customGroups = collection.getGroups(Grouping.CUSTOM);
-            totalItems += customGroups.size();
-            // Chain group import followed by content import
-            runImportItems(
-                    context,
-                    customGroups,
-                    dao,
-                    true,
-                    emptyBooksOption,
-                    () -> runImportItems(context, contentToImport, dao, false, emptyBooksOption, this::finish)
-            );
-        } else // Run content import alone
-            runImportItems(context, contentToImport, dao, false, emptyBooksOption, this::finish);
+        if (importCustomGroups) GroupHelper.updateGroupsJson(context, dao);
+        ContentHelper.updateQueueJson(context, dao);
+        if (!isStopped()) finish();
     }
 
-    private void runImportItems(@NonNull Context context,
-                                @NonNull final List<?> items,
-                                @NonNull final CollectionDAO dao,
-                                boolean isGroup,
-                                Integer emptyBooksOption,
-                                @NonNull final Runnable onFinish) {
-        for (Object c : items) {
-            if (isStopped()) break;
-            try {
-                importItem(context, c, emptyBooksOption, dao);
-                if (isGroup) GroupHelper.updateGroupsJson(context, dao);
-                nextOK(context);
-            } catch (Exception e) {
-                nextKO(context, e);
-            }
+    /**
+     * Check the given file can be entirely deserialized, without importing anything
+     *
+     * @param context            Context to use
+     * @param jsonFile           File to check
+     * @param importLibrary      True if library books are going to be imported
+     * @param importQueue        True if queued books are going to be imported
+     * @param importCustomGroups True if custom groups are going to be imported
+     * @param importBookmarks    True if bookmarks are going to be imported
+     * @return True if all the sections to import can be deserialized; false if not or if the worker has been stopped
+     */
+    private boolean isReadable(
+            @NonNull final Context context,
+            @NonNull final DocumentFile jsonFile,
+            boolean importLibrary,
+            boolean importQueue,
+            boolean importCustomGroups,
+            boolean importBookmarks) {
+        reader = new JsonContentCollectionReader();
+        // Items of the sections to import are deserialized; the others are only checked for syntax
+        if (importBookmarks) reader.onBookmarks(b -> checkStopped());
+        if (importCustomGroups) reader.onGroups(Grouping.CUSTOM, g -> checkStopped());
+        if (importLibrary) reader.onLibrary(c -> checkStopped());
+        if (importQueue) reader.onQueue(c -> checkStopped());
+
+        try (InputStream input = FileHelper.getInputStream(context, jsonFile)) {
+            if (null == input) return false;
+            reader.read(input);
+            return !isStopped();
+        } catch (IOException | IllegalArgumentException | JsonDataException e) {
+            Timber.w(e);
+            return false;
         }
-        ContentHelper.updateQueueJson(context, dao);
-        if (!isStopped()) onFinish.run();
     }
 
-    private void importItem(@NonNull Context context, @NonNull final Object o, int emptyBooksOption, @NonNull final CollectionDAO dao) {
-        if (o instanceof JsonContent)
-            importContent(context, (JsonContent) o, emptyBooksOption, dao);
-        else if (o instanceof Group) importGroup((Group) o, dao);
+    private void checkStopped() {
+        if (isStopped()) reader.interrupt();
+    }
+
+    private void onItemRead(@NonNull Context context, @NonNull final Object item) {
+        if (isStopped()) {
+            reader.interrupt();
+            return;
+        }
+        if (item instanceof Group) groupBuffer.add((Group) item);
+        else if (item instanceof JsonContent) contentBuffer.add((JsonContent) item);
+        if (groupBuffer.size() + contentBuffer.size() >= BATCH_SIZE) flushItems(context);
+    }
+
+    /**
+     * Import all buffered items, one DB transaction per type of item
+     * NB : Groups are always imported before books, as books can be linked to them
+     */
+    private void flushItems(@NonNull Context context) {
+        if (!groupBuffer.isEmpty()) {
+            dao.runInTx(() -> {
+                for (Group g : groupBuffer) {
+                    try {
+                        importGroup(g, dao);
+                        nbOK++;
+                    } catch (Exception e) {
+                        nbKO++;
+                        Timber.w(e);
+                    }
+                }
+            });
+            groupBuffer.clear();
+        }
+
+        if (!contentBuffer.isEmpty()) {
+            // Map files outside of the transaction, as it involves I/O
+            // NB : Duplicates are only looked up in the DB once the batch is inserted; books of the current batch have to be tracked separately
+            List<Content> toInsert = new ArrayList<>();
+            Set<String> batchKeys = new HashSet<>();
+            for (JsonContent jc : contentBuffer) {
+                try {
+                    Content c = prepareContent(context, jc, emptyBooksOption, batchKeys, dao);
+                    if (c != null) toInsert.add(c);
+                    else nbOK++; // Book that doesn't need to be imported
+                } catch (Exception e) {
+                    nbKO++;
+                    Timber.w(e);
+                }
+            }
+            dao.runInTx(() -> {
+                for (Content c : toInsert) {
+                    try {
+                        insertContent(context, c, dao);
+                        nbOK++;
+                    } catch (Exception e) {
+                        nbKO++;
+                        Timber.w(e);
+                    }
+                }
+            });
+            contentBuffer.clear();
+        }
+        notifyProcessProgress(context);
     }
 
     // Try to map the given imported content to an existing book in the downloads folders
     // Folder names can be formatted in many ways _but_ they always contain the book unique ID !
-    private void importContent(@NonNull Context context, @NonNull final JsonContent jsonContent, int emptyBooksOption, @NonNull final CollectionDAO dao) {
+    @Nullable
+    private Content prepareContent(
+            @NonNull Context context,
+            @NonNull final JsonContent jsonContent,
+            int emptyBooksOption,
+            @NonNull final Set<String> batchKeys,
+            @NonNull final CollectionDAO dao) {
         if (null == siteFoldersCache) siteFoldersCache = getSiteFolders(context);
         Content c = jsonContent.toEntity(dao);
 
+        // Same book already prepared within the current batch
+        if (!batchKeys.add(c.getSite().getCode() + "|" + c.getUrl())) return null;
         Content duplicate = dao.selectContentBySourceAndUrl(c.getSite(), c.getUrl(), "");
-        if (duplicate != null) return;
+        if (duplicate != null) return null;
 
         boolean mappedToFiles = false;
         List<DocumentFile> siteFolders = siteFoldersCache.get(c.getSite());
@@ -228,16 +327,9 @@ public class MetadataImportWorker extends BaseWorker {
 
         // If no local storage found for the book, it goes in the errors queue (except if it already was in progress)
         if (!mappedToFiles) {
-            // Insert queued content into the queue
-            if (c.getStatus().equals(StatusContent.DOWNLOADING) || c.getStatus().equals(StatusContent.PAUSED)) {
-                long newContentId = ContentHelper.addContent(context, dao, c);
-                List<QueueRecord> lst = new ArrayList<>();
-                QueueRecord qr = new QueueRecord(newContentId, queueSize++);
-                qr.setFrozen(c.isFrozen());
-                lst.add(qr);
-                dao.updateQueue(lst);
-                return;
-            }
+            // Queued content is inserted into the queue as is
+            if (c.getStatus().equals(StatusContent.DOWNLOADING) || c.getStatus().equals(StatusContent.PAUSED))
+                return c;
             switch (emptyBooksOption) {
                 case MetaImportDialogFragment.IMPORT_AS_STREAMED:
                     // Greenlighted if images exist and are available online
@@ -268,12 +360,22 @@ public class MetadataImportWorker extends BaseWorker {
                     break;
                 default:
                 case MetaImportDialogFragment.DONT_IMPORT:
-                    return;
+                    return null;
             }
         }
 
-        // All checks successful => create the content
-        ContentHelper.addContent(context, dao, c);
+        // All checks successful => the content can be created
+        return c;
+    }
+
+    private void insertContent(@NonNull Context context, @NonNull final Content c, @NonNull final CollectionDAO dao) {
+        long newContentId = ContentHelper.addContent(context, dao, c, attributeCache);
+        // Insert queued content that couldn't be mapped to local files into the queue
+        if (c.getStorageUri().isEmpty() && (c.getStatus().equals(StatusContent.DOWNLOADING) || c.getStatus().equals(StatusContent.PAUSED))) {
+            QueueRecord qr = new QueueRecord(newContentId, 0);
+            qr.setFrozen(c.isFrozen());
+            dao.addToQueueBottom(Collections.singletonList(qr));
+        }
     }
 
     private boolean mapFilesToContent(@NonNull Context context, @NonNull final Content c, @NonNull final DocumentFile siteFolder) {
@@ -344,29 +446,6 @@ public class MetadataImportWorker extends BaseWorker {
             dao.insertGroup(group);
     }
 
-    private Optional<JsonContentCollection> deserialiseJson(@NonNull final Context context, @NonNull DocumentFile jsonFile) {
-        JsonContentCollection result;
-        try {
-            result = JsonHelper.jsonToObject(context, jsonFile, JsonContentCollection.class);
-        } catch (IOException e) {
-            Timber.w(e);
-            return Optional.empty();
-        }
-        return Optional.of(result);
-    }
-
-
-    private void nextOK(@NonNull Context context) {
-        nbOK++;
-        notifyProcessProgress(context);
-    }
-
-    private void nextKO(@NonNull Context context, Throwable e) {
-        nbKO++;
-        Timber.w(e);
-        notifyProcessProgress(context);
-    }
-
     private void notifyProcessProgress(@NonNull Context context) {
         notificationDisposables.add(Completable.fromRunnable(() -> doNotifyProcessProgress(context))
                 .subscribeOn(Schedulers.computation())
@@ -377,12 +456,16 @@ public class MetadataImportWorker extends BaseWorker {
     }
 
     private void doNotifyProcessProgress(@NonNull Context context) {
-        notificationManager.notify(new ImportProgressNotification(context.getResources().getString(R.string.importing_metadata), nbOK + nbKO, totalItems));
+        // Progress is measured by bytes consumed, as the number of items isn't known until the whole file is read
+        long bytesRead = (null == reader) ? 0 : reader.getBytesRead();
+        int nbProcessed = nbOK + nbKO;
+        int totalItems = (bytesRead > 0 && totalBytes > bytesRead) ? (int) (nbProcessed * totalBytes / bytesRead) : nbProcessed;
+        notificationManager.notify(new ImportProgressNotification(context.getResources().getString(R.string.importing_metadata), (int) (bytesRead / 1024), (int) Math.max(1, totalBytes / 1024)));
         EventBus.getDefault().post(new ProcessEvent(ProcessEvent.EventType.PROGRESS, R.id.import_metadata, 0, nbOK, nbKO, totalItems));
     }
 
     private void finish() {
         notificationManager.notify(new ImportCompleteNotification(nbOK, nbKO));
-        EventBus.getDefault().postSticky(new ProcessEvent(ProcessEvent.EventType.COMPLETE, R.id.import_metadata, 0, nbOK, nbKO, totalItems));
+        EventBus.getDefault().postSticky(new ProcessEvent(ProcessEvent.EventType.COMPLETE, R.id.import_metadata, 0, nbOK, nbKO, nbOK + nbKO));
     }
 }
@@ -17,10 +17,15 @@ import com.squareup.moshi.JsonDataException;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.greenrobot.eventbus.EventBus;
 
+import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.core.Consts;
@@ -57,10 +62,13 @@ import me.devsaki.hentoid.util.ImportHelper;
 import me.devsaki.hentoid.util.JsonHelper;
 import me.devsaki.hentoid.util.LogHelper;
 import me.devsaki.hentoid.util.Preferences;
+import me.devsaki.hentoid.util.QueueJournal;
 import me.devsaki.hentoid.util.StringHelper;
 import me.devsaki.hentoid.util.exception.ParseException;
 import me.devsaki.hentoid.util.file.FileExplorer;
 import me.devsaki.hentoid.util.file.FileHelper;
+import me.devsaki.hentoid.util.file.FolderFingerprintIndex;
+import me.devsaki.hentoid.util.file.ParallelFolderScanner;
 import me.devsaki.hentoid.util.image.ImageHelper;
 import me.devsaki.hentoid.util.notification.Notification;
 import me.devsaki.hentoid.workers.data.PrimaryImportData;
@@ -81,10 +89,21 @@ public class PrimaryImportWorker extends BaseWorker {
 
     final FileHelper.NameFilter imageNames = displayName -> ImageHelper.INSTANCE.isImageExtensionSupported(FileHelper.getExtension(displayName));
 
+    // Number of threads used to list book folders and parse their JSON files
+    private static final int SCAN_THREADS = 4;
+    // Number of books inserted in the same DB transaction
+    private static final int BATCH_SIZE = 250;
+
     // VARIABLES
     int booksOK;                        // Number of books imported
     int booksKO;                        // Number of folders found with no valid book inside
     int nbFolders;                      // Number of folders found with no content but subfolders
+    int nbSkipped;                      // Number of book folders skipped because they haven't changed since the last import
+
+    private final List<Content> pendingContents = new ArrayList<>(); // Books waiting to be inserted
+    private final List<FolderScan> pendingScans = new ArrayList<>(); // Scans of the folders of the books waiting to be inserted
+    private final Set<String> pendingKeys = new HashSet<>();         // Site and URL of the books waiting to be inserted
+    private Map<String, Attribute> attributeCache = null;
 
 
     public PrimaryImportWorker(
@@ -170,6 +189,7 @@ public class PrimaryImportWorker extends BaseWorker {
         booksOK = 0;
         booksKO = 0;
         nbFolders = 0;
+        nbSkipped = 0;
         List<LogHelper.LogEntry> log = new ArrayList<>();
         Context context = getApplicationContext();
 
@@ -239,28 +259,61 @@ public class PrimaryImportWorker extends BaseWorker {
                 dao.cleanup();
             }
 
-            try {
-                dao = new ObjectBoxDAO(context);
-                for (int i = 0; i < bookFolders.size(); i++) {
+            // Unchanged folders can be skipped, unless they all have to be processed
+            FolderFingerprintIndex index = FolderFingerprintIndex.load(getFingerprintIndexFile(context, location), targetRootUri);
+            boolean incremental = index.isAvailable() && !rename && !renumberPages && !cleanNoJSON && !cleanNoImages;
+            trace(Log.INFO, 0, log, "Incremental import %s", (incremental ? enabled : disabled));
+            final FolderFingerprintIndex scanIndex = incremental ? index : null;
+
+            // Folders are listed and their JSON parsed in parallel; results are written to the DB by this thread only
+            dao = new ObjectBoxDAO(context);
+            try (ParallelFolderScanner<DocumentFile, FolderScan, FileExplorer> scanner = new ParallelFolderScanner<>(
+                    SCAN_THREADS,
+                    () -> new FileExplorer(context, rootFolder.getUri()),
+                    (e, f) -> scanFolder(context, e, f, cleanNoImages, scanIndex))) {
+                // Resolve attributes in memory instead of querying them for each imported book
+                attributeCache = dao.selectAttributesByKey();
+                scanner.submit(bookFolders);
+                FolderScan scan;
+                int nbProcessed = 0;
+                while ((scan = scanner.next()) != null) {
                     if (isStopped()) throw new InterruptedException();
-                    importFolder(context, explorer, dao, bookFolders, bookFolders.get(i), log, rename, renumberPages, cleanNoJSON, cleanNoImages);
-                    // Clear the DAO every 2500K iterations to optimize memory
-                    if (0 == i % 2500) {
+                    List<DocumentFile> subfolders = importFolder(context, explorer, dao, bookFolders.size(), scan, index, log, rename, renumberPages, cleanNoJSON);
+                    if (!subfolders.isEmpty()) {
+                        bookFolders.addAll(subfolders);
+                        scanner.submit(subfolders);
+                    }
+                    if (pendingContents.size() >= BATCH_SIZE) flushContents(context, dao, index, log);
+                    // Clear the DAO every 2500 iterations to optimize memory
+                    if (0 == ++nbProcessed % 2500) {
+                        flushContents(context, dao, index, log);
                         dao.cleanup();
                         dao = new ObjectBoxDAO(context);
                     }
                 }
+                flushContents(context, dao, index, log);
             } finally {
+                pendingContents.clear();
+                pendingScans.clear();
+                pendingKeys.clear();
+                attributeCache = null;
                 dao.cleanup();
             }
             trace(Log.INFO, STEP_3_BOOKS, log, "Import books complete - %s OK; %s KO; %s final count", booksOK + "", booksKO + "", bookFolders.size() - nbFolders + "");
+            trace(Log.INFO, STEP_3_BOOKS, log, "Book folders : %s unchanged (skipped); %s new or changed; %s removed or changed", nbSkipped + "", index.getNbAdded() + "", index.getNbRemoved() + "");
+            try {
+                index.save();
+            } catch (IOException e) {
+                Timber.w(e); // Not blocking; next import will be a full one
+            }
             eventComplete(STEP_3_BOOKS, bookFolders.size(), booksOK, booksKO, null);
 
             // 4th pass : Import queue, bookmarks and renaming rules JSON
             dao = new ObjectBoxDAO(context);
             try {
                 DocumentFile queueFile = explorer.findFile(context, rootFolder, Consts.QUEUE_JSON_FILE_NAME);
-                if (queueFile != null) importQueue(context, queueFile, dao, log);
+                DocumentFile queueJournal = explorer.findFile(context, rootFolder, Consts.QUEUE_JOURNAL_FILE_NAME);
+                if (queueFile != null) importQueue(context, queueFile, queueJournal, dao, log);
                 else trace(Log.INFO, STEP_4_QUEUE_FINAL, log, "No queue file found");
 
                 DocumentFile bookmarksFile = explorer.findFile(context, rootFolder, Consts.BOOKMARKS_JSON_FILE_NAME);
@@ -297,41 +350,118 @@ public class PrimaryImportWorker extends BaseWorker {
         }
     }
 
-    private void importFolder(
+    /**
+     * Scan the given book folder : list its files and parse its JSON file
+     * NB : Runs on the scanner's threads; must not use the DB
+     */
+    private FolderScan scanFolder(
             @NonNull final Context context,
             @NonNull final FileExplorer explorer,
-            @NonNull final CollectionDAO dao,
-            @NonNull final List<DocumentFile> bookFolders,
             @NonNull final DocumentFile bookFolder,
+            boolean cleanNoImages,
+            @Nullable final FolderFingerprintIndex index) {
+        FolderScan result = new FolderScan(bookFolder);
+        try {
+            // Skip the folder without listing it if its own date hasn't changed since the last import
+            if (index != null) {
+                List<Long> contentIds = index.getUnchangedContentIds(bookFolder.getUri().toString(), bookFolder.lastModified());
+                if (contentIds != null && 1 == contentIds.size()) {
+                    result.unchangedContentId = contentIds.get(0);
+                    return result;
+                }
+            }
+
+            listChildren(context, explorer, result);
+
+            // Skip the folder if its contents haven't changed since the last import
+            if (index != null) {
+                List<Long> contentIds = index.getUnchangedContentIds(bookFolder.getUri().toString(), result.children);
+                if (contentIds != null && 1 == contentIds.size()) {
+                    result.unchangedContentId = contentIds.get(0);
+                    return result;
+                }
+            }
+
+            // Detect the presence of images if the corresponding cleanup option has been enabled
+            if (cleanNoImages) {
+                long nbImages = Stream.of(result.files).filter(f -> ImageHelper.INSTANCE.isSupportedImage(StringHelper.protect(f.getName()))).count();
+                result.noImages = (0 == nbImages && result.subfolders.isEmpty()); // No supported images nor subfolders
+            }
+
+            readJson(context, bookFolder, result);
+        } catch (Exception e) {
+            result.error = e;
+        }
+        return result;
+    }
+
+    /**
+     * List files and subfolders of the folder of the given scan at once
+     */
+    private static void listChildren(@NonNull final Context context, @NonNull final FileExplorer explorer, @NonNull final FolderScan scan) {
+        scan.children = explorer.listDocumentFiles(context, scan.folder);
+        scan.files = Stream.of(scan.children).filterNot(DocumentFile::isDirectory).toList();
+        scan.subfolders = Stream.of(scan.children).filter(DocumentFile::isDirectory).toList();
+        scan.listed = true;
+    }
+
+    /**
+     * Import the book described by the given folder scan
+     *
+     * @return Subfolders to scan, if the given folder contains no book but subfolders
+     */
+    private List<DocumentFile> importFolder(
+            @NonNull final Context context,
+            @NonNull final FileExplorer explorer,
+            @NonNull final CollectionDAO dao,
+            int nbBookFolders,
+            @NonNull final FolderScan scan,
+            @NonNull final FolderFingerprintIndex index,
             @NonNull final List<LogHelper.LogEntry> log,
             boolean rename,
             boolean renumberPages,
-            boolean cleanNoJSON,
-            boolean cleanNoImages
+            boolean cleanNoJSON
     ) {
+        final DocumentFile bookFolder = scan.folder;
         Content content = null;
-        List<DocumentFile> bookFiles = null;
-
-        // Detect the presence of images if the corresponding cleanup option has been enabled
-        if (cleanNoImages) {
-            bookFiles = explorer.listFiles(context, bookFolder, null);
-            long nbImages = Stream.of(bookFiles).filter(f -> ImageHelper.INSTANCE.isSupportedImage(StringHelper.protect(f.getName()))).count();
-            if (0 == nbImages && !explorer.hasFolders(bookFolder)) { // No supported images nor subfolders
-                boolean doRemove = true;
-                try {
-                    content = importJson(context, bookFolder, bookFiles, dao);
-                    // Don't delete books that are _not supposed to_ have downloaded images
-                    if (content != null && content.getDownloadMode() == Content.DownloadMode.STREAM)
-                        doRemove = false;
-                } catch (ParseException e) {
-                    trace(Log.WARN, STEP_1, log, "[Remove no image] Folder %s : unreadable JSON", bookFolder.getUri().toString());
-                }
-                if (doRemove) {
-                    booksKO++;
-                    boolean success = bookFolder.delete();
-                    trace(Log.INFO, STEP_1, log, "[Remove no image %s] Folder %s", success ? "OK" : "KO", bookFolder.getUri().toString());
-                    return;
-                }
+        List<DocumentFile> bookFiles = scan.files;
+        List<DocumentFile> subfolders = Collections.emptyList();
+
+        // Folder hasn't changed since the last import => keep the existing book
+        if (scan.unchangedContentId > 0) {
+            Content existingContent = dao.selectContent(scan.unchangedContentId);
+            if (existingContent != null && existingContent.isFlaggedForDeletion() && existingContent.getStorageUri().equals(bookFolder.getUri().toString())) {
+                dao.updateContentDeleteFlag(existingContent.getId(), false);
+                index.keep(bookFolder.getUri().toString(), bookFolder.lastModified());
+                booksOK++;
+                nbSkipped++;
+                eventProgress(STEP_3_BOOKS, nbBookFolders - nbFolders, booksOK, booksKO);
+                return subfolders;
+            }
+            // Index and DB are out of sync => import the folder as usual
+            trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Fingerprint index out of sync for : %s", bookFolder.getUri().toString());
+            if (!scan.listed) {
+                listChildren(context, explorer, scan);
+                bookFiles = scan.files;
+            }
+            readJson(context, bookFolder, scan);
+        }
+
+        if (scan.noImages) {
+            boolean doRemove = true;
+            if (scan.parseError != null) {
+                trace(Log.WARN, STEP_1, log, "[Remove no image] Folder %s : unreadable JSON", bookFolder.getUri().toString());
+            } else {
+                content = toContent(scan, dao);
+                // Don't delete books that are _not supposed to_ have downloaded images
+                if (content != null && content.getDownloadMode() == Content.DownloadMode.STREAM)
+                    doRemove = false;
+            }
+            if (doRemove) {
+                booksKO++;
+                boolean success = bookFolder.delete();
+                trace(Log.INFO, STEP_1, log, "[Remove no image %s] Folder %s", success ? "OK" : "KO", bookFolder.getUri().toString());
+                return subfolders;
             }
         }
 
@@ -340,21 +470,22 @@ public class PrimaryImportWorker extends BaseWorker {
 
         // Detect JSON and try to parse it
         try {
-            if (null == bookFiles)
-                bookFiles = explorer.listFiles(context, bookFolder, null);
-            if (null == content) content = importJson(context, bookFolder, bookFiles, dao);
+            if (scan.error != null) throw scan.error;
+            if (scan.parseError != null) throw scan.parseError;
+            if (null == content) content = toContent(scan, dao);
             if (content != null) {
                 // If the book exists and is flagged for deletion, delete it to make way for a new import (as intended)
                 if (existingFlaggedContent != null) dao.deleteContent(existingFlaggedContent);
 
                 // If the very same book still exists in the DB at this point, it means it's present in the queue
                 // => don't import it even though it has a JSON file; it has been re-queued after being downloaded or viewed once
+                String key = content.getSite().name() + " " + content.getUrl();
                 Content existingDuplicate = dao.selectContentBySourceAndUrl(content.getSite(), content.getUrl(), "");
-                if (existingDuplicate != null && !existingDuplicate.isFlaggedForDeletion()) {
+                if ((existingDuplicate != null && !existingDuplicate.isFlaggedForDeletion()) || pendingKeys.contains(key)) {
                     booksKO++;
-                    String location = ContentHelper.isInQueue(existingDuplicate.getStatus()) ? "queue" : "collection";
+                    String location = (existingDuplicate != null && ContentHelper.isInQueue(existingDuplicate.getStatus())) ? "queue" : "collection";
                     trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book KO! (already in " + location + ") : %s", bookFolder.getUri().toString());
-                    return;
+                    return subfolders;
                 }
 
                 List<ImageFile> contentImages;
@@ -443,15 +574,16 @@ public class PrimaryImportWorker extends BaseWorker {
                 ImportHelper.removeExternalAttributes(content);
 
                 content.computeSize();
-                ContentHelper.addContent(context, dao, content);
+                // Actual insertion happens when the batch is flushed
+                pendingContents.add(content);
+                pendingScans.add(scan);
+                pendingKeys.add(key);
                 trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK : %s", bookFolder.getUri().toString());
             } else { // JSON not found
-                List<DocumentFile> subfolders = explorer.listFolders(context, bookFolder);
-                if (!subfolders.isEmpty()) { // Folder doesn't contain books but contains subdirectories
-                    bookFolders.addAll(subfolders);
+                if (!scan.subfolders.isEmpty()) { // Folder doesn't contain books but contains subdirectories
                     trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Subfolders found in : %s", bookFolder.getUri().toString());
                     nbFolders++;
-                    return;
+                    return scan.subfolders;
                 } else { // No JSON nor any subdirectory
                     trace(Log.WARN, STEP_2_BOOK_FOLDERS, log, "Import book KO! (no JSON found) : %s", bookFolder.getUri().toString());
                     // Deletes the folder if cleanup is active
@@ -510,8 +642,53 @@ public class PrimaryImportWorker extends BaseWorker {
             trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR : %s for Folder %s", e.getMessage(), bookFolder.getUri().toString());
         }
         String bookName = StringHelper.protect(bookFolder.getName());
-        notificationManager.notify(new ImportProgressNotification(bookName, booksOK + booksKO, bookFolders.size() - nbFolders));
-        eventProgress(STEP_3_BOOKS, bookFolders.size() - nbFolders, booksOK, booksKO);
+        notificationManager.notify(new ImportProgressNotification(bookName, booksOK + booksKO, nbBookFolders - nbFolders));
+        eventProgress(STEP_3_BOOKS, nbBookFolders - nbFolders, booksOK, booksKO);
+        return subfolders;
+    }
+
+    /**
+     * Insert all pending books in one single transaction
+     */
+    private void flushContents(@NonNull final Context context, @NonNull final CollectionDAO dao, @NonNull final FolderFingerprintIndex index, @NonNull final List<LogHelper.LogEntry> log) {
+        if (pendingContents.isEmpty()) return;
+        dao.runInTx(() -> {
+            for (int i = 0; i < pendingContents.size(); i++) {
+                Content c = pendingContents.get(i);
+                FolderScan scan = pendingScans.get(i);
+                try {
+                    ContentHelper.addContent(context, dao, c, attributeCache);
+                    // Only index books whose folder is still the scanned one (i.e. hasn't been renamed)
+                    // and has no subfolder, as changes inside subfolders aren't covered by fingerprints
+                    String folderUri = scan.folder.getUri().toString();
+                    if (c.getStorageUri().equals(folderUri) && scan.subfolders.isEmpty())
+                        index.put(folderUri, scan.folder.lastModified(), scan.children, Collections.singletonList(c.getId()));
+                } catch (Exception e) {
+                    Timber.w(e);
+                    booksOK--;
+                    booksKO++;
+                    trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR : %s for Folder %s", e.getMessage(), c.getStorageUri());
+                }
+            }
+        });
+        pendingContents.clear();
+        pendingScans.clear();
+        pendingKeys.clear();
+    }
+
+    @Nullable
+    private Content toContent(@NonNull final FolderScan scan, @NonNull final CollectionDAO dao) {
+        if (scan.jsonContent != null && scan.jsonFile != null) {
+            Content result = scan.jsonContent.toEntity(dao);
+            result.setJsonUri(scan.jsonFile.getUri().toString());
+            result.setStorageUri(scan.folder.getUri().toString());
+            return result;
+        }
+        return scan.content;
+    }
+
+    private static File getFingerprintIndexFile(@NonNull final Context context, @NonNull final StorageLocation location) {
+        return new File(context.getFilesDir(), "fingerprints_" + location.name().toLowerCase() + ".json");
     }
 
     private LogHelper.LogInfo buildLogInfo(boolean cleanup, StorageLocation location, @NonNull List<LogHelper.LogEntry> log) {
@@ -569,13 +746,12 @@ public class PrimaryImportWorker extends BaseWorker {
         }
     }
 
-    private void importQueue(@NonNull final Context context, @NonNull DocumentFile queueFile, @NonNull CollectionDAO dao, @NonNull List<LogHelper.LogEntry> log) {
+    private void importQueue(@NonNull final Context context, @NonNull DocumentFile queueFile, @Nullable DocumentFile queueJournal, @NonNull CollectionDAO dao, @NonNull List<LogHelper.LogEntry> log) {
         trace(Log.INFO, STEP_4_QUEUE_FINAL, log, "Queue JSON found");
         eventProgress(STEP_4_QUEUE_FINAL, -1, 0, 0);
-        JsonContentCollection contentCollection = deserialiseCollectionJson(context, queueFile);
-        if (null != contentCollection) {
-            int queueSize = (int) dao.countAllQueueBooks();
-            List<Content> queuedContent = contentCollection.getQueue();
+        // Queue = last snapshot + operations journaled since then
+        List<Content> queuedContent = QueueJournal.readQueue(context, queueFile, queueJournal);
+        if (null != queuedContent) {
             eventProgress(STEP_4_QUEUE_FINAL, queuedContent.size(), 0, 0);
             trace(Log.INFO, STEP_4_QUEUE_FINAL, log, "Queue JSON deserialized : %s books detected", queuedContent.size() + "");
             List<QueueRecord> lst = new ArrayList<>();
@@ -590,12 +766,12 @@ public class PrimaryImportWorker extends BaseWorker {
                     } else {
                         // Only add at the end of the queue if it isn't a duplicate
                         long newContentId = ContentHelper.addContent(context, dao, c);
-                        lst.add(new QueueRecord(newContentId, queueSize++));
+                        lst.add(new QueueRecord(newContentId, 0));
                     }
                 }
                 eventProgress(STEP_4_QUEUE_FINAL, queuedContent.size(), count++, 0);
             }
-            dao.updateQueue(lst);
+            dao.addToQueueBottom(lst);
             trace(Log.INFO, STEP_4_QUEUE_FINAL, log, "Import queue succeeded");
         } else {
             trace(Log.INFO, STEP_4_QUEUE_FINAL, log, "Import queue failed : JSON unreadable");
@@ -691,22 +867,40 @@ public class PrimaryImportWorker extends BaseWorker {
         return result;
     }
 
-    @Nullable
-    private Content importJson(
+    /**
+     * Read the JSON file found among the files of the given folder scan, if any
+     * NB : JSON files using the latest format are only parsed; their conversion to a book requires the DB
+     */
+    private void readJson(
             @NonNull final Context context,
             @NonNull DocumentFile folder,
-            @NonNull List<DocumentFile> bookFiles,
-            @NonNull CollectionDAO dao) throws ParseException {
-        Optional<DocumentFile> file = Stream.of(bookFiles).filter(f -> StringHelper.protect(f.getName()).equals(Consts.JSON_FILE_NAME_V2)).findFirst();
-        if (file.isPresent()) return importJsonV2(context, file.get(), folder, dao);
+            @NonNull FolderScan scan) {
+        try {
+            readJsonFile(context, folder, scan);
+        } catch (ParseException e) {
+            scan.parseError = e;
+        }
+    }
 
-        file = Stream.of(bookFiles).filter(f -> StringHelper.protect(f.getName()).equals(Consts.JSON_FILE_NAME)).findFirst();
-        if (file.isPresent()) return importJsonV1(context, file.get(), folder);
+    private void readJsonFile(
+            @NonNull final Context context,
+            @NonNull DocumentFile folder,
+            @NonNull FolderScan scan) throws ParseException {
+        Optional<DocumentFile> file = Stream.of(scan.files).filter(f -> StringHelper.protect(f.getName()).equals(Consts.JSON_FILE_NAME_V2)).findFirst();
+        if (file.isPresent()) {
+            scan.jsonContent = importJsonV2(context, file.get());
+            scan.jsonFile = file.get();
+            return;
+        }
 
-        file = Stream.of(bookFiles).filter(f -> StringHelper.protect(f.getName()).equals(Consts.JSON_FILE_NAME_OLD)).findFirst();
-        if (file.isPresent()) return importJsonLegacy(context, file.get(), folder);
+        file = Stream.of(scan.files).filter(f -> StringHelper.protect(f.getName()).equals(Consts.JSON_FILE_NAME)).findFirst();
+        if (file.isPresent()) {
+            scan.content = importJsonV1(context, file.get(), folder);
+            return;
+        }
 
-        return null;
+        file = Stream.of(scan.files).filter(f -> StringHelper.protect(f.getName()).equals(Consts.JSON_FILE_NAME_OLD)).findFirst();
+        if (file.isPresent()) scan.content = importJsonLegacy(context, file.get(), folder);
     }
 
     @SuppressWarnings({"deprecation", "squid:CallToDeprecatedMethod"})
@@ -822,21 +1016,42 @@ public class PrimaryImportWorker extends BaseWorker {
     }
 
     @CheckResult
-    private Content importJsonV2(
+    private JsonContent importJsonV2(
             @NonNull final Context context,
-            @NonNull final DocumentFile json,
-            @NonNull final DocumentFile parentFolder,
-            @NonNull final CollectionDAO dao) throws ParseException {
+            @NonNull final DocumentFile json) throws ParseException {
         try {
-            JsonContent content = JsonHelper.jsonToObject(context, json, JsonContent.class);
-            Content result = content.toEntity(dao);
-            result.setJsonUri(json.getUri().toString());
-            result.setStorageUri(parentFolder.getUri().toString());
-
+            JsonContent result = JsonHelper.jsonToObject(context, json, JsonContent.class);
+            if (null == result) throw new ParseException("Empty JSON (v2) file");
             return result;
         } catch (IOException | JsonDataException e) {
             Timber.e(e, "Error reading JSON (v2) file");
             throw new ParseException("Error reading JSON (v2) file : " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Result of the scan of a book folder
+     */
+    private static class FolderScan {
+        final DocumentFile folder;
+        List<DocumentFile> children = Collections.emptyList();
+        List<DocumentFile> files = Collections.emptyList();
+        List<DocumentFile> subfolders = Collections.emptyList();
+        boolean listed = false;             // True if the folder's children have been listed
+        long unchangedContentId = 0;       // ID of the book found in the folder, if the folder hasn't changed since the last import
+        boolean noImages = false;           // True if the folder contains neither images nor subfolders
+        DocumentFile jsonFile = null;       // JSON file using the latest format
+        JsonContent jsonContent = null;     // Contents of the JSON file using the latest format
+        Content content = null;             // Book read from a JSON file using an older format
+        ParseException parseError = null;
+        Exception error = null;
+
+        FolderScan(@NonNull DocumentFile folder) {
+            this.folder = folder;
+        }
+
+        boolean hasJson() {
+            return jsonContent != null || content != null;
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package me.devsaki.hentoid.workers
+
+import android.content.Context
+import androidx.work.Data
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import me.devsaki.hentoid.R
+import me.devsaki.hentoid.database.CollectionDAO
+import me.devsaki.hentoid.database.ObjectBoxDAO
+import me.devsaki.hentoid.database.domains.RenamingRule
+import me.devsaki.hentoid.notification.renamingRule.RenamingRuleProgressNotification
+import me.devsaki.hentoid.util.Helper
+import me.devsaki.hentoid.util.notification.Notification
+import me.devsaki.hentoid.workers.data.UpdateJsonData
+
+/**
+ * Applies a new or edited renaming rule to the attributes of the whole library
+ * NB : Attributes are processed by chunks, each in its own transaction, to keep transactions short
+ */
+class RenamingRuleWorker(context: Context, parameters: WorkerParameters) :
+    BaseWorker(context, parameters, R.id.renaming_rule_service, null) {
+
+    companion object {
+        private const val KEY_RULE_ID = "RULE_ID"
+        private const val CHUNK_SIZE = 200
+
+        /**
+         * Apply the given rule to the existing attributes in the background
+         */
+        fun applyRule(context: Context, ruleId: Long) {
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                R.id.renaming_rule_service.toString(),
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                OneTimeWorkRequestBuilder<RenamingRuleWorker>()
+                    .setInputData(workDataOf(KEY_RULE_ID to ruleId))
+                    .build()
+            )
+        }
+    }
+
+    private val dao: CollectionDAO = ObjectBoxDAO(context)
+    private var totalItems = 0
+    private var nbProcessed = 0
+
+
+    override fun getStartNotification(): Notification {
+        return RenamingRuleProgressNotification(0, 0)
+    }
+
+    override fun onInterrupt() {
+        // Nothing
+    }
+
+    override fun onClear() {
+        dao.cleanup()
+    }
+
+    override fun getToWork(input: Data) {
+        val ruleId = inputData.getLong(KEY_RULE_ID, 0)
+        val rule = dao.selectRenamingRule(ruleId) ?: return
+        applyRule(rule)
+    }
+
+    private fun applyRule(rule: RenamingRule) {
+        val attributeIds = dao.selectAttributeIdsMatchingRule(rule)
+        totalItems = attributeIds.size
+
+        val modifiedContentIds = HashSet<Long>()
+        for (chunk in attributeIds.asList().chunked(CHUNK_SIZE)) {
+            modifiedContentIds.addAll(dao.applyRenamingRule(rule, chunk.toLongArray()).asList())
+            nbProcessed += chunk.size
+            notificationManager.notify(RenamingRuleProgressNotification(nbProcessed, totalItems))
+            if (isStopped) break
+        }
+        if (modifiedContentIds.isEmpty()) return
+
+        // Update the JSON files of the modified books and groups
+        val builder = UpdateJsonData.Builder()
+        builder.setContentIds(Helper.getPrimitiveLongArrayFromSet(modifiedContentIds))
+        builder.setUpdateGroups(true)
+        WorkManager.getInstance(applicationContext).enqueueUniqueWork(
+            R.id.udpate_json_service.toString(),
+            ExistingWorkPolicy.APPEND_OR_REPLACE,
+            OneTimeWorkRequestBuilder<UpdateJsonWorker>()
+                .setInputData(builder.data)
+                .build()
+        )
+    }
+}
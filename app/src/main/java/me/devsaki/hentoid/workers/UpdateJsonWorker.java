@@ -14,12 +14,11 @@ import io.reactivex.schedulers.Schedulers;
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.database.CollectionDAO;
 import me.devsaki.hentoid.database.ObjectBoxDAO;
-import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.events.ProcessEvent;
 import me.devsaki.hentoid.notification.updateJson.UpdateJsonCompleteNotification;
 import me.devsaki.hentoid.notification.updateJson.UpdateJsonProgressNotification;
 import me.devsaki.hentoid.notification.updateJson.UpdateJsonStartNotification;
-import me.devsaki.hentoid.util.ContentHelper;
+import me.devsaki.hentoid.util.ContentJsonWriter;
 import me.devsaki.hentoid.util.GroupHelper;
 import me.devsaki.hentoid.util.notification.Notification;
 import me.devsaki.hentoid.workers.data.UpdateJsonData;
@@ -79,17 +78,14 @@ public class UpdateJsonWorker extends BaseWorker {
 
         totalItems = contentIds.length;
 
-        for (long id : contentIds) {
-            Content c = dao.selectContent(id);
-            if (c != null) ContentHelper.persistJson(getApplicationContext(), c);
-            nextOK();
-        }
+        // Files are written in parallel; pending requests for the same books are merged into these writes
+        ContentJsonWriter.getInstance(getApplicationContext()).persist(contentIds, this::nextOK);
         progressDone();
 
         if (data.getUpdateGroups()) GroupHelper.updateGroupsJson(getApplicationContext(), dao);
     }
 
-    private void nextOK() {
+    private synchronized void nextOK() {
         nbOK++;
         notifyProcessProgress();
     }
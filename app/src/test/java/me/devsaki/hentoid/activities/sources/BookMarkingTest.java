@@ -0,0 +1,171 @@
+package me.devsaki.hentoid.activities.sources;
+
+import androidx.core.util.Pair;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.util.StringHelper;
+import me.devsaki.hentoid.util.network.HttpHelper;
+import me.devsaki.hentoid.util.network.UrlSuffixIndex;
+
+@RunWith(RobolectricTestRunner.class)
+public class BookMarkingTest {
+
+    private static final int LIBRARY_SIZE = 50000;
+    private static final int NB_CARDS = 25;
+    private static final Site SITE = Site.NHENTAI;
+    private static final List<String> BLOCKED_TAGS = Arrays.asList("tag3", "tag11");
+
+    private static String resultsPage;
+    private static final List<String> downloadedList = new ArrayList<>();
+    private static final List<String> mergedList = new ArrayList<>();
+    private static final UrlSuffixIndex downloadedIndex = new UrlSuffixIndex();
+    private static final UrlSuffixIndex mergedIndex = new UrlSuffixIndex();
+
+    @BeforeClass
+    public static void setUp() {
+        // Results page laid out like a typical gallery listing
+        StringBuilder sb = new StringBuilder("<html><head></head><body><nav><a href=\"/\">Home</a><a href=\"/search/?q=test\">Search</a></nav><div class=\"container\">");
+        for (int i = 0; i < NB_CARDS; i++) {
+            int id = 400000 + i * 3;
+            sb.append("<div class=\"gallery\"><a href=\"/g/").append(id).append("/\" class=\"cover\"><img src=\"/t/").append(id).append(".jpg\"><div class=\"caption\">Book ").append(id).append("</div></a>")
+                    .append("<a href=\"/g/").append(id).append("/\">Title ").append(id).append("</a>")
+                    .append("<div class=\"tags\"><a href=\"/tag/tag").append(i).append("/\">tag").append(i).append("</a></div></div>");
+        }
+        sb.append("</div><a href=\"/g/400003/?page=2\">Next</a></body></html>");
+        resultsPage = sb.toString();
+
+        // Library whose URLs match a few books of the page
+        for (int i = 0; i < LIBRARY_SIZE; i++)
+            downloadedList.add(HttpHelper.simplifyUrl("/g/" + (500000 + i * 7) + "/"));
+        downloadedList.add(HttpHelper.simplifyUrl("/g/400000/"));
+        downloadedList.add(HttpHelper.simplifyUrl("/g/400030/"));
+        for (int i = 0; i < LIBRARY_SIZE / 10; i++)
+            mergedList.add(HttpHelper.simplifyUrl("/" + (200000 + i * 11) + "/"));
+        mergedList.add(HttpHelper.simplifyUrl("/400030/"));
+        mergedList.add(HttpHelper.simplifyUrl("/400060/"));
+        downloadedIndex.addAll(downloadedList);
+        mergedIndex.addAll(mergedList);
+    }
+
+    @Test
+    public void suffixIndex() {
+        UrlSuffixIndex index = new UrlSuffixIndex();
+        index.add("/g/123/");
+        index.add("/456/");
+        Assert.assertTrue(index.matches("/g/123/"));
+        Assert.assertTrue(index.matches("https://site.com/g/123/"));
+        Assert.assertTrue(index.matches("/g/456/"));
+        Assert.assertFalse(index.matches("/g/1234/"));
+        Assert.assertFalse(index.matches("/23/"));
+
+        index.remove("/g/123/");
+        Assert.assertFalse(index.matches("https://site.com/g/123/"));
+        Assert.assertTrue(index.matches("/g/456/"));
+        index.clear();
+        Assert.assertFalse(index.matches("/g/456/"));
+    }
+
+    @Test
+    public void sameMarksAsPreviousImplementation() {
+        Document expected = Jsoup.parse(resultsPage, "https://nhentai.net/");
+        markBooksLegacy(expected, downloadedList, mergedList, BLOCKED_TAGS);
+        Document actual = Jsoup.parse(resultsPage, "https://nhentai.net/");
+        CustomWebViewClient.markBooks(actual, SITE, downloadedIndex, mergedIndex, BLOCKED_TAGS);
+
+        Assert.assertEquals(expected.outerHtml(), actual.outerHtml());
+        Assert.assertEquals(2, actual.select(".watermarked").size());
+        Assert.assertEquals(2, actual.select(".watermarked-merged").size());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        final int rounds = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            markBooksLegacy(Jsoup.parse(resultsPage, "https://nhentai.net/"), downloadedList, mergedList, BLOCKED_TAGS);
+        long legacy = (System.nanoTime() - start) / 1000000 / rounds;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+            CustomWebViewClient.markBooks(Jsoup.parse(resultsPage, "https://nhentai.net/"), SITE, downloadedIndex, mergedIndex, BLOCKED_TAGS);
+        long indexed = (System.nanoTime() - start) / 1000000 / rounds;
+
+        System.out.printf("Results page of %d books vs library of %d : endsWith scan %d ms; suffix index %d ms (per page)%n",
+                NB_CARDS, LIBRARY_SIZE, legacy, indexed);
+    }
+
+    /**
+     * Marking as it was done before the URL index (one endsWith per link and library URL, two passes over the links)
+     */
+    private static void markBooksLegacy(Document doc, List<String> siteUrls, List<String> mergedSiteUrls, List<String> blockedTags) {
+        Map<String, Pair<Element, Element>> elements = new HashMap<>();
+        for (Element link : doc.select("a")) {
+            String aHref = HttpHelper.simplifyUrl(link.attr("href"));
+            if (!aHref.isEmpty() && !elements.containsKey(aHref))
+                elements.put(aHref, new Pair<>(link, null));
+        }
+        for (Element linkedImage : doc.select("a img")) {
+            Element parent = linkedImage.parent();
+            while (parent != null && !parent.is("a")) parent = parent.parent();
+            if (null == parent) break;
+            String aHref = HttpHelper.simplifyUrl(parent.attr("href"));
+            Pair<Element, Element> elt = elements.get(aHref);
+            if (elt != null && null == elt.second)
+                elements.put(aHref, new Pair<>(elt.first, linkedImage));
+        }
+        for (Map.Entry<String, Pair<Element, Element>> entry : elements.entrySet()) {
+            for (List<String> urls : Arrays.asList(siteUrls, mergedSiteUrls)) {
+                for (String url : urls) {
+                    if (entry.getKey().endsWith(url)) {
+                        Element markedElement = entry.getValue().second;
+                        if (markedElement != null) {
+                            Element imgParent = markedElement.parent();
+                            for (int i = 0; i < SITE.getBookCardDepth() - 1; i++)
+                                if (imgParent != null) imgParent = imgParent.parent();
+                            if (imgParent != null) markedElement = imgParent;
+                        } else {
+                            markedElement = entry.getValue().first;
+                        }
+                        markedElement.addClass((urls == siteUrls) ? "watermarked" : "watermarked-merged");
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (SITE.getGalleryHeight() == -1) return;
+        for (Element link : doc.select("a")) {
+            String aHref = HttpHelper.simplifyUrl(link.attr("href"));
+            if (!aHref.contains("/tag/") && !aHref.contains("/category/")) continue;
+            if (0 == link.childNodeSize()) continue;
+            String tag = link.childNode(0).toString();
+            for (String blockedTag : blockedTags) {
+                if (blockedTag.equalsIgnoreCase(tag) || StringHelper.isPresentAsWord(blockedTag, tag)) {
+                    Element imgParent = link;
+                    for (int i = 0; i <= SITE.getGalleryHeight(); i++)
+                        if (imgParent.parent() != null) imgParent = imgParent.parent();
+                    for (Element img : imgParent.getAllElements().select("img"))
+                        if (img.parent() != null) img.parent().addClass("watermarked-blocked");
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package me.devsaki.hentoid.activities.sources;
+
+import org.apache.commons.io.IOUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+@RunWith(RobolectricTestRunner.class)
+public class HtmlStreamingTest {
+
+    private static final int NB_CARDS = 5000;
+
+    private static String resultsPage;
+
+    @BeforeClass
+    public static void setUp() {
+        StringBuilder sb = new StringBuilder("<html><head><title>Results</title></head><body><div class=\"container\">");
+        for (int i = 0; i < NB_CARDS; i++) {
+            sb.append("<div class=\"gallery\"><a href=\"/g/").append(i).append("/\" class=\"cover\"><img src=\"/t/").append(i).append(".jpg\" width=\"250\" height=\"350\">")
+                    .append("<div class=\"caption\">[Circle] Some rather long book title number ").append(i).append(" (Original)</div></a>")
+                    .append("<div class=\"tags\"><a href=\"/tag/tag").append(i % 100).append("/\">tag").append(i % 100).append("</a></div></div>");
+        }
+        sb.append("</div></body></html>");
+        resultsPage = sb.toString();
+    }
+
+    /**
+     * Bytes allocated by all threads so far
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long result = 0;
+        for (long b : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) if (b > 0) result += b;
+        return result;
+    }
+
+    @Test
+    public void sameOutputAsFullSerialization() throws IOException {
+        Document doc = Jsoup.parse(resultsPage, "https://nhentai.net/");
+        String expected = doc.toString();
+        try (InputStream is = CustomWebViewClient.streamHtml(doc)) {
+            Assert.assertEquals(expected.trim(), IOUtils.toString(is, StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    @Test
+    public void interruptedReading() throws IOException {
+        Document doc = Jsoup.parse(resultsPage, "https://nhentai.net/");
+        // Browser closing the page right after the first bytes; serialization must give up silently
+        InputStream is = CustomWebViewClient.streamHtml(doc);
+        Assert.assertTrue(is.read() > -1);
+        is.close();
+    }
+
+    @Test
+    public void abandonedReading() throws IOException, InterruptedException {
+        Document doc = Jsoup.parse(resultsPage, "https://nhentai.net/");
+        // Browser abandoning the stream without closing it; serialization must give up after the timeout
+        InputStream is = CustomWebViewClient.streamHtml(doc, 200);
+        Assert.assertTrue(is.read() > -1);
+        Thread.sleep(2000);
+        Assert.assertThrows(IOException.class, () -> IOUtils.consume(is));
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws IOException {
+        Document doc = Jsoup.parse(resultsPage, "https://nhentai.net/");
+
+        // Before : whole document serialized into a String, then into a byte array
+        long allocStart = allocatedBytes();
+        long start = System.nanoTime();
+        InputStream is = new ByteArrayInputStream(doc.toString().getBytes(StandardCharsets.UTF_8));
+        int first = is.read();
+        long ttfbBefore = (System.nanoTime() - start) / 1000;
+        IOUtils.consume(is);
+        long allocBefore = allocatedBytes() - allocStart;
+        Assert.assertTrue(first > -1);
+
+        // After : document streamed while being serialized
+        allocStart = allocatedBytes();
+        start = System.nanoTime();
+        try (InputStream streamed = CustomWebViewClient.streamHtml(doc)) {
+            first = streamed.read();
+            long ttfbAfter = (System.nanoTime() - start) / 1000;
+            IOUtils.consume(streamed);
+            long allocAfter = allocatedBytes() - allocStart;
+            Assert.assertTrue(first > -1);
+
+            System.out.printf("Results page of %d books (%d KB) : full serialization TTFB %d us, %d KB allocated; streaming TTFB %d us, %d KB allocated%n",
+                    NB_CARDS, resultsPage.length() / 1024, ttfbBefore, allocBefore / 1024, ttfbAfter, allocAfter / 1024);
+        }
+    }
+}
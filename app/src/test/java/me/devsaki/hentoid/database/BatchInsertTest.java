@@ -0,0 +1,120 @@
+package me.devsaki.hentoid.database;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import me.devsaki.hentoid.database.domains.Attribute;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.ImageFile;
+import me.devsaki.hentoid.enums.AttributeType;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+import me.devsaki.hentoid.util.ContentHelper;
+
+/**
+ * Insertion of imported books, as done by the metadata import : one transaction per batch of books
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BatchInsertTest extends AbstractObjectBoxTest {
+
+    private static final int NB_PAGES = 20;
+    private static final int NB_ARTISTS = 50;
+
+    private static CollectionDAO dao;
+    private static int bookIndex = 0;
+
+    @BeforeClass
+    public static void prepareDB() {
+        dao = new ObjectBoxDAO(store);
+    }
+
+    private static List<Content> newBooks(int nbBooks) {
+        List<Content> result = new ArrayList<>();
+        for (int i = 0; i < nbBooks; i++) {
+            int index = bookIndex++;
+            Content c = new Content()
+                    .setSite(Site.NHENTAI)
+                    .setUrl("/g/" + index + "/")
+                    .setTitle("Book " + index)
+                    .setStatus(StatusContent.DOWNLOADED);
+            List<Attribute> attrs = new ArrayList<>();
+            attrs.add(new Attribute(AttributeType.ARTIST, "artist" + (index % NB_ARTISTS), "/artist/" + (index % NB_ARTISTS), Site.NHENTAI));
+            attrs.add(new Attribute(AttributeType.TAG, "tag" + (index % 7), "/tag/" + (index % 7), Site.NHENTAI));
+            c.addAttributes(attrs);
+            List<ImageFile> imgs = new ArrayList<>();
+            for (int p = 0; p < NB_PAGES; p++)
+                imgs.add(ImageFile.fromImageUrl(p, "https://host/" + index + "/" + p + ".jpg", StatusContent.DOWNLOADED, NB_PAGES).setIsCover(0 == p));
+            c.setImageFiles(imgs);
+            result.add(c);
+        }
+        return result;
+    }
+
+    private static void insertPerBook(@NonNull Context context, @NonNull List<Content> books) {
+        for (Content c : books) ContentHelper.addContent(context, dao, c);
+    }
+
+    private static void insertBatch(@NonNull Context context, @NonNull List<Content> books, int batchSize) {
+        Map<String, Attribute> attributeCache = dao.selectAttributesByKey();
+        for (int i = 0; i < books.size(); i += batchSize) {
+            List<Content> batch = books.subList(i, Math.min(books.size(), i + batchSize));
+            dao.runInTx(() -> {
+                for (Content c : batch) ContentHelper.addContent(context, dao, c, attributeCache);
+            });
+        }
+    }
+
+    @Test
+    public void insertInOneTransaction() {
+        Context context = ApplicationProvider.getApplicationContext();
+        List<Content> books = newBooks(2 * NB_ARTISTS);
+        insertBatch(context, books, 250);
+
+        for (Content c : books) {
+            Content dbContent = dao.selectContentBySourceAndUrl(Site.NHENTAI, c.getUrl(), "");
+            Assert.assertNotNull(dbContent);
+            Assert.assertEquals(c.getId(), dbContent.getId());
+            Assert.assertEquals(NB_PAGES, dbContent.getImageFiles().size());
+            Assert.assertEquals(2, dbContent.getAttributes().size());
+        }
+        // Attributes shared by books of the same batch are only created once
+        Content first = dao.selectContent(books.get(0).getId());
+        Content sameArtist = dao.selectContent(books.get(NB_ARTISTS).getId());
+        Assert.assertEquals(
+                first.getAttributeMap().get(AttributeType.ARTIST).get(0).getId(),
+                sameArtist.getAttributeMap().get(AttributeType.ARTIST).get(0).getId());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        final int nbBooks = 2000;
+        Context context = ApplicationProvider.getApplicationContext();
+
+        List<Content> books = newBooks(nbBooks);
+        long start = System.currentTimeMillis();
+        insertPerBook(context, books);
+        long perBookTime = System.currentTimeMillis() - start;
+
+        books = newBooks(nbBooks);
+        start = System.currentTimeMillis();
+        insertBatch(context, books, 250);
+        long batchTime = System.currentTimeMillis() - start;
+
+        System.out.printf("%d books : %d ms with one transaction per book; %d ms with one transaction per 250 books%n", nbBooks, perBookTime, batchTime);
+    }
+}
@@ -0,0 +1,144 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import me.devsaki.hentoid.database.domains.Attribute;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.ImageFile;
+import me.devsaki.hentoid.enums.AttributeType;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentUpdateTest extends AbstractObjectBoxTest {
+
+    private static final int NB_PAGES = 20;
+
+    private static CollectionDAO dao;
+
+    @BeforeClass
+    public static void prepareDB() {
+        dao = new ObjectBoxDAO(store);
+    }
+
+    private static long[] insertBooks(int nbBooks) {
+        long[] result = new long[nbBooks];
+        for (int i = 0; i < nbBooks; i++) {
+            Content c = new Content()
+                    .setSite(Site.NHENTAI)
+                    .setUrl("/g/" + i + "/")
+                    .setTitle("Book " + i)
+                    .setStatus(StatusContent.DOWNLOADED);
+            c.addAttributes(Arrays.asList(new Attribute(AttributeType.TAG, "tag" + (i % 50)), new Attribute(AttributeType.ARTIST, "artist" + (i % 200))));
+            List<ImageFile> imgs = new ArrayList<>(NB_PAGES);
+            for (int p = 1; p <= NB_PAGES; p++) {
+                ImageFile img = ImageFile.fromImageUrl(p, "https://host/" + i + "/" + p + ".jpg", StatusContent.DOWNLOADED, NB_PAGES);
+                img.setRead(p < 5);
+                imgs.add(img);
+            }
+            c.setImageFiles(imgs);
+            c.setReads(3);
+            c.setReadPagesCount(4);
+            result[i] = dao.insertContent(c);
+        }
+        return result;
+    }
+
+    @Test
+    public void update() {
+        long[] ids = insertBooks(4);
+        Content c = dao.selectContent(ids[0]);
+        c.setCompleted(true);
+        dao.insertContentCore(c);
+        dao.updateContentDeleteFlag(ids[3], true);
+
+        long[] updated = dao.updateContents(ids, new ContentUpdate().toggleCompleted().setFavourite(true).setRating(4));
+        Assert.assertArrayEquals(Arrays.copyOf(ids, 3), updated);
+        Assert.assertFalse(dao.selectContent(ids[0]).isCompleted());
+        for (int i = 0; i < 3; i++) {
+            c = dao.selectContent(ids[i]);
+            if (i > 0) Assert.assertTrue(c.isCompleted());
+            Assert.assertTrue(c.isFavourite());
+            Assert.assertEquals(4, c.getRating());
+            // Relations are kept
+            Assert.assertEquals(NB_PAGES, c.getImageFiles().size());
+            Assert.assertEquals(2, c.getAttributes().size());
+        }
+        // Books being processed are left untouched by completed state changes
+        c = dao.selectContent(ids[3]);
+        Assert.assertFalse(c.isCompleted());
+        Assert.assertFalse(c.isFavourite());
+        Assert.assertEquals(0, c.getRating());
+
+        // ...but not by favourite and rating changes
+        updated = dao.updateContents(new long[]{ids[3]}, new ContentUpdate().toggleFavourite().setRating(2));
+        Assert.assertArrayEquals(new long[]{ids[3]}, updated);
+        c = dao.selectContent(ids[3]);
+        Assert.assertTrue(c.isFavourite());
+        Assert.assertEquals(2, c.getRating());
+
+        // Other properties are kept
+        dao.updateContents(ids, new ContentUpdate().resetReadStats());
+        c = dao.selectContent(ids[1]);
+        Assert.assertEquals(0, c.getReads());
+        Assert.assertEquals(0, c.getReadPagesCount());
+        Assert.assertTrue(c.isFavourite());
+        Assert.assertEquals(4, c.getRating());
+        for (ImageFile img : c.getImageFiles()) Assert.assertFalse(img.isRead());
+        Assert.assertEquals(3, dao.selectContent(ids[3]).getReads());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int nbBooks = 2000;
+        long[] ids = insertBooks(nbBooks);
+
+        // Before : each book is loaded and inserted again
+        long start = System.nanoTime();
+        for (long id : ids) {
+            Content c = dao.selectContent(id);
+            c.setRating(3);
+            dao.insertContent(c);
+        }
+        double rateBeforeMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        for (long id : ids) {
+            Content c = dao.selectContent(id);
+            c.setReads(0);
+            c.setReadPagesCount(0);
+            c.setLastReadPageIndex(0);
+            c.setLastReadDate(0);
+            List<ImageFile> imgs = c.getImageFiles();
+            for (ImageFile img : imgs) img.setRead(false);
+            dao.insertImageFiles(imgs);
+            dao.insertContentCore(c);
+        }
+        double resetBeforeMs = (System.nanoTime() - start) / 1e6;
+
+        // After : one bulk update
+        start = System.nanoTime();
+        Assert.assertEquals(nbBooks, dao.updateContents(ids, new ContentUpdate().setRating(5)).length);
+        double rateAfterMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        dao.updateContents(ids, new ContentUpdate().resetReadStats());
+        double resetAfterMs = (System.nanoTime() - start) / 1e6;
+
+        for (Content c : dao.selectContent(ids)) Assert.assertEquals(5, c.getRating());
+        System.out.printf(Locale.ENGLISH, "%d books :%nrating : per book %.1f ms; bulk %.1f ms%nread stats reset : per book %.1f ms; bulk %.1f ms%n",
+                nbBooks, rateBeforeMs, rateAfterMs, resetBeforeMs, resetAfterMs);
+        Assert.assertTrue(rateAfterMs < rateBeforeMs);
+        Assert.assertTrue(resetAfterMs < resetBeforeMs);
+    }
+}
@@ -0,0 +1,170 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import me.devsaki.hentoid.database.domains.DuplicateEntry;
+
+public class DuplicateEntriesPagingTest {
+
+    /**
+     * Stands for the Content box : book ID => title
+     */
+    private static class Books {
+        final Map<Long, String> titles = new HashMap<>();
+        int nbQueries = 0;
+        int nbLoaded = 0;
+
+        List<String> load(List<Long> ids) {
+            nbQueries++;
+            List<String> result = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                String title = titles.get(id);
+                if (title != null) {
+                    result.add(id + ":" + title);
+                    nbLoaded++;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static BatchLoadingCache<String> buildCache(Books books, int maxSize) {
+        return new BatchLoadingCache<>(maxSize, books::load, s -> Long.parseLong(s.substring(0, s.indexOf(':'))));
+    }
+
+    @Test
+    public void batchLoading() {
+        Books books = new Books();
+        for (long i = 1; i <= 10; i++) books.titles.put(i, "book" + i);
+        BatchLoadingCache<String> cache = buildCache(books, 5);
+
+        Map<Long, String> result = cache.get(Arrays.asList(1L, 2L, 3L, 42L));
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("2:book2", result.get(2L));
+        Assert.assertEquals(1, books.nbQueries);
+
+        // Cached objects aren't loaded again; missing ones are loaded together
+        result = cache.get(Arrays.asList(2L, 3L, 4L, 5L));
+        Assert.assertEquals(4, result.size());
+        Assert.assertEquals(2, books.nbQueries);
+        Assert.assertEquals(5, books.nbLoaded);
+        cache.get(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+        Assert.assertEquals(2, books.nbQueries);
+
+        // Least recently used objects are dropped
+        cache.get(Arrays.asList(6L, 7L));
+        cache.get(Arrays.asList(1L, 2L));
+        Assert.assertEquals(4, books.nbQueries);
+
+        // Evicted objects are loaded again
+        books.titles.put(6L, "renamed");
+        cache.evict(6);
+        Assert.assertEquals("6:renamed", cache.get(Arrays.asList(6L, 7L)).get(6L));
+        Assert.assertEquals(5, books.nbQueries);
+        Assert.assertEquals(10, books.nbLoaded);
+    }
+
+    @Test
+    public void references() {
+        List<DuplicateEntry> entries = Arrays.asList(
+                entry(10, 500, 11),
+                entry(10, 500, 12),
+                entry(20, 400, 21),
+                entry(30, 300, 31),
+                entry(30, 300, 32),
+                entry(30, 300, 33));
+        DuplicateReferences references = new DuplicateReferences(entries);
+
+        Assert.assertArrayEquals(new long[]{10, 20, 30}, references.getIds());
+        Assert.assertEquals(6, references.getNbEntries());
+        DuplicateReferences.Reference ref = references.get(30);
+        Assert.assertNotNull(ref);
+        Assert.assertEquals(3, ref.nbDuplicates);
+        Assert.assertEquals(300, ref.size);
+
+        Assert.assertFalse(references.remove(10));
+        Assert.assertEquals(1, references.get(10).nbDuplicates);
+        Assert.assertTrue(references.remove(20));
+        Assert.assertNull(references.get(20));
+        Assert.assertFalse(references.remove(42));
+        Assert.assertArrayEquals(new long[]{10, 30}, references.getIds());
+        Assert.assertEquals(4, references.getNbEntries());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int nbEntries = 20000;
+        int pageSize = 20;
+        int nbChanges = 50;
+        Random random = new Random(42);
+
+        // 20k pairs over 8k reference books
+        Books books = new Books();
+        List<DuplicateEntry> entries = new ArrayList<>(nbEntries);
+        long nextId = 1;
+        while (entries.size() < nbEntries) {
+            long referenceId = nextId++;
+            books.titles.put(referenceId, "book" + referenceId);
+            int nbDuplicates = 1 + random.nextInt(4);
+            for (int i = 0; i < nbDuplicates && entries.size() < nbEntries; i++) {
+                long duplicateId = nextId++;
+                books.titles.put(duplicateId, "book" + duplicateId);
+                entries.add(entry(referenceId, 1000000L - referenceId, duplicateId));
+            }
+        }
+
+        // Before : every change re-emits all entries, each one loading its two books
+        int queriesBefore = books.nbQueries;
+        long start = System.nanoTime();
+        for (int c = 0; c < nbChanges; c++) {
+            List<DuplicateEntry> remaining = entries.subList(c, entries.size());
+            for (DuplicateEntry e : remaining) books.load(Arrays.asList(e.getReferenceId(), e.getDuplicateId()));
+        }
+        double beforeMs = (System.nanoTime() - start) / 1e6 / nbChanges;
+        double beforeQueries = (books.nbQueries - queriesBefore) * 1.0 / nbChanges;
+
+        // After : references are built once; each change updates them and loads the displayed pages again
+        DuplicateReferences references = new DuplicateReferences(entries);
+        BatchLoadingCache<String> cache = buildCache(books, 200);
+        cache.get(pageIds(references, 0, pageSize * 2));
+        int queriesAfter = books.nbQueries;
+        start = System.nanoTime();
+        for (int c = 0; c < nbChanges; c++) {
+            DuplicateEntry removed = entries.get(c);
+            references.remove(removed.getReferenceId());
+            cache.evict(removed.getReferenceId());
+            cache.evict(removed.getDuplicateId());
+            Map<Long, String> page = cache.get(pageIds(references, 0, pageSize * 2));
+            Assert.assertEquals(Math.min(pageSize * 2, references.getIds().length), page.size());
+        }
+        double afterMs = (System.nanoTime() - start) / 1e6 / nbChanges;
+        double afterQueries = (books.nbQueries - queriesAfter) * 1.0 / nbChanges;
+
+        System.out.printf(Locale.ENGLISH, "%d entries; cost per change :%nfull list : %.1f queries, %.3f ms%npaged : %.1f queries, %.3f ms%n",
+                nbEntries, beforeQueries, beforeMs, afterQueries, afterMs);
+        Assert.assertTrue(afterQueries <= 1);
+        Assert.assertTrue(afterMs < beforeMs);
+    }
+
+    private static DuplicateEntry entry(long referenceId, long referenceSize, long duplicateId) {
+        return new DuplicateEntry(referenceId, referenceSize, duplicateId, -1, 0f, 0f, 0f, 0);
+    }
+
+    private static List<Long> pageIds(DuplicateReferences references, int start, int size) {
+        long[] ids = references.getIds();
+        List<Long> result = new ArrayList<>(size);
+        for (int i = start; i < Math.min(ids.length, start + size); i++) result.add(ids[i]);
+        return result;
+    }
+}
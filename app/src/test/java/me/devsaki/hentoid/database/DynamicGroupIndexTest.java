@@ -0,0 +1,365 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import me.devsaki.hentoid.activities.bundles.SearchActivityBundle;
+import me.devsaki.hentoid.database.domains.Attribute;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.enums.AttributeType;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+
+@RunWith(RobolectricTestRunner.class)
+public class DynamicGroupIndexTest extends AbstractObjectBoxTest {
+
+    private static int bookIndex = 0;
+
+    /**
+     * Collection where each book has one tag; the criteria of a group are the tag its books have
+     * The cover of a group is its book with the highest ID
+     */
+    private static class Library implements DynamicGroupIndex.Evaluator, DynamicGroupIndex.CoverSelector {
+        final Map<Long, Integer> tags = new HashMap<>();
+        int nbFullEvaluations = 0;
+        final List<long[]> partialEvaluations = new ArrayList<>();
+        Runnable onFullEvaluation = null;
+
+        @Override
+        public long[] evaluate(long groupId, @NonNull String searchUri, @Nullable long[] contentIds) {
+            int tag = Integer.parseInt(searchUri.substring(4));
+            List<Long> result = new ArrayList<>();
+            if (null == contentIds) {
+                nbFullEvaluations++;
+                for (Map.Entry<Long, Integer> entry : tags.entrySet())
+                    if (entry.getValue() == tag) result.add(entry.getKey());
+                if (onFullEvaluation != null) onFullEvaluation.run();
+            } else {
+                partialEvaluations.add(contentIds);
+                for (long id : contentIds) {
+                    Integer bookTag = tags.get(id);
+                    if (bookTag != null && bookTag == tag) result.add(id);
+                }
+            }
+            long[] ids = new long[result.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = result.get(i);
+            return ids;
+        }
+
+        @Override
+        public long select(@NonNull long[] contentIds) {
+            return contentIds[contentIds.length - 1];
+        }
+    }
+
+    /**
+     * Storage kept in memory
+     */
+    private static class MemoryStorage implements DynamicGroupIndex.Storage {
+        final Map<Long, DynamicGroupIndex.Members> contents = new HashMap<>();
+        final Set<Long> outdated = new HashSet<>();
+
+        @Override
+        public synchronized Map<Long, DynamicGroupIndex.Members> load(@NonNull Set<Long> outdatedGroupIds) {
+            outdatedGroupIds.addAll(outdated);
+            return new HashMap<>(contents);
+        }
+
+        @Override
+        public synchronized void save(@NonNull Map<Long, DynamicGroupIndex.Members> contents, boolean outdated) {
+            this.contents.putAll(contents);
+            if (outdated) this.outdated.addAll(contents.keySet());
+            else this.outdated.removeAll(contents.keySet());
+        }
+
+        @Override
+        public synchronized void setOutdated() {
+            outdated.addAll(contents.keySet());
+        }
+
+        @Override
+        public synchronized void remove(long groupId) {
+            contents.remove(groupId);
+            outdated.remove(groupId);
+        }
+    }
+
+    private static Library buildLibrary(int... tags) {
+        Library library = new Library();
+        for (int i = 0; i < tags.length; i++) library.tags.put(i + 1L, tags[i]);
+        return library;
+    }
+
+    @Test
+    public void incrementalUpdates() {
+        Library library = buildLibrary(1, 2, 1, 3, 1);
+        DynamicGroupIndex index = new DynamicGroupIndex(library, library, new MemoryStorage(), () -> {
+        });
+
+        Assert.assertArrayEquals(new long[]{1, 3, 5}, index.getContent(10, "tag:1"));
+        Assert.assertArrayEquals(new long[]{2}, index.getContent(20, "tag:2"));
+        Assert.assertEquals(2, library.nbFullEvaluations);
+
+        // Nothing modified => nothing evaluated
+        Assert.assertArrayEquals(new long[]{1, 3, 5}, index.getContent(10, "tag:1"));
+        Assert.assertTrue(library.partialEvaluations.isEmpty());
+
+        // Insertion, update and removal
+        library.tags.put(6L, 2);
+        library.tags.put(3L, 2);
+        library.tags.remove(5L);
+        index.invalidate(6, 3, 5);
+        Assert.assertArrayEquals(new long[]{1}, index.getContent(10, "tag:1"));
+        Assert.assertArrayEquals(new long[]{2, 3, 6}, index.getContent(20, "tag:2"));
+
+        // Only modified books have been evaluated, once per group
+        Assert.assertEquals(2, library.nbFullEvaluations);
+        Assert.assertEquals(2, library.partialEvaluations.size());
+        for (long[] ids : library.partialEvaluations) Assert.assertArrayEquals(new long[]{3, 5, 6}, ids);
+    }
+
+    @Test
+    public void criteriaChange() {
+        Library library = buildLibrary(1, 2, 1);
+        DynamicGroupIndex index = new DynamicGroupIndex(library, library, new MemoryStorage(), () -> {
+        });
+
+        Assert.assertArrayEquals(new long[]{1, 3}, index.getContent(10, "tag:1"));
+        Assert.assertArrayEquals(new long[]{2}, index.getContent(10, "tag:2"));
+        Assert.assertEquals(2, library.nbFullEvaluations);
+
+        // Removed groups are computed again
+        index.remove(10);
+        Assert.assertArrayEquals(new long[]{2}, index.getContent(10, "tag:2"));
+        Assert.assertEquals(3, library.nbFullEvaluations);
+    }
+
+    @Test
+    public void modificationsDuringComputation() {
+        Library library = buildLibrary(1, 3);
+        DynamicGroupIndex index = new DynamicGroupIndex(library, library, new MemoryStorage(), () -> {
+        });
+
+        // No group has been computed yet => nothing to keep track of
+        index.invalidate(1);
+
+        // Book modified after the collection has been read
+        library.onFullEvaluation = () -> {
+            library.tags.put(2L, 1);
+            index.invalidate(2);
+        };
+        Assert.assertArrayEquals(new long[]{1, 2}, index.getContent(10, "tag:1"));
+        Assert.assertEquals(1, library.partialEvaluations.size());
+        Assert.assertArrayEquals(new long[]{2}, library.partialEvaluations.get(0));
+    }
+
+    @Test
+    public void lastContent() throws InterruptedException {
+        Library library = buildLibrary(1, 2, 1);
+        Semaphore updates = new Semaphore(0);
+        DynamicGroupIndex index = new DynamicGroupIndex(library, library, new MemoryStorage(), updates::release);
+
+        // Content not computed yet => computed in the background
+        Assert.assertNull(index.getLastContent(10, "tag:1"));
+        Assert.assertTrue(updates.tryAcquire(5, TimeUnit.SECONDS));
+        DynamicGroupIndex.Members members = index.getLastContent(10, "tag:1");
+        Assert.assertNotNull(members);
+        Assert.assertArrayEquals(new long[]{1, 3}, members.ids);
+        Assert.assertEquals(3, members.coverId);
+
+        // Outdated content is served while it's being updated
+        library.tags.put(4L, 1);
+        index.invalidate(4);
+        members = index.getLastContent(10, "tag:1");
+        Assert.assertNotNull(members);
+        Assert.assertArrayEquals(new long[]{1, 3}, members.ids);
+        Assert.assertTrue(updates.tryAcquire(5, TimeUnit.SECONDS));
+        members = index.getLastContent(10, "tag:1");
+        Assert.assertNotNull(members);
+        Assert.assertArrayEquals(new long[]{1, 3, 4}, members.ids);
+        Assert.assertEquals(4, members.coverId);
+
+        // Up-to-date content => nothing to compute
+        Assert.assertFalse(updates.tryAcquire(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, library.nbFullEvaluations);
+        Assert.assertEquals(1, library.partialEvaluations.size());
+
+        // Reads don't wait for the evaluations in progress
+        CountDownLatch evaluating = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        library.onFullEvaluation = () -> {
+            evaluating.countDown();
+            try {
+                resume.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Assert.assertNull(index.getLastContent(10, "tag:2"));
+        Assert.assertTrue(evaluating.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(index.getLastContent(10, "tag:2"));
+        resume.countDown();
+        Assert.assertTrue(updates.tryAcquire(5, TimeUnit.SECONDS));
+        members = index.getLastContent(10, "tag:2");
+        Assert.assertNotNull(members);
+        Assert.assertArrayEquals(new long[]{2}, members.ids);
+    }
+
+    @Test
+    public void persistence() {
+        Library library = buildLibrary(1, 2, 1);
+        MemoryStorage storage = new MemoryStorage();
+        DynamicGroupIndex index = new DynamicGroupIndex(library, library, storage, () -> {
+        });
+        Assert.assertArrayEquals(new long[]{1, 3}, index.getContent(10, "tag:1"));
+        Assert.assertTrue(storage.outdated.isEmpty());
+
+        // Stored content is used as is
+        index = new DynamicGroupIndex(library, library, storage, () -> {
+        });
+        Assert.assertArrayEquals(new long[]{1, 3}, index.getContent(10, "tag:1"));
+        Assert.assertEquals(1, library.nbFullEvaluations);
+
+        // Stored content is flagged until the modified books have been evaluated
+        library.tags.put(4L, 1);
+        index.invalidate(4);
+        Assert.assertTrue(storage.outdated.contains(10L));
+        Assert.assertArrayEquals(new long[]{1, 3, 4}, index.getContent(10, "tag:1"));
+        Assert.assertTrue(storage.outdated.isEmpty());
+        Assert.assertArrayEquals(new long[]{1, 3, 4}, storage.contents.get(10L).ids);
+        Assert.assertEquals(1, library.nbFullEvaluations);
+
+        // Content still flagged when loaded (e.g. app killed before the evaluation) is computed again
+        library.tags.put(5L, 1);
+        index.invalidate(5);
+        index = new DynamicGroupIndex(library, library, storage, () -> {
+        });
+        Assert.assertArrayEquals(new long[]{1, 3, 4, 5}, index.getContent(10, "tag:1"));
+        Assert.assertEquals(2, library.nbFullEvaluations);
+        Assert.assertTrue(storage.outdated.isEmpty());
+
+        index.remove(10);
+        Assert.assertTrue(storage.contents.isEmpty());
+    }
+
+    @Test
+    public void merge() {
+        Assert.assertArrayEquals(new long[]{1, 2, 4, 7, 9}, DynamicGroupIndex.merge(new long[]{1, 3, 4, 7}, new long[]{2, 3, 7, 9}, new long[]{2, 7, 9}));
+        Assert.assertArrayEquals(new long[]{5}, DynamicGroupIndex.merge(new long[0], new long[]{5, 6}, new long[]{5}));
+        Assert.assertArrayEquals(new long[0], DynamicGroupIndex.merge(new long[]{5, 6}, new long[]{5, 6}, new long[0]));
+        Assert.assertArrayEquals(new long[]{1, 2, 3}, DynamicGroupIndex.merge(new long[]{1, 2, 3}, new long[0], new long[0]));
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int nbBooks = 20000;
+        int nbTags = 200;
+        int nbGroups = 50;
+        int nbEmissions = 20;
+        int nbModifiedPerEmission = 10;
+        Random random = new Random(42);
+
+        CollectionDAO dao = new ObjectBoxDAO(store);
+        ObjectBoxDB db = ObjectBoxDB.getInstance(store);
+        Map<String, Attribute> attributeCache = dao.selectAttributesByKey();
+        List<Long> bookIds = new ArrayList<>();
+        dao.runInTx(() -> {
+            for (int i = 0; i < nbBooks; i++)
+                bookIds.add(dao.insertContent(newBook(random.nextInt(nbTags)), attributeCache));
+        });
+
+        // One dynamic group per tag; stored directly so that their content isn't computed in the background
+        List<Group> groups = new ArrayList<>();
+        for (Attribute a : attributeCache.values()) {
+            if (groups.size() == nbGroups) break;
+            Group g = new Group(Grouping.DYNAMIC, a.getName(), groups.size())
+                    .setSearchUri(SearchActivityBundle.Companion.buildSearchUri(Collections.singletonList(a), "", 0, 0).toString());
+            g.id = store.boxFor(Group.class).put(g);
+            groups.add(g);
+        }
+
+        // Initial computation
+        long start = System.nanoTime();
+        for (Group g : groups) db.selectDynamicGroupContent(g);
+        long computeMs = (System.nanoTime() - start) / 1000000;
+
+        long materializedNs = 0;
+        long fullNs = 0;
+        for (int e = 0; e < nbEmissions; e++) {
+            // Books downloaded or removed between two emissions of the groups list
+            for (int i = 0; i < nbModifiedPerEmission; i++) {
+                if (0 == i % 2) {
+                    bookIds.add(dao.insertContent(newBook(random.nextInt(nbTags))));
+                } else {
+                    Content c = dao.selectContent(bookIds.remove(random.nextInt(bookIds.size())));
+                    if (c != null) dao.deleteContent(c);
+                }
+            }
+
+            start = System.nanoTime();
+            long[][] materialized = new long[groups.size()][];
+            for (int g = 0; g < groups.size(); g++)
+                materialized[g] = db.selectDynamicGroupContent(groups.get(g));
+            materializedNs += System.nanoTime() - start;
+
+            // What every emission used to do : search the whole collection for each group
+            start = System.nanoTime();
+            long[][] full = new long[groups.size()][];
+            for (int g = 0; g < groups.size(); g++) {
+                full[g] = db.evaluateDynamicGroup(groups.get(g).id, groups.get(g).searchUri, null);
+                Arrays.sort(full[g]);
+            }
+            fullNs += System.nanoTime() - start;
+
+            for (int g = 0; g < groups.size(); g++) Assert.assertArrayEquals(full[g], materialized[g]);
+        }
+
+        // Next startup : stored content is loaded instead of being computed again
+        DynamicGroupIndex restored = new DynamicGroupIndex(db::evaluateDynamicGroup, ids -> ids[0], new DynamicGroupStorage(store), () -> {
+        });
+        start = System.nanoTime();
+        for (Group g : groups)
+            Assert.assertArrayEquals(db.selectDynamicGroupContent(g), restored.getContent(g.id, g.searchUri));
+        long restoreMs = (System.nanoTime() - start) / 1000000;
+
+        double materializedMs = materializedNs / 1e6 / nbEmissions;
+        double fullMs = fullNs / 1e6 / nbEmissions;
+        System.out.printf(Locale.ENGLISH, "%d groups over %d books : initial computation %d ms; loading stored content %d ms%nAverage emission with %d modified books : materialized %.3f ms; full search %.3f ms%n",
+                groups.size(), nbBooks, computeMs, restoreMs, nbModifiedPerEmission, materializedMs, fullMs);
+    }
+
+    private static Content newBook(int tag) {
+        int index = bookIndex++;
+        Content c = new Content()
+                .setSite(Site.NHENTAI)
+                .setUrl("/g/" + index + "/")
+                .setTitle("Book " + index)
+                .setStatus(StatusContent.DOWNLOADED);
+        c.addAttributes(Collections.singletonList(new Attribute(AttributeType.TAG, "tag" + tag, "/tag/" + tag, Site.NHENTAI)));
+        return c;
+    }
+}
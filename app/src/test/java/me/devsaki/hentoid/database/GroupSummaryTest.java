@@ -0,0 +1,188 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.objectbox.query.Query;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.GroupItem;
+import me.devsaki.hentoid.database.domains.ImageFile;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+import me.devsaki.hentoid.util.GroupHelper;
+import me.devsaki.hentoid.util.Helper;
+import me.devsaki.hentoid.util.Preferences;
+
+@RunWith(RobolectricTestRunner.class)
+public class GroupSummaryTest extends AbstractObjectBoxTest {
+
+    private static CollectionDAO dao;
+    private static ObjectBoxDB db;
+    private static int bookIndex = 0;
+    private static final Map<Long, String> coverUrls = new HashMap<>();
+
+    @BeforeClass
+    public static void prepareDB() {
+        dao = new ObjectBoxDAO(store);
+        db = ObjectBoxDB.getInstance(store);
+    }
+
+    private static Content insertBook(long downloadDate) {
+        int i = bookIndex++;
+        Content c = new Content()
+                .setSite(Site.NHENTAI)
+                .setUrl("/g/" + i + "/")
+                .setTitle("Book " + i)
+                .setStatus(StatusContent.DOWNLOADED)
+                .setDownloadDate(downloadDate);
+        List<ImageFile> imgs = new ArrayList<>();
+        imgs.add(ImageFile.fromImageUrl(0, "https://host/" + i + "/cover.jpg", StatusContent.DOWNLOADED, 1).setIsCover(true));
+        c.setImageFiles(imgs);
+        dao.insertContent(c);
+        coverUrls.put(c.getId(), "https://host/" + i + "/cover.jpg");
+        return c;
+    }
+
+    private static Group insertGroup(Grouping grouping, String name) {
+        Group g = new Group(grouping, name, -1);
+        g.id = dao.insertGroup(g);
+        return g;
+    }
+
+    private static void assertSummary(long groupId, int nbItems, long latestDownloadDate, long coverContentId) {
+        Group g = dao.selectGroup(groupId);
+        Assert.assertNotNull(g);
+        Assert.assertEquals(nbItems, g.getNbItems());
+        Assert.assertEquals(latestDownloadDate, g.getLatestDownloadDate());
+        Assert.assertEquals(coverContentId, g.coverContent.getTargetId());
+        Assert.assertEquals((coverContentId > 0) ? coverUrls.get(coverContentId) : "", g.getCoverUri());
+        // Summary matches the actual items
+        Assert.assertEquals(nbItems, g.getItems().size());
+    }
+
+    @Test
+    public void consistency() {
+        Group g1 = insertGroup(Grouping.CUSTOM, "custom1");
+        Group g2 = insertGroup(Grouping.CUSTOM, "custom2");
+        assertSummary(g1.id, 0, 0, 0);
+
+        // Adds
+        Content c1 = insertBook(1000);
+        Content c2 = insertBook(3000);
+        Content c3 = insertBook(2000);
+        GroupHelper.moveContentToCustomGroup(c1, g1, dao);
+        assertSummary(g1.id, 1, 1000, c1.getId());
+        GroupHelper.moveContentToCustomGroup(c2, g1, dao);
+        GroupHelper.moveContentToCustomGroup(c3, g1, dao);
+        assertSummary(g1.id, 3, 3000, c1.getId());
+
+        // Moves
+        GroupHelper.moveContentToCustomGroup(c1, g2, dao);
+        assertSummary(g1.id, 2, 3000, c2.getId());
+        assertSummary(g2.id, 1, 1000, c1.getId());
+        GroupHelper.moveContentToCustomGroup(c2, g2, dao);
+        assertSummary(g1.id, 1, 2000, c3.getId());
+        assertSummary(g2.id, 2, 3000, c1.getId());
+
+        // Chosen cover is kept as long as its book is inside the group
+        dao.updateGroupCover(g2.id, c2.getId());
+        assertSummary(g2.id, 2, 3000, c2.getId());
+        GroupHelper.moveContentToCustomGroup(c3, g2, dao);
+        assertSummary(g2.id, 3, 3000, c2.getId());
+        assertSummary(g1.id, 0, 0, 0);
+
+        // Download date changes
+        c3 = dao.selectContent(c3.getId());
+        c3.setDownloadDate(5000);
+        dao.insertContent(c3);
+        assertSummary(g2.id, 3, 5000, c2.getId());
+
+        // Deletes
+        dao.deleteContent(dao.selectContent(c2.getId()));
+        assertSummary(g2.id, 2, 5000, c1.getId());
+        GroupHelper.moveContentToCustomGroup(dao.selectContent(c3.getId()), null, dao);
+        assertSummary(g2.id, 1, 1000, c1.getId());
+    }
+
+    @Test
+    public void attributeGroups() {
+        Group artist = insertGroup(Grouping.ARTIST, "artist");
+        List<Content> books = new ArrayList<>();
+        for (int i = 0; i < 5; i++) books.add(insertBook(100 + i));
+        GroupHelper.addContentsToAttributeGroup(artist, null, books, dao);
+        assertSummary(artist.id, 5, 104, books.get(0).getId());
+
+        List<Long> toRemove = new ArrayList<>();
+        for (GroupItem gi : dao.selectGroup(artist.id).getItems())
+            if (gi.getContentId() == books.get(0).getId() || gi.getContentId() == books.get(4).getId())
+                toRemove.add(gi.id);
+        dao.deleteGroupItems(toRemove);
+        assertSummary(artist.id, 3, 103, books.get(1).getId());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int nbGroups = 10000;
+        int nbBooks = 2000;
+        long[] bookIds = new long[nbBooks];
+        for (int i = 0; i < nbBooks; i++) bookIds[i] = insertBook(i * 1000L).getId();
+        List<GroupItem> items = new ArrayList<>();
+        for (int i = 0; i < nbGroups; i++) {
+            Group g = new Group(Grouping.ARTIST, "bench" + i, i);
+            g.id = dao.insertGroup(g);
+            for (int j = 0; j < 1 + i % 5; j++) items.add(new GroupItem(bookIds[(i * 7 + j * 13) % nbBooks], g, j));
+        }
+        db.insertGroupItems(items);
+
+        // Before : groups are ordered in Java according to their items and books, which have to be loaded
+        long start = System.nanoTime();
+        List<Group> groups;
+        try (Query<Group> q = db.selectGroupsQ(Grouping.ARTIST.getId(), "bench", Preferences.Constant.ORDER_FIELD_NONE, false, -1, false, -1)) {
+            groups = q.find();
+        }
+        List<Long> beforeBySize = new ArrayList<>();
+        List<Group> ordered = new ArrayList<>(groups);
+        ordered.sort((a, b) -> Integer.compare(b.getItems().size(), a.getItems().size()));
+        for (Group g : ordered) beforeBySize.add((long) g.getItems().size());
+        for (Group g : groups) {
+            long max = 0;
+            for (Content c : dao.selectContent(Helper.getPrimitiveArrayFromList(g.getContentIds())))
+                max = Math.max(max, c.getDownloadDate());
+        }
+        double beforeMs = (System.nanoTime() - start) / 1e6;
+
+        // After : groups are ordered by the DB according to their summary
+        start = System.nanoTime();
+        List<Group> bySize;
+        List<Group> byDate;
+        try (Query<Group> q = db.selectGroupsQ(Grouping.ARTIST.getId(), "bench", Preferences.Constant.ORDER_FIELD_CHILDREN, true, -1, false, -1)) {
+            bySize = q.find();
+        }
+        try (Query<Group> q = db.selectGroupsQ(Grouping.ARTIST.getId(), "bench", Preferences.Constant.ORDER_FIELD_DOWNLOAD_PROCESSING_DATE, true, -1, false, -1)) {
+            byDate = q.find();
+        }
+        double afterMs = (System.nanoTime() - start) / 1e6;
+
+        Assert.assertEquals(nbGroups, bySize.size());
+        for (int i = 0; i < nbGroups; i++)
+            Assert.assertEquals(beforeBySize.get(i).longValue(), bySize.get(i).getNbItems());
+        for (int i = 1; i < nbGroups; i++)
+            Assert.assertTrue(byDate.get(i - 1).getLatestDownloadDate() >= byDate.get(i).getLatestDownloadDate());
+        System.out.printf(Locale.ENGLISH, "%d groups : ordering by loading items %.1f ms; ordering by summary %.1f ms%n", nbGroups, beforeMs, afterMs);
+        Assert.assertTrue(afterMs < beforeMs);
+    }
+}
@@ -0,0 +1,242 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import me.devsaki.hentoid.database.domains.QueueRecord;
+
+public class QueueRanksTest {
+
+    private static QueueRecord newRecord(long id, int rank) {
+        QueueRecord result = new QueueRecord();
+        result.id = id;
+        result.setRank(rank);
+        return result;
+    }
+
+    /**
+     * Queue ranked the legacy way, i.e. 1, 2, 3...
+     */
+    private static List<QueueRecord> newContiguousQueue(int size) {
+        List<QueueRecord> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) result.add(newRecord(i + 1, i + 1));
+        return result;
+    }
+
+    private static List<Long> ids(List<QueueRecord> queue) {
+        List<Long> result = new ArrayList<>(queue.size());
+        for (QueueRecord qr : queue) result.add(qr.id);
+        return result;
+    }
+
+    /**
+     * Check the ranks of the given queue are strictly increasing
+     */
+    private static void assertSorted(List<QueueRecord> queue) {
+        for (int i = 1; i < queue.size(); i++)
+            Assert.assertTrue("Position " + i, queue.get(i - 1).getRank() < queue.get(i).getRank());
+    }
+
+    @Test
+    public void rankBetween() {
+        Assert.assertEquals(Integer.valueOf(QueueRanks.GAP), QueueRanks.rankBetween(null, null));
+        Assert.assertEquals(Integer.valueOf(0), QueueRanks.rankBetween(null, QueueRanks.GAP));
+        Assert.assertEquals(Integer.valueOf(2 * QueueRanks.GAP), QueueRanks.rankBetween(QueueRanks.GAP, null));
+        Assert.assertEquals(Integer.valueOf(15), QueueRanks.rankBetween(10, 20));
+        Assert.assertNull(QueueRanks.rankBetween(10, 11));
+        Assert.assertNull(QueueRanks.rankBetween(Integer.MAX_VALUE / 2, null));
+    }
+
+    @Test
+    public void move() {
+        List<QueueRecord> queue = newContiguousQueue(5);
+        QueueRanks.rebalance(queue);
+
+        // Only the moved record is changed
+        List<QueueRecord> changed = QueueRanks.move(queue, 4, 1);
+        Assert.assertEquals(1, changed.size());
+        Assert.assertEquals(5, changed.get(0).id);
+        Assert.assertEquals(Arrays.asList(1L, 5L, 2L, 3L, 4L), ids(queue));
+        assertSorted(queue);
+
+        changed = QueueRanks.move(queue, 0, 4);
+        Assert.assertEquals(1, changed.size());
+        Assert.assertEquals(Arrays.asList(5L, 2L, 3L, 4L, 1L), ids(queue));
+        assertSorted(queue);
+
+        Assert.assertTrue(QueueRanks.move(queue, 2, 2).isEmpty());
+        Assert.assertTrue(QueueRanks.move(queue, 7, 2).isEmpty());
+    }
+
+    @Test
+    public void moveWithoutRoom() {
+        // Legacy ranks leave no room between records : the whole queue is spread again
+        List<QueueRecord> queue = newContiguousQueue(5);
+        QueueRanks.move(queue, 0, 2);
+        Assert.assertEquals(Arrays.asList(2L, 3L, 1L, 4L, 5L), ids(queue));
+        assertSorted(queue);
+        Assert.assertFalse(QueueRanks.needsRebalance(queue));
+
+        // Subsequent moves only change the moved record
+        Assert.assertEquals(1, QueueRanks.move(queue, 4, 0).size());
+        assertSorted(queue);
+    }
+
+    @Test
+    public void insert() {
+        List<QueueRecord> queue = new ArrayList<>();
+        QueueRanks.insert(queue, newRecord(1, 0), 0);
+        QueueRanks.insert(queue, newRecord(2, 0), Integer.MAX_VALUE);
+        QueueRanks.insert(queue, newRecord(3, 0), 0);
+        List<QueueRecord> changed = QueueRanks.insert(queue, newRecord(4, 0), 1);
+        Assert.assertEquals(1, changed.size());
+        Assert.assertEquals(4, changed.get(0).id);
+        Assert.assertEquals(Arrays.asList(3L, 4L, 1L, 2L), ids(queue));
+        assertSorted(queue);
+    }
+
+    @Test
+    public void appendToSparseQueue() {
+        // Queue whose ranks are spread and start below zero after books have been moved to the top
+        List<QueueRecord> queue = new ArrayList<>(Arrays.asList(newRecord(1, -2 * QueueRanks.GAP), newRecord(2, 500), newRecord(3, 5 * QueueRanks.GAP)));
+
+        // Imported books go after the existing ones, whatever the size of the queue
+        List<QueueRecord> imported = Arrays.asList(newRecord(4, 0), newRecord(5, 0));
+        List<QueueRecord> changed = QueueRanks.append(queue, imported);
+        Assert.assertEquals(Arrays.asList(4L, 5L), ids(changed));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ids(queue));
+        assertSorted(queue);
+
+        // Empty queue
+        queue = new ArrayList<>();
+        changed = QueueRanks.append(queue, Arrays.asList(newRecord(1, 0), newRecord(2, 0)));
+        Assert.assertEquals(2, changed.size());
+        Assert.assertEquals(QueueRanks.GAP, queue.get(0).getRank());
+        assertSorted(queue);
+
+        // No room left at the bottom => the whole queue is spread again
+        queue = new ArrayList<>(Collections.singletonList(newRecord(1, Integer.MAX_VALUE / 2)));
+        changed = QueueRanks.append(queue, Collections.singletonList(newRecord(2, 0)));
+        Assert.assertEquals(2, changed.size());
+        Assert.assertEquals(Arrays.asList(1L, 2L), ids(queue));
+        assertSorted(queue);
+        Assert.assertTrue(QueueRanks.append(queue, Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void topBottomInvert() {
+        List<QueueRecord> queue = newContiguousQueue(6);
+        QueueRanks.rebalance(queue);
+
+        List<QueueRecord> changed = QueueRanks.moveTop(queue, Arrays.asList(5L, 3L));
+        Assert.assertEquals(2, changed.size());
+        Assert.assertEquals(Arrays.asList(5L, 3L, 1L, 2L, 4L, 6L), ids(queue));
+        assertSorted(queue);
+
+        changed = QueueRanks.moveBottom(queue, Arrays.asList(1L, 5L, 99L));
+        Assert.assertEquals(2, changed.size());
+        Assert.assertEquals(Arrays.asList(3L, 2L, 4L, 6L, 1L, 5L), ids(queue));
+        assertSorted(queue);
+
+        QueueRanks.invert(queue);
+        Assert.assertEquals(Arrays.asList(5L, 1L, 6L, 4L, 2L, 3L), ids(queue));
+        assertSorted(queue);
+    }
+
+    @Test
+    public void randomOperations() {
+        Random random = new Random(42);
+        List<QueueRecord> queue = newContiguousQueue(50);
+        List<Long> expected = ids(queue);
+        long nextId = 51;
+
+        for (int i = 0; i < 5000; i++) {
+            int size = queue.size();
+            switch (random.nextInt(10)) {
+                case 0:
+                    int position = random.nextInt(size + 1);
+                    QueueRanks.insert(queue, newRecord(nextId, 0), position);
+                    expected.add(position, nextId++);
+                    break;
+                case 1:
+                    Long topId = expected.remove(random.nextInt(size));
+                    expected.add(0, topId);
+                    QueueRanks.moveTop(queue, Collections.singletonList(topId));
+                    break;
+                case 2:
+                    Long bottomId = expected.remove(random.nextInt(size));
+                    expected.add(bottomId);
+                    QueueRanks.moveBottom(queue, Collections.singletonList(bottomId));
+                    break;
+                case 3:
+                    if (random.nextInt(50) == 0) {
+                        QueueRanks.invert(queue);
+                        Collections.reverse(expected);
+                    }
+                    break;
+                default:
+                    int oldPosition = random.nextInt(size);
+                    int newPosition = random.nextInt(size);
+                    QueueRanks.move(queue, oldPosition, newPosition);
+                    expected.add(newPosition, expected.remove(oldPosition));
+            }
+            Assert.assertEquals(expected, ids(queue));
+            assertSorted(queue);
+            if (QueueRanks.needsRebalance(queue)) QueueRanks.rebalance(queue);
+        }
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int size = 3000;
+        int nbMoves = 1000;
+        Random random = new Random(42);
+        int[][] moves = new int[nbMoves][2];
+        for (int[] move : moves) {
+            move[0] = random.nextInt(size);
+            move[1] = random.nextInt(size);
+        }
+
+        // Before : every move renumbers and saves the whole queue
+        List<QueueRecord> queue = newContiguousQueue(size);
+        long rowsBefore = 0;
+        long start = System.nanoTime();
+        for (int[] move : moves) {
+            queue.add(move[1], queue.remove(move[0]));
+            int index = 1;
+            for (QueueRecord qr : queue) qr.setRank(index++);
+            rowsBefore += queue.size();
+        }
+        double durationBeforeMs = (System.nanoTime() - start) / 1e6;
+        List<Long> expected = ids(queue);
+
+        // After : only the moved records are saved
+        queue = newContiguousQueue(size);
+        long rowsAfter = 0;
+        int nbRebalances = 0;
+        start = System.nanoTime();
+        for (int[] move : moves) {
+            rowsAfter += QueueRanks.move(queue, move[0], move[1]).size();
+            if (QueueRanks.needsRebalance(queue)) {
+                rowsAfter += QueueRanks.rebalance(queue).size();
+                nbRebalances++;
+            }
+        }
+        double durationAfterMs = (System.nanoTime() - start) / 1e6;
+
+        Assert.assertEquals(expected, ids(queue));
+        assertSorted(queue);
+        System.out.printf(Locale.ENGLISH, "%d moves on %d records :%nrenumbering : %d records saved (%.1f ms)%nsparse ranks : %d records saved, %d rebalances (%.1f ms)%n",
+                nbMoves, size, rowsBefore, durationBeforeMs, rowsAfter, nbRebalances, durationAfterMs);
+        Assert.assertTrue(rowsAfter * 100 < rowsBefore);
+    }
+}
@@ -0,0 +1,174 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import me.devsaki.hentoid.database.domains.RenamingRule;
+import me.devsaki.hentoid.enums.AttributeType;
+
+public class RenamingRuleMatcherTest {
+
+    private static RenamingRuleMatcher build(RenamingRule... rules) {
+        for (int i = 0; i < rules.length; i++) rules[i].id = i + 1;
+        return new RenamingRuleMatcher(Arrays.asList(rules));
+    }
+
+    @Test
+    public void exactNames() {
+        RenamingRuleMatcher matcher = build(new RenamingRule(AttributeType.ARTIST, "John Doe", "jdoe"));
+
+        Assert.assertEquals("jdoe", matcher.apply(AttributeType.ARTIST, "john doe"));
+        Assert.assertEquals("jdoe", matcher.apply(AttributeType.ARTIST, "JOHN DOE"));
+        Assert.assertNull(matcher.apply(AttributeType.ARTIST, "john doe jr"));
+        Assert.assertNull(matcher.apply(AttributeType.TAG, "john doe"));
+    }
+
+    @Test
+    public void wildcards() {
+        RenamingRuleMatcher matcher = build(
+                new RenamingRule(AttributeType.TAG, "female:*", "*"),
+                new RenamingRule(AttributeType.ARTIST, "*-sensei", "*"),
+                new RenamingRule(AttributeType.SERIE, "a*z", "[*]"),
+                new RenamingRule(AttributeType.CHARACTER, "*abc", "fixed"),
+                new RenamingRule(AttributeType.CIRCLE, "*", "circle *"));
+
+        // Prefix
+        Assert.assertEquals("Big Eyes", matcher.apply(AttributeType.TAG, "Female:Big Eyes"));
+        Assert.assertEquals("", matcher.apply(AttributeType.TAG, "female:"));
+        Assert.assertNull(matcher.apply(AttributeType.TAG, "male:big eyes"));
+        // Suffix
+        Assert.assertEquals("yamada", matcher.apply(AttributeType.ARTIST, "yamada-sensei"));
+        Assert.assertNull(matcher.apply(AttributeType.ARTIST, "yamada-senpai"));
+        // Prefix and suffix; they can't overlap
+        Assert.assertEquals("[bc]", matcher.apply(AttributeType.SERIE, "abcz"));
+        Assert.assertEquals("[]", matcher.apply(AttributeType.SERIE, "AZ"));
+        Assert.assertNull(matcher.apply(AttributeType.SERIE, "a"));
+        Assert.assertNull(matcher.apply(AttributeType.SERIE, "abcy"));
+        // Target without wildcard; whole suffix is matched
+        Assert.assertEquals("fixed", matcher.apply(AttributeType.CHARACTER, "xyzabc"));
+        Assert.assertNull(matcher.apply(AttributeType.CHARACTER, "xyzab"));
+        // Wildcard only; wildcard content is copied as is
+        Assert.assertEquals("circle $1\\*", matcher.apply(AttributeType.CIRCLE, "$1\\*"));
+    }
+
+    @Test
+    public void precedence() {
+        RenamingRule wide = new RenamingRule(AttributeType.TAG, "big*", "wide");
+        RenamingRule exact = new RenamingRule(AttributeType.TAG, "big eyes", "exact");
+        RenamingRule longer = new RenamingRule(AttributeType.TAG, "big*eyes", "longer");
+        RenamingRule suffix = new RenamingRule(AttributeType.TAG, "*g eyes", "suffix");
+        RenamingRule first = new RenamingRule(AttributeType.TAG, "x*", "first");
+        RenamingRule second = new RenamingRule(AttributeType.TAG, "*y", "second");
+        RenamingRuleMatcher matcher = build(wide, exact, longer, suffix, second, first);
+
+        // Rules without wildcard first
+        Assert.assertEquals("exact", matcher.apply(AttributeType.TAG, "big eyes"));
+        // Then the longest literal part
+        Assert.assertEquals("longer", matcher.apply(AttributeType.TAG, "big blue eyes"));
+        Assert.assertEquals("longer", matcher.apply(AttributeType.TAG, "big long eyes"));
+        Assert.assertEquals("wide", matcher.apply(AttributeType.TAG, "big ears"));
+        Assert.assertEquals("suffix", matcher.apply(AttributeType.TAG, "long eyes"));
+        // Then the first rule of the list
+        Assert.assertEquals("second", matcher.apply(AttributeType.TAG, "xay"));
+        Assert.assertEquals("first", matcher.apply(AttributeType.TAG, "xa"));
+    }
+
+    @Test
+    public void sameAsRule() {
+        List<RenamingRule> rules = Arrays.asList(
+                new RenamingRule(AttributeType.TAG, "ab*", "1"),
+                new RenamingRule(AttributeType.TAG, "*bc", "2"),
+                new RenamingRule(AttributeType.TAG, "a*c", "3"),
+                new RenamingRule(AttributeType.TAG, "abc", "4"));
+        String[] names = {"a", "ab", "abc", "ac", "bc", "abbc", "xbc", "abx", "ABC"};
+        for (RenamingRule rule : rules) {
+            RenamingRuleMatcher matcher = build(rule);
+            for (String name : names)
+                Assert.assertEquals(rule + " / " + name, rule.doesMatchSourceName(name), matcher.match(AttributeType.TAG, name) != null);
+        }
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int nbRules = 1000;
+        int nbAttributes = 100000;
+        Random random = new Random(42);
+
+        List<RenamingRule> rules = new ArrayList<>(nbRules);
+        for (int i = 0; i < nbRules; i++) {
+            String word = randomWord(random);
+            String source;
+            int kind = random.nextInt(10);
+            if (kind < 6) source = word + " " + randomWord(random);
+            else if (kind < 8) source = word + "*";
+            else if (kind < 9) source = "*" + word;
+            else source = word + "*" + randomWord(random);
+            RenamingRule rule = new RenamingRule(AttributeType.values()[random.nextInt(10)], source, "renamed *");
+            rule.id = i + 1;
+            rules.add(rule);
+        }
+        List<AttributeType> types = new ArrayList<>(nbAttributes);
+        List<String> names = new ArrayList<>(nbAttributes);
+        for (int i = 0; i < nbAttributes; i++) {
+            types.add(AttributeType.values()[random.nextInt(10)]);
+            names.add(randomWord(random) + " " + randomWord(random));
+        }
+
+        // Compiled rules
+        long start = System.nanoTime();
+        RenamingRuleMatcher matcher = new RenamingRuleMatcher(rules);
+        double compileMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        String[] compiled = new String[nbAttributes];
+        for (int i = 0; i < nbAttributes; i++) compiled[i] = matcher.apply(types.get(i), names.get(i));
+        double compiledMs = (System.nanoTime() - start) / 1e6;
+
+        // Every rule tested against every attribute, with the same precedence
+        start = System.nanoTime();
+        String[] linear = new String[nbAttributes];
+        int nbRenamed = 0;
+        for (int i = 0; i < nbAttributes; i++) {
+            RenamingRule rule = linearMatch(rules, types.get(i), names.get(i));
+            linear[i] = (null == rule) ? null : rule.getTargetName(names.get(i));
+            if (rule != null) nbRenamed++;
+        }
+        double linearMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf(Locale.ENGLISH, "%d rules over %d attributes (%d renamed) : compilation %.1f ms; compiled %.1f ms; linear %.1f ms%n",
+                nbRules, nbAttributes, nbRenamed, compileMs, compiledMs, linearMs);
+        Assert.assertArrayEquals(linear, compiled);
+        Assert.assertTrue(nbRenamed > 0);
+        Assert.assertTrue(compiledMs < linearMs);
+    }
+
+    private static RenamingRule linearMatch(List<RenamingRule> rules, AttributeType type, String name) {
+        RenamingRule result = null;
+        int resultLength = -1;
+        for (RenamingRule rule : rules) {
+            if (!rule.getAttributeType().equals(type) || !rule.doesMatchSourceName(name)) continue;
+            if (!rule.getSourceName().contains("*")) return rule;
+            int length = rule.getSourceName().length() - 1;
+            if (length > resultLength) {
+                result = rule;
+                resultLength = length;
+            }
+        }
+        return result;
+    }
+
+    // Short words over a small alphabet, for rules to match a significant part of the attributes
+    private static String randomWord(Random random) {
+        int length = 2 + random.nextInt(3);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(6)));
+        return sb.toString();
+    }
+}
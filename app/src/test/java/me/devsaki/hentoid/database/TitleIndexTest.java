@@ -0,0 +1,279 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import io.objectbox.query.Query;
+import io.objectbox.query.QueryBuilder;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Content_;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+
+@RunWith(RobolectricTestRunner.class)
+public class TitleIndexTest extends AbstractObjectBoxTest {
+
+    private static final int[] LIBRARY_STATUS = new int[]{StatusContent.DOWNLOADED.getCode()};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TitleIndex buildIndex(File file, String... titles) {
+        TitleIndex index = new TitleIndex(file);
+        for (int i = 0; i < titles.length; i++) index.buildPut(i + 1, titles[i], "", "");
+        index.endBuild();
+        return index;
+    }
+
+    @Test
+    public void substringSearch() {
+        TitleIndex index = buildIndex(null, "My Hero Academia", "Hero of the Day", "Superheroes", "Zero");
+
+        Assert.assertArrayEquals(new long[]{1, 2, 3}, sorted(index.search("hero")));
+        Assert.assertArrayEquals(new long[]{1, 2, 3}, sorted(index.search("HERO")));
+        Assert.assertArrayEquals(new long[]{3}, index.search("erhero"));
+        Assert.assertArrayEquals(new long[0], index.search("villain"));
+        // Words too short to be indexed
+        Assert.assertNull(index.search("my"));
+        Assert.assertNull(index.search("  "));
+    }
+
+    @Test
+    public void phraseSearch() {
+        TitleIndex index = buildIndex(null, "The Quick Brown Fox", "Brown fox, quick", "Quick silver", "A brown bear");
+
+        // Words are searched together, in the same order, as the DB does
+        Assert.assertArrayEquals(new long[]{1}, index.search("quick brown"));
+        Assert.assertArrayEquals(new long[]{2, 1}, index.search("brown fox"));
+        Assert.assertArrayEquals(new long[0], index.search("fox quick"));
+        Assert.assertArrayEquals(new long[0], index.search("quick  brown"));
+        Assert.assertArrayEquals(new long[]{4}, index.search("a brown"));
+    }
+
+    @Test
+    public void ranking() {
+        TitleIndex index = buildIndex(null,
+                "Superstar Idol",       // 1 : phrase inside a word
+                "star idol",            // 2 : exact
+                "Idol star",            // 3 : words in another order => no match
+                "The Star Idol",        // 4 : phrase at the start of a word
+                "Star Idol Story",      // 5 : prefix
+                "Starlight idols"       // 6 : word prefixes in the same order => no match
+        );
+
+        Assert.assertArrayEquals(new long[]{2, 5, 4, 1}, index.search("star idol"));
+        Assert.assertEquals(TitleIndex.RANK_WORD_PREFIX, TitleIndex.rank("the star idol", "star idol"));
+        Assert.assertEquals(TitleIndex.RANK_PHRASE, TitleIndex.rank("superstar idol", "star idol"));
+    }
+
+    @Test
+    public void otherTexts() {
+        TitleIndex index = new TitleIndex(null);
+        index.buildPut(1, "Original title", "Replacement title", "ab12345");
+        index.buildPut(2, "Title", "", "12345cd");
+        index.endBuild();
+
+        Assert.assertArrayEquals(new long[]{1}, index.search("replacement"));
+        // Unique site ID starting with the query first
+        Assert.assertArrayEquals(new long[]{2, 1}, index.search("12345"));
+        Assert.assertArrayEquals(new long[]{1}, index.search("ab12345"));
+        // Trigrams don't span two texts
+        Assert.assertArrayEquals(new long[0], index.search("titleab"));
+    }
+
+    @Test
+    public void incrementalUpdates() {
+        TitleIndex index = buildIndex(null, "Alpha", "Beta");
+
+        index.put(3, "Gamma alpha");
+        Assert.assertArrayEquals(new long[]{1, 3}, index.search("alpha"));
+
+        // Update replaces the previous texts
+        index.put(1, "Delta");
+        Assert.assertArrayEquals(new long[]{3}, index.search("alpha"));
+        Assert.assertArrayEquals(new long[]{1}, index.search("delta"));
+
+        index.remove(3, 42);
+        Assert.assertArrayEquals(new long[0], index.search("alpha"));
+        Assert.assertArrayEquals(new long[0], index.search("gamma"));
+        Assert.assertEquals(2, index.size());
+
+        // IDs added out of order
+        index.put(0, "Beta zero");
+        Assert.assertArrayEquals(new long[]{2, 0}, index.search("beta"));
+        index.remove(2);
+        Assert.assertArrayEquals(new long[]{0}, index.search("beta"));
+    }
+
+    @Test
+    public void persistence() throws Exception {
+        File file = new File(folder.getRoot(), "index.bin");
+        TitleIndex index = buildIndex(file, "Alpha", "Beta", "Alphabet");
+        Assert.assertTrue(index.isReady());
+        index.save();
+        Assert.assertTrue(file.exists());
+
+        TitleIndex loaded = new TitleIndex(file);
+        Assert.assertNull(loaded.search("alpha"));
+        Assert.assertTrue(loaded.load());
+        Assert.assertTrue(loaded.isReady());
+        Assert.assertArrayEquals(new long[]{1, 3}, loaded.search("alpha"));
+        Assert.assertEquals(3, loaded.size());
+
+        // Modifications invalidate the file until it's saved again
+        loaded.put(4, "Alpha male");
+        Assert.assertFalse(file.exists());
+        loaded.save();
+        Assert.assertTrue(file.exists());
+        TitleIndex reloaded = new TitleIndex(file);
+        Assert.assertTrue(reloaded.load());
+        Assert.assertArrayEquals(new long[]{1, 3, 4}, reloaded.search("alpha"));
+
+        // Updates received before loading make the file stale => index has to be built
+        TitleIndex stale = new TitleIndex(file);
+        stale.remove(1);
+        Assert.assertFalse(file.exists());
+        Assert.assertFalse(stale.load());
+
+        // Corrupted file
+        Files.write(file.toPath(), new byte[]{0, 0, 0, 1, 0, 0});
+        Assert.assertFalse(new TitleIndex(file).load());
+    }
+
+    @Test
+    public void updatesBeforeBuildPrevail() {
+        TitleIndex index = new TitleIndex(null);
+        // Received while the index is being built from an older state of the DB
+        index.put(1, "New title");
+        index.remove(2);
+
+        index.buildPut(1, "Old title");
+        index.buildPut(2, "Removed title");
+        index.buildPut(3, "Other title");
+        index.endBuild();
+
+        Assert.assertArrayEquals(new long[]{1}, index.search("new"));
+        Assert.assertArrayEquals(new long[0], index.search("old"));
+        Assert.assertArrayEquals(new long[]{1, 3}, sorted(index.search("title")));
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws Exception {
+        String[] vocabulary = new String[2000];
+        Random random = new Random(42);
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 3 + random.nextInt(8);
+            for (int j = 0; j < length; j++) sb.append((char) ('a' + random.nextInt(26)));
+            vocabulary[i] = sb.toString();
+        }
+        int nbTitles = 100000;
+        List<Content> books = new ArrayList<>(nbTitles);
+        for (int i = 0; i < nbTitles; i++) {
+            StringBuilder sb = new StringBuilder();
+            int nbWords = 3 + random.nextInt(8);
+            for (int j = 0; j < nbWords; j++) {
+                if (j > 0) sb.append(' ');
+                String word = vocabulary[random.nextInt(vocabulary.length)];
+                sb.append(0 == j ? word.substring(0, 1).toUpperCase(Locale.ROOT) + word.substring(1) : word);
+            }
+            books.add(new Content().setSite(Site.NHENTAI).setUrl("/g/" + i + "/").setTitle(sb.toString()).setStatus(StatusContent.DOWNLOADED));
+        }
+        store.boxFor(Content.class).put(books);
+
+        // Same steps as ObjectBoxDB
+        long start = System.nanoTime();
+        TitleIndex index = new TitleIndex(new File(folder.getRoot(), "index.bin"));
+        try (Query<Content> query = store.boxFor(Content.class).query().build()) {
+            query.forEach(c -> index.buildPut(c.getId(), c.getTitle(), c.getReplacementTitle(), c.getUniqueSiteId()));
+        }
+        index.endBuild();
+        long buildMs = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        index.save();
+        long saveMs = (System.nanoTime() - start) / 1000000;
+        start = System.nanoTime();
+        TitleIndex loaded = new TitleIndex(new File(folder.getRoot(), "index.bin"));
+        Assert.assertTrue(loaded.load());
+        long loadMs = (System.nanoTime() - start) / 1000000;
+
+        String[] queries = new String[50];
+        for (int i = 0; i < queries.length; i++) {
+            String word = vocabulary[random.nextInt(vocabulary.length)];
+            // Substrings of words and two-word queries
+            queries[i] = (0 == i % 2) ? word.substring(0, Math.min(word.length(), 4)) : word + " " + vocabulary[random.nextInt(vocabulary.length)].substring(0, 3);
+        }
+
+        // Warm-up
+        for (String q : queries) {
+            selectWithIndex(loaded, q);
+            selectWithContains(q);
+        }
+
+        long indexNs = 0;
+        long containsNs = 0;
+        for (String q : queries) {
+            start = System.nanoTime();
+            List<Content> fromIndex = selectWithIndex(loaded, q);
+            indexNs += System.nanoTime() - start;
+            start = System.nanoTime();
+            List<Content> fromContains = selectWithContains(q);
+            containsNs += System.nanoTime() - start;
+
+            // Same results as the DB
+            Assert.assertEquals(ids(fromContains), ids(fromIndex));
+        }
+        double indexMs = indexNs / 1e6 / queries.length;
+        double containsMs = containsNs / 1e6 / queries.length;
+        System.out.printf(Locale.ENGLISH, "%d titles : build %d ms, save %d ms (%d KB), load %d ms%nAverage query : index %.3f ms; DB contains %.3f ms%n",
+                nbTitles, buildMs, saveMs, new File(folder.getRoot(), "index.bin").length() / 1024, loadMs, indexMs, containsMs);
+    }
+
+    // Query of ObjectBoxDB.selectContentWithTitle when the index is ready
+    private static List<Content> selectWithIndex(TitleIndex index, String query) {
+        long[] titleIds = index.search(query);
+        Assert.assertNotNull(titleIds);
+        QueryBuilder<Content> builder = store.boxFor(Content.class).query();
+        builder.in(Content_.id, titleIds);
+        builder.in(Content_.status, LIBRARY_STATUS);
+        return DBHelper.safeFind(builder);
+    }
+
+    // Query of ObjectBoxDB.selectContentWithTitle when the index isn't available
+    private static List<Content> selectWithContains(String query) {
+        QueryBuilder<Content> builder = store.boxFor(Content.class).query();
+        builder.contains(Content_.title, query, QueryBuilder.StringOrder.CASE_INSENSITIVE);
+        builder.in(Content_.status, LIBRARY_STATUS);
+        return DBHelper.safeFind(builder);
+    }
+
+    private static Set<Long> ids(List<Content> contents) {
+        Set<Long> result = new HashSet<>();
+        for (Content c : contents) result.add(c.getId());
+        return result;
+    }
+
+    private static long[] sorted(long[] ids) {
+        long[] result = ids.clone();
+        Arrays.sort(result);
+        return result;
+    }
+}
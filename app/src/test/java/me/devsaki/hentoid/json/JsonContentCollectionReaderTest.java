@@ -0,0 +1,130 @@
+package me.devsaki.hentoid.json;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Grouping;
+
+@RunWith(RobolectricTestRunner.class)
+public class JsonContentCollectionReaderTest {
+
+    private static final String SMALL_COLLECTION = "\uFEFF{" +
+            "\"bookmarks\":[{\"site\":\"NHENTAI\",\"title\":\"b1\",\"url\":\"https://nhentai.net/b1\"}]," +
+            "\"groupings\":[{\"groupingId\":98,\"groups\":[{\"name\":\"g1\",\"order\":1},{\"name\":\"g2\",\"order\":2}]}]," +
+            "\"library\":[" + book(1) + "," + book(2) + "]," +
+            "\"queue\":[" + book(3) + "]," +
+            "\"unknownSection\":{\"a\":[1,2,3]}" +
+            "}";
+
+    private static String book(int index) {
+        return "{\"url\":\"/g/" + index + "/\",\"title\":\"Book " + index + "\",\"coverImageUrl\":\"https://t.nhentai.net/galleries/" + index + "/cover.jpg\"," +
+                "\"qtyPages\":20,\"uploadDate\":1600000000000,\"downloadDate\":1600000000000,\"status\":\"DOWNLOADED\",\"site\":\"NHENTAI\"," +
+                "\"favourite\":false,\"rating\":0,\"completed\":false,\"reads\":0,\"lastReadDate\":0,\"lastReadPageIndex\":0,\"downloadMode\":0}";
+    }
+
+    @Test
+    public void readAllSections() throws IOException {
+        List<JsonContent> library = new ArrayList<>();
+        List<JsonContent> queue = new ArrayList<>();
+        List<Group> groups = new ArrayList<>();
+        List<SiteBookmark> bookmarks = new ArrayList<>();
+
+        JsonContentCollectionReader reader = new JsonContentCollectionReader()
+                .onLibrary(library::add)
+                .onQueue(queue::add)
+                .onGroups(Grouping.CUSTOM, groups::add)
+                .onBookmarks(bookmarks::add);
+        byte[] data = SMALL_COLLECTION.getBytes(StandardCharsets.UTF_8);
+        reader.read(new ByteArrayInputStream(data));
+
+        Assert.assertEquals(2, library.size());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(2, groups.size());
+        Assert.assertEquals("g1", groups.get(0).name);
+        Assert.assertEquals(1, bookmarks.size());
+        Assert.assertEquals(data.length, reader.getBytesRead());
+    }
+
+    @Test
+    public void skipUnconsumedSections() throws IOException {
+        AtomicInteger nbQueue = new AtomicInteger(0);
+        JsonContentCollectionReader reader = new JsonContentCollectionReader().onQueue(c -> nbQueue.incrementAndGet());
+        reader.read(new ByteArrayInputStream(SMALL_COLLECTION.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, nbQueue.get());
+    }
+
+    @Test
+    public void truncatedFile() {
+        // A truncated file is detected even when its sections are only skipped, so that it can be checked before replacing any data
+        byte[] data = SMALL_COLLECTION.substring(0, SMALL_COLLECTION.indexOf("\"queue\"") + 20).getBytes(StandardCharsets.UTF_8);
+        JsonContentCollectionReader reader = new JsonContentCollectionReader();
+        Assert.assertThrows(IOException.class, () -> reader.read(new ByteArrayInputStream(data)));
+
+        AtomicInteger nbLibrary = new AtomicInteger(0);
+        JsonContentCollectionReader consumingReader = new JsonContentCollectionReader().onLibrary(c -> nbLibrary.incrementAndGet());
+        Assert.assertThrows(IOException.class, () -> consumingReader.read(new ByteArrayInputStream(data)));
+        Assert.assertEquals(2, nbLibrary.get());
+    }
+
+    @Test
+    public void interrupt() throws IOException {
+        AtomicInteger nbLibrary = new AtomicInteger(0);
+        JsonContentCollectionReader reader = new JsonContentCollectionReader();
+        reader.onLibrary(c -> {
+            nbLibrary.incrementAndGet();
+            reader.interrupt();
+        });
+        reader.read(new ByteArrayInputStream(SMALL_COLLECTION.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, nbLibrary.get());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws IOException {
+        final int nbBooks = 50000;
+        File file = File.createTempFile("collection", ".json");
+        file.deleteOnExit();
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            w.write("{\"library\":[");
+            for (int i = 0; i < nbBooks; i++) {
+                if (i > 0) w.write(",");
+                w.write(book(i));
+            }
+            w.write("]}");
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long memBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.currentTimeMillis();
+
+        AtomicInteger nbLibrary = new AtomicInteger(0);
+        JsonContentCollectionReader reader = new JsonContentCollectionReader().onLibrary(c -> nbLibrary.incrementAndGet());
+        try (InputStream is = new FileInputStream(file)) {
+            reader.read(is);
+        }
+
+        long memAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%d books (%d KB) read in %d ms; heap delta %d KB%n", nbLibrary.get(), file.length() / 1024, System.currentTimeMillis() - start, (memAfter - memBefore) / 1024);
+        Assert.assertEquals(nbBooks, nbLibrary.get());
+        Assert.assertEquals(file.length(), reader.getBytesRead());
+    }
+}
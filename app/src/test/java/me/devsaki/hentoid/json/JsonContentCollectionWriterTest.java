@@ -0,0 +1,125 @@
+package me.devsaki.hentoid.json;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.util.JsonHelper;
+
+@RunWith(RobolectricTestRunner.class)
+public class JsonContentCollectionWriterTest {
+
+    private static Content book(int index, StatusContent status) {
+        return new Content()
+                .setSite(Site.NHENTAI)
+                .setUrl("/g/" + index + "/")
+                .setTitle("Book " + index)
+                .setStatus(status);
+    }
+
+    @Test
+    public void sameOutputAsLegacySerialization() throws IOException {
+        List<Content> library = new ArrayList<>();
+        for (int i = 0; i < 10; i++) library.add(book(i, StatusContent.DOWNLOADED));
+        List<Content> queue = Collections.singletonList(book(10, StatusContent.PAUSED));
+        List<SiteBookmark> bookmarks = Collections.singletonList(new SiteBookmark(Site.NHENTAI, "b1", "https://nhentai.net/b1"));
+        List<Group> customGroups = Collections.singletonList(new Group(Grouping.CUSTOM, "g1", 1));
+
+        JsonContentCollection collection = new JsonContentCollection();
+        collection.setLibrary(library);
+        collection.setQueue(queue);
+        collection.setBookmarks(bookmarks);
+        collection.setGroups(Grouping.DYNAMIC, Collections.emptyList());
+        collection.setGroups(Grouping.CUSTOM, customGroups);
+        String legacy = JsonHelper.serializeToJson(collection, JsonContentCollection.class);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonContentCollectionWriter writer = new JsonContentCollectionWriter(output)) {
+            writer.writeBookmarks(bookmarks);
+            Map<Grouping, List<Group>> groups = new LinkedHashMap<>();
+            groups.put(Grouping.DYNAMIC, Collections.emptyList());
+            groups.put(Grouping.CUSTOM, customGroups);
+            writer.writeGroupings(groups);
+            writer.writeLibrary(c -> {
+                for (Content content : library) c.accept(content);
+            });
+            writer.writeQueue(queue);
+        }
+        Assert.assertEquals(legacy, output.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonContentCollectionWriter writer = new JsonContentCollectionWriter(output)) {
+            writer.writeLibrary(c -> {
+                for (int i = 0; i < 100; i++) c.accept(book(i, StatusContent.DOWNLOADED));
+            });
+        }
+
+        AtomicInteger nbRead = new AtomicInteger(0);
+        new JsonContentCollectionReader().onLibrary(c -> nbRead.incrementAndGet())
+                .read(new ByteArrayInputStream(output.toByteArray()));
+        Assert.assertEquals(100, nbRead.get());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws IOException {
+        final int nbBooks = 50000;
+        CountingOutputStream output = new CountingOutputStream();
+
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long memBefore = runtime.totalMemory() - runtime.freeMemory();
+        long[] memPeak = new long[]{memBefore};
+        long start = System.currentTimeMillis();
+
+        try (JsonContentCollectionWriter writer = new JsonContentCollectionWriter(output)) {
+            writer.writeLibrary(c -> {
+                for (int i = 0; i < nbBooks; i++) {
+                    c.accept(book(i, StatusContent.DOWNLOADED));
+                    if (0 == i % 1000)
+                        memPeak[0] = Math.max(memPeak[0], runtime.totalMemory() - runtime.freeMemory());
+                }
+            });
+        }
+
+        System.out.printf("%d books (%d KB) written in %d ms; peak heap delta %d KB%n", nbBooks, output.count / 1024, System.currentTimeMillis() - start, (memPeak[0] - memBefore) / 1024);
+        Assert.assertTrue(output.count > 0);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package me.devsaki.hentoid.mocks;
+
+import androidx.annotation.NonNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Local HTTP server serving canned responses, used to test and benchmark network code
+ */
+public class MockHttpServer implements Closeable {
+
+    public static class MockResponse {
+        public int code = 200;
+        public final Map<String, String> headers = new HashMap<>();
+        public byte[] body = new byte[0];
+
+        public MockResponse setCode(int code) {
+            this.code = code;
+            return this;
+        }
+
+        public MockResponse setHeader(String key, String value) {
+            headers.put(key, value);
+            return this;
+        }
+
+        public MockResponse setBody(byte[] body) {
+            this.body = body;
+            return this;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // Key = path; value = function building the response from the request headers (lowercase keys)
+    private final Map<String, Function<Map<String, String>, MockResponse>> routes = new ConcurrentHashMap<>();
+
+    private volatile long latencyMs = 0;
+    private final AtomicInteger nbRequests = new AtomicInteger(0);
+    private final AtomicLong nbBytesSent = new AtomicLong(0);
+
+
+    public MockHttpServer() throws IOException {
+        this(null);
+    }
+
+    /**
+     * @param sslContext SSL context to serve HTTPS with; null to serve HTTP
+     */
+    public MockHttpServer(SSLContext sslContext) throws IOException {
+        if (null == sslContext) {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        } else {
+            HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server = httpsServer;
+        }
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl(@NonNull String path) {
+        return getUrl("127.0.0.1", path);
+    }
+
+    /**
+     * Get the URL of the given path using the given host name, which has to resolve to the local host
+     */
+    public String getUrl(@NonNull String host, @NonNull String path) {
+        String scheme = (server instanceof HttpsServer) ? "https" : "http";
+        return scheme + "://" + host + ":" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Serve the given response at the given path
+     */
+    public void setResponse(@NonNull String path, @NonNull MockResponse response) {
+        routes.put(path, headers -> response);
+    }
+
+    /**
+     * Serve the response built by the given function at the given path
+     */
+    public void setResponse(@NonNull String path, @NonNull Function<Map<String, String>, MockResponse> responder) {
+        routes.put(path, responder);
+    }
+
+    /**
+     * Delay every response by the given time
+     */
+    public void setLatency(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public int getNbRequests() {
+        return nbRequests.get();
+    }
+
+    public long getNbBytesSent() {
+        return nbBytesSent.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        nbRequests.incrementAndGet();
+        try {
+            if (latencyMs > 0) Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, String> requestHeaders = new HashMap<>();
+        for (Map.Entry<String, List<String>> h : exchange.getRequestHeaders().entrySet())
+            if (!h.getValue().isEmpty()) requestHeaders.put(h.getKey().toLowerCase(), h.getValue().get(0));
+
+        String path = exchange.getRequestURI().toString();
+        Function<Map<String, String>, MockResponse> responder = routes.get(path);
+        MockResponse response = (null == responder) ? new MockResponse().setCode(404) : responder.apply(requestHeaders);
+
+        for (Map.Entry<String, String> h : response.headers.entrySet())
+            exchange.getResponseHeaders().add(h.getKey(), h.getValue());
+        boolean hasBody = response.body.length > 0 && response.code != 304 && !exchange.getRequestMethod().equals("HEAD");
+        exchange.sendResponseHeaders(response.code, hasBody ? response.body.length : -1);
+        if (hasBody) {
+            // Send by chunks so that clients can stop reading halfway
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int offset = 0; offset < response.body.length; offset += 8192) {
+                    int length = Math.min(8192, response.body.length - offset);
+                    os.write(response.body, offset, length);
+                    nbBytesSent.addAndGet(length);
+                }
+            } catch (IOException e) {
+                // Client closed the connection before the end
+            }
+        }
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,141 @@
+package me.devsaki.hentoid.parsers.images;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.devsaki.hentoid.mocks.MockHttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class ConcurrentPageFetcherTest {
+
+    private static final int NB_PAGES = 50;
+
+    private final OkHttpClient client = new OkHttpClient();
+    private MockHttpServer server;
+
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockHttpServer();
+        for (int i = 0; i < NB_PAGES; i++)
+            server.setResponse("/g/?p=" + i, new MockHttpServer.MockResponse().setBody(("page " + i).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private String load(int index) throws IOException {
+        Request request = new Request.Builder().url(server.getUrl("/g/?p=" + index)).build();
+        try (Response response = client.newCall(request).execute()) {
+            ConcurrentPageFetcher.checkRateLimit(response);
+            if (!response.isSuccessful()) throw new IOException("HTTP " + response.code());
+            ResponseBody body = response.body();
+            return (null == body) ? null : body.string();
+        }
+    }
+
+    private static void assertInOrder(List<String> results) {
+        Assert.assertEquals(NB_PAGES, results.size());
+        for (int i = 0; i < NB_PAGES; i++) Assert.assertEquals("page " + i, results.get(i));
+    }
+
+    @Test
+    public void resultsInOrder() throws Exception {
+        AtomicInteger nbLoaded = new AtomicInteger(0);
+        List<String> results = new ConcurrentPageFetcher(8, 0, 0).fetch(NB_PAGES, this::load, () -> false, nbLoaded::incrementAndGet);
+        assertInOrder(results);
+        Assert.assertEquals(NB_PAGES, nbLoaded.get());
+        Assert.assertEquals(NB_PAGES, server.getNbRequests());
+    }
+
+    @Test
+    public void failingPageIsRetriedAlone() throws Exception {
+        AtomicInteger nbCalls = new AtomicInteger(0);
+        server.setResponse("/g/?p=7", headers -> (nbCalls.incrementAndGet() < 3)
+                ? new MockHttpServer.MockResponse().setCode(500)
+                : new MockHttpServer.MockResponse().setBody("page 7".getBytes(StandardCharsets.UTF_8)));
+
+        List<String> results = new ConcurrentPageFetcher(4, 0, 2).fetch(NB_PAGES, this::load, () -> false, () -> {
+        });
+        assertInOrder(results);
+        Assert.assertEquals(NB_PAGES + 2, server.getNbRequests());
+    }
+
+    @Test
+    public void rateLimit() throws Exception {
+        AtomicInteger nbCalls = new AtomicInteger(0);
+        server.setResponse("/g/?p=3", headers -> (nbCalls.incrementAndGet() < 2)
+                ? new MockHttpServer.MockResponse().setCode(429).setHeader("Retry-After", "1")
+                : new MockHttpServer.MockResponse().setBody("page 3".getBytes(StandardCharsets.UTF_8)));
+
+        long start = System.currentTimeMillis();
+        List<String> results = new ConcurrentPageFetcher(4, 0, 2).fetch(NB_PAGES, this::load, () -> false, () -> {
+        });
+        assertInOrder(results);
+        // All requests have been paused for the duration asked by the server
+        Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    @Test
+    public void retriesExhausted() {
+        server.setResponse("/g/?p=12", new MockHttpServer.MockResponse().setCode(500));
+        try {
+            new ConcurrentPageFetcher(4, 0, 1).fetch(NB_PAGES, this::load, () -> false, () -> {
+            });
+            Assert.fail("Exception expected");
+        } catch (Exception e) {
+            Assert.assertEquals("HTTP 500", e.getMessage());
+        }
+    }
+
+    @Test
+    public void halted() throws Exception {
+        AtomicInteger nbLoaded = new AtomicInteger(0);
+        List<String> results = new ConcurrentPageFetcher(2, 0, 0).fetch(NB_PAGES, this::load, () -> nbLoaded.get() >= 5, nbLoaded::incrementAndGet);
+        Assert.assertEquals(NB_PAGES, results.size());
+        Assert.assertEquals("page 0", results.get(0));
+        Assert.assertNull(results.get(NB_PAGES - 1));
+        Assert.assertTrue(server.getNbRequests() < NB_PAGES);
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws Exception {
+        server.setLatency(40);
+
+        long start = System.currentTimeMillis();
+        List<String> sequential = new ArrayList<>();
+        for (int i = 0; i < NB_PAGES; i++) sequential.add(load(i));
+        long sequentialMs = System.currentTimeMillis() - start;
+        assertInOrder(sequential);
+
+        start = System.currentTimeMillis();
+        List<String> concurrent = new ConcurrentPageFetcher(3, 0, 2).fetch(NB_PAGES, this::load, () -> false, () -> {
+        });
+        long concurrentMs = System.currentTimeMillis() - start;
+        assertInOrder(concurrent);
+
+        start = System.currentTimeMillis();
+        new ConcurrentPageFetcher(8, 0, 2).fetch(NB_PAGES, this::load, () -> false, () -> {
+        });
+        long concurrent8Ms = System.currentTimeMillis() - start;
+
+        Assert.assertTrue(concurrentMs < sequentialMs);
+        System.out.printf("%d listing pages @ 40 ms latency : sequential %d ms; 3 threads %d ms; 8 threads %d ms%n",
+                NB_PAGES, sequentialMs, concurrentMs, concurrent8Ms);
+    }
+}
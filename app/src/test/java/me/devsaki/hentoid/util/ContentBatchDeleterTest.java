@@ -0,0 +1,248 @@
+package me.devsaki.hentoid.util;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.ImageFile;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+import me.devsaki.hentoid.util.file.FileHelper;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContentBatchDeleterTest extends AbstractObjectBoxTest {
+
+    private static final int NB_PAGES = 5;
+    // Simulated cost of one call to the documents provider
+    private static final long REMOVE_LATENCY_MS = 2;
+
+    private static CollectionDAO dao;
+    private static int bookIndex = 0;
+
+    /**
+     * Removes files and folders of the local file system, as slow as a documents provider
+     */
+    private static class FileTreeRemover implements ContentBatchDeleter.FileRemover {
+        final AtomicInteger nbCalls = new AtomicInteger(0);
+
+        @Override
+        public boolean remove(@NonNull String uri) throws FileNotFoundException {
+            nbCalls.incrementAndGet();
+            sleep(REMOVE_LATENCY_MS);
+            File f = new File(uri);
+            if (!f.exists()) throw new FileNotFoundException(uri);
+            FileHelper.removeFile(f);
+            return !f.exists();
+        }
+    }
+
+    @BeforeClass
+    public static void prepareDB() {
+        dao = new ObjectBoxDAO(store);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static File newFolder(String prefix) throws IOException {
+        File result = Files.createTempDirectory(prefix).toFile();
+        result.deleteOnExit();
+        return result;
+    }
+
+    /**
+     * Create a book on the DB along with its files : a folder of pictures, or an archive with its cover thumbnail
+     */
+    private static Content insertBook(@NonNull File root, @NonNull File thumbFolder, boolean isArchive) throws IOException {
+        int i = bookIndex++;
+        Content c = new Content()
+                .setSite(Site.NHENTAI)
+                .setUrl("/g/" + i + "/")
+                .setTitle("Book " + i)
+                .setStatus(StatusContent.DOWNLOADED);
+        List<ImageFile> imgs = new ArrayList<>();
+        for (int p = 0; p < NB_PAGES; p++)
+            imgs.add(ImageFile.fromImageUrl(p, "https://host/" + i + "/" + p + ".jpg", StatusContent.DOWNLOADED, NB_PAGES).setIsCover(0 == p));
+        c.setImageFiles(imgs);
+
+        if (isArchive) {
+            File archive = new File(root, "book" + i + ".zip");
+            Assert.assertTrue(archive.createNewFile());
+            c.setStorageUri(archive.getAbsolutePath());
+        } else {
+            File folder = new File(root, "book" + i);
+            Assert.assertTrue(folder.mkdir());
+            for (int p = 0; p < NB_PAGES; p++)
+                Assert.assertTrue(new File(folder, p + ".jpg").createNewFile());
+            c.setStorageUri(folder.getAbsolutePath());
+        }
+        dao.insertContent(c);
+        if (isArchive) Assert.assertTrue(new File(thumbFolder, c.getId() + ".jpg").createNewFile());
+        return c;
+    }
+
+    private static List<Content> insertBooks(@NonNull File root, @NonNull File thumbFolder, int nbBooks) throws IOException {
+        List<Content> result = new ArrayList<>();
+        for (int i = 0; i < nbBooks; i++) result.add(insertBook(root, thumbFolder, 0 == i % 2));
+        return result;
+    }
+
+    private static long[] ids(@NonNull List<Content> contents) {
+        long[] result = new long[contents.size()];
+        for (int i = 0; i < contents.size(); i++) result[i] = contents.get(i).getId();
+        return result;
+    }
+
+    /**
+     * Run the given task outside of the main thread, as the app does
+     */
+    private static <T> T runInBackground(@NonNull Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(task).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertDeleted(@NonNull List<Content> contents, @NonNull File thumbFolder) {
+        for (Content c : contents) {
+            Assert.assertNull(dao.selectContent(c.getId()));
+            Assert.assertTrue(dao.selectDownloadedImagesFromContent(c.getId()).isEmpty());
+            Assert.assertFalse(new File(c.getStorageUri()).exists());
+            Assert.assertFalse(new File(thumbFolder, c.getId() + ".jpg").exists());
+        }
+    }
+
+    @Test
+    public void delete() throws Exception {
+        File root = newFolder("library");
+        File thumbFolder = newFolder("files");
+        List<Content> deleted = insertBooks(root, thumbFolder, 20);
+        List<Content> kept = insertBooks(root, thumbFolder, 4);
+
+        // Groups of the deleted books
+        Group artist = new Group(Grouping.ARTIST, "artist", -1);
+        artist.id = dao.insertGroup(artist);
+        GroupHelper.addContentsToAttributeGroup(artist, null, deleted.subList(0, 3), dao);
+        Group custom = new Group(Grouping.CUSTOM, "custom", -1);
+        custom.id = dao.insertGroup(custom);
+        GroupHelper.moveContentToCustomGroup(deleted.get(5), custom, dao);
+        GroupHelper.moveContentToCustomGroup(kept.get(0), custom, dao);
+
+        // One book whose files have already been removed
+        FileHelper.removeFile(new File(deleted.get(7).getStorageUri()));
+
+        FileTreeRemover remover = new FileTreeRemover();
+        ContentBatchDeleter deleter = new ContentBatchDeleter(dao, remover, thumbFolder, 6, 3, 0);
+        List<Long> errors = new ArrayList<>();
+        AtomicInteger lastProcessed = new AtomicInteger(0);
+        int nbErrors = runInBackground(() -> deleter.delete(ids(deleted), new ContentBatchDeleter.Listener() {
+            @Override
+            public void onProgress(int nbProcessed, int nbErrors, @NonNull String title) {
+                Assert.assertTrue(nbProcessed >= lastProcessed.get());
+                lastProcessed.set(nbProcessed);
+            }
+
+            @Override
+            public void onError(@NonNull Content content, @NonNull String message) {
+                errors.add(content.getId());
+            }
+        }));
+
+        Assert.assertEquals(1, nbErrors);
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals(deleted.get(7).getId(), errors.get(0).longValue());
+        Assert.assertEquals(deleted.size(), lastProcessed.get());
+        Assert.assertEquals(deleted.size(), remover.nbCalls.get());
+        assertDeleted(deleted, thumbFolder);
+
+        // Other books are left untouched
+        for (Content c : kept) {
+            Content dbContent = dao.selectContent(c.getId());
+            Assert.assertNotNull(dbContent);
+            Assert.assertFalse(dbContent.isBeingProcessed());
+            Assert.assertTrue(new File(c.getStorageUri()).exists());
+            if (c.isArchive()) Assert.assertTrue(new File(thumbFolder, c.getId() + ".jpg").exists());
+        }
+
+        // Emptied attribute groups are removed; custom groups are kept with an updated summary
+        Assert.assertNull(dao.selectGroup(artist.id));
+        Group dbCustom = dao.selectGroup(custom.id);
+        Assert.assertNotNull(dbCustom);
+        Assert.assertEquals(1, dbCustom.getNbItems());
+        Assert.assertEquals(kept.get(0).getId(), dbCustom.coverContent.getTargetId());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws Exception {
+        int nbBooks = 300;
+        File thumbFolder = newFolder("files");
+        // Unrelated files of the app's files folder
+        for (int i = 0; i < 3000; i++)
+            Assert.assertTrue(new File(thumbFolder, "other" + i + ".bin").createNewFile());
+
+        // Before : books are removed one by one; the files folder is listed for each archive
+        File rootBefore = newFolder("before");
+        List<Content> before = insertBooks(rootBefore, thumbFolder, nbBooks);
+        FileTreeRemover remover = new FileTreeRemover();
+        long start = System.nanoTime();
+        runInBackground(() -> {
+            for (long id : ids(before)) dao.updateContentDeleteFlag(id, true);
+            for (long id : ids(before)) {
+                Content c = dao.selectContent(id);
+                dao.deleteContent(c);
+                remover.remove(c.getStorageUri());
+                if (c.isArchive()) {
+                    File[] images = thumbFolder.listFiles((dir, name) -> FileHelper.getFileNameWithoutExtension(name).equals(c.getId() + ""));
+                    if (images != null) for (File f : images) FileHelper.removeFile(f);
+                }
+            }
+            return null;
+        });
+        double beforeMs = (System.nanoTime() - start) / 1e6;
+        assertDeleted(before, thumbFolder);
+
+        // After : books are removed by chunks; files are removed in parallel
+        File rootAfter = newFolder("after");
+        List<Content> after = insertBooks(rootAfter, thumbFolder, nbBooks);
+        ContentBatchDeleter deleter = new ContentBatchDeleter(dao, new FileTreeRemover(), thumbFolder, 100, 4, 250);
+        start = System.nanoTime();
+        int nbErrors = runInBackground(() -> deleter.delete(ids(after), null));
+        double afterMs = (System.nanoTime() - start) / 1e6;
+        Assert.assertEquals(0, nbErrors);
+        assertDeleted(after, thumbFolder);
+
+        System.out.printf(Locale.ENGLISH, "%d books : one by one %.1f ms; batch %.1f ms%n", nbBooks, beforeMs, afterMs);
+        Assert.assertTrue(afterMs < beforeMs);
+    }
+}
@@ -0,0 +1,162 @@
+package me.devsaki.hentoid.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContentJsonWriterTest {
+
+    /**
+     * Counts the writes of each book
+     */
+    private static class FakeStorage implements ContentJsonWriter.Storage {
+        final Map<Long, AtomicInteger> writes = new ConcurrentHashMap<>();
+        final AtomicInteger nbRunning = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final long writeDurationMs;
+
+        FakeStorage(long writeDurationMs) {
+            this.writeDurationMs = writeDurationMs;
+        }
+
+        @Override
+        public void write(long contentId) throws IOException {
+            int running = nbRunning.incrementAndGet();
+            maxRunning.accumulateAndGet(running, Math::max);
+            try {
+                if (writeDurationMs > 0) Thread.sleep(writeDurationMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                nbRunning.decrementAndGet();
+            }
+            if (contentId < 0) throw new IOException("Invalid book");
+            writes.computeIfAbsent(contentId, k -> new AtomicInteger(0)).incrementAndGet();
+        }
+
+        int getNbWrites(long contentId) {
+            AtomicInteger result = writes.get(contentId);
+            return (null == result) ? 0 : result.get();
+        }
+
+        int getNbWrites() {
+            int result = 0;
+            for (AtomicInteger i : writes.values()) result += i.get();
+            return result;
+        }
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("json_pending", ".txt");
+        Assert.assertTrue(file.delete());
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void coalescing() {
+        FakeStorage storage = new FakeStorage(0);
+        ContentJsonWriter writer = new ContentJsonWriter(storage, file, 60000, 3);
+
+        // Successive edits of the same books (e.g. rating, then favourite, then reading progress)
+        for (int i = 0; i < 10; i++) writer.requestPersist(1, 2, 3);
+        writer.requestPersist(4);
+        Assert.assertEquals(4, writer.getQueueDepth());
+        Assert.assertEquals(27, writer.getNbWritesSaved());
+        Assert.assertEquals(0, storage.getNbWrites());
+
+        writer.flush();
+        for (long id = 1; id <= 4; id++) Assert.assertEquals(1, storage.getNbWrites(id));
+        Assert.assertEquals(4, writer.getNbWrites());
+        Assert.assertEquals(0, writer.getQueueDepth());
+
+        // Books edited again are written again
+        writer.requestPersist(1);
+        writer.flush();
+        Assert.assertEquals(2, storage.getNbWrites(1));
+
+        // Immediate writes absorb pending requests
+        writer.requestPersist(2, 5);
+        writer.persist(new long[]{2, 3}, null);
+        Assert.assertEquals(1, writer.getQueueDepth());
+        Assert.assertEquals(28, writer.getNbWritesSaved());
+        writer.flush();
+        Assert.assertEquals(2, storage.getNbWrites(2));
+        Assert.assertEquals(1, storage.getNbWrites(5));
+
+        // Failed writes don't block the others
+        writer.requestPersist(-1, 6);
+        writer.flush();
+        Assert.assertEquals(1, storage.getNbWrites(6));
+        Assert.assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void delayedFlush() throws InterruptedException {
+        FakeStorage storage = new FakeStorage(0);
+        ContentJsonWriter writer = new ContentJsonWriter(storage, file, 100, 3);
+
+        writer.requestPersist(1, 2);
+        writer.requestPersist(2, 3);
+        Assert.assertEquals(0, storage.getNbWrites());
+
+        long start = System.currentTimeMillis();
+        while (storage.getNbWrites() < 3 && System.currentTimeMillis() - start < 5000) Thread.sleep(20);
+        Assert.assertEquals(1, storage.getNbWrites(1));
+        Assert.assertEquals(1, storage.getNbWrites(2));
+        Assert.assertEquals(1, storage.getNbWrites(3));
+    }
+
+    @Test
+    public void processDeath() throws Exception {
+        FakeStorage storage = new FakeStorage(0);
+        ContentJsonWriter writer = new ContentJsonWriter(storage, file, 60000, 3);
+        writer.requestPersist(1, 2);
+        writer.requestPersist(2, 3);
+        Assert.assertEquals(0, storage.getNbWrites());
+        writer.awaitFileWrites();
+
+        // The process dies before the flush; a new instance resumes the pending writes
+        FakeStorage storage2 = new FakeStorage(0);
+        ContentJsonWriter writer2 = new ContentJsonWriter(storage2, file, 60000, 3);
+        writer2.resume();
+        Assert.assertEquals(3, writer2.getQueueDepth());
+        writer2.flush();
+        Assert.assertEquals(3, storage2.getNbWrites());
+        writer2.awaitFileWrites();
+
+        // Nothing is left pending once written
+        ContentJsonWriter writer3 = new ContentJsonWriter(new FakeStorage(0), file, 60000, 3);
+        writer3.resume();
+        Assert.assertEquals(0, writer3.getQueueDepth());
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void parallelWrites() {
+        FakeStorage storage = new FakeStorage(20);
+        ContentJsonWriter writer = new ContentJsonWriter(storage, file, 60000, 3);
+        long[] ids = new long[30];
+        for (int i = 0; i < ids.length; i++) ids[i] = i + 1;
+
+        AtomicInteger nbProcessed = new AtomicInteger(0);
+        long start = System.nanoTime();
+        writer.persist(ids, nbProcessed::incrementAndGet);
+        double durationMs = (System.nanoTime() - start) / 1e6;
+
+        Assert.assertEquals(ids.length, nbProcessed.get());
+        Assert.assertEquals(ids.length, storage.getNbWrites());
+        Assert.assertTrue(storage.maxRunning.get() > 1);
+        Assert.assertTrue(storage.maxRunning.get() <= 3);
+        // Sequential writes would take 30 x 20 ms
+        Assert.assertTrue(durationMs < ids.length * 20);
+    }
+}
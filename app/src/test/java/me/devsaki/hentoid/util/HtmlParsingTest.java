@@ -0,0 +1,138 @@
+package me.devsaki.hentoid.util;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import me.devsaki.hentoid.mocks.MockHttpServer;
+import me.devsaki.hentoid.util.network.HtmlParseLimits;
+import me.devsaki.hentoid.util.network.HttpHelper;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class HtmlParsingTest {
+
+    private static final int NB_CARDS = 25000; // ~4 MB
+
+    private static MockHttpServer server;
+    private static final OkHttpClient client = new OkHttpClient();
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        server = new MockHttpServer();
+
+        StringBuilder sb = new StringBuilder("<html><head><title>Results</title><meta name=\"description\" content=\"listing\"></head><body><div class=\"container\">");
+        for (int i = 0; i < NB_CARDS; i++) {
+            sb.append("<div class=\"gallery\"><a href=\"/g/").append(i).append("/\" class=\"cover\"><img src=\"/t/").append(i).append(".jpg\">")
+                    .append("<div class=\"caption\">[Circle] Some rather long book title number ").append(i).append(" (Original)</div></a></div>\n");
+        }
+        sb.append("</div></body></html>");
+        server.setResponse("/big", new MockHttpServer.MockResponse()
+                .setHeader("Content-Type", "text/html; charset=utf-8")
+                .setBody(sb.toString().getBytes(StandardCharsets.UTF_8)));
+
+        // Charset only declared by a meta tag
+        String latin = "<html><head><meta charset=\"ISO-8859-1\"><title>Café</title></head><body><p>déjà vu</p></body></html>";
+        server.setResponse("/latin", new MockHttpServer.MockResponse()
+                .setHeader("Content-Type", "text/html")
+                .setBody(latin.getBytes(Charset.forName("ISO-8859-1"))));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        server.close();
+    }
+
+    private static Document fetch(String path, HtmlParseLimits limits) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.getUrl(path)).build()).execute()) {
+            ResponseBody body = response.body();
+            Assert.assertNotNull(body);
+            return HttpHelper.parseDocument(body, "", limits);
+        }
+    }
+
+    private static Document fetchAsString(String path) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.getUrl(path)).build()).execute()) {
+            ResponseBody body = response.body();
+            Assert.assertNotNull(body);
+            return Jsoup.parse(body.string());
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void sameDocumentAsStringParsing() throws IOException {
+        Assert.assertEquals(fetchAsString("/big").outerHtml(), fetch("/big", null).outerHtml());
+    }
+
+    @Test
+    public void charsetFromMetaTag() throws IOException {
+        Document doc = fetch("/latin", null);
+        Assert.assertEquals("Café", doc.title());
+        Assert.assertEquals("déjà vu", doc.select("p").text());
+    }
+
+    @Test
+    public void limits() throws IOException {
+        Document doc = fetch("/big", new HtmlParseLimits().setStopSelector(".gallery", 20));
+        int nbCards = doc.select(".gallery").size();
+        Assert.assertTrue(nbCards >= 20 && nbCards < NB_CARDS);
+        // First 20 cards are complete
+        for (int i = 0; i < 20; i++)
+            Assert.assertNotNull(doc.select(".gallery").get(i).selectFirst(".caption"));
+
+        doc = fetch("/big", new HtmlParseLimits().setStopSelector("head", 1));
+        Assert.assertEquals("Results", doc.title());
+        Assert.assertTrue(doc.select(".gallery").size() < NB_CARDS);
+
+        doc = fetch("/big", new HtmlParseLimits().setMaxBodySize(100 * 1024));
+        Assert.assertTrue(doc.select(".gallery").size() < NB_CARDS);
+
+        // Stop selector never satisfied : whole document
+        doc = fetch("/big", new HtmlParseLimits().setStopSelector(".nothing", 1));
+        Assert.assertEquals(NB_CARDS, doc.select(".gallery").size());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws IOException {
+        // Warm-up
+        fetchAsString("/big");
+        fetch("/big", null);
+
+        long alloc = allocatedBytes();
+        long start = System.nanoTime();
+        fetchAsString("/big");
+        long timeString = (System.nanoTime() - start) / 1000000;
+        long allocString = (allocatedBytes() - alloc) / 1024 / 1024;
+
+        alloc = allocatedBytes();
+        start = System.nanoTime();
+        fetch("/big", null);
+        long timeStream = (System.nanoTime() - start) / 1000000;
+        long allocStream = (allocatedBytes() - alloc) / 1024 / 1024;
+
+        alloc = allocatedBytes();
+        start = System.nanoTime();
+        fetch("/big", new HtmlParseLimits().setStopSelector(".gallery", 40));
+        long timeStop = (System.nanoTime() - start) / 1000000;
+        long allocStop = (allocatedBytes() - alloc) / 1024 / 1024;
+
+        System.out.printf("4 MB page : String parsing %d ms / %d MB; stream parsing %d ms / %d MB; first 40 elements %d ms / %d MB%n",
+                timeString, allocString, timeStream, allocStream, timeStop, allocStop);
+    }
+}
@@ -0,0 +1,163 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferencesTest {
+
+    private SharedPreferences sharedPreferences;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        sharedPreferences.edit().clear().commit();
+        Preferences.init(context);
+    }
+
+    @Test
+    public void snapshot() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("bool", true);
+        values.put("int", 3);
+        values.put("long", 4L);
+        values.put("string", "5");
+        values.put("invalid", "five");
+        PreferencesSnapshot snapshot = new PreferencesSnapshot(values);
+        // Snapshot is a copy
+        values.put("int", 42);
+
+        Assert.assertTrue(snapshot.getBoolean("bool", false));
+        Assert.assertEquals(3, snapshot.getInt("int", 0));
+        Assert.assertEquals(4L, snapshot.getLong("long", 0));
+        Assert.assertEquals("5", snapshot.getString("string", null));
+        Assert.assertEquals(5, snapshot.getIntFromString("string", 0));
+        Assert.assertEquals(5, snapshot.getIntFromString("string", 0));
+        Assert.assertEquals(5L, snapshot.getLongFromString("string", 0));
+        Assert.assertEquals(6, snapshot.getIntFromString("missing", 6));
+        Assert.assertFalse(snapshot.contains("missing"));
+        Assert.assertThrows(NumberFormatException.class, () -> snapshot.getIntFromString("invalid", 0));
+
+        // Values read with another type are missing
+        Assert.assertEquals(8, snapshot.getInt("bool", 8));
+        Assert.assertNull(snapshot.getString("int", null));
+
+        // Changes build a new snapshot
+        Assert.assertSame(snapshot, snapshot.with(false, Collections.singletonMap("string", "5")));
+        Assert.assertSame(snapshot, snapshot.with(false, Collections.singletonMap("missing", null)));
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("string", "7");
+        changes.put("int", null);
+        changes.put("long", "9");
+        PreferencesSnapshot updated = snapshot.with(false, changes);
+        Assert.assertEquals(7, updated.getIntFromString("string", 0));
+        Assert.assertFalse(updated.contains("int"));
+        Assert.assertEquals(9L, updated.getLongFromString("long", 0));
+        Assert.assertEquals(0L, updated.getLong("long", 0));
+        Assert.assertTrue(updated.getBoolean("bool", false));
+        // The previous snapshot is unchanged
+        Assert.assertEquals(5, snapshot.getIntFromString("string", 0));
+        Assert.assertEquals(3, snapshot.getInt("int", 0));
+        Assert.assertEquals(4L, snapshot.getLong("long", 0));
+
+        updated = snapshot.with(true, Collections.singletonMap("int", 10));
+        Assert.assertEquals(10, updated.getInt("int", 0));
+        Assert.assertFalse(updated.contains("bool"));
+        Assert.assertEquals(6, updated.getIntFromString("string", 6));
+    }
+
+    @Test
+    public void changesAreVisible() {
+        Preferences.setReaderBrowseMode(Preferences.Constant.VIEWER_BROWSE_RTL);
+        Assert.assertEquals(Preferences.Constant.VIEWER_BROWSE_RTL, Preferences.getReaderBrowseMode());
+
+        // Changes made outside Preferences (e.g. settings screen)
+        sharedPreferences.edit().putString(Preferences.Key.DL_THREADS_QUANTITY_LISTS, "6").apply();
+        Assert.assertEquals(6, Preferences.getDownloadThreadCount());
+        sharedPreferences.edit().remove(Preferences.Key.DL_THREADS_QUANTITY_LISTS).apply();
+        Assert.assertEquals(Preferences.Default.DL_THREADS_QUANTITY, Preferences.getDownloadThreadCount());
+
+        // Type of the value changed outside Preferences
+        sharedPreferences.edit().putString(Preferences.Key.ORDER_CONTENT_FIELD, "2").apply();
+        sharedPreferences.edit().putInt(Preferences.Key.ORDER_CONTENT_FIELD, 3).apply();
+        Assert.assertEquals(3, Preferences.getContentSortField());
+    }
+
+    @Test
+    public void subscriptions() {
+        List<String> changes = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        Preferences.OnChangeListener listener = key -> {
+            changes.add(key);
+            // New value is already readable
+            values.add(Preferences.getDownloadThreadCount());
+        };
+        Preferences.subscribe(listener, Preferences.Key.DL_THREADS_QUANTITY_LISTS, Preferences.Key.BROWSER_AUGMENTED);
+
+        sharedPreferences.edit().putString(Preferences.Key.DL_THREADS_QUANTITY_LISTS, "3").apply();
+        sharedPreferences.edit().putString(Preferences.Key.VIEWER_BROWSE_MODE, "1").apply();
+        sharedPreferences.edit().putBoolean(Preferences.Key.BROWSER_AUGMENTED, false).apply();
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(Preferences.Key.DL_THREADS_QUANTITY_LISTS, changes.get(0));
+        Assert.assertEquals(Preferences.Key.BROWSER_AUGMENTED, changes.get(1));
+        Assert.assertEquals(3, (int) values.get(0));
+
+        Preferences.unsubscribe(listener);
+        sharedPreferences.edit().putString(Preferences.Key.DL_THREADS_QUANTITY_LISTS, "4").apply();
+        Assert.assertEquals(2, changes.size());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        int nbReads = 200000;
+        sharedPreferences.edit()
+                .putString(Preferences.Key.DL_THREADS_QUANTITY_LISTS, "4")
+                .putString(Preferences.Key.BROWSER_DNS_OVER_HTTPS, "1")
+                .putBoolean(Preferences.Key.BROWSER_AUGMENTED, true)
+                .apply();
+
+        // Before : every read goes through SharedPreferences' lock and parses the value
+        long sumBefore = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < nbReads; i++) {
+            sumBefore += Integer.parseInt(sharedPreferences.getString(Preferences.Key.DL_THREADS_QUANTITY_LISTS, "0") + "");
+            sumBefore += Integer.parseInt(sharedPreferences.getString(Preferences.Key.BROWSER_DNS_OVER_HTTPS, "0") + "");
+            if (sharedPreferences.getBoolean(Preferences.Key.BROWSER_AUGMENTED, false)) sumBefore++;
+        }
+        double beforeMs = (System.nanoTime() - start) / 1e6;
+
+        // After : reads from the snapshot
+        long sumAfter = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < nbReads; i++) {
+            sumAfter += Preferences.getDownloadThreadCount();
+            sumAfter += Preferences.getDnsOverHttps();
+            if (Preferences.isBrowserAugmented()) sumAfter++;
+        }
+        double afterMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf(Locale.ENGLISH, "%d reads of 3 preferences :%nSharedPreferences : %.1f ms%nsnapshot : %.1f ms%n",
+                nbReads, beforeMs, afterMs);
+        Assert.assertEquals(sumBefore, sumAfter);
+        Assert.assertTrue(afterMs < beforeMs);
+    }
+}
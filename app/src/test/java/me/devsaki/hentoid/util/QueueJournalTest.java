@@ -0,0 +1,213 @@
+package me.devsaki.hentoid.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.json.JsonContent;
+import me.devsaki.hentoid.json.JsonContentCollection;
+import me.devsaki.hentoid.json.JsonQueueOperation;
+
+@RunWith(RobolectricTestRunner.class)
+public class QueueJournalTest {
+
+    private static Content book(int index) {
+        return new Content()
+                .setId(index + 1L)
+                .setSite(Site.NHENTAI)
+                .setUrl("/g/" + index + "/")
+                .setTitle("Book " + index)
+                .setStatus(StatusContent.PAUSED);
+    }
+
+    private static List<JsonContent> toJson(List<Content> queue) {
+        List<JsonContent> result = new ArrayList<>();
+        for (Content c : queue) result.add(JsonContent.fromEntity(c, false));
+        return result;
+    }
+
+    private static List<String> keys(List<JsonContent> queue) {
+        List<String> result = new ArrayList<>();
+        for (JsonContent c : queue) result.add(QueueJournal.getKey(c.getSite(), c.getUrl()));
+        return result;
+    }
+
+    private static List<String> contentKeys(List<Content> queue) {
+        List<String> result = new ArrayList<>();
+        for (Content c : queue) result.add(QueueJournal.getKey(c.getSite(), c.getUrl()));
+        return result;
+    }
+
+    private static byte[] journal(long snapshotHash, List<JsonQueueOperation> operations) throws IOException {
+        List<JsonQueueOperation> ops = new ArrayList<>();
+        ops.add(JsonQueueOperation.base(snapshotHash));
+        ops.addAll(operations);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        QueueJournal.writeOperations(ops, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    public void replayRandomChanges() throws IOException {
+        Random random = new Random(42);
+        int nextIndex = 0;
+        List<Content> queue = new ArrayList<>();
+        for (int i = 0; i < 30; i++) queue.add(book(nextIndex++));
+
+        for (int round = 0; round < 200; round++) {
+            // NB : Books are shared between both lists; snapshot them before changing their status
+            List<JsonContent> previous = toJson(queue);
+            List<QueueJournal.ItemState> previousStates = QueueJournal.toStates(queue);
+
+            // Random removals, additions, moves, status changes and updates
+            for (int i = random.nextInt(3); i > 0 && !queue.isEmpty(); i--)
+                queue.remove(random.nextInt(queue.size()));
+            for (int i = random.nextInt(3); i > 0; i--)
+                queue.add(random.nextInt(queue.size() + 1), book(nextIndex++));
+            for (int i = random.nextInt(4); i > 0 && queue.size() > 1; i--)
+                queue.add(random.nextInt(queue.size()), queue.remove(random.nextInt(queue.size())));
+            if (!queue.isEmpty() && random.nextBoolean()) {
+                Content c = queue.get(random.nextInt(queue.size()));
+                c.setStatus(StatusContent.ERROR);
+                c.setFrozen(!c.isFrozen());
+            }
+            if (!queue.isEmpty() && random.nextBoolean()) {
+                Content c = queue.get(random.nextInt(queue.size()));
+                c.setTitle(c.getTitle() + " (edited)");
+            }
+
+            List<JsonQueueOperation> ops = QueueJournal.diff(previousStates, queue);
+            List<JsonContent> replayed = QueueJournal.replay(previous, 10, new ByteArrayInputStream(journal(10, ops)));
+            Assert.assertEquals(contentKeys(queue), keys(replayed));
+            for (int i = 0; i < queue.size(); i++) {
+                Assert.assertEquals(queue.get(i).getStatus(), replayed.get(i).getStatus());
+                Assert.assertEquals(queue.get(i).isFrozen(), replayed.get(i).isFrozen());
+                Assert.assertEquals(queue.get(i).getTitle(), replayed.get(i).getTitle());
+            }
+        }
+    }
+
+    @Test
+    public void updates() throws IOException {
+        List<Content> queue = new ArrayList<>();
+        for (int i = 0; i < 5; i++) queue.add(book(i));
+        List<JsonContent> previous = toJson(queue);
+        List<QueueJournal.ItemState> previousStates = QueueJournal.toStates(queue);
+
+        // Status-only changes are journaled without the book; other changes carry the whole book
+        queue.get(1).setStatus(StatusContent.ERROR);
+        queue.get(3).setTitle("New title");
+        queue.get(3).setStatus(StatusContent.ERROR);
+        List<JsonQueueOperation> ops = QueueJournal.diff(previousStates, queue);
+        Assert.assertEquals(2, ops.size());
+        Assert.assertEquals(JsonQueueOperation.OP_STATUS, ops.get(0).getOp());
+        Assert.assertNull(ops.get(0).getContent());
+        Assert.assertEquals(JsonQueueOperation.OP_UPDATE, ops.get(1).getOp());
+
+        List<JsonContent> replayed = QueueJournal.replay(previous, 10, new ByteArrayInputStream(journal(10, ops)));
+        Assert.assertEquals(StatusContent.ERROR, replayed.get(1).getStatus());
+        Assert.assertEquals("New title", replayed.get(3).getTitle());
+        Assert.assertEquals(StatusContent.ERROR, replayed.get(3).getStatus());
+    }
+
+    @Test
+    public void onlyCompareChangedBooks() throws IOException {
+        List<Content> queue = new ArrayList<>();
+        for (int i = 0; i < 5; i++) queue.add(book(i));
+        List<JsonContent> previous = toJson(queue);
+        List<QueueJournal.ItemState> previousStates = QueueJournal.toStates(queue);
+
+        // Status changes are always detected; other changes only for the books declared as changed
+        queue.get(0).setStatus(StatusContent.ERROR);
+        queue.get(1).setTitle("Undeclared title");
+        queue.get(2).setTitle("Declared title");
+        List<QueueJournal.ItemState> currentStates = QueueJournal.toStates(queue, previousStates, Collections.singleton(queue.get(2).getId()));
+        List<JsonQueueOperation> ops = QueueJournal.diff(previousStates, currentStates, queue);
+        Assert.assertEquals(2, ops.size());
+        Assert.assertEquals(JsonQueueOperation.OP_STATUS, ops.get(0).getOp());
+        Assert.assertEquals(JsonQueueOperation.OP_UPDATE, ops.get(1).getOp());
+
+        List<JsonContent> replayed = QueueJournal.replay(previous, 10, new ByteArrayInputStream(journal(10, ops)));
+        Assert.assertEquals(StatusContent.ERROR, replayed.get(0).getStatus());
+        Assert.assertEquals("Book 1", replayed.get(1).getTitle());
+        Assert.assertEquals("Declared title", replayed.get(2).getTitle());
+    }
+
+    @Test
+    public void ignoreTornLastLine() throws IOException {
+        List<Content> previous = new ArrayList<>();
+        for (int i = 0; i < 5; i++) previous.add(book(i));
+        List<Content> current = new ArrayList<>(previous);
+        current.remove(0);
+        current.add(book(5));
+
+        byte[] data = journal(10, QueueJournal.diff(QueueJournal.toStates(previous), current));
+        // Chop the last operation (addition of book 5) in the middle
+        byte[] torn = new byte[data.length - 20];
+        System.arraycopy(data, 0, torn, 0, torn.length);
+
+        List<JsonContent> replayed = QueueJournal.replay(toJson(previous), 10, new ByteArrayInputStream(torn));
+        Assert.assertEquals(contentKeys(previous.subList(1, 5)), keys(replayed));
+    }
+
+    @Test
+    public void ignoreMismatchingJournal() throws IOException {
+        List<Content> previous = new ArrayList<>();
+        for (int i = 0; i < 5; i++) previous.add(book(i));
+        List<Content> current = new ArrayList<>(previous);
+        Collections.reverse(current);
+
+        // Snapshot of the reordered queue has the same size as the previous one, but not the same contents
+        JsonContentCollection previousCollection = new JsonContentCollection();
+        previousCollection.setQueue(previous);
+        byte[] previousData = JsonHelper.serializeToJson(previousCollection, JsonContentCollection.class).getBytes(StandardCharsets.UTF_8);
+        JsonContentCollection currentCollection = new JsonContentCollection();
+        currentCollection.setQueue(current);
+        byte[] currentData = JsonHelper.serializeToJson(currentCollection, JsonContentCollection.class).getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(previousData.length, currentData.length);
+
+        // Journal written for another snapshot (e.g. compaction interrupted between the snapshot and the journal)
+        byte[] data = journal(Helper.hash64(previousData), QueueJournal.diff(QueueJournal.toStates(previous), current));
+        List<JsonContent> replayed = QueueJournal.replay(toJson(current), Helper.hash64(currentData), new ByteArrayInputStream(data));
+        Assert.assertEquals(contentKeys(current), keys(replayed));
+
+        replayed = QueueJournal.replay(toJson(previous), Helper.hash64(previousData), new ByteArrayInputStream(data));
+        Assert.assertEquals(contentKeys(current), keys(replayed));
+    }
+
+    @Test
+    public void journalVsFullRewrite() throws IOException {
+        List<Content> queue = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) queue.add(book(i));
+
+        JsonContentCollection collection = new JsonContentCollection();
+        collection.setQueue(queue);
+        int fullSize = JsonHelper.serializeToJson(collection, JsonContentCollection.class).getBytes().length;
+
+        // Typical download lifecycle : first book completes, another one is moved to the top, a new one is added
+        List<Content> current = new ArrayList<>(queue);
+        current.remove(0);
+        current.add(0, current.remove(1000));
+        current.add(book(2000));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<JsonQueueOperation> ops = QueueJournal.diff(QueueJournal.toStates(queue), current);
+        QueueJournal.writeOperations(ops, output);
+        Assert.assertEquals(3, ops.size());
+
+        Assert.assertTrue(output.size() * 100 < fullSize);
+    }
+}
@@ -0,0 +1,98 @@
+package me.devsaki.hentoid.util;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import me.devsaki.hentoid.R;
+
+@RunWith(RobolectricTestRunner.class)
+public class SubstringMatcherTest {
+
+    private static boolean containsAny(String text, Set<String> substrings) {
+        for (String s : substrings) if (text.contains(s)) return true;
+        return false;
+    }
+
+    private static String randomString(Random random, String alphabet, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+
+    @Test
+    public void sameResultsAsContains() {
+        // Small alphabet to get plenty of overlapping substrings
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            Set<String> substrings = new HashSet<>();
+            for (int i = random.nextInt(10); i > 0; i--) {
+                String s = randomString(random, "ab/.", 5);
+                if (!s.isEmpty()) substrings.add(s);
+            }
+            SubstringMatcher matcher = new SubstringMatcher(substrings);
+            for (int i = 0; i < 50; i++) {
+                String text = randomString(random, "ab/.c", 20);
+                Assert.assertEquals(substrings + " / " + text, containsAny(text, substrings), matcher.matches(text));
+            }
+        }
+    }
+
+    @Test
+    public void edgeCases() {
+        Assert.assertFalse(SubstringMatcher.EMPTY.matches("anything"));
+        Assert.assertTrue(SubstringMatcher.EMPTY.isEmpty());
+        Assert.assertTrue(new SubstringMatcher(Collections.singletonList("")).matches(""));
+        SubstringMatcher matcher = new SubstringMatcher(Arrays.asList("exoclick.com", "click"));
+        Assert.assertTrue(matcher.matches("https://syndication.exoclick.com/splash.php"));
+        Assert.assertTrue(matcher.matches("https://site.com/onclick.js"));
+        Assert.assertFalse(matcher.matches("https://site.com/exoclic.js"));
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        String[] domains = ApplicationProvider.getApplicationContext().getResources().getStringArray(R.array.blocked_domains);
+        Set<String> blacklist = new HashSet<>(Arrays.asList(domains));
+        // Typical local lists
+        Collections.addAll(blacklist, "/ads/", "/banner", "popunder", "exoloader", "ad_provider", "/pop.js", "tracker");
+
+        // Request log of a browsing session : mostly site resources, some ads
+        Random random = new Random(42);
+        String[] hosts = {"https://hitomi.la/", "https://ltn.hitomi.la/", "https://tn.hitomi.la/", "https://a.hitomi.la/", "https://fonts.googleapis.com/"};
+        List<String> requests = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            if (random.nextInt(20) == 0)
+                requests.add("https://" + domains[random.nextInt(domains.length)] + "/serve/" + random.nextInt(100000) + ".js?zone=" + random.nextInt(1000));
+            else
+                requests.add(hosts[random.nextInt(hosts.length)] + "galleries/" + random.nextInt(2000000) + "/" + randomString(random, "0123456789abcdef", 32) + ".webp");
+        }
+
+        SubstringMatcher matcher = new SubstringMatcher(blacklist);
+        int nbBlockedLegacy = 0;
+        int nbBlocked = 0;
+        long start = System.nanoTime();
+        for (String url : requests) if (containsAny(url, blacklist)) nbBlockedLegacy++;
+        long legacy = (System.nanoTime() - start) / 1000;
+        start = System.nanoTime();
+        for (String url : requests) if (matcher.matches(url)) nbBlocked++;
+        long compiled = (System.nanoTime() - start) / 1000;
+
+        Assert.assertEquals(nbBlockedLegacy, nbBlocked);
+        System.out.printf("%d requests vs %d rules : contains loop %d us; automaton %d us (%d blocked)%n",
+                requests.size(), blacklist.size(), legacy, compiled, nbBlocked);
+    }
+}
@@ -0,0 +1,202 @@
+package me.devsaki.hentoid.util.download
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.supervisorScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import me.devsaki.hentoid.util.network.ConnectionTimings
+import me.devsaki.hentoid.util.network.HostProtocols
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.junit.Assert
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestCoalescerTest {
+
+    @Test
+    fun `identical requests run once`() = runBlocking {
+        val coalescer = RequestCoalescer<String, String>()
+        val nbRuns = AtomicInteger(0)
+
+        val results = (1..10).map {
+            async(Dispatchers.Default) {
+                coalescer.run("url") {
+                    nbRuns.incrementAndGet()
+                    delay(200)
+                    "file"
+                }
+            }
+        }.awaitAll()
+
+        Assert.assertEquals(1, nbRuns.get())
+        Assert.assertTrue(results.all { it.value == "file" })
+        Assert.assertEquals(9, results.count { it.shared })
+        Assert.assertEquals(0, coalescer.nbInFlight)
+
+        // Nothing is kept once completed
+        coalescer.run("url") { nbRuns.incrementAndGet(); "file" }
+        Assert.assertEquals(2, nbRuns.get())
+    }
+
+    @Test
+    fun `waiting requests run on their own when the running one fails`() = runBlocking {
+        val coalescer = RequestCoalescer<String, String>()
+        val nbRuns = AtomicInteger(0)
+
+        supervisorScope {
+            val leader = async(Dispatchers.Default) {
+                coalescer.run("url") {
+                    nbRuns.incrementAndGet()
+                    delay(200)
+                    throw IOException("Connection reset")
+                }
+            }
+            delay(50)
+            val follower = coalescer.run("url") { nbRuns.incrementAndGet(); "file" }
+
+            try {
+                leader.await()
+                Assert.fail("Exception expected")
+            } catch (e: IOException) {
+                // Expected
+            }
+            Assert.assertEquals("file", follower.value)
+            Assert.assertFalse(follower.shared)
+            Assert.assertEquals(2, nbRuns.get())
+        }
+    }
+
+    @Test
+    fun `recent results are reused`() = runBlocking {
+        val coalescer = RequestCoalescer<String, String>(2)
+        val nbRuns = AtomicInteger(0)
+
+        for (i in 1..3) coalescer.run("url$i") { nbRuns.incrementAndGet(); "file$i" }
+        Assert.assertEquals(3, nbRuns.get())
+
+        val recent = coalescer.run("url3") { nbRuns.incrementAndGet(); "other" }
+        Assert.assertEquals("file3", recent.value)
+        Assert.assertTrue(recent.shared)
+        Assert.assertEquals(3, nbRuns.get())
+
+        // Oldest result has been evicted
+        coalescer.run("url1") { nbRuns.incrementAndGet(); "file1" }
+        Assert.assertEquals(4, nbRuns.get())
+
+        coalescer.forget("url3")
+        coalescer.run("url3") { nbRuns.incrementAndGet(); "file3" }
+        Assert.assertEquals(5, nbRuns.get())
+    }
+
+    @Test
+    fun `benchmark multiplexed downloads`() {
+        val image = Buffer().write(ByteArray(50 * 1024))
+        val latencyMs = 100L
+        // 40 images, 8 of which are requested twice (e.g. cover and first page; chapters sharing pages)
+        val urlPaths = (0 until 40).map { "/img/$it.jpg" } + (0 until 8).map { "/img/$it.jpg" }
+
+        val http1 = MockWebServer()
+        val http2 = MockWebServer()
+        http2.protocols = listOf(Protocol.H2_PRIOR_KNOWLEDGE)
+        for (server in listOf(http1, http2)) {
+            server.dispatcher = object : Dispatcher() {
+                override fun dispatch(request: RecordedRequest): MockResponse {
+                    return MockResponse()
+                        .setHeader("Content-Type", "image/jpeg")
+                        .setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS)
+                        .setBody(image.clone())
+                }
+            }
+            server.start()
+        }
+        HostProtocols.clear()
+
+        try {
+            // HTTP/1.1 : one blocking call per download thread, sized for HTTP/1.1 connections
+            val http1Timings = ConnectionTimings()
+            val http1Client = OkHttpClient.Builder().eventListenerFactory(http1Timings).build()
+            val nbThreads = 4
+            var start = System.nanoTime()
+            runBlocking {
+                val permits = Semaphore(nbThreads)
+                urlPaths.map { path ->
+                    async(Dispatchers.IO) {
+                        permits.withPermit {
+                            http1Client.newCall(Request.Builder().url(http1.url(path)).build())
+                                .execute().use {
+                                    HostProtocols.record(it)
+                                    it.body?.bytes()
+                                }
+                        }
+                    }
+                }.awaitAll()
+            }
+            val http1Ms = (System.nanoTime() - start) / 1000000
+            Assert.assertFalse(HostProtocols.isMultiplexed(http1.hostName))
+
+            // HTTP/2 : more parallel streams over one connection, awaited asynchronously, identical URLs coalesced
+            val http2Timings = ConnectionTimings()
+            val http2Client = OkHttpClient.Builder()
+                .protocols(listOf(Protocol.H2_PRIOR_KNOWLEDGE))
+                .eventListenerFactory(http2Timings)
+                .build()
+            http2Client.dispatcher.maxRequestsPerHost = 12
+            // Identify the protocol first, as the download queue does with the first downloads
+            http2Client.newCall(Request.Builder().url(http2.url("/probe")).build()).execute().use {
+                HostProtocols.record(it)
+            }
+            Assert.assertTrue(HostProtocols.isMultiplexed(http2.hostName))
+
+            val coalescer = RequestCoalescer<String, Int>(32)
+            start = System.nanoTime()
+            runBlocking {
+                val permits = Semaphore(12)
+                urlPaths.map { path ->
+                    async(Dispatchers.Default) {
+                        permits.withPermit {
+                            coalescer.run(path) {
+                                val response =
+                                    http2Client.newCall(Request.Builder().url(http2.url(path)).build())
+                                        .await()
+                                withContext(Dispatchers.IO) {
+                                    response.use { it.body?.bytes()?.size ?: 0 }
+                                }
+                            }
+                        }
+                    }
+                }.awaitAll()
+            }
+            val http2Ms = (System.nanoTime() - start) / 1000000
+
+            Assert.assertEquals(48, http1.requestCount)
+            Assert.assertEquals(41, http2.requestCount) // Probe + unique URLs
+            Assert.assertEquals(1, http2Timings.nbConnections)
+            Assert.assertTrue(http1Timings.nbConnections >= nbThreads)
+            Assert.assertTrue(http2Ms < http1Ms)
+
+            println(
+                String.format(
+                    "48 downloads at %d ms latency :%nHTTP/1.1 x%d : %d ms; %s%nHTTP/2 x12 + coalescing : %d ms; %s",
+                    latencyMs, nbThreads, http1Ms, http1Timings, http2Ms, http2Timings
+                )
+            )
+        } finally {
+            http1.shutdown()
+            http2.shutdown()
+        }
+    }
+}
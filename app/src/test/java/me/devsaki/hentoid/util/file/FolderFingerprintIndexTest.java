@@ -0,0 +1,164 @@
+package me.devsaki.hentoid.util.file;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class FolderFingerprintIndexTest {
+
+    private static final int NB_BOOKS = 200;
+    private static final String ROOT_URI = "content://test/tree/root";
+
+    private File root;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("library").toFile();
+        indexFile = new File(Files.createTempDirectory("index").toFile(), "fingerprints.json");
+        for (int b = 0; b < NB_BOOKS; b++) {
+            File bookFolder = new File(root, "book" + b);
+            Assert.assertTrue(bookFolder.mkdirs());
+            FileUtils.writeStringToFile(new File(bookFolder, "contentV2.json"), "{\"url\":\"/g/" + b + "/\"}", StandardCharsets.UTF_8);
+            for (int p = 0; p < 5; p++)
+                Assert.assertTrue(new File(bookFolder, String.format("%03d.jpg", p)).createNewFile());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root);
+        FileUtils.deleteDirectory(indexFile.getParentFile());
+    }
+
+    private static List<DocumentFile> children(File folder) {
+        return Arrays.asList(DocumentFile.fromFile(folder).listFiles());
+    }
+
+    /**
+     * Scan the library the way the import workers do, using the given index
+     *
+     * @return Number of folders skipped because they haven't changed
+     */
+    private int scan(FolderFingerprintIndex index) throws IOException {
+        int nbSkipped = 0;
+        File[] bookFolders = root.listFiles();
+        Assert.assertNotNull(bookFolders);
+        for (File f : bookFolders) {
+            String uri = DocumentFile.fromFile(f).getUri().toString();
+            List<DocumentFile> children = children(f);
+            if (index.getUnchangedContentIds(uri, children) != null) {
+                index.keep(uri);
+                nbSkipped++;
+            } else {
+                // Content ID derived from the folder name for the sake of the test
+                long id = Long.parseLong(f.getName().replace("book", "")) + 1;
+                index.put(uri, children, Collections.singletonList(id));
+            }
+        }
+        index.save();
+        return nbSkipped;
+    }
+
+    @Test
+    public void missingIndexMeansFullScan() throws IOException {
+        FolderFingerprintIndex index = FolderFingerprintIndex.load(indexFile, ROOT_URI);
+        Assert.assertFalse(index.isAvailable());
+        Assert.assertEquals(0, scan(index));
+        Assert.assertEquals(NB_BOOKS, index.getNbAdded());
+    }
+
+    @Test
+    public void unchangedFoldersAreSkipped() throws IOException {
+        scan(FolderFingerprintIndex.load(indexFile, ROOT_URI));
+
+        FolderFingerprintIndex index = FolderFingerprintIndex.load(indexFile, ROOT_URI);
+        Assert.assertTrue(index.isAvailable());
+        Assert.assertEquals(NB_BOOKS, scan(index));
+        Assert.assertEquals(0, index.getNbAdded());
+        Assert.assertEquals(0, index.getNbRemoved());
+    }
+
+    @Test
+    public void modificationsAreDetected() throws IOException {
+        scan(FolderFingerprintIndex.load(indexFile, ROOT_URI));
+
+        // Page added
+        Assert.assertTrue(new File(root, "book1/005.jpg").createNewFile());
+        // Page removed
+        Assert.assertTrue(new File(root, "book2/000.jpg").delete());
+        // JSON edited in place
+        FileUtils.writeStringToFile(new File(root, "book3/contentV2.json"), "{\"url\":\"/g/3/\",\"title\":\"edited\"}", StandardCharsets.UTF_8);
+        // Page renamed
+        Assert.assertTrue(new File(root, "book4/000.jpg").renameTo(new File(root, "book4/999.jpg")));
+        // Book removed
+        FileUtils.deleteDirectory(new File(root, "book5"));
+        // Book added
+        File newBook = new File(root, "book" + NB_BOOKS);
+        Assert.assertTrue(newBook.mkdirs());
+        FileUtils.writeStringToFile(new File(newBook, "contentV2.json"), "{}", StandardCharsets.UTF_8);
+
+        FolderFingerprintIndex index = FolderFingerprintIndex.load(indexFile, ROOT_URI);
+        Assert.assertEquals(NB_BOOKS - 5, scan(index));
+        Assert.assertEquals(1, index.getNbAdded());
+        // Changed folders are re-indexed under the same key; only the removed book is gone
+        Assert.assertEquals(1, index.getNbRemoved());
+    }
+
+    @Test
+    public void unchangedFolderDatesSkipListing() throws IOException {
+        FolderFingerprintIndex index = FolderFingerprintIndex.load(indexFile, ROOT_URI);
+        File[] bookFolders = root.listFiles();
+        Assert.assertNotNull(bookFolders);
+        for (File f : bookFolders) {
+            String uri = DocumentFile.fromFile(f).getUri().toString();
+            long id = Long.parseLong(f.getName().replace("book", "")) + 1;
+            // Folders recorded without their date can't be skipped without being listed
+            if (f.getName().equals("book0")) index.put(uri, children(f), Collections.singletonList(id));
+            else index.put(uri, f.lastModified(), children(f), Collections.singletonList(id));
+        }
+        index.save();
+
+        // Page added; the folder's date changes
+        File book1 = new File(root, "book1");
+        Assert.assertTrue(new File(book1, "005.jpg").createNewFile());
+        Assert.assertTrue(book1.setLastModified(book1.lastModified() + 2000));
+
+        index = FolderFingerprintIndex.load(indexFile, ROOT_URI);
+        int nbSkipped = 0;
+        for (File f : bookFolders)
+            if (index.getUnchangedContentIds(DocumentFile.fromFile(f).getUri().toString(), f.lastModified()) != null)
+                nbSkipped++;
+        Assert.assertEquals(NB_BOOKS - 2, nbSkipped);
+        Assert.assertNull(index.getUnchangedContentIds(DocumentFile.fromFile(book1).getUri().toString(), book1.lastModified()));
+    }
+
+    @Test
+    public void inconsistentIndexMeansFullScan() throws IOException {
+        scan(FolderFingerprintIndex.load(indexFile, ROOT_URI));
+
+        // Index built for another root
+        Assert.assertFalse(FolderFingerprintIndex.load(indexFile, "content://test/tree/other").isAvailable());
+
+        // Corrupted index
+        FileUtils.writeStringToFile(indexFile, "{\"version\":1,\"rootUri\":", StandardCharsets.UTF_8);
+        FolderFingerprintIndex index = FolderFingerprintIndex.load(indexFile, ROOT_URI);
+        Assert.assertFalse(index.isAvailable());
+        Assert.assertEquals(0, scan(index));
+    }
+}
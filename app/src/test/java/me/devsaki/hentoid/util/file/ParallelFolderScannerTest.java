@@ -0,0 +1,174 @@
+package me.devsaki.hentoid.util.file;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.json.JsonContent;
+import me.devsaki.hentoid.util.JsonHelper;
+
+@RunWith(RobolectricTestRunner.class)
+public class ParallelFolderScannerTest {
+
+    private static final int NB_SITES = 4;
+    private static final int NB_BOOKS_PER_SITE = 500;
+    private static final int NB_PAGES = 20;
+    // Simulated latency of a SAF listing (ContentResolver round-trip)
+    private static final long LISTING_LATENCY_MS = 2;
+
+    private static File root;
+
+    /**
+     * Stand-in for FileExplorer that works on local files
+     */
+    private static class LocalLister implements Closeable {
+        boolean closed = false;
+
+        List<File> list(File folder, boolean folders) {
+            try {
+                Thread.sleep(LISTING_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            File[] files = folder.listFiles(f -> f.isDirectory() == folders);
+            return (null == files) ? Collections.emptyList() : Arrays.asList(files);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class Scan {
+        String url = null;
+        int nbImages = 0;
+        List<File> subfolders = Collections.emptyList();
+    }
+
+    @BeforeClass
+    public static void createLibrary() throws IOException {
+        root = Files.createTempDirectory("library").toFile();
+        for (int s = 0; s < NB_SITES; s++) {
+            File siteFolder = new File(root, "site" + s);
+            for (int b = 0; b < NB_BOOKS_PER_SITE; b++) {
+                File bookFolder = new File(siteFolder, "book" + b);
+                Assert.assertTrue(bookFolder.mkdirs());
+                Content content = new Content()
+                        .setSite(Site.NHENTAI)
+                        .setUrl("/g/" + s + "-" + b + "/")
+                        .setTitle("Book " + b)
+                        .setStatus(StatusContent.DOWNLOADED);
+                String json = JsonHelper.serializeToJson(JsonContent.fromEntity(content), JsonContent.class);
+                FileUtils.writeStringToFile(new File(bookFolder, "contentV2.json"), json, StandardCharsets.UTF_8);
+                for (int p = 0; p < NB_PAGES; p++)
+                    Assert.assertTrue(new File(bookFolder, String.format("%03d.jpg", p)).createNewFile());
+            }
+        }
+    }
+
+    @AfterClass
+    public static void deleteLibrary() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    private static Scan scan(LocalLister lister, File folder) {
+        Scan result = new Scan();
+        List<File> files = lister.list(folder, false);
+        for (File f : files) {
+            if (f.getName().equals("contentV2.json")) {
+                try {
+                    JsonContent content = JsonHelper.jsonToObject(FileUtils.readFileToString(f, StandardCharsets.UTF_8), JsonContent.class);
+                    result.url = content.getUrl();
+                } catch (IOException e) {
+                    Assert.fail(e.getMessage());
+                }
+            } else if (f.getName().endsWith(".jpg")) result.nbImages++;
+        }
+        if (null == result.url) result.subfolders = lister.list(folder, true);
+        return result;
+    }
+
+    private static Set<String> scanSequential() {
+        Set<String> result = new HashSet<>();
+        LocalLister lister = new LocalLister();
+        List<File> folders = new ArrayList<>(Collections.singletonList(root));
+        for (int i = 0; i < folders.size(); i++) {
+            Scan s = scan(lister, folders.get(i));
+            if (s.url != null) result.add(s.url + "#" + s.nbImages);
+            folders.addAll(s.subfolders);
+        }
+        return result;
+    }
+
+    private static Set<String> scanParallel(int nbThreads, List<LocalLister> listers) throws InterruptedException {
+        Set<String> result = new HashSet<>();
+        try (ParallelFolderScanner<File, Scan, LocalLister> scanner = new ParallelFolderScanner<>(
+                nbThreads,
+                () -> {
+                    LocalLister lister = new LocalLister();
+                    synchronized (listers) {
+                        listers.add(lister);
+                    }
+                    return lister;
+                },
+                ParallelFolderScannerTest::scan)) {
+            scanner.submit(Collections.singletonList(root));
+            Scan s;
+            while ((s = scanner.next()) != null) {
+                if (s.url != null) result.add(s.url + "#" + s.nbImages);
+                if (!s.subfolders.isEmpty()) scanner.submit(s.subfolders);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void sameResultsAsSequentialScan() throws InterruptedException {
+        List<LocalLister> listers = new ArrayList<>();
+        Set<String> expected = scanSequential();
+        Assert.assertEquals(NB_SITES * NB_BOOKS_PER_SITE, expected.size());
+
+        Set<String> actual = scanParallel(4, listers);
+        Assert.assertEquals(expected, actual);
+
+        // One resource per thread, all closed at the end
+        Assert.assertTrue(listers.size() <= 4);
+        for (LocalLister l : listers) Assert.assertTrue(l.closed);
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws InterruptedException {
+        long start = System.nanoTime();
+        scanSequential();
+        long sequential = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        scanParallel(4, new ArrayList<>());
+        long parallel = (System.nanoTime() - start) / 1000000;
+
+        System.out.printf("%d books (%d ms simulated listing latency) : sequential %d ms; 4 threads %d ms%n",
+                NB_SITES * NB_BOOKS_PER_SITE, LISTING_LATENCY_MS, sequential, parallel);
+    }
+}
@@ -0,0 +1,184 @@
+package me.devsaki.hentoid.util.network;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+import android.webkit.WebView;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import me.devsaki.hentoid.enums.Site;
+
+@RunWith(RobolectricTestRunner.class)
+public class BackgroundWebViewPoolTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger nbCreated = new AtomicInteger(0);
+    private BackgroundWebViewPool pool = new BackgroundWebViewPool(5000);
+
+    /**
+     * WebView whose pages finish loading instantly, unless it is told not to respond
+     */
+    private static class FakeWebView extends WebView implements BackgroundWebViewPool.LoadableWebView {
+        static final AtomicBoolean respond = new AtomicBoolean(true);
+
+        FakeWebView(@NonNull Context context) {
+            super(context);
+        }
+
+        @Override
+        public void loadUrl(@NonNull String url, @NonNull Runnable onLoaded) {
+            if (respond.get()) onLoaded.run();
+        }
+    }
+
+    private final Function<Context, FakeWebView> factory = context -> {
+        nbCreated.incrementAndGet();
+        return new FakeWebView(RuntimeEnvironment.getApplication());
+    };
+
+    @After
+    public void tearDown() {
+        FakeWebView.respond.set(true);
+        pool.clear();
+        shadowOf(Looper.getMainLooper()).idle();
+        executor.shutdown();
+    }
+
+    /**
+     * Run the given task on a background thread, as the pool requires, while the main thread processes its messages
+     */
+    private <T> T runInBackground(@NonNull Callable<T> task) throws Exception {
+        Future<T> future = executor.submit(task);
+        while (!future.isDone()) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(1);
+        }
+        // Process the messages posted at the end of the task (e.g. releases)
+        shadowOf(Looper.getMainLooper()).idle();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private boolean leaseAndClose(@NonNull Site site) throws Exception {
+        return runInBackground(() -> {
+            try (BackgroundWebViewPool.Lease lease = pool.lease(site, FakeWebView.class, factory)) {
+                return lease.isCold();
+            }
+        });
+    }
+
+    @Test
+    public void reuseIdleWebView() throws Exception {
+        Assert.assertTrue(leaseAndClose(Site.HITOMI));
+        Assert.assertFalse(leaseAndClose(Site.HITOMI));
+        Assert.assertEquals(1, nbCreated.get());
+
+        BackgroundWebViewPool.Stats stats = pool.getStats();
+        Assert.assertEquals(2, stats.getNbLeases());
+        Assert.assertEquals(1, stats.getNbColdStarts());
+    }
+
+    @Test
+    public void separateSites() throws Exception {
+        Assert.assertTrue(leaseAndClose(Site.HITOMI));
+        Assert.assertTrue(leaseAndClose(Site.NHENTAI));
+        Assert.assertFalse(leaseAndClose(Site.HITOMI));
+        Assert.assertEquals(2, nbCreated.get());
+    }
+
+    @Test
+    public void concurrentLeases() throws Exception {
+        runInBackground(() -> {
+            try (BackgroundWebViewPool.Lease first = pool.lease(Site.HITOMI, FakeWebView.class, factory);
+                 BackgroundWebViewPool.Lease second = pool.lease(Site.HITOMI, FakeWebView.class, factory)) {
+                Assert.assertTrue(first.isCold());
+                Assert.assertTrue(second.isCold());
+            }
+            return null;
+        });
+        Assert.assertEquals(2, nbCreated.get());
+        // Only one of them is kept idle
+        Assert.assertFalse(leaseAndClose(Site.HITOMI));
+        Assert.assertEquals(2, nbCreated.get());
+    }
+
+    @Test
+    public void discardedWebView() throws Exception {
+        runInBackground(() -> {
+            try (BackgroundWebViewPool.Lease lease = pool.lease(Site.HITOMI, FakeWebView.class, factory)) {
+                lease.discard();
+            }
+            return null;
+        });
+        Assert.assertTrue(leaseAndClose(Site.HITOMI));
+        Assert.assertEquals(2, nbCreated.get());
+    }
+
+    @Test
+    public void loadUrl() throws Exception {
+        Assert.assertTrue(runInBackground(() -> {
+            try (BackgroundWebViewPool.Lease lease = pool.lease(Site.HITOMI, FakeWebView.class, factory)) {
+                return lease.loadUrl("https://hitomi.la/reader/1.html", 5000, null);
+            }
+        }));
+
+        // Page never finishes loading
+        FakeWebView.respond.set(false);
+        Assert.assertFalse(runInBackground(() -> {
+            try (BackgroundWebViewPool.Lease lease = pool.lease(Site.HITOMI, FakeWebView.class, factory)) {
+                return lease.loadUrl("https://hitomi.la/reader/1.html", 200, null);
+            }
+        }));
+
+        // Waiting is halted before the timeout
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(runInBackground(() -> {
+            try (BackgroundWebViewPool.Lease lease = pool.lease(Site.HITOMI, FakeWebView.class, factory)) {
+                return lease.loadUrl("https://hitomi.la/reader/1.html", 60000, () -> true);
+            }
+        }));
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        Assert.assertEquals(3, pool.getStats().getNbLoads());
+    }
+
+    @Test
+    public void leaseTimeout() throws Exception {
+        pool = new BackgroundWebViewPool(100);
+        // Main thread doesn't process the lease in time
+        Future<?> future = executor.submit(() -> pool.lease(Site.HITOMI, FakeWebView.class, factory));
+        try {
+            future.get();
+            Assert.fail("Lease should have timed out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        // WebView created after the caller has given up goes back to the pool
+        shadowOf(Looper.getMainLooper()).idle();
+        Assert.assertEquals(1, nbCreated.get());
+        leaseAndClose(Site.HITOMI);
+        Assert.assertEquals(1, nbCreated.get());
+    }
+}
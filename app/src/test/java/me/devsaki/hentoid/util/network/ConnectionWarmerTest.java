@@ -0,0 +1,222 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.core.util.Pair;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.devsaki.hentoid.mocks.MockHttpServer;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+public class ConnectionWarmerTest {
+
+    private static MockHttpServer server;
+    private static HandshakeCertificates clientCertificates;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        HeldCertificate certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("127.0.0.1")
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(certificate)
+                .build();
+        clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(certificate.certificate())
+                .build();
+
+        server = new MockHttpServer(serverCertificates.sslContext());
+        byte[] image = new byte[50 * 1024];
+        for (int i = 0; i < 10; i++)
+            server.setResponse("/img/" + i + ".jpg", new MockHttpServer.MockResponse()
+                    .setHeader("Content-Type", "image/jpeg")
+                    .setBody(image));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        server.close();
+    }
+
+    private static OkHttpClient newClient(ConnectionTimings timings) {
+        return new OkHttpClient.Builder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .eventListenerFactory(timings)
+                .build();
+    }
+
+    private static void fetch(OkHttpClient client, String url) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            Assert.assertEquals(200, response.code());
+            ResponseBody body = response.body();
+            Assert.assertNotNull(body);
+            body.bytes();
+        }
+    }
+
+    private static List<String> imageUrls(String host) {
+        List<String> result = new ArrayList<>();
+        for (int i = 1; i < 10; i++) result.add(server.getUrl(host, "/img/" + i + ".jpg"));
+        return result;
+    }
+
+    @Test
+    public void warmUpSavesHandshakes() throws Exception {
+        // Initialize the JVM's TLS stack so that it doesn't weigh on the first measure
+        fetch(newClient(new ConnectionTimings()), server.getUrl("/img/0.jpg"));
+        List<String> urls = imageUrls("127.0.0.1");
+
+        ConnectionTimings coldTimings = new ConnectionTimings();
+        OkHttpClient cold = newClient(coldTimings);
+        fetch(cold, urls.get(0));
+        Assert.assertEquals(1, coldTimings.getNbHandshakes());
+
+        ConnectionTimings warmTimings = new ConnectionTimings();
+        OkHttpClient warm = newClient(warmTimings);
+        ConnectionWarmer warmer = new ConnectionWarmer(() -> warm, 60000, System::currentTimeMillis, () -> {});
+        List<Future<?>> warmUps = warmer.warmUp(urls, Collections.singletonList(new Pair<>("Referer", server.getUrl("/g/1"))));
+        Assert.assertEquals(1, warmUps.size());
+        for (Future<?> f : warmUps) f.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, warmTimings.getNbHandshakes());
+
+        fetch(warm, urls.get(0));
+        // First image uses the connection opened by the warm-up
+        Assert.assertEquals(2, warmTimings.getNbCalls());
+        Assert.assertEquals(1, warmTimings.getNbHandshakes());
+        Assert.assertEquals(1, warmTimings.getNbConnections());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws Exception {
+        // Initialize the JVM's TLS stack so that it doesn't weigh on the first measure
+        fetch(newClient(new ConnectionTimings()), server.getUrl("/img/0.jpg"));
+        List<String> urls = imageUrls("127.0.0.1");
+
+        // Before : the first image opens its own connection
+        ConnectionTimings coldTimings = new ConnectionTimings();
+        OkHttpClient cold = newClient(coldTimings);
+        long start = System.nanoTime();
+        fetch(cold, urls.get(0));
+        long coldMs = (System.nanoTime() - start) / 1000000;
+
+        // After : the connection has been opened while the gallery was being parsed
+        ConnectionTimings warmTimings = new ConnectionTimings();
+        OkHttpClient warm = newClient(warmTimings);
+        ConnectionWarmer warmer = new ConnectionWarmer(() -> warm, 60000, System::currentTimeMillis, () -> {});
+        for (Future<?> f : warmer.warmUp(urls, null)) f.get(10, TimeUnit.SECONDS);
+        start = System.nanoTime();
+        fetch(warm, urls.get(0));
+        long warmMs = (System.nanoTime() - start) / 1000000;
+
+        System.out.printf("Time to first image : cold %d ms; warmed up %d ms%nCold : %s%nWarmed up : %s%n", coldMs, warmMs, coldTimings, warmTimings);
+        Assert.assertTrue(warmMs <= coldMs);
+    }
+
+    @Test
+    public void hostsWarmedOnce() throws Exception {
+        AtomicLong now = new AtomicLong(0);
+        ConnectionTimings timings = new ConnectionTimings();
+        OkHttpClient client = newClient(timings);
+        AtomicInteger nbThrottled = new AtomicInteger(0);
+        ConnectionWarmer warmer = new ConnectionWarmer(() -> client, 60000, now::get, nbThrottled::incrementAndGet);
+
+        List<String> urls = new ArrayList<>(imageUrls("127.0.0.1"));
+        urls.addAll(imageUrls("localhost"));
+        List<Future<?>> warmUps = warmer.warmUp(urls, null);
+        Assert.assertEquals(2, warmUps.size());
+        for (Future<?> f : warmUps) f.get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(2, timings.getNbHandshakes());
+        // Each call has gone through the rate limiter
+        Assert.assertEquals(2, nbThrottled.get());
+
+        // Still warm
+        now.addAndGet(30000);
+        Assert.assertTrue(warmer.warmUp(urls, null).isEmpty());
+
+        now.addAndGet(30000);
+        Assert.assertEquals(2, warmer.warmUp(urls, null).size());
+    }
+
+    @Test
+    public void sharedDnsSharesConnections() throws IOException {
+        ConnectionTimings timings = new ConnectionTimings();
+        OkHttpClient base = newClient(timings).newBuilder()
+                .dns(new CachingDns(Dns.SYSTEM, 60000))
+                .build();
+        OkHttpClient slowerTimeouts = base.newBuilder()
+                .connectTimeout(4000, TimeUnit.MILLISECONDS)
+                .readTimeout(15000, TimeUnit.MILLISECONDS)
+                .build();
+        OkHttpClient otherDns = base.newBuilder()
+                .dns(new CachingDns(Dns.SYSTEM, 60000))
+                .build();
+
+        String url = server.getUrl("/img/1.jpg");
+        fetch(base, url);
+        fetch(slowerTimeouts, url);
+        Assert.assertEquals(1, timings.getNbHandshakes());
+        // A different resolver instance prevents connections from being shared
+        fetch(otherDns, url);
+        Assert.assertEquals(2, timings.getNbHandshakes());
+    }
+
+    @Test
+    public void cachingDns() throws UnknownHostException {
+        AtomicInteger nbLookups = new AtomicInteger(0);
+        AtomicLong now = new AtomicLong(0);
+        Dns delegate = hostname -> {
+            nbLookups.incrementAndGet();
+            if (hostname.equals("unknown.host")) throw new UnknownHostException(hostname);
+            return Collections.singletonList(InetAddress.getLoopbackAddress());
+        };
+        CachingDns dns = new CachingDns(delegate, 60000, now::get);
+
+        Assert.assertEquals(1, dns.lookup("site.com").size());
+        dns.lookup("site.com");
+        Assert.assertEquals(1, nbLookups.get());
+        dns.lookup("cdn.site.com");
+        Assert.assertEquals(2, nbLookups.get());
+
+        // Expiry
+        now.addAndGet(60001);
+        dns.lookup("site.com");
+        Assert.assertEquals(3, nbLookups.get());
+
+        // Failures aren't cached
+        for (int i = 0; i < 2; i++) {
+            try {
+                dns.lookup("unknown.host");
+                Assert.fail("Exception expected");
+            } catch (UnknownHostException e) {
+                // Expected
+            }
+        }
+        Assert.assertEquals(5, nbLookups.get());
+
+        dns.clear();
+        dns.lookup("site.com");
+        Assert.assertEquals(6, nbLookups.get());
+    }
+}
@@ -0,0 +1,265 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.core.util.Pair;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.ImageFile;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+import me.devsaki.hentoid.mocks.MockHttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+@RunWith(RobolectricTestRunner.class)
+public class GalleryPageCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Mon, 02 Oct 2023 10:00:00 GMT";
+
+    private static MockHttpServer server;
+    private static final OkHttpClient client = new OkHttpClient();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(1000000L);
+    // Body of the pages served by the routes that ignore validators
+    private static volatile byte[] changingPage;
+
+
+    private static byte[] galleryPage(int id, int nbPages) {
+        StringBuilder sb = new StringBuilder("<html><head><title>Book ").append(id).append("</title></head><body><div id=\"thumbs\">");
+        for (int i = 0; i < nbPages; i++)
+            sb.append("<a class=\"thumb\" href=\"/g/").append(id).append('/').append(i + 1).append("/\"><img data-src=\"https://t.site.net/").append(id).append('/').append(i + 1).append("t.jpg\"></a>");
+        sb.append("</div></body></html>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        server = new MockHttpServer();
+        for (int id = 0; id < 100; id++) {
+            byte[] page = galleryPage(id, 50);
+            // Server that supports validators
+            server.setResponse("/validators/" + id, (Map<String, String> headers) -> {
+                if (ETAG.equals(headers.get("if-none-match")) || LAST_MODIFIED.equals(headers.get("if-modified-since")))
+                    return new MockHttpServer.MockResponse().setCode(304);
+                return new MockHttpServer.MockResponse()
+                        .setHeader("Content-Type", "text/html")
+                        .setHeader("ETag", ETAG)
+                        .setHeader("Last-Modified", LAST_MODIFIED)
+                        .setBody(page);
+            });
+            // Server that ignores validators
+            server.setResponse("/novalidators/" + id, new MockHttpServer.MockResponse()
+                    .setHeader("Content-Type", "text/html")
+                    .setBody(page));
+        }
+        changingPage = galleryPage(1000, 10);
+        server.setResponse("/changing", headers -> new MockHttpServer.MockResponse()
+                .setHeader("Content-Type", "text/html")
+                .setHeader("ETag", ETAG)
+                .setBody(changingPage));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        server.close();
+    }
+
+    private GalleryPageCache newCache(File folder, long maxSize) {
+        return new GalleryPageCache(folder, maxSize, now::get);
+    }
+
+    private static GalleryPageCache.Fetcher fetcher(String url) {
+        return headers -> {
+            Request.Builder builder = new Request.Builder().url(url);
+            for (Pair<String, String> h : headers) builder.addHeader(h.first, h.second);
+            return client.newCall(builder.build()).execute();
+        };
+    }
+
+    /**
+     * Stand-in for the actual content parsers
+     */
+    private static Content parse(byte[] data, String url) throws IOException {
+        Document doc = Jsoup.parse(new ByteArrayInputStream(data), null, url);
+        Content result = new Content().setSite(Site.NHENTAI).setTitle(doc.title());
+        result.setUrl(url);
+        List<ImageFile> images = new ArrayList<>();
+        int order = 1;
+        for (String src : doc.select("#thumbs img").eachAttr("data-src"))
+            images.add(ImageFile.fromImageUrl(order++, src.replace("t.jpg", ".jpg"), StatusContent.SAVED, 50));
+        result.setImageFiles(images);
+        result.setQtyPages(images.size());
+        return result;
+    }
+
+    /**
+     * Fetch the given gallery the way ContentHelper does
+     */
+    private static Content load(GalleryPageCache cache, String path) throws IOException {
+        String url = server.getUrl(path);
+        GalleryPageCache.Page page = cache.fetch(Site.NHENTAI, url, new ArrayList<>(), fetcher(url));
+        if (page.isUnchanged()) return page.getCachedContent();
+        Assert.assertNotNull(page.getData());
+        Content result = parse(page.getData(), url);
+        page.store(result);
+        return result;
+    }
+
+    @Test
+    public void serverWithValidators() throws IOException {
+        GalleryPageCache cache = newCache(tmp.newFolder(), 10 * 1024 * 1024);
+        Content first = load(cache, "/validators/1");
+        Content second = load(cache, "/validators/1");
+
+        GalleryPageCache.Stats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getNbRequests());
+        Assert.assertEquals(1, stats.getNbNotModified());
+        Assert.assertEquals(galleryPage(1, 50).length, stats.getNbBytesSaved());
+        Assert.assertEquals(first.getTitle(), second.getTitle());
+        Assert.assertEquals(first.getQtyPages(), second.getQtyPages());
+        Assert.assertEquals(first.getImageFiles().size(), second.getImageFiles().size());
+        Assert.assertEquals(first.getImageFiles().get(3).getUrl(), second.getImageFiles().get(3).getUrl());
+    }
+
+    @Test
+    public void serverIgnoringValidators() throws IOException {
+        GalleryPageCache cache = newCache(tmp.newFolder(), 10 * 1024 * 1024);
+        load(cache, "/novalidators/1");
+        Content second = load(cache, "/novalidators/1");
+
+        GalleryPageCache.Stats stats = cache.getStats();
+        Assert.assertEquals(0, stats.getNbNotModified());
+        Assert.assertEquals(1, stats.getNbUnchanged());
+        Assert.assertEquals(0, stats.getNbBytesSaved());
+        Assert.assertEquals("Book 1", second.getTitle());
+
+        // Page changes while keeping the same ETag : hash detects the change
+        changingPage = galleryPage(1000, 10);
+        load(cache, "/changing");
+        changingPage = galleryPage(1000, 12);
+        Content changed = load(cache, "/changing");
+        Assert.assertEquals(12, changed.getQtyPages());
+        Assert.assertEquals(1, cache.getStats().getNbUnchanged());
+    }
+
+    @Test
+    public void expiry() throws IOException {
+        File folder = tmp.newFolder();
+        GalleryPageCache cache = newCache(folder, 10 * 1024 * 1024);
+        load(cache, "/validators/2");
+
+        long ttl = GalleryPageCache.getTtl(Site.NHENTAI);
+        now.addAndGet(ttl - 1);
+        load(cache, "/validators/2");
+        Assert.assertEquals(1, cache.getStats().getNbNotModified());
+
+        // Page confirmed as unchanged by the server : expiry has been reset
+        now.addAndGet(ttl - 1);
+        load(cache, "/validators/2");
+        Assert.assertEquals(2, cache.getStats().getNbNotModified());
+
+        // Expired entry : full download
+        now.addAndGet(ttl + 1);
+        load(cache, "/validators/2");
+        Assert.assertEquals(2, cache.getStats().getNbNotModified());
+
+        // Entries survive a restart
+        GalleryPageCache restarted = newCache(folder, 10 * 1024 * 1024);
+        load(restarted, "/validators/2");
+        Assert.assertEquals(1, restarted.getStats().getNbNotModified());
+    }
+
+    @Test
+    public void canonicalUrls() throws IOException {
+        GalleryPageCache cache = newCache(tmp.newFolder(), 10 * 1024 * 1024);
+        load(cache, "/validators/3");
+
+        // Same page, spelled differently
+        String url = server.getUrl("/validators/3").replace("http://", "HTTP://") + "#thumbs";
+        GalleryPageCache.Page page = cache.fetch(Site.NHENTAI, url, new ArrayList<>(), fetcher(url));
+        Assert.assertTrue(page.isUnchanged());
+        Assert.assertEquals(1, cache.getStats().getNbNotModified());
+    }
+
+    @Test
+    public void sizeBound() throws IOException {
+        long maxSize = 100 * 1024;
+        File folder = tmp.newFolder();
+        GalleryPageCache cache = newCache(folder, maxSize);
+        for (int id = 0; id < 30; id++) load(cache, "/validators/" + id);
+        Assert.assertTrue(cache.getSize() <= maxSize);
+        Assert.assertTrue(cache.getSize() > 0);
+
+        long filesSize = 0;
+        File[] files = folder.listFiles();
+        Assert.assertNotNull(files);
+        for (File f : files) filesSize += f.length();
+        Assert.assertEquals(cache.getSize(), filesSize);
+
+        // Most recent entries are kept; oldest have been evicted
+        load(cache, "/validators/29");
+        Assert.assertEquals(1, cache.getStats().getNbNotModified());
+        load(cache, "/validators/0");
+        Assert.assertEquals(1, cache.getStats().getNbNotModified());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() throws IOException {
+        // Re-parsing a library of 100 books twice; half of them are hosted by a server that ignores validators
+        GalleryPageCache cache = newCache(tmp.newFolder(), 10 * 1024 * 1024);
+        long start = System.nanoTime();
+        for (int round = 0; round < 2; round++)
+            for (int id = 0; id < 100; id++) {
+                String url = server.getUrl(((id % 2 == 0) ? "/validators/" : "/novalidators/") + id);
+                try (Response response = fetcher(url).fetch(new ArrayList<>())) {
+                    Assert.assertNotNull(response.body());
+                    parse(response.body().bytes(), url);
+                }
+            }
+        long noCache = (System.nanoTime() - start) / 1000000;
+
+        long nbBytesBefore = server.getNbBytesSent();
+        start = System.nanoTime();
+        for (int round = 0; round < 2; round++)
+            for (int id = 0; id < 100; id++)
+                load(cache, ((id % 2 == 0) ? "/validators/" : "/novalidators/") + id);
+        long withCache = (System.nanoTime() - start) / 1000000;
+
+        GalleryPageCache.Stats stats = cache.getStats();
+        Assert.assertEquals(200, stats.getNbRequests());
+        Assert.assertEquals(50, stats.getNbNotModified());
+        Assert.assertEquals(50, stats.getNbUnchanged());
+        System.out.printf("200 gallery fetches : without cache %d ms; with cache %d ms (hit rate %.0f%%, %d KB saved, %d KB downloaded, %d KB stored)%n",
+                noCache, withCache, stats.getHitRate() * 100, stats.getNbBytesSaved() / 1024,
+                (server.getNbBytesSent() - nbBytesBefore) / 1024, cache.getSize() / 1024);
+    }
+}
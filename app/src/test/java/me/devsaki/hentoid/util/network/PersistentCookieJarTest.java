@@ -0,0 +1,280 @@
+package me.devsaki.hentoid.util.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.devsaki.hentoid.mocks.MockHttpServer;
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+@RunWith(RobolectricTestRunner.class)
+public class PersistentCookieJarTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Stand-in for the WebView's CookieManager; stores cookies by host, without any attribute
+     */
+    private static class FakeWebView implements PersistentCookieJar.WebViewCookies {
+        final Map<String, Map<String, String>> cookies = new HashMap<>();
+        int nbGets = 0;
+
+        @Nullable
+        @Override
+        public synchronized String getCookie(@NonNull String url) {
+            nbGets++;
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            Map<String, String> hostCookies = (null == httpUrl) ? null : cookies.get(httpUrl.host());
+            if (null == hostCookies || hostCookies.isEmpty()) return null;
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> entry : hostCookies.entrySet()) {
+                if (sb.length() > 0) sb.append("; ");
+                sb.append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public synchronized void setCookie(@NonNull String url, @NonNull String cookie) {
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            Cookie c = (null == httpUrl) ? null : Cookie.parse(httpUrl, cookie);
+            if (null == c) return;
+            Map<String, String> hostCookies = cookies.get(httpUrl.host());
+            if (null == hostCookies) {
+                hostCookies = new HashMap<>();
+                cookies.put(httpUrl.host(), hostCookies);
+            }
+            if (c.expiresAt() < System.currentTimeMillis()) hostCookies.remove(c.name());
+            else hostCookies.put(c.name(), c.value());
+        }
+
+        synchronized void set(@NonNull String host, @NonNull String name, @Nullable String value) {
+            Map<String, String> hostCookies = cookies.get(host);
+            if (null == hostCookies) {
+                hostCookies = new HashMap<>();
+                cookies.put(host, hostCookies);
+            }
+            if (null == value) hostCookies.remove(name);
+            else hostCookies.put(name, value);
+        }
+
+        @Override
+        public void flush() {
+            // Nothing to do
+        }
+    }
+
+    private PersistentCookieJar newJar(@Nullable File file, @NonNull FakeWebView webView) {
+        return new PersistentCookieJar(file, webView, now::get);
+    }
+
+    private static void receive(PersistentCookieJar jar, String url, String setCookie) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        Assert.assertNotNull(httpUrl);
+        Cookie c = Cookie.parse(httpUrl, setCookie);
+        Assert.assertNotNull(c);
+        jar.saveFromResponse(httpUrl, Collections.singletonList(c));
+    }
+
+    @Test
+    public void domainMatching() {
+        PersistentCookieJar jar = newJar(null, new FakeWebView());
+        receive(jar, "https://www.example.com/", "domain=1; Domain=example.com");
+        receive(jar, "https://www.example.com/", "host=2");
+
+        Assert.assertEquals("domain=1; host=2", sorted(jar.getCookieHeader("https://www.example.com/")));
+        Assert.assertEquals("domain=1", jar.getCookieHeader("https://example.com/"));
+        Assert.assertEquals("domain=1", jar.getCookieHeader("https://img.cdn.example.com/a.jpg"));
+        // Host-only cookies aren't sent to subdomains
+        Assert.assertEquals("domain=1", jar.getCookieHeader("https://sub.www.example.com/"));
+        Assert.assertEquals("", jar.getCookieHeader("https://otherexample.com/"));
+        Assert.assertEquals("", jar.getCookieHeader("https://example.org/"));
+        // Domain-only URLs are accepted
+        Assert.assertEquals("domain=1", jar.getCookieHeader(".example.com"));
+    }
+
+    @Test
+    public void pathAndSecureMatching() {
+        PersistentCookieJar jar = newJar(null, new FakeWebView());
+        receive(jar, "https://site.com/docs/index.html", "docs=1; Path=/docs");
+        receive(jar, "https://site.com/", "root=2; Path=/");
+        receive(jar, "https://site.com/", "secure=3; Secure");
+
+        // Longer paths first
+        Assert.assertEquals("docs=1; root=2; secure=3", jar.getCookieHeader("https://site.com/docs/a/b"));
+        Assert.assertEquals("docs=1; root=2; secure=3", jar.getCookieHeader("https://site.com/docs"));
+        Assert.assertEquals("root=2; secure=3", jar.getCookieHeader("https://site.com/doc"));
+        Assert.assertEquals("root=2; secure=3", jar.getCookieHeader("https://site.com/docsearch"));
+        Assert.assertEquals("root=2", jar.getCookieHeader("http://site.com/"));
+    }
+
+    @Test
+    public void expiry() {
+        PersistentCookieJar jar = newJar(null, new FakeWebView());
+        receive(jar, "https://site.com/", "short=1; Max-Age=60");
+        receive(jar, "https://site.com/", "session=2");
+        Assert.assertEquals("session=2; short=1", sorted(jar.getCookieHeader("https://site.com/")));
+
+        now.addAndGet(TimeUnit.SECONDS.toMillis(61));
+        Assert.assertEquals("session=2", jar.getCookieHeader("https://site.com/"));
+
+        // Expired cookie removes the stored one
+        receive(jar, "https://site.com/", "session=; Max-Age=0");
+        Assert.assertEquals("", jar.getCookieHeader("https://site.com/"));
+
+        // Replacement
+        receive(jar, "https://site.com/", "session=3");
+        receive(jar, "https://site.com/", "session=4");
+        Assert.assertEquals("session=4", jar.getCookieHeader("https://site.com/"));
+    }
+
+    @Test
+    public void persistence() throws IOException {
+        File file = new File(tmp.newFolder(), "cookies.json");
+        FakeWebView webView = new FakeWebView();
+        PersistentCookieJar jar = newJar(file, webView);
+        receive(jar, "https://www.site.com/", "persistent=1; Max-Age=3600; Domain=site.com; Path=/g; Secure");
+        receive(jar, "https://www.site.com/", "hostonly=2; Max-Age=3600");
+        receive(jar, "https://www.site.com/", "session=3");
+        jar.save();
+
+        // Session cookies don't survive a restart of the WebView either
+        webView.set("www.site.com", "session", null);
+        PersistentCookieJar restarted = newJar(file, webView);
+        Assert.assertEquals("persistent=1; hostonly=2", restarted.getCookieHeader("https://www.site.com/g/1"));
+        Assert.assertEquals("hostonly=2", restarted.getCookieHeader("https://www.site.com/"));
+        Assert.assertEquals("persistent=1", restarted.getCookieHeader("https://cdn.site.com/g/1"));
+        Assert.assertEquals("", restarted.getCookieHeader("http://cdn.site.com/g/1"));
+
+        // Cookies expired in the meantime aren't restored
+        now.addAndGet(TimeUnit.HOURS.toMillis(2));
+        Assert.assertEquals("", newJar(file, new FakeWebView()).getCookieHeader("https://www.site.com/g/1"));
+    }
+
+    @Test
+    public void webViewSync() {
+        FakeWebView webView = new FakeWebView();
+        webView.set("www.site.com", "fromBrowser", "1");
+        PersistentCookieJar jar = newJar(null, webView);
+
+        // Imported the first time the host is queried; the scope of the cookie is unknown, hence it's kept to its host
+        Assert.assertEquals("fromBrowser=1", jar.getCookieHeader("https://www.site.com/"));
+        Assert.assertEquals("", jar.getCookieHeader("https://cdn.site.com/"));
+        int nbGets = webView.nbGets;
+
+        // Written through to the WebView
+        receive(jar, "https://www.site.com/", "fromHttp=2; Max-Age=3600");
+        Assert.assertEquals("2", webView.cookies.get("www.site.com").get("fromHttp"));
+
+        // Changes made by the WebView are only seen after an import
+        webView.set("www.site.com", "fromBrowser", "3");
+        webView.set("www.site.com", "fromHttp", null);
+        webView.set("www.site.com", "newOne", "4");
+        Assert.assertEquals("fromBrowser=1; fromHttp=2", sorted(jar.getCookieHeader("https://www.site.com/")));
+        Assert.assertEquals(nbGets, webView.nbGets);
+
+        jar.importFromWebView("https://www.site.com/");
+        Assert.assertEquals("fromBrowser=3; newOne=4", sorted(jar.getCookieHeader("https://www.site.com/")));
+
+        // Clearing the jar imports the cookies of the WebView again
+        webView.cookies.clear();
+        jar.clear();
+        Assert.assertEquals("", jar.getCookieHeader("https://www.site.com/"));
+    }
+
+    @Test
+    public void interceptor() throws IOException {
+        try (MockHttpServer server = new MockHttpServer()) {
+            server.setResponse("/login", new MockHttpServer.MockResponse().setHeader("Set-Cookie", "session=abc; Path=/"));
+            List<String> received = new ArrayList<>();
+            server.setResponse("/page", headers -> {
+                received.add(headers.get("cookie"));
+                return new MockHttpServer.MockResponse();
+            });
+
+            FakeWebView webView = new FakeWebView();
+            PersistentCookieJar jar = newJar(null, webView);
+            OkHttpClient client = new OkHttpClient.Builder().addNetworkInterceptor(jar).build();
+
+            client.newCall(new Request.Builder().url(server.getUrl("/login")).build()).execute().close();
+            client.newCall(new Request.Builder().url(server.getUrl("/page")).build()).execute().close();
+            // Cookies explicitly set by the caller are kept
+            client.newCall(new Request.Builder().url(server.getUrl("/page")).header("Cookie", "session=override; other=1").build()).execute().close();
+            client.newCall(new Request.Builder().url(server.getUrl("/page")).header("Cookie", "other=1").build()).execute().close();
+
+            Assert.assertEquals("session=abc", received.get(0));
+            Assert.assertEquals("session=override; other=1", received.get(1));
+            Assert.assertEquals("other=1; session=abc", received.get(2));
+
+            HttpUrl url = HttpUrl.parse(server.getUrl("/"));
+            Assert.assertNotNull(url);
+            Assert.assertEquals("abc", webView.cookies.get(url.host()).get("session"));
+        }
+    }
+
+    @Test
+    @Ignore("Benchmark")
+    public void benchmark() {
+        final int nbLookups = 200000;
+        FakeWebView webView = new FakeWebView();
+        PersistentCookieJar jar = newJar(null, webView);
+        for (int i = 0; i < 20; i++) {
+            String host = "www.site" + i + ".com";
+            for (int j = 0; j < 8; j++) {
+                webView.set(host, "cookie" + j, "value" + j);
+                receive(jar, "https://" + host + "/", "cookie" + j + "=value" + j + "; Max-Age=3600; Domain=site" + i + ".com");
+            }
+        }
+
+        // Previous way : ask the WebView then strip the parameters
+        long start = System.nanoTime();
+        for (int i = 0; i < nbLookups; i++) {
+            String raw = webView.getCookie("https://www.site" + (i % 20) + ".com/g/" + i);
+            Assert.assertNotNull(raw);
+            HttpHelper.stripParams(raw);
+        }
+        long webViewMs = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < nbLookups; i++)
+            Assert.assertFalse(jar.getCookieHeader("https://www.site" + (i % 20) + ".com/g/" + i).isEmpty());
+        long jarMs = (System.nanoTime() - start) / 1000000;
+
+        System.out.printf("%d cookie header lookups : WebView + stripParams %d ms; cookie jar %d ms%n", nbLookups, webViewMs, jarMs);
+    }
+
+    private static String sorted(String header) {
+        List<String> parts = new ArrayList<>();
+        for (String s : header.split("; ")) if (!s.isEmpty()) parts.add(s);
+        Collections.sort(parts);
+        StringBuilder sb = new StringBuilder();
+        for (String s : parts) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}